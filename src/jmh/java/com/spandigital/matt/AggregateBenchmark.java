@@ -0,0 +1,73 @@
+package com.spandigital.matt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The aggregation phase: turning a whole input's worth of lines into per-team points, both from
+ * memory (pure parse + tally cost) and from a file in parallel chunks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class AggregateBenchmark {
+
+    @Param({"1000", "100000"})
+    public int teams;
+
+    @Param({"1000000"})
+    public long games;
+
+    private final TeamRanker ranker = TeamRanker.createDefault();
+    private ByteBuffer data;
+    private Path file;
+    private FileChannel channel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        LeagueGenerator generator = new LeagueGenerator(teams, games, 12, 4, 0, 42);
+        data = ByteBuffer.wrap(generator.toBytes());
+        file = generator.writeTo(Files.createTempFile("aggregate-benchmark", ".txt"));
+        channel = FileChannel.open(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public GameTally sequentialFromMemory() {
+        GameTally tally = new GameTally(ranker);
+        LineScanner.scan(data, 0, data.limit(), true, tally::acceptLine, ranker.getMetrics());
+        return tally;
+    }
+
+    @Benchmark
+    public GameTally parallelFromFile() throws IOException {
+        return ParallelIngest.ingest(channel, ranker, ForkJoinPool.commonPool());
+    }
+}
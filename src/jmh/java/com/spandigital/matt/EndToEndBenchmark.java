@@ -0,0 +1,84 @@
+package com.spandigital.matt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CmdLineRunner#printRankings} from file to (discarded) stdout: read, parse, aggregate, rank
+ * and write (or, from a binary {@link ResultsFile}, the same minus the parsing).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(2)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    @Param({"10000"})
+    public int teams;
+
+    @Param({"1000000"})
+    public long games;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    /**
+     * Whether to read the results as text, or as a {@link ResultsFile} converted in advance (in
+     * which case {@link #parallel} makes no difference).
+     */
+    @Param({"false", "true"})
+    public boolean binary;
+
+    private final CmdLineRunner runner = new CmdLineRunner();
+    private final TeamRanker ranker = TeamRanker.createDefault();
+    private Path file;
+    private RunOptions options;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = new LeagueGenerator(teams, games, 12, 4, 0, 42)
+                .writeTo(Files.createTempFile("end-to-end-benchmark", ".txt"));
+        if (binary) {
+            Path text = file;
+            file = Files.createTempFile("end-to-end-benchmark", ".bin");
+            ResultsFile.convert(List.of(InputSource.of(text)), ranker, file);
+            Files.delete(text);
+        }
+        options = RunOptions.parse(parallel ? new String[]{"--parallel"} : new String[0]);
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void printRankings() {
+        runner.printRankings(List.of(InputSource.of(file)), ranker, options);
+    }
+}
@@ -0,0 +1,132 @@
+package com.spandigital.matt;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates synthetic (but reproducible, given the seed) result files for benchmarking.
+ * <br>
+ * Team names are made of random lowercase "words", with lengths drawn from a normal distribution
+ * (clamped to at least one character) so that they look a bit like real names, some single words
+ * and some several. A fraction of lines can be made faulty, in assorted ways the parser rejects.
+ * <br>
+ * Also runnable, to write a file for manual runs:<br>
+ * {@code LeagueGenerator <output> <teams> <games> [meanNameLength] [nameLengthStdDev] [badLineRate] [seed]}
+ */
+final class LeagueGenerator {
+
+    private final int teamCount;
+    private final long gameCount;
+    private final double meanNameLength;
+    private final double nameLengthStdDev;
+    private final double badLineRate;
+    private final long seed;
+
+    /**
+     * @param teamCount        number of distinct teams (at least 2)
+     * @param gameCount        number of lines to generate
+     * @param meanNameLength   mean team name length, in characters
+     * @param nameLengthStdDev standard deviation of team name length
+     * @param badLineRate      fraction (0 to 1) of lines to make faulty
+     * @param seed             random seed; the same arguments always generate the same lines
+     */
+    LeagueGenerator(int teamCount, long gameCount, double meanNameLength, double nameLengthStdDev,
+            double badLineRate, long seed) {
+        if (teamCount < 2) {
+            throw new IllegalArgumentException("Need at least two teams to have a game");
+        }
+        this.teamCount = teamCount;
+        this.gameCount = gameCount;
+        this.meanNameLength = meanNameLength;
+        this.nameLengthStdDev = nameLengthStdDev;
+        this.badLineRate = badLineRate;
+        this.seed = seed;
+    }
+
+    /**
+     * @return the names of all teams, all distinct.
+     */
+    String[] teamNames() {
+        Random random = new Random(seed);
+        String[] names = new String[teamCount];
+        for (int i = 0; i < teamCount; i++) {
+            int length = (int) Math.max(1,
+                    Math.round(meanNameLength + random.nextGaussian() * nameLengthStdDev));
+            StringBuilder name = new StringBuilder(length + 8);
+            for (int c = 0; c < length; c++) {
+                boolean space = c > 0 && c < length - 1 && name.charAt(c - 1) != ' '
+                        && random.nextInt(6) == 0;
+                name.append(space ? ' ' : (char) ('a' + random.nextInt(26)));
+            }
+            name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+            // a suffix that only ever repeats for the same team keeps the names distinct
+            names[i] = name.append(' ').append(Integer.toString(i, 36).toUpperCase()).toString();
+        }
+        return names;
+    }
+
+    void write(Writer out) throws IOException {
+        String[] names = teamNames();
+        Random random = new Random(seed + 1);
+        StringBuilder line = new StringBuilder(128);
+        for (long game = 0; game < gameCount; game++) {
+            line.setLength(0);
+            int home = random.nextInt(teamCount);
+            int away = random.nextInt(teamCount - 1);
+            if (away >= home) { // never plays itself
+                away++;
+            }
+            line.append(names[home]).append(' ').append(random.nextInt(5)).append(", ")
+                    .append(names[away]).append(' ').append(random.nextInt(5));
+            if (random.nextDouble() < badLineRate) {
+                spoil(line, names[home], random);
+            }
+            out.append(line).append('\n');
+        }
+    }
+
+    Path writeTo(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            write(out);
+        }
+        return file;
+    }
+
+    byte[] toBytes() {
+        StringWriter out = new StringWriter();
+        try {
+            write(out);
+        } catch (IOException e) { // can't happen writing to memory
+            throw new IllegalStateException(e);
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void spoil(StringBuilder line, String homeName, Random random) {
+        switch (random.nextInt(4)) {
+            case 0 -> line.setLength(line.lastIndexOf(" ")); // missing score
+            case 1 -> line.append(", ").append(homeName).append(" 1"); // too many columns
+            case 2 -> line.replace(line.indexOf(","), line.length(), ", " + homeName + " 0"); // self
+            default -> line.delete(0, line.indexOf(",") - 2); // no name
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: LeagueGenerator <output> <teams> <games> [meanNameLength]"
+                    + " [nameLengthStdDev] [badLineRate] [seed]");
+            return;
+        }
+        new LeagueGenerator(Integer.parseInt(args[1]), Long.parseLong(args[2]),
+                args.length > 3 ? Double.parseDouble(args[3]) : 12,
+                args.length > 4 ? Double.parseDouble(args[4]) : 4,
+                args.length > 5 ? Double.parseDouble(args[5]) : 0,
+                args.length > 6 ? Long.parseLong(args[6]) : 42).writeTo(Path.of(args[0]));
+    }
+}
@@ -0,0 +1,73 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple2;
+import io.vavr.control.Either;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a single line: the String based {@link TeamRanker#parseLine} against the byte level
+ * {@link GameLineParser} it's built on.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+    private static final int LINE_COUNT = 4096; // a power of two, so we can cycle with a mask
+
+    @Param({"0", "0.05"})
+    public double badLineRate;
+
+    private final TeamRanker ranker = TeamRanker.createDefault();
+    private final GameLineParser parser = new GameLineParser();
+    private String[] lines;
+    private ByteBuffer bytes;
+    private int[] lineStarts;
+    private int[] lineEnds;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        String data = new String(
+                new LeagueGenerator(500, LINE_COUNT, 12, 4, badLineRate, 42).toBytes(),
+                StandardCharsets.UTF_8);
+        lines = data.split("\n");
+        bytes = ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8));
+        lineStarts = new int[LINE_COUNT];
+        lineEnds = new int[LINE_COUNT];
+        int[] line = {0};
+        LineScanner.scan(bytes, 0, bytes.limit(), true, (buf, start, end) -> {
+            lineStarts[line[0]] = start;
+            lineEnds[line[0]++] = end;
+        }, new RunMetrics());
+    }
+
+    @Benchmark
+    public Either<String, Tuple2<Team, Team>> parseLine() {
+        int i = next++ & (LINE_COUNT - 1);
+        return ranker.parseLine(i + 1, lines[i]);
+    }
+
+    @Benchmark
+    public boolean parseBytes() {
+        int i = next++ & (LINE_COUNT - 1);
+        return parser.parse(bytes, lineStarts[i], lineEnds[i]);
+    }
+}
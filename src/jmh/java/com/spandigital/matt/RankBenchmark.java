@@ -0,0 +1,54 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The rank/sort phase alone, over an already populated tally.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class RankBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int teams;
+
+    private GameTally tally;
+
+    @Setup
+    public void setUp() {
+        LeagueGenerator generator = new LeagueGenerator(teams, teams * 10L, 12, 4, 0, 42);
+        ByteBuffer data = ByteBuffer.wrap(generator.toBytes());
+        tally = new GameTally(TeamRanker.createDefault());
+        LineScanner.scan(data, 0, data.limit(), true, tally::acceptLine,
+                tally.getRanker().getMetrics());
+    }
+
+    @Benchmark
+    public List<Tuple2<Long, Team>> fullTable() {
+        return new Standings(tally).table();
+    }
+
+    @Benchmark
+    public List<Tuple2<Long, Team>> bucketTable() {
+        return BucketRanking.table(tally);
+    }
+}
@@ -0,0 +1,99 @@
+package com.spandigital.matt;
+
+import java.util.Objects;
+
+/**
+ * A faulty input line: where it came from, what was wrong with it and what it contained.
+ */
+final class BadLine {
+
+    /**
+     * What made a line faulty (the first problem found, if there's more than one).
+     */
+    enum Reason {
+        WRONG_COLUMN_COUNT("wrong number of columns"),
+        BAD_SCORE("missing or invalid score"),
+        EMPTY_NAME("empty team name"),
+        SELF_PLAY("team playing itself"),
+        MISSING_LEAGUE("missing league"),
+        MISSING_MATCH_ID("missing match id"),
+        DUPLICATE("repeats an earlier game");
+
+        private final String description;
+
+        Reason(String description) {
+            this.description = description;
+        }
+
+        String getDescription() {
+            return description;
+        }
+    }
+
+    private final String source;
+    private final long lineNumber;
+    private final Reason reason;
+    private final String content;
+
+    /**
+     * @param source     name of the input the line came from, or null when there's only the one
+     *                   input (so there's no need to say which).
+     * @param lineNumber 1-based line number within that input
+     * @param reason     what was wrong with the line
+     * @param content    the line as read, terminator excluded
+     */
+    BadLine(String source, long lineNumber, Reason reason, String content) {
+        this.source = source;
+        this.lineNumber = lineNumber;
+        this.reason = Objects.requireNonNull(reason);
+        this.content = Objects.requireNonNull(content);
+    }
+
+    BadLine withLineOffset(long lineOffset) {
+        return new BadLine(source, lineNumber + lineOffset, reason, content);
+    }
+
+    BadLine withSource(String source) {
+        return new BadLine(source, lineNumber, reason, content);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BadLine badLine = (BadLine) o;
+        return lineNumber == badLine.lineNumber && Objects.equals(source, badLine.source)
+                && reason == badLine.reason && content.equals(badLine.content);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(source, lineNumber, reason, content);
+    }
+
+    @Override
+    public String toString() {
+        return "BadLine{" +
+                "source='" + source + '\'' +
+                ", lineNumber=" + lineNumber +
+                ", reason=" + reason +
+                ", content='" + content + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,215 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple2;
+import io.vavr.control.Either;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Ranks many independent inputs in one JVM, each written to its own output, as listed in a
+ * manifest. Jobs run concurrently (up to a limit), and each succeeds or fails on its own: a bad
+ * input is reported, and the rest carry on.
+ * <br>
+ * The manifest has a job per line: the input path, a tab, then the output path. Blank lines and
+ * lines starting with {@code #} are skipped, and relative paths are relative to the manifest.
+ */
+final class BatchRunner {
+
+    static final char SEPARATOR = '\t';
+
+    private BatchRunner() {
+    }
+
+    /**
+     * An input to rank, and where to write its table.
+     */
+    static final class Job {
+
+        private final Path input;
+        private final Path output;
+
+        Job(Path input, Path output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        Path getInput() {
+            return input;
+        }
+
+        Path getOutput() {
+            return output;
+        }
+
+        @Override
+        public String toString() {
+            return input + " -> " + output;
+        }
+    }
+
+    /**
+     * How a job went: the number of rows written, or why it failed.
+     */
+    static final class JobResult {
+
+        private final Job job;
+        private final long rows;
+        private final List<String> problems; // empty if the job succeeded
+
+        private JobResult(Job job, long rows, List<String> problems) {
+            this.job = job;
+            this.rows = rows;
+            this.problems = problems;
+        }
+
+        Job getJob() {
+            return job;
+        }
+
+        boolean isSuccess() {
+            return problems.isEmpty();
+        }
+
+        long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return what went wrong (e.g. the bad lines), or an empty list if nothing did.
+         */
+        List<String> getProblems() {
+            return problems;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if a line of the manifest isn't an input and an output.
+     * @throws IOException              if the manifest can't be read.
+     */
+    static List<Job> readManifest(Path manifest) throws IOException {
+        Path directory = manifest.toAbsolutePath().getParent();
+        List<Job> jobs = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(manifest)) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.indexOf(SEPARATOR);
+            if (separator <= 0 || separator == line.length() - 1
+                    || line.indexOf(SEPARATOR, separator + 1) >= 0) {
+                throw new IllegalArgumentException("Manifest line " + lineNumber
+                        + " should be an input path, a tab, then an output path: " + line);
+            }
+            jobs.add(new Job(directory.resolve(line.substring(0, separator)),
+                    directory.resolve(line.substring(separator + 1))));
+        }
+        return jobs;
+    }
+
+    /**
+     * Runs every job, at most {@code concurrency} at a time, each ranked as per
+     * {@link TeamRanker#calculateRankings(List, boolean)} and written in the given format.
+     * <br>
+     * Java 17 has no virtual threads, so jobs run on a fixed pool of platform threads instead.
+     * Each job is mostly I/O and parsing of a small file, so a pool around the core count keeps
+     * the cores busy.
+     *
+     * @return a result per job, in manifest order.
+     */
+    static List<JobResult> run(List<Job> jobs, TeamRanker ranker, OutputFormat format,
+            int concurrency) {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(concurrency, jobs.size())));
+        try {
+            List<Future<JobResult>> futures = new ArrayList<>(jobs.size());
+            for (Job job : jobs) {
+                futures.add(executor.submit(() -> run(job, ranker, format)));
+            }
+            List<JobResult> results = new ArrayList<>(jobs.size());
+            for (int i = 0; i < jobs.size(); i++) {
+                results.add(await(jobs.get(i), futures.get(i)));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static JobResult await(Job job, Future<JobResult> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) { // anything unexpected only fails the one job
+            return failed(job, String.valueOf(e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new JobResult(job, 0, List.of("Interrupted"));
+        }
+    }
+
+    private static JobResult run(Job job, TeamRanker ranker, OutputFormat format) {
+        Either<List<String>, List<Tuple2<Long, Team>>> rankings;
+        try {
+            rankings = ranker.calculateRankings(List.of(InputSource.of(job.getInput())), false);
+        } catch (IOException e) {
+            return failed(job, "Couldn't read input: " + e);
+        }
+        if (rankings.isLeft()) {
+            return rankings.getLeft().isEmpty() // they were reported already
+                    ? failed(job, "There were problems with some lines")
+                    : failed(job, rankings.getLeft());
+        }
+        // write alongside then swap in, so a failed job leaves no output behind, not even part of
+        // one (or a stale one, which failed() deletes)
+        Path output = job.getOutput();
+        Path temporary = output.resolveSibling(output.getFileName() + ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                RankingWriter writer = RankingWriter.create(format, out);
+                writer.write(rankings.get());
+                writer.flush();
+            }
+            Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            List<String> problems = new ArrayList<>(List.of("Couldn't write output: " + e));
+            deleteIfExists(temporary, problems);
+            return failed(job, problems);
+        }
+        return new JobResult(job, rankings.get().size(), List.of());
+    }
+
+    private static JobResult failed(Job job, String problem) {
+        return failed(job, List.of(problem));
+    }
+
+    /**
+     * @return a failed result for the job, having deleted any output an earlier run left behind,
+     * so that it's not taken for this run's.
+     */
+    private static JobResult failed(Job job, List<String> problems) {
+        List<String> allProblems = new ArrayList<>(problems);
+        deleteIfExists(job.getOutput(), allProblems);
+        return new JobResult(job, 0, allProblems);
+    }
+
+    private static void deleteIfExists(Path file, List<String> problems) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            problems.add("Couldn't delete " + file + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntBinaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Ranks a whole league in O(n + range of points), plus sorting names within each points bucket,
+ * rather than comparison sorting every team. Points are small bounded integers (about 3 per game
+ * played), so there are few distinct totals: teams are counted into a bucket per total (a counting
+ * sort, highest points first), and only teams sharing a bucket need comparing, by name.
+ * <br>
+ * Any {@link Tiebreaker}s likewise only look at the teams they're separating: each bucket is
+ * sorted by the first tiebreaker, each run still tied by the next, and so on.
+ * <br>
+ * A bucket's start in the table gives its shared rank directly, so no ranking pass is needed. The
+ * result is a flat table (parallel arrays of team id, rank and points) rather than a Tuple and
+ * Team per row, which are only created as rows are read.
+ * <br>
+ * If the points are too spread out for buckets to pay off (e.g. a scoring scheme with huge
+ * points), teams are merge sorted by points instead.
+ */
+final class BucketRanking {
+
+    /**
+     * Buckets allowed per team (on top of {@link #MIN_BUCKETS}) before falling back to sorting.
+     */
+    static final int BUCKETS_PER_TEAM = 4;
+    static final int MIN_BUCKETS = 1024;
+
+    // below this many teams, sorting the buckets concurrently costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 64 * 1024;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final GameTally tally;
+    private final List<Tiebreaker> tiebreakers;
+    private final int[] ids; // in table order, once ranked
+    private final int[] scratch; // for merge sorting, each group within its own slice
+    private final int[] ranks;
+    private final long[] keys; // indexed by team id, the current tiebreaker's value
+    private final int[] marks; // indexed by team id, which group it's in, for head-to-head
+
+    private BucketRanking(GameTally tally) {
+        this.tally = tally;
+        this.tiebreakers = tally.getRanker().getTiebreakers();
+        int teamCount = tally.getTeamCount();
+        this.ids = new int[teamCount];
+        this.scratch = new int[teamCount];
+        this.ranks = new int[teamCount];
+        this.keys = tiebreakers.isEmpty() ? null : new long[teamCount];
+        this.marks = tiebreakers.contains(Tiebreaker.HEAD_TO_HEAD) ? new int[teamCount] : null;
+    }
+
+    /**
+     * @return the whole table, ordered and ranked as per {@link TeamRanker#calculateRankings},
+     * but with ties broken by the tally's ranker's {@link TeamRanker#getTiebreakers()}.
+     */
+    static List<Tuple2<Long, Team>> table(GameTally tally) {
+        int teamCount = tally.getTeamCount();
+        if (teamCount == 0) {
+            return List.of();
+        }
+        BucketRanking ranking = new BucketRanking(tally);
+        int[] groupStarts = ranking.orderByPoints(); // plus teamCount at the end
+        IntStream groups = IntStream.range(0, groupStarts.length - 1);
+        if (teamCount >= PARALLEL_THRESHOLD) {
+            groups = groups.parallel();
+        }
+        groups.forEach(g -> ranking.rankGroup(groupStarts[g], groupStarts[g + 1], 0));
+        long[] points = new long[teamCount];
+        for (int i = 0; i < teamCount; i++) {
+            points[i] = tally.getPoints(ranking.ids[i]);
+        }
+        return new Table(tally, ranking.ids, ranking.ranks, points);
+    }
+
+    /**
+     * Puts the ids in order of points (highest first), by a counting sort if the points aren't
+     * too spread out.
+     *
+     * @return where each run of teams on equal points starts, then the team count.
+     */
+    private int[] orderByPoints() {
+        int teamCount = ids.length;
+        long minPoints = Long.MAX_VALUE;
+        long maxPoints = Long.MIN_VALUE;
+        for (int id = 0; id < teamCount; id++) {
+            minPoints = Math.min(minPoints, tally.getPoints(id));
+            maxPoints = Math.max(maxPoints, tally.getPoints(id));
+        }
+        long range = maxPoints - minPoints + 1; // not positive if that overflowed
+        if (range <= 0 || range > MIN_BUCKETS + (long) BUCKETS_PER_TEAM * teamCount
+                || range >= Integer.MAX_VALUE - 8) {
+            for (int id = 0; id < teamCount; id++) {
+                ids[id] = id;
+            }
+            sort(0, teamCount, (a, b) -> Long.compare(tally.getPoints(b), tally.getPoints(a)));
+            IntStream.Builder groupStarts = IntStream.builder();
+            for (int i = 0; i < teamCount; i++) {
+                if (i == 0 || tally.getPoints(ids[i]) != tally.getPoints(ids[i - 1])) {
+                    groupStarts.add(i);
+                }
+            }
+            return groupStarts.add(teamCount).build().toArray();
+        }
+
+        // bucket b holds the teams on maxPoints - b points; starts[b] is where it begins
+        int[] starts = new int[(int) range + 1];
+        for (int id = 0; id < teamCount; id++) {
+            starts[(int) (maxPoints - tally.getPoints(id)) + 1]++;
+        }
+        for (int b = 1; b < starts.length; b++) {
+            starts[b] += starts[b - 1];
+        }
+        int[] next = starts.clone();
+        for (int id = 0; id < teamCount; id++) {
+            ids[next[(int) (maxPoints - tally.getPoints(id))]++] = id;
+        }
+        return IntStream.range(0, starts.length)
+                .filter(b -> b == starts.length - 1 || starts[b + 1] > starts[b])
+                .map(b -> starts[b])
+                .toArray();
+    }
+
+    /**
+     * Orders and ranks {@code ids[from, to)}, teams tied on points and on the tiebreakers before
+     * {@code level}, with the tiebreakers from {@code level} on and then by name.
+     */
+    private void rankGroup(int from, int to, int level) {
+        if (to - from > 1 && level < tiebreakers.size()) {
+            setKeys(tiebreakers.get(level), from, to);
+            sort(from, to, (a, b) -> Long.compare(keys[b], keys[a]));
+            for (int start = from; start < to; ) {
+                int end = start + 1;
+                while (end < to && keys[ids[end]] == keys[ids[start]]) {
+                    end++;
+                }
+                rankGroup(start, end, level + 1);
+                start = end;
+            }
+            return;
+        }
+        if (to - from > 1) {
+            sort(from, to, tally::compareNames);
+        }
+        for (int i = from; i < to; i++) {
+            ranks[i] = from + 1;
+        }
+    }
+
+    private void setKeys(Tiebreaker tiebreaker, int from, int to) {
+        switch (tiebreaker) {
+            case GOAL_DIFFERENCE -> {
+                for (int i = from; i < to; i++) {
+                    keys[ids[i]] = tally.getGoalsFor(ids[i]) - tally.getGoalsAgainst(ids[i]);
+                }
+            }
+            case GOALS_FOR -> {
+                for (int i = from; i < to; i++) {
+                    keys[ids[i]] = tally.getGoalsFor(ids[i]);
+                }
+            }
+            case HEAD_TO_HEAD -> setHeadToHeadKeys(from, to);
+        }
+    }
+
+    /**
+     * Sets each team's key to its points from games against the rest of the group, looking up
+     * each pair in the group or going through every pair that's met, whichever is fewer.
+     */
+    private void setHeadToHeadKeys(int from, int to) {
+        HeadToHead headToHead = tally.getHeadToHead();
+        for (int i = from; i < to; i++) {
+            keys[ids[i]] = 0;
+        }
+        long size = to - from;
+        if (size * size <= headToHead.size()) {
+            for (int i = from; i < to; i++) {
+                for (int j = from; j < to; j++) {
+                    keys[ids[i]] += headToHead.pointsAgainst(ids[i], ids[j]);
+                }
+            }
+            return;
+        }
+        // groups being ranked at the same time are disjoint slices of the table, so their starts
+        // tell them apart; marks are cleared afterwards so later (sub)groups can reuse a start
+        int mark = from + 1;
+        for (int i = from; i < to; i++) {
+            marks[ids[i]] = mark;
+        }
+        headToHead.forEach((lowId, highId, lowPoints, highPoints) -> {
+            if (marks[lowId] == mark && marks[highId] == mark) {
+                keys[lowId] += lowPoints;
+                keys[highId] += highPoints;
+            }
+        });
+        for (int i = from; i < to; i++) {
+            marks[ids[i]] = 0;
+        }
+    }
+
+    /**
+     * Merge sorts {@code ids[from, to)}, using the same slice of {@code scratch}.
+     */
+    private void sort(int from, int to, IntBinaryOperator order) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int id = ids[i];
+                int j = i - 1;
+                while (j >= from && order.applyAsInt(ids[j], id) > 0) {
+                    ids[j + 1] = ids[j];
+                    j--;
+                }
+                ids[j + 1] = id;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(from, middle, order);
+        sort(middle, to, order);
+        if (order.applyAsInt(ids[middle - 1], ids[middle]) <= 0) {
+            return; // already in order
+        }
+        System.arraycopy(ids, from, scratch, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle
+                    && order.applyAsInt(scratch[left], scratch[right]) <= 0)) {
+                ids[i] = scratch[left++];
+            } else {
+                ids[i] = scratch[right++];
+            }
+        }
+    }
+
+    /**
+     * The ranked table, as parallel arrays. Names are decoded as rows are read, so (unlike points,
+     * which are copied) reading rows means the tally must still be around.
+     */
+    private static final class Table extends AbstractList<Tuple2<Long, Team>>
+            implements RandomAccess {
+
+        private final GameTally tally;
+        private final int[] ids;
+        private final int[] ranks;
+        private final long[] points;
+
+        Table(GameTally tally, int[] ids, int[] ranks, long[] points) {
+            this.tally = tally;
+            this.ids = ids;
+            this.ranks = ranks;
+            this.points = points;
+        }
+
+        @Override
+        public Tuple2<Long, Team> get(int index) {
+            return Tuple.of((long) ranks[index], new Team(tally.getName(ids[index]), points[index]));
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Publishes how a {@link Standings} table moves as results arrive, as only the teams whose rank or
+ * points changed (with their old and new values) rather than the whole table, so consumers do work
+ * in proportion to what changed. Each {@link #publish()} sends one list of changes: those between
+ * the table as last published and as it stands, in table order.
+ * <br>
+ * Ranks are shared on equal points, as in {@link Standings#rankOf}, so a team's rank only moves
+ * when some team passes it (or drops below it) on points. A team going from {@code p} to
+ * {@code q} points shifts exactly the teams with points in {@code [p, q)} (or {@code [q, p)}), so
+ * those are the only ones looked at, and only those whose rank moved once every team's change is
+ * netted out are sent: a win that takes a team into the middle of a shared-rank block changes no
+ * one else's rank, while one that takes it out of the block moves the rest of the block down one.
+ * <br>
+ * Subscribers get the changes through a {@link SubmissionPublisher}, so each has a bounded buffer:
+ * publishing blocks while a subscriber's is full, holding up ingest rather than queueing without
+ * limit. {@link JsonLinesSubscriber} writes them out as JSON Lines. Not thread-safe (other than
+ * subscribing), like the table itself.
+ */
+final class ChangeFeed implements Flow.Publisher<List<StandingsChange>>, AutoCloseable {
+
+    private static final Comparator<StandingsChange> TABLE_ORDER = Comparator
+            .comparingLong(StandingsChange::getRank).thenComparing(StandingsChange::getName);
+
+    private final Standings standings;
+    private final GameTally tally;
+    private final SubmissionPublisher<List<StandingsChange>> publisher;
+    private long[] publishedPoints; // each team's points as last published
+    private int publishedTeamCount; // ids below this were in the table as last published
+    private boolean[] touched = new boolean[16]; // told of since the last publish
+    private int[] touchedIds = new int[16];
+    private int touchedCount;
+
+    /**
+     * Starts a feed of changes to the table from here on (what's already in it counting as
+     * published), delivered on the common pool with {@link Flow#defaultBufferSize()} changes
+     * buffered per subscriber.
+     *
+     * @throws IllegalArgumentException if the table's ranker has tiebreakers, which this doesn't
+     *                                  rank by.
+     */
+    ChangeFeed(Standings standings) {
+        this(standings, new SubmissionPublisher<>());
+    }
+
+    /**
+     * @param executor          what delivers changes to subscribers.
+     * @param maxBufferCapacity how many lists of changes each subscriber can have waiting.
+     */
+    ChangeFeed(Standings standings, Executor executor, int maxBufferCapacity) {
+        this(standings, new SubmissionPublisher<>(executor, maxBufferCapacity));
+    }
+
+    private ChangeFeed(Standings standings, SubmissionPublisher<List<StandingsChange>> publisher) {
+        if (!standings.getTally().getRanker().getTiebreakers().isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Changes are ranked on points alone, so can't be used with tiebreakers.");
+        }
+        this.standings = standings;
+        this.tally = standings.getTally();
+        this.publisher = publisher;
+        this.publishedTeamCount = standings.size();
+        this.publishedPoints = new long[Math.max(16, publishedTeamCount)];
+        for (int id = 0; id < publishedTeamCount; id++) {
+            publishedPoints[id] = tally.getPoints(id);
+        }
+        standings.setChangeListener(this::onPointsChanged);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<StandingsChange>> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Applies a single game result line, then publishes the changes it made.
+     *
+     * @return the changes published (none if the line was faulty).
+     */
+    List<StandingsChange> accept(String line) {
+        standings.accept(line);
+        return publish();
+    }
+
+    /**
+     * Sends subscribers the changes since the last publish, if there are any, waiting for room
+     * in any subscriber's buffer that's full.
+     *
+     * @return the changes published.
+     */
+    List<StandingsChange> publish() {
+        List<StandingsChange> changes = changes();
+        if (!changes.isEmpty()) {
+            publisher.submit(changes);
+        }
+        return changes;
+    }
+
+    /**
+     * Lets subscribers know there'll be no more changes, once they've had those already published.
+     */
+    @Override
+    public void close() {
+        publisher.close();
+    }
+
+    private void onPointsChanged(int teamId, long oldPoints, long newPoints) {
+        if (teamId >= touched.length) {
+            touched = Arrays.copyOf(touched, Math.max(teamId + 1, touched.length * 2));
+        }
+        if (!touched[teamId]) {
+            touched[teamId] = true;
+            if (touchedCount == touchedIds.length) {
+                touchedIds = Arrays.copyOf(touchedIds, touchedCount * 2);
+            }
+            touchedIds[touchedCount++] = teamId;
+        }
+    }
+
+    /**
+     * Works out the changes since the last publish, and takes the table as it stands as published.
+     */
+    private List<StandingsChange> changes() {
+        // the teams whose points moved (or that are new), with their old and new points
+        int[] moved = new int[touchedCount];
+        int movedCount = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int id = touchedIds[i];
+            touched[id] = false;
+            if (id >= publishedTeamCount || publishedPoints[id] != tally.getPoints(id)) {
+                moved[movedCount++] = id;
+            }
+        }
+        touchedCount = 0;
+        List<StandingsChange> changes = new ArrayList<>();
+        if (movedCount == 0) {
+            return changes;
+        }
+        long[] oldPoints = new long[movedCount]; // of the moved teams that aren't new
+        int oldCount = 0;
+        long[] newPoints = new long[movedCount];
+        long[][] ranges = new long[movedCount][]; // [lo, hi) of points whose ranks may have moved
+        Set<String> movedNames = new HashSet<>();
+        for (int i = 0; i < movedCount; i++) {
+            int id = moved[i];
+            newPoints[i] = tally.getPoints(id);
+            if (id < publishedTeamCount) {
+                oldPoints[oldCount++] = publishedPoints[id];
+                ranges[i] = new long[]{Math.min(publishedPoints[id], newPoints[i]),
+                        Math.max(publishedPoints[id], newPoints[i])};
+            } else { // a new team pushes down everyone it's above
+                ranges[i] = new long[]{Long.MIN_VALUE, newPoints[i]};
+            }
+            movedNames.add(tally.getName(id));
+        }
+        oldPoints = Arrays.copyOf(oldPoints, oldCount);
+        Arrays.sort(oldPoints);
+        Arrays.sort(newPoints);
+
+        // the moved teams themselves
+        for (int i = 0; i < movedCount; i++) {
+            int id = moved[i];
+            long points = tally.getPoints(id);
+            long rank = standings.rankOfPoints(points);
+            if (id < publishedTeamCount) {
+                long old = publishedPoints[id];
+                changes.add(new StandingsChange(tally.getName(id),
+                        standings.rankOfPoints(old) - shift(old, oldPoints, newPoints), old, rank,
+                        points));
+            } else {
+                changes.add(new StandingsChange(tally.getName(id), 0, 0, rank, points));
+            }
+        }
+
+        // everyone else whose points lie in a range that moved, if their rank did after all
+        Arrays.sort(ranges, Comparator.comparingLong(range -> range[0]));
+        long lo = ranges[0][0];
+        long hi = ranges[0][1];
+        for (int i = 1; i <= movedCount; i++) {
+            if (i < movedCount && ranges[i][0] <= hi) {
+                hi = Math.max(hi, ranges[i][1]);
+                continue;
+            }
+            if (lo < hi) {
+                // teams on [lo, hi) points are those after the ones on hi or more, up to the ones
+                // on lo or more
+                long from = standings.rankOfPoints(hi - 1) - 1;
+                long to = lo == Long.MIN_VALUE ? standings.size()
+                        : standings.rankOfPoints(lo - 1) - 1;
+                for (Tuple2<Long, Team> row : standings.page((int) from, (int) (to - from))) {
+                    Team team = row._2();
+                    long shift = shift(team.getPoints(), oldPoints, newPoints);
+                    if (shift != 0 && !movedNames.contains(team.getName())) {
+                        changes.add(new StandingsChange(team.getName(), row._1() - shift,
+                                team.getPoints(), row._1(), team.getPoints()));
+                    }
+                }
+            }
+            if (i < movedCount) {
+                lo = ranges[i][0];
+                hi = ranges[i][1];
+            }
+        }
+        changes.sort(TABLE_ORDER);
+
+        // what's now been published
+        if (tally.getTeamCount() > publishedPoints.length) {
+            publishedPoints = Arrays.copyOf(publishedPoints,
+                    Math.max(tally.getTeamCount(), publishedPoints.length * 2));
+        }
+        for (int i = 0; i < movedCount; i++) {
+            publishedPoints[moved[i]] = tally.getPoints(moved[i]);
+        }
+        publishedTeamCount = standings.size();
+        return changes;
+    }
+
+    /**
+     * @return how many more teams are above a team on the given points than were before: moved
+     * teams now above it less those that were, everyone else staying put.
+     */
+    private static long shift(long points, long[] oldPoints, long[] newPoints) {
+        return countAbove(newPoints, points) - countAbove(oldPoints, points);
+    }
+
+    // how many of the (sorted) values are greater than the given one
+    private static int countAbove(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] > value) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return sorted.length - low;
+    }
+
+    /**
+     * Writes each list of changes it's sent as JSON Lines (as per
+     * {@link RankingWriter#createForChanges}), flushing after each, and only asks for the next once
+     * it's written, so a slow output holds up publishing rather than piling up changes.
+     */
+    static final class JsonLinesSubscriber implements Flow.Subscriber<List<StandingsChange>> {
+
+        private final OutputStream out;
+        private final RankingWriter.JsonLines writer;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+        private volatile Throwable error;
+
+        JsonLinesSubscriber(OutputStream out) {
+            this.out = out;
+            this.writer = RankingWriter.createForChanges(Channels.newChannel(out));
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<StandingsChange> changes) {
+            try {
+                for (StandingsChange change : changes) {
+                    writer.write(change);
+                }
+                writer.flush();
+                out.flush();
+                subscription.request(1);
+            } catch (IOException e) {
+                subscription.cancel();
+                onError(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        /**
+         * Waits until the feed's closed and every change published has been written.
+         *
+         * @throws IOException if the changes couldn't all be written.
+         */
+        void await() throws IOException, InterruptedException {
+            done.await();
+            if (error != null) {
+                throw error instanceof IOException ? (IOException) error : new IOException(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.spandigital.matt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Lets repeated runs over a growing (append-only) results file pick up where the last run left
+ * off. The checkpoint file holds the tally as of the last complete line read, the offset just past
+ * that line, and a fingerprint (CRC-32C) of every byte before it.
+ * <br>
+ * If the input still starts with exactly those bytes, the tally is restored and only what follows
+ * gets parsed. Otherwise (or if there's no usable checkpoint) the whole input is read, just as
+ * without a checkpoint. Either way the checkpoint is then updated, and the tally is the same as
+ * reading the whole input in one go would give.
+ * <br>
+ * Checking the fingerprint still means reading the old bytes, but checksumming is cheap next to
+ * parsing (CRC-32C being done in hardware on most CPUs).
+ */
+final class Checkpoint {
+
+    private static final int MAGIC = 0x434B5033; // "CKP3" (older ones always or never hold goals)
+    private static final int FINGERPRINT_BUFFER_SIZE = 1024 * 1024;
+
+    private Checkpoint() {
+    }
+
+    /**
+     * Tallies the input, resuming from (and then updating) the checkpoint where possible.
+     *
+     * @param input      a (text) results file
+     * @param checkpoint where the checkpoint is kept; needn't exist yet
+     * @throws IOException if reading the input, or writing the checkpoint, fails.
+     */
+    static GameTally tally(Path input, Path checkpoint, TeamRanker ranker) throws IOException {
+        if (ResultsFile.isResultsFile(input)) { // which are quick enough to read anyway
+            throw new IllegalArgumentException("Checkpoints are only for text results files.");
+        }
+        CRC32C fingerprint = new CRC32C();
+        FileFollower follower = resume(input, checkpoint, ranker, fingerprint);
+        GameTally tally;
+        if (follower != null) {
+            tally = follower.getTally();
+        } else {
+            fingerprint.reset();
+            tally = new GameTally(ranker);
+            follower = new FileFollower(input, tally, 0, fingerprint);
+        }
+        if (follower.poll() < 0) {
+            throw new IOException("Input shrank while being read: " + input);
+        }
+        // bad lines that went to a listener rather than being kept can't be saved, so a later run
+        // couldn't report them; best not to save a checkpoint at all then
+        if (tally.getBadLineCount() == tally.getBadLines().size()) {
+            save(checkpoint, tally, ranker, follower.getOffset(), fingerprint.getValue());
+        }
+        follower.acceptRemainder(); // after saving, as an unterminated last line may yet grow
+        return tally;
+    }
+
+    /**
+     * @return a follower positioned after the checkpointed prefix, with the checkpointed tally,
+     * having fed the prefix through the fingerprint, or null if the checkpoint isn't usable.
+     */
+    private static FileFollower resume(Path input, Path checkpoint, TeamRanker ranker,
+            CRC32C fingerprint) throws IOException {
+        if (!Files.isRegularFile(checkpoint)) {
+            return null;
+        }
+        long offset;
+        long savedFingerprint;
+        GameTally tally;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+            if (in.readInt() != MAGIC || in.readLong() != ranker.pointsFor(1, 0)
+                    || in.readLong() != ranker.pointsFor(0, 0)
+                    || in.readLong() != ranker.pointsFor(0, 1)) {
+                return null; // not a checkpoint, or one for a different scoring scheme
+            }
+            offset = in.readLong();
+            savedFingerprint = in.readLong();
+            tally = GameTally.readFrom(in, ranker, null);
+        } catch (IOException e) { // e.g. truncated; just start over
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            if (channel.size() < offset) {
+                return null;
+            }
+            ByteBuffer buf = ByteBuffer.allocateDirect(FINGERPRINT_BUFFER_SIZE);
+            for (long position = 0; position < offset; ) {
+                buf.clear().limit((int) Math.min(buf.capacity(), offset - position));
+                int read = channel.read(buf, position);
+                if (read < 0) {
+                    return null;
+                }
+                position += read;
+                fingerprint.update(buf.flip());
+            }
+        }
+        if (fingerprint.getValue() != savedFingerprint) {
+            return null;
+        }
+        return new FileFollower(input, tally, offset, fingerprint);
+    }
+
+    private static void save(Path checkpoint, GameTally tally, TeamRanker ranker, long offset,
+            long fingerprint) throws IOException {
+        // write alongside then swap in, so a crash mid-write can't leave a corrupt checkpoint
+        Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(ranker.pointsFor(1, 0));
+            out.writeLong(ranker.pointsFor(0, 0));
+            out.writeLong(ranker.pointsFor(0, 1));
+            out.writeLong(offset);
+            out.writeLong(fingerprint);
+            tally.writeTo(out);
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
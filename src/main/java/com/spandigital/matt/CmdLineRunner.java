@@ -5,9 +5,22 @@ import io.vavr.control.Either;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class CmdLineRunner {
@@ -18,29 +31,145 @@ public class CmdLineRunner {
     public static void main(String[] args) {
         try {
             CmdLineRunner runner = new CmdLineRunner();
-            Path inputPath = runner.resolveInputFile(args);
-            TeamRanker ranker = TeamRanker.createDefault();
-            runner.printRankings(inputPath, ranker);
+            RunOptions options = RunOptions.parse(args);
+            RunMetrics.register();
+            // a server can start out empty, all its results being submitted later, and a batch
+            // lists its own inputs
+            List<InputSource> inputs = (options.getServePort() >= 0
+                    || options.getBatchManifest() != null) && options.getInputs().length == 0
+                    ? List.of() : runner.resolveInputs(options.getInputs());
+            TeamRanker defaultRanker = TeamRanker.createDefault().withMetrics(RunMetrics.GLOBAL);
+            ErrorPolicy errorPolicy = options.getErrorPolicy();
+            if (options.isStreamErrors()) {
+                errorPolicy = errorPolicy.withReporter(badLine -> System.err.println(
+                        "Problem line " + defaultRanker.formatBadLineWithReason(badLine)));
+            }
+            TeamRanker ranker = defaultRanker.withErrorPolicy(errorPolicy)
+                    .withTiebreakers(options.getTiebreakers());
+            if (options.isDedup() && (options.getBatchManifest() != null
+                    || options.getConvertTo() != null || options.isFollow()
+                    || options.getServePort() >= 0 || options.isLeagues()
+                    || options.getCheckpoint() != null || options.isAsOf())) {
+                throw new IllegalArgumentException("Duplicates can only be checked when ranking "
+                        + "inputs once, without batches, conversion, following, serving, leagues, "
+                        + "checkpoints or earlier tables.");
+            }
+            if (options.isParallel() && (options.getCheckpoint() != null || options.isAsOf()
+                    || options.getMemoryBudget() > 0)) {
+                throw new IllegalArgumentException("Inputs can only be read in parallel when "
+                        + "ranking them once, without checkpoints, earlier tables or a memory "
+                        + "budget.");
+            }
+            if (options.getMemoryBudget() > 0 && (options.getBatchManifest() != null
+                    || options.getConvertTo() != null || options.isFollow()
+                    || options.getServePort() >= 0 || options.isLeagues()
+                    || options.getCheckpoint() != null || options.isAsOf() || options.isDedup())) {
+                throw new IllegalArgumentException("A memory budget can only be used when ranking "
+                        + "inputs once, without batches, conversion, following, serving, leagues, "
+                        + "checkpoints, earlier tables or duplicate checks.");
+            }
+            if (options.isChanges() && !options.isFollow()) {
+                throw new IllegalArgumentException("Changes can only be written in follow mode.");
+            }
+            if (options.getBatchManifest() != null) {
+                runner.runBatch(options.getBatchManifest(), ranker, options);
+            } else if (options.getConvertTo() != null) {
+                runner.convertResults(inputs, ranker, options.getConvertTo());
+            } else if (options.isFollow()) {
+                if (inputs.size() != 1 || inputs.get(0).isStdin()) {
+                    throw new IllegalArgumentException("Follow mode needs exactly one input file.");
+                }
+                if (inputs.get(0).isCompressed()) {
+                    throw new IllegalArgumentException(
+                            "Follow mode can't follow a compressed file.");
+                }
+                runner.followRankings(inputs.get(0).getPath(), ranker, options);
+            } else if (options.getServePort() >= 0) {
+                runner.serveRankings(inputs, ranker, options.getServePort());
+            } else if (options.isLeagues()) {
+                runner.printLeagueRankings(inputs, ranker, options);
+            } else if (options.getMemoryBudget() > 0) {
+                runner.printSpilledRankings(inputs, ranker, options);
+            } else {
+                runner.printRankings(inputs, ranker, options);
+            }
+            if (options.isStats()) {
+                System.err.println(RunMetrics.GLOBAL.summary());
+            }
         } catch (Throwable t) { // Not my favourite way of doing things, but probably appropriate
             // for the task at hand.
             System.err.println(t.getMessage());
         }
     }
 
-    void printRankings(Path inputPath, TeamRanker ranker) {
-        try (Stream<String> lines = Files.lines(inputPath)) {
-            Either<List<String>, List<Tuple2<Long, Team>>> rankings =
-                    ranker.calculateRankings(lines);
+    void printRankings(List<InputSource> inputs, TeamRanker ranker, RunOptions options) {
+        try {
+            GameTally tally;
+            StandingsHistory history = null;
+            if (options.isAsOf()) {
+                if (options.getCheckpoint() != null) {
+                    throw new IllegalArgumentException(
+                            "Checkpoints can't be used for an earlier table.");
+                }
+                history = readHistory(inputs, ranker);
+                tally = history.getTally();
+            } else if (options.getCheckpoint() != null) {
+                if (inputs.size() != 1 || inputs.get(0).isStdin()) {
+                    throw new IllegalArgumentException("Checkpoints need exactly one input file.");
+                }
+                if (inputs.get(0).isCompressed()) {
+                    throw new IllegalArgumentException(
+                            "Checkpoints can't be used with a compressed input file.");
+                }
+                tally = Checkpoint.tally(inputs.get(0).getPath(), options.getCheckpoint(), ranker);
+            } else if (options.isDedup()) {
+                DuplicateFilter duplicateFilter;
+                if (options.isDedupPrefilter()) {
+                    duplicateFilter = DuplicateFilter.prefiltered(options.isMatchIds(), inputs,
+                            options.isParallel());
+                } else if (options.isParallel()) {
+                    duplicateFilter = DuplicateFilter.concurrent(options.isMatchIds(),
+                            DuplicateFilter.estimateGames(inputs));
+                } else {
+                    duplicateFilter = DuplicateFilter.exact(options.isMatchIds(),
+                            DuplicateFilter.estimateGames(inputs));
+                }
+                duplicateFilter.setReporter(duplicate -> System.err.println(
+                        "Ignoring duplicate line " + ranker.formatBadLine(duplicate)));
+                tally = SourceIngest.ingestAll(inputs, ranker, duplicateFilter);
+            } else {
+                tally = SourceIngest.ingestAll(inputs, ranker, options.isParallel());
+            }
+            tally.checkBadLines(true);
+            Either<List<String>, List<Tuple2<Long, Team>>> rankings;
+            if (history != null) {
+                long limit = options.getLimit() < 0 ? Integer.MAX_VALUE : options.getLimit();
+                StandingsHistory.Snapshot snapshot = options.getAsOfLine() >= 0
+                        ? history.atLine(options.getAsOfLine())
+                        : history.afterMatchday(options.getAsOfMatchday());
+                rankings = ranker.rankPage(history, snapshot, (int) Math.min(options.getOffset(),
+                        Integer.MAX_VALUE), (int) Math.min(limit, Integer.MAX_VALUE));
+            } else if (options.isPaged()) {
+                long limit = options.getLimit() < 0 ? Integer.MAX_VALUE : options.getLimit();
+                rankings = ranker.rankPage(tally, (int) Math.min(options.getOffset(),
+                        Integer.MAX_VALUE), (int) Math.min(limit, Integer.MAX_VALUE));
+            } else {
+                rankings = ranker.rank(tally);
+            }
             if (rankings.isLeft()) {
-                System.err.println(
-                        "Failed to determine rankings; there were problems with the following lines:");
-                rankings.getLeft().forEach(System.err::println);
+                reportBadLines(rankings.getLeft(), tally.getBadLineCount());
             } else {
-                rankings.get().forEach(ranking -> System.out.println(
-                        ranking._1() + ". " + ranking._2().getName() + ", " + ranking._2()
-                                .getPoints() + " " + (ranking._2().getPoints() == 1 ? "pt"
-                                                                                    : "pts")));
+                for (BadLine badLine : tally.getBadLines()) { // within the error policy's limits
+                    System.err.println("Ignoring problem line "
+                            + ranker.formatBadLineWithReason(badLine));
+                }
+                printTable(rankings.get(), options.getFormat());
             }
+        } catch (TooManyBadLinesException e) {
+            List<BadLine> badLines = e.getBadLines();
+            System.err.println("Failed to determine rankings. " + e.getMessage()
+                    + (badLines.isEmpty() ? "." : "; the problems found were:"));
+            badLines.forEach(badLine -> System.err.println(ranker.formatBadLine(badLine)));
         } catch (
                 IOException e) { // There was a problem while reading the file. Not much to do...
             throw new RuntimeException(e);
@@ -48,37 +177,432 @@ public class CmdLineRunner {
     }
 
     /**
-     * Parses the cmdLine argument supplied to the program to obtain the input file.
+     * Reads the (text) inputs in order into a {@link StandingsHistory}, numbering their lines on
+     * from one input to the next.
+     */
+    private static StandingsHistory readHistory(List<InputSource> inputs, TeamRanker ranker)
+            throws IOException {
+        StandingsHistory history = new StandingsHistory(ranker);
+        for (InputSource input : inputs) {
+            if (!input.isStdin() && ResultsFile.isResultsFile(input.getPath())) {
+                throw new IllegalArgumentException(
+                        "Earlier tables can only be had from text inputs: " + input.getName());
+            }
+            try (ReadableByteChannel channel = input.open()) {
+                history.accept(channel);
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Prints a table per league (in league name order), from inputs whose lines each start with
+     * the league's name, as per {@link LeagueTally}. Bad lines are dealt with as for a single
+     * table, counting the lines of all leagues together.
+     */
+    void printLeagueRankings(List<InputSource> inputs, TeamRanker ranker, RunOptions options) {
+        LeagueTally leagues = new LeagueTally(ranker);
+        try {
+            if (options.getCheckpoint() != null) {
+                throw new IllegalArgumentException("Checkpoints can't be used with leagues.");
+            }
+            for (InputSource input : inputs) {
+                try (ReadableByteChannel channel = input.open()) {
+                    leagues.accept(channel, inputs.size() == 1 ? null : input.getName());
+                }
+            }
+            leagues.checkBadLines(true);
+            long limit = options.getLimit() < 0 ? Integer.MAX_VALUE : options.getLimit();
+            Either<List<String>, List<Tuple2<String, List<Tuple2<Long, Team>>>>> rankings =
+                    ranker.rankLeagues(leagues, (int) Math.min(options.getOffset(),
+                            Integer.MAX_VALUE), (int) Math.min(limit, Integer.MAX_VALUE));
+            if (rankings.isLeft()) {
+                reportBadLines(rankings.getLeft(), leagues.getBadLineCount());
+            } else {
+                for (BadLine badLine : leagues.getBadLines()) { // within the error policy's limits
+                    System.err.println("Ignoring problem line "
+                            + ranker.formatBadLineWithReason(badLine));
+                }
+                PhaseEvent event = new PhaseEvent(PhaseEvent.WRITE);
+                event.begin();
+                long started = System.nanoTime();
+                RankingWriter writer = RankingWriter.createForLeagues(options.getFormat(),
+                        Channels.newChannel(System.out));
+                long rows = 0;
+                for (Tuple2<String, List<Tuple2<Long, Team>>> league : rankings.get()) {
+                    writer.startLeague(league._1());
+                    writer.write(league._2());
+                    rows += league._2().size();
+                }
+                writer.flush();
+                System.out.flush();
+                recordWrite(started, event, rows);
+            }
+        } catch (TooManyBadLinesException e) {
+            List<BadLine> badLines = e.getBadLines();
+            System.err.println("Failed to determine rankings. " + e.getMessage()
+                    + (badLines.isEmpty() ? "." : "; the problems found were:"));
+            badLines.forEach(badLine -> System.err.println(ranker.formatBadLine(badLine)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Prints the table as per {@link #printRankings}, but tallied within a memory budget, spilling
+     * to disk as need be, as per {@link SpillingAggregation}. Rows are written as they come out of
+     * the final merge, rather than the whole table being held first.
+     */
+    void printSpilledRankings(List<InputSource> inputs, TeamRanker ranker, RunOptions options) {
+        try (SpillingAggregation aggregation = new SpillingAggregation(ranker,
+                options.getMemoryBudget(), options.getSpillDirectory())) {
+            for (InputSource input : inputs) {
+                if (!input.isStdin() && ResultsFile.isResultsFile(input.getPath())) {
+                    throw new IllegalArgumentException("A memory budget can only be used with "
+                            + "text inputs: " + input.getName());
+                }
+                try (ReadableByteChannel channel = input.open()) {
+                    aggregation.accept(channel, inputs.size() == 1 ? null : input.getName());
+                }
+            }
+            aggregation.checkBadLines(true);
+            if (aggregation.getBadLineCount() > 0 && !ranker.getErrorPolicy().isTolerant()) {
+                reportBadLines(ranker.formatBadLines(aggregation.getBadLines()),
+                        aggregation.getBadLineCount());
+                return;
+            }
+            for (BadLine badLine : aggregation.getBadLines()) { // within the error policy's limits
+                System.err.println("Ignoring problem line "
+                        + ranker.formatBadLineWithReason(badLine));
+            }
+            PhaseEvent event = new PhaseEvent(PhaseEvent.WRITE);
+            event.begin();
+            long started = System.nanoTime();
+            RankingWriter writer = RankingWriter.create(options.getFormat(),
+                    Channels.newChannel(System.out));
+            long limit = options.getLimit() < 0 ? Long.MAX_VALUE : options.getLimit();
+            long rows = aggregation.rank(options.getOffset(), limit, writer::write);
+            writer.flush();
+            System.out.flush();
+            recordWrite(started, event, rows); // includes merging, which is interleaved
+        } catch (TooManyBadLinesException e) {
+            List<BadLine> badLines = e.getBadLines();
+            System.err.println("Failed to determine rankings. " + e.getMessage()
+                    + (badLines.isEmpty() ? "." : "; the problems found were:"));
+            badLines.forEach(badLine -> System.err.println(ranker.formatBadLine(badLine)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Tallies the inputs (if any), then serves the table over HTTP on localhost, taking further
+     * results as they're submitted, as per {@link StandingsServer}. Returns once the server's
+     * started, leaving it running until the program is stopped.
+     * <br>
+     * As in follow mode, faulty lines in the inputs are reported on stderr and otherwise ignored.
+     */
+    void serveRankings(List<InputSource> inputs, TeamRanker ranker, int port) {
+        try {
+            GameTally tally = inputs.isEmpty() ? new GameTally(ranker)
+                    : SourceIngest.ingestAll(inputs, ranker, false);
+            for (BadLine badLine : tally.getBadLines()) {
+                System.err.println(
+                        "Ignoring problem line " + ranker.formatBadLineWithReason(badLine));
+            }
+            StandingsServer server = new StandingsServer(new ConcurrentTally(tally), port,
+                    Runtime.getRuntime().availableProcessors());
+            server.start();
+            System.err.println("Serving standings on http://localhost:" + server.getPort() + "/");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs every job in the manifest, as per {@link BatchRunner}, then reports any that failed
+     * (and why) on stderr, followed by a count of how many succeeded.
+     */
+    void runBatch(Path manifest, TeamRanker ranker, RunOptions options) {
+        try {
+            List<BatchRunner.JobResult> results = BatchRunner.run(
+                    BatchRunner.readManifest(manifest), ranker, options.getFormat(),
+                    options.getJobs());
+            long failed = 0;
+            for (BatchRunner.JobResult result : results) {
+                if (!result.isSuccess()) {
+                    failed++;
+                    System.err.println("Failed to rank " + result.getJob() + ":");
+                    result.getProblems().forEach(problem -> System.err.println("  " + problem));
+                }
+            }
+            System.err.println("Ranked " + (results.size() - failed) + " of " + results.size()
+                    + " inputs" + (failed == 0 ? "." : "; " + failed + " failed."));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Explains that there's no table because of bad lines: lists them, or if there are none to
+     * list, as they were streamed as they were found, says how many there were.
      *
-     * @param runtimeArgs arguments passed to the program
-     * @return Path to the input file (if it exists, is a file, and is readable)
+     * @param badLines the bad lines, formatted, as per {@link TeamRanker#formatBadLine}
+     */
+    private static void reportBadLines(List<String> badLines, long badLineCount) {
+        if (badLines.isEmpty()) {
+            System.err.println("Failed to determine rankings; there "
+                    + (badLineCount == 1 ? "was a problem with 1 line"
+                            : "were problems with " + badLineCount + " lines")
+                    + " (see above).");
+        } else {
+            System.err.println(
+                    "Failed to determine rankings; there were problems with the following lines:");
+            badLines.forEach(System.err::println);
+        }
+    }
+
+    /**
+     * Writes the (text) inputs out as a single binary {@link ResultsFile}, which later runs can
+     * then be given instead, to skip parsing.
+     */
+    void convertResults(List<InputSource> inputs, TeamRanker ranker, Path output) {
+        try {
+            Either<List<String>, Long> converted = ResultsFile.convert(inputs, ranker, output);
+            if (converted.isLeft()) {
+                System.err.println(
+                        "Failed to convert results; there were problems with the following lines:");
+                converted.getLeft().forEach(System.err::println);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Prints the table for the file as it stands, then keeps watching it for appended results and
+     * reprints the table (after a blank line) whenever complete new lines arrive. Only the newly
+     * appended bytes are read each time. Runs until the program is interrupted.
+     * <br>
+     * With {@link RunOptions#isChanges()}, only the teams whose rank or points changed are written
+     * each time (as JSON Lines, as per {@link ChangeFeed}), the first time being every team.
+     * <br>
+     * Unlike a one-off run, faulty lines don't stop the table being printed (there'd be no way to
+     * ever get one otherwise, the file being append-only); they're reported on stderr as they're
+     * found, and otherwise ignored.
+     */
+    void followRankings(Path inputPath, TeamRanker ranker, RunOptions options) {
+        Path directory = inputPath.toAbsolutePath().getParent();
+        ChangeFeed changeFeed = null;
+        ChangeFeed.JsonLinesSubscriber subscriber = null;
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_CREATE);
+            Standings standings = new Standings(ranker);
+            if (options.isChanges()) {
+                subscriber = new ChangeFeed.JsonLinesSubscriber(System.out);
+                changeFeed = startChangeFeed(standings, subscriber);
+            }
+            FileFollower follower = new FileFollower(inputPath, followed(standings, ranker));
+            boolean printedAny = false;
+            while (true) {
+                long consumed = follower.poll();
+                if (consumed < 0) {
+                    System.err.println(
+                            "Input file shrank; assuming it was replaced and starting over.");
+                    standings = new Standings(ranker);
+                    if (changeFeed != null) { // the new table's changes start from nothing
+                        finishChangeFeed(changeFeed, subscriber);
+                        subscriber = new ChangeFeed.JsonLinesSubscriber(System.out);
+                        changeFeed = startChangeFeed(standings, subscriber);
+                    }
+                    follower = new FileFollower(inputPath, followed(standings, ranker));
+                    continue;
+                }
+                if (changeFeed != null) {
+                    changeFeed.publish();
+                } else if (consumed > 0 || !printedAny) {
+                    if (printedAny) {
+                        System.out.println();
+                    }
+                    printTable(standings.table(), options.getFormat());
+                    printedAny = true;
+                }
+                // wake up early on a change notification, but don't rely on getting one
+                WatchKey key = watcher.poll(options.getPollIntervalMillis(), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            try {
+                if (changeFeed != null) { // don't lose changes already published
+                    finishChangeFeed(changeFeed, subscriber);
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            } catch (InterruptedException ex) { // interrupted again, so give up on them
+            } finally {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return the standings' tally, reporting bad lines on stderr as they're found rather than
+     * keeping them, since a followed file can grow without end.
+     */
+    private static GameTally followed(Standings standings, TeamRanker ranker) {
+        GameTally tally = standings.getTally();
+        tally.setBadLineListener(badLine -> System.err.println(
+                "Ignoring problem line " + ranker.formatBadLineWithReason(badLine)));
+        return tally;
+    }
+
+    private static ChangeFeed startChangeFeed(Standings standings,
+            ChangeFeed.JsonLinesSubscriber subscriber) {
+        ChangeFeed changeFeed = new ChangeFeed(standings);
+        changeFeed.subscribe(subscriber);
+        return changeFeed;
+    }
+
+    /**
+     * Closes the feed and waits for its subscriber to write out every change already published,
+     * so nothing written to stdout after this is mixed up with them.
+     */
+    private static void finishChangeFeed(ChangeFeed changeFeed,
+            ChangeFeed.JsonLinesSubscriber subscriber) throws IOException, InterruptedException {
+        changeFeed.close();
+        subscriber.await();
+    }
+
+    private void printTable(List<Tuple2<Long, Team>> rankings, OutputFormat format)
+            throws IOException {
+        // one channel over stdout for the whole table, so it's written a buffer-full at a time
+        PhaseEvent event = new PhaseEvent(PhaseEvent.WRITE);
+        event.begin();
+        long started = System.nanoTime();
+        RankingWriter writer = RankingWriter.create(format, Channels.newChannel(System.out));
+        writer.write(rankings);
+        writer.flush();
+        System.out.flush();
+        recordWrite(started, event, rankings.size());
+    }
+
+    private static void recordWrite(long started, PhaseEvent event, long rows) {
+        RunMetrics.GLOBAL.addWrite(System.nanoTime() - started);
+        event.end();
+        if (event.shouldCommit()) {
+            event.teams = rows;
+            event.commit();
+        }
+    }
+
+    /**
+     * Parses the cmdLine arguments supplied to the program to obtain the input files. Each argument
+     * may be:<br>
+     * 1. A file.<br>
+     * 2. A directory, standing for every file directly within it (in name order).<br>
+     * 3. A glob pattern such as {@code results/week*.txt} or {@code results/**.txt}, standing for
+     * every matching file (in path order). Quote it, so that it reaches us rather than the shell
+     * expanding it.<br>
+     * 4. {@code -}, standing for stdin.<br>
+     * Files turning up more than once (e.g. via a directory and a glob) are only read once.
+     *
+     * @param runtimeArgs (non-flag) arguments passed to the program
+     * @return the inputs, in the order given
      * @throws IllegalArgumentException When any of the following are true:<br>
      *                                  1. No arguments were supplied.<br>
-     *                                  2. More than one argument was supplied.<br>
-     *                                  3. No file exists at specified path.<br>
-     *                                  4. The specified 'file' is a directory.<br>
-     *                                  5. The specified file is not readable.<br>
+     *                                  2. No file exists at a specified path (that isn't a glob).<br>
+     *                                  3. A directory or glob doesn't contain/match any files.<br>
+     *                                  4. A file is not readable.<br>
+     *                                  5. Stdin was given more than once.<br>
      */
-    Path resolveInputFile(String[] runtimeArgs) {
+    List<InputSource> resolveInputs(String[] runtimeArgs) {
         if (runtimeArgs.length == 0) {
             throw new IllegalArgumentException("Please supply the path to the input file.");
-        } else if (runtimeArgs.length > 1) {
-            throw new IllegalArgumentException("Please supply ONLY the path to the input file.");
         }
-        Path path = Path.of(runtimeArgs[0]);
+        Set<InputSource> inputs = new LinkedHashSet<>();
+        for (String arg : runtimeArgs) {
+            if (arg.equals(InputSource.STDIN_ARGUMENT)) {
+                if (!inputs.add(InputSource.stdin())) {
+                    throw new IllegalArgumentException("Stdin ('-') can only be read once.");
+                }
+                continue;
+            }
+            File file = new File(arg); // not Path.of, which can reject wildcards on some platforms
+            List<Path> files;
+            if (file.isDirectory()) {
+                files = listFiles(file.toPath());
+            } else if (!file.exists() && isGlob(arg)) {
+                files = expandGlob(arg);
+            } else {
+                files = List.of(file.toPath());
+            }
+            if (files.isEmpty()) {
+                throw new IllegalArgumentException("No files found for: " + arg);
+            }
+            files.forEach(f -> inputs.add(InputSource.of(checkReadable(f).normalize())));
+        }
+        return new ArrayList<>(inputs);
+    }
+
+    private Path checkReadable(Path path) {
         File file = path.toFile();
         if (!file.exists()) {
             throw new IllegalArgumentException(
                     "No file exists at given path: " + path.toAbsolutePath());
         }
-        if (!file.isFile()) {
-            throw new IllegalArgumentException(
-                    "Given path does not resolve to a file: " + path.toAbsolutePath() + "\nPossibly a directory?");
-        }
         if (!file.canRead()) {
             throw new IllegalArgumentException(
                     "We cannot read the file supplied: " + path.toAbsolutePath() + "\nPlease check file permissions and/or application privileges.");
         }
         return path;
     }
-}
\ No newline at end of file
+
+    private List<Path> listFiles(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isGlob(String arg) {
+        return arg.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+    }
+
+    /**
+     * Walks from the deepest directory named before any wildcards, matching the remainder of the
+     * pattern against paths relative to it.
+     */
+    private List<Path> expandGlob(String pattern) {
+        String normalised = pattern.replace(File.separatorChar, '/');
+        String[] parts = normalised.split("/", -1);
+        int firstWild = 0;
+        while (firstWild < parts.length - 1 && !isGlob(parts[firstWild])) {
+            firstWild++;
+        }
+        String base = String.join("/", Arrays.copyOfRange(parts, 0, firstWild));
+        Path baseDir = firstWild == 0 ? Path.of("") : Path.of(base.isEmpty() ? "/" : base);
+        String remainder = String.join("/", Arrays.copyOfRange(parts, firstWild, parts.length));
+        PathMatcher matcher = baseDir.getFileSystem().getPathMatcher("glob:" + remainder);
+        int depth = remainder.contains("**") ? Integer.MAX_VALUE : parts.length - firstWild;
+        if (!Files.isDirectory(baseDir.toAbsolutePath())) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.walk(baseDir.toAbsolutePath(), depth)) {
+            Path absoluteBase = baseDir.toAbsolutePath();
+            return files.filter(Files::isRegularFile)
+                    .filter(f -> matcher.matches(absoluteBase.relativize(f)))
+                    .map(f -> baseDir.resolve(absoluteBase.relativize(f)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
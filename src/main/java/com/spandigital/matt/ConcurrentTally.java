@@ -0,0 +1,259 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tallies results arriving from any number of threads at once, e.g. an ingest service's request
+ * handlers, without serialising them behind one lock. Teams live in a {@link ConcurrentHashMap},
+ * each with {@link LongAdder}s for its points and goals, so threads updating different teams don't
+ * touch the same memory, and threads updating the same team spread over the adder's cells.
+ * <br>
+ * A game updates two teams, so for {@link #snapshot()} to never see half a game, each update holds
+ * a lock: one of several stripes, picked by thread, so producers rarely share one. A snapshot
+ * takes every stripe, which pauses producers for as long as it takes to copy the totals (O(teams)),
+ * and hands back an ordinary {@link GameTally} to rank.
+ * <br>
+ * Lines from concurrent producers have no one numbering, so bad lines aren't kept (or checked
+ * against the ranker's {@link ErrorPolicy}), only counted: the producer hears of each as it's
+ * accepted.
+ */
+final class ConcurrentTally {
+
+    private static final int STRIPES = Integer.highestOneBit(
+            Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)) * 2;
+
+    private final TeamRanker ranker;
+    private final ConcurrentHashMap<String, Counters> teams = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Pair, PairCounters> headToHead; // null unless needed
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final LongAdder lineCount = new LongAdder();
+    private final LongAdder badLineCount = new LongAdder();
+
+    ConcurrentTally(TeamRanker ranker) {
+        this.ranker = ranker;
+        this.headToHead = ranker.needsHeadToHead() ? new ConcurrentHashMap<>() : null;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Starts from the tally's results so far (but not its bad lines).
+     */
+    ConcurrentTally(GameTally tally) {
+        this(tally.getRanker());
+        for (int id = 0; id < tally.getTeamCount(); id++) {
+            Counters counters = counters(tally.getName(id));
+            counters.points.add(tally.getPoints(id));
+            counters.goalsFor.add(tally.getGoalsFor(id));
+            counters.goalsAgainst.add(tally.getGoalsAgainst(id));
+        }
+        if (headToHead != null && tally.getHeadToHead() != null) {
+            tally.getHeadToHead().forEach((lowId, highId, lowPoints, highPoints) ->
+                    addHeadToHead(tally.getName(lowId), tally.getName(highId), lowPoints,
+                            highPoints));
+        }
+        lineCount.add(tally.getLineCount());
+        badLineCount.add(tally.getBadLineCount());
+    }
+
+    TeamRanker getRanker() {
+        return ranker;
+    }
+
+    /**
+     * Applies a single game result line. Safe to call from any thread.
+     *
+     * @return false if the line was faulty (in which case it's counted, but changes nothing).
+     */
+    boolean accept(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return acceptAll(ByteBuffer.wrap(bytes), 0, bytes.length) == 0;
+    }
+
+    /**
+     * Applies every line in {@code [start, end)} of the buffer as one update, so a snapshot sees
+     * either all of them or none. Safe to call from any thread.
+     *
+     * @return the number of faulty lines (which are counted, but change nothing).
+     */
+    long acceptAll(ByteBuffer buf, int start, int end) {
+        GameLineParser parser = new GameLineParser(); // parsers aren't thread-safe
+        long[] badLines = {0};
+        ReentrantLock stripe = stripe();
+        stripe.lock();
+        try {
+            LineScanner.scan(buf, start, end, true, (b, lineStart, lineEnd) -> {
+                if (!apply(parser, b, lineStart, lineEnd)) {
+                    badLines[0]++;
+                }
+            }, ranker.getMetrics());
+        } finally {
+            stripe.unlock();
+        }
+        return badLines[0];
+    }
+
+    private boolean apply(GameLineParser parser, ByteBuffer buf, int start, int end) {
+        lineCount.increment();
+        if (!parser.parse(buf, start, end)) {
+            ranker.getMetrics().addBadLine();
+            badLineCount.increment();
+            return false;
+        }
+        String name1 = GameLineParser.decode(buf, parser.team1Start(), parser.team1End());
+        String name2 = GameLineParser.decode(buf, parser.team2Start(), parser.team2End());
+        int score1 = parser.team1Score();
+        int score2 = parser.team2Score();
+        long points1 = ranker.pointsFor(score1, score2);
+        long points2 = ranker.pointsFor(score2, score1);
+        Counters team1 = counters(name1);
+        team1.points.add(points1);
+        team1.goalsFor.add(score1);
+        team1.goalsAgainst.add(score2);
+        Counters team2 = counters(name2);
+        team2.points.add(points2);
+        team2.goalsFor.add(score2);
+        team2.goalsAgainst.add(score1);
+        if (headToHead != null) {
+            addHeadToHead(name1, name2, points1, points2);
+        }
+        return true;
+    }
+
+    private Counters counters(String name) {
+        Counters counters = teams.get(name); // usually there, and get doesn't lock
+        return counters != null ? counters : teams.computeIfAbsent(name, n -> new Counters());
+    }
+
+    private void addHeadToHead(String name1, String name2, long points1, long points2) {
+        boolean name1Low = name1.compareTo(name2) < 0;
+        PairCounters pair = headToHead.computeIfAbsent(
+                new Pair(name1Low ? name1 : name2, name1Low ? name2 : name1),
+                p -> new PairCounters());
+        pair.lowPoints.add(name1Low ? points1 : points2);
+        pair.highPoints.add(name1Low ? points2 : points1);
+    }
+
+    /**
+     * @return the calling thread's stripe.
+     */
+    private ReentrantLock stripe() {
+        long id = Thread.currentThread().getId(); // pool threads' ids are usually consecutive
+        return stripes[(int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (STRIPES - 1)];
+    }
+
+    /**
+     * @return a tally of every game applied so far, as of a single moment: no game is ever half
+     * in it, nor any batch from {@link #acceptAll} partly. It's the caller's own, so can be ranked
+     * (or kept) at leisure. It doesn't count lines, and has no bad lines.
+     */
+    GameTally snapshot() {
+        List<Map.Entry<String, long[]>> teamTotals = new ArrayList<>(teams.size());
+        List<Map.Entry<Pair, long[]>> pairTotals = new ArrayList<>();
+        for (ReentrantLock stripe : stripes) { // always in the same order, so snapshots can't
+            stripe.lock();                    // deadlock each other
+        }
+        try {
+            teams.forEach((name, counters) -> teamTotals.add(Map.entry(name, new long[]{
+                    counters.points.sum(), counters.goalsFor.sum(), counters.goalsAgainst.sum()})));
+            if (headToHead != null) {
+                headToHead.forEach((pair, counters) -> pairTotals.add(Map.entry(pair,
+                        new long[]{counters.lowPoints.sum(), counters.highPoints.sum()})));
+            }
+        } finally {
+            for (ReentrantLock stripe : stripes) {
+                stripe.unlock();
+            }
+        }
+        GameTally tally = new GameTally(ranker);
+        for (Map.Entry<String, long[]> team : teamTotals) {
+            byte[] name = team.getKey().getBytes(StandardCharsets.UTF_8);
+            long[] totals = team.getValue();
+            tally.addTeamResults(ByteBuffer.wrap(name), 0, name.length, totals[0], totals[1],
+                    totals[2]);
+        }
+        for (Map.Entry<Pair, long[]> pair : pairTotals) {
+            tally.addHeadToHead(tally.findTeam(pair.getKey().low),
+                    tally.findTeam(pair.getKey().high), pair.getValue()[0], pair.getValue()[1]);
+        }
+        return tally;
+    }
+
+    /**
+     * @return the table as of a single moment, ranked as per {@link TeamRanker#rank(GameTally)}.
+     */
+    List<Tuple2<Long, Team>> table() {
+        return ranker.rank(snapshot()).get(); // a snapshot has no bad lines, so can't fail
+    }
+
+    /**
+     * @return the number of lines accepted so far (bad or not), which may be out of date by the
+     * time it's returned.
+     */
+    long getLineCount() {
+        return lineCount.sum();
+    }
+
+    /**
+     * @return the number of bad lines so far, which may be out of date by the time it's returned.
+     */
+    long getBadLineCount() {
+        return badLineCount.sum();
+    }
+
+    /**
+     * A team's running totals.
+     */
+    private static final class Counters {
+
+        final LongAdder points = new LongAdder();
+        final LongAdder goalsFor = new LongAdder();
+        final LongAdder goalsAgainst = new LongAdder();
+    }
+
+    /**
+     * Two teams that have met, the name that sorts first being {@code low}.
+     */
+    private static final class Pair {
+
+        final String low;
+        final String high;
+
+        Pair(String low, String high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Pair pair = (Pair) o;
+            return low.equals(pair.low) && high.equals(pair.high);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * low.hashCode() + high.hashCode();
+        }
+    }
+
+    /**
+     * Points earned in the games between a {@link Pair}, by each of them.
+     */
+    private static final class PairCounters {
+
+        final LongAdder lowPoints = new LongAdder();
+        final LongAdder highPoints = new LongAdder();
+    }
+}
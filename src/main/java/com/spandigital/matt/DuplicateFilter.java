@@ -0,0 +1,533 @@
+package com.spandigital.matt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spots games seen before, e.g. from an upstream feed replaying a batch, so a {@link GameTally}
+ * (see {@link GameTally#setDuplicateFilter}) can skip them rather than count them twice. A game is
+ * keyed on its (trimmed) team names and scores, in order, so the same teams meeting again with the
+ * same score, e.g. in a cup replay, count as a duplicate unless the lines also have match ids: then
+ * each line starts with the match's id and a {@code |}, e.g. {@code 1042 | Lions 3, Snakes 3}, and
+ * the id is part of the key.
+ * <br>
+ * Keys are hashed to 64-bit fingerprints held in a primitive open addressing set, so the check
+ * costs 16 bytes per game (at no more than half full) rather than a String per line. Two different
+ * games sharing a fingerprint (and so one being wrongly skipped) is a chance of about n^2 / 2^65 in
+ * n games, i.e. negligible below a few hundred million. A set that size is far bigger than the
+ * cache, so a tally reading an input looks games up a batch at a time (see
+ * {@link #findDuplicates}), letting their cache misses overlap.
+ * <br>
+ * For inputs too big for even that, {@link #prefiltered} first reads the inputs once through a
+ * Bloom filter (about 1.25 bytes per game), noting only the fingerprints it may have seen before.
+ * Those (the real duplicates, plus about 1% false alarms) are then all the exact set needs to
+ * hold, at the cost of reading the inputs twice.
+ * <br>
+ * Not thread-safe, so inputs sharing a filter are read one at a time, unless it's made
+ * {@link #concurrent}: then the set is split by fingerprint into parts each used under its own
+ * lock, so the chunks of an input that {@link ParallelIngest} tallies at once can share it, each
+ * through its own {@link #forChunk} view. Chunks don't finish in order, so the set also keeps the
+ * position of the earliest line seen with each game. A chunk that finds an earlier copy of a game
+ * counted elsewhere skips its own; one that finds a later copy counted skips its own too, which is
+ * the same game, and the later copy is the duplicate instead. Either way, exactly one copy of each
+ * game is counted, and every other copy is found to be a duplicate, just as reading in order would.
+ * Views only note the positions of the duplicates, as the chunk that finds one isn't always the
+ * chunk it's in; the lines are looked up once every chunk is done.
+ */
+final class DuplicateFilter {
+
+    static final byte MATCH_ID_SEPARATOR = '|';
+
+    private static final long SEED = 0x6A09E667F3BCC908L;
+    private static final int SHARED_PARTS = 64;
+
+    private final boolean matchIds;
+    private final FingerprintSet candidates; // null unless prefiltered: the only possible repeats
+    private final FingerprintSet seen; // null if concurrent
+    private final FingerprintSet[] shared; // null unless concurrent: seen, split by fingerprint
+    private final long chunkStart; // for a view: where its lines' positions are counted from
+    private final boolean inOrder; // for a view: whether its lines are all at chunkStart
+    private long[] repeats; // null unless a chunk's view: positions of the duplicates found
+    private int repeatCount;
+    private long touched; // what findDuplicates() read ahead, kept so the reads aren't optimised out
+    private GameTally.BadLineListener reporter;
+
+    private DuplicateFilter(boolean matchIds, FingerprintSet candidates, long expectedGames,
+            boolean concurrent) {
+        this.matchIds = matchIds;
+        this.candidates = candidates;
+        if (concurrent) {
+            this.seen = null;
+            this.shared = new FingerprintSet[SHARED_PARTS];
+            for (int part = 0; part < SHARED_PARTS; part++) {
+                shared[part] = FingerprintSet.withPositions(expectedGames / SHARED_PARTS);
+            }
+        } else {
+            this.seen = FingerprintSet.forEntries(expectedGames);
+            this.shared = null;
+        }
+        this.chunkStart = 0;
+        this.inOrder = false;
+    }
+
+    private DuplicateFilter(DuplicateFilter concurrent, long chunkStart, boolean inOrder) {
+        this.matchIds = concurrent.matchIds;
+        this.candidates = concurrent.candidates;
+        this.seen = null;
+        this.shared = concurrent.shared;
+        this.chunkStart = chunkStart;
+        this.inOrder = inOrder;
+        if (inOrder) {
+            this.reporter = concurrent.reporter;
+        } else {
+            this.repeats = new long[16];
+            this.reporter = duplicate -> { // the tally just counts them; see getRepeats()
+            };
+        }
+    }
+
+    /**
+     * @param matchIds whether lines start with a match id (and a {@code |}) to key on as well.
+     */
+    static DuplicateFilter exact(boolean matchIds) {
+        return exact(matchIds, 0);
+    }
+
+    /**
+     * As per {@link #exact(boolean)}, but sized up front for about this many games, which saves
+     * growing the set (each time re-inserting everything, with a cache miss apiece) as it fills.
+     */
+    static DuplicateFilter exact(boolean matchIds, long expectedGames) {
+        return new DuplicateFilter(matchIds, null, expectedGames, false);
+    }
+
+    /**
+     * As per {@link #exact(boolean, long)}, but for the chunks of an input to check at once, each
+     * through its own {@link #forChunk} view.
+     */
+    static DuplicateFilter concurrent(boolean matchIds, long expectedGames) {
+        return new DuplicateFilter(matchIds, null, expectedGames, true);
+    }
+
+    /**
+     * @return a guess at how many games the inputs hold, going by their sizes (and not counting
+     * stdin), for sizing an {@link #exact(boolean, long)} filter.
+     */
+    static long estimateGames(List<InputSource> inputs) throws IOException {
+        long bytes = 0;
+        for (InputSource input : inputs) {
+            if (!input.isStdin()) {
+                bytes += Files.size(input.getPath());
+            }
+        }
+        return bytes / 32; // lines are usually a little shorter, but growing the set is fine
+    }
+
+    /**
+     * Reads the (text) inputs once, through a Bloom filter, to find which games might be repeated,
+     * so that only those need keeping in the exact set as they're read for real.
+     *
+     * @param matchIds whether lines start with a match id (and a {@code |}) to key on as well.
+     * @throws IllegalArgumentException if an input is stdin, which can't be read twice.
+     * @throws IOException              if reading an input fails.
+     */
+    static DuplicateFilter prefiltered(boolean matchIds, List<InputSource> inputs)
+            throws IOException {
+        return prefiltered(matchIds, inputs, false);
+    }
+
+    /**
+     * As per {@link #prefiltered(boolean, List)}, but {@link #concurrent} if asked for.
+     */
+    static DuplicateFilter prefiltered(boolean matchIds, List<InputSource> inputs,
+            boolean concurrent) throws IOException {
+        long bytes = 0;
+        for (InputSource input : inputs) {
+            if (input.isStdin()) {
+                throw new IllegalArgumentException("Stdin can't be prefiltered for duplicates, "
+                        + "as it can only be read once.");
+            }
+            bytes += Files.size(input.getPath());
+        }
+        // game lines are rarely shorter than 16 bytes, so this over- rather than under-sizes it
+        BloomFilter bloom = new BloomFilter(bytes / 16);
+        FingerprintSet candidates = FingerprintSet.forEntries(0);
+        DuplicateFilter reader = exact(matchIds);
+        GameLineParser parser = new GameLineParser();
+        RunMetrics uncounted = new RunMetrics(); // the lines are counted when they're tallied
+        for (InputSource input : inputs) {
+            try (ReadableByteChannel channel = input.open()) {
+                LineScanner.scan(channel, (buf, start, end) -> {
+                    int gameStart = reader.gameStart(buf, start, end);
+                    if (gameStart >= 0 && parser.parse(buf, gameStart, end)) {
+                        long fingerprint = fingerprint(buf, start, gameStart, parser);
+                        if (!bloom.add(fingerprint)) {
+                            candidates.add(fingerprint);
+                        }
+                    }
+                }, uncounted);
+            }
+        }
+        return new DuplicateFilter(matchIds, candidates, candidates.size, concurrent);
+    }
+
+    boolean isConcurrent() {
+        return shared != null;
+    }
+
+    /**
+     * @param chunkStart where in the input the chunk (whose lines the view will be given positions
+     *                   within) starts.
+     * @return a view of this (concurrent) filter for a tally of one chunk of an input, to be used
+     * by one thread. The tally only counts the duplicates it skips, as they may not be its own
+     * lines; {@link #getRepeats()} says which lines they were.
+     * @throws IllegalStateException if this filter isn't {@link #concurrent}.
+     */
+    DuplicateFilter forChunk(long chunkStart) {
+        checkConcurrent();
+        return new DuplicateFilter(this, chunkStart, false);
+    }
+
+    /**
+     * @param position where in the inputs to treat every line read through the view as being: after
+     *                 every line checked so far, and before every line to be checked afterwards.
+     * @return a view of this (concurrent) filter for reading lines in order, on one thread, e.g. a
+     * compressed input, which can't be split into chunks. Its duplicates are reported as usual.
+     * @throws IllegalStateException if this filter isn't {@link #concurrent}.
+     */
+    DuplicateFilter inOrder(long position) {
+        checkConcurrent();
+        return new DuplicateFilter(this, position, true);
+    }
+
+    private void checkConcurrent() {
+        if (shared == null || inOrder || repeats != null) {
+            throw new IllegalStateException("Only a concurrent filter has views");
+        }
+    }
+
+    /**
+     * @return for a chunk's view, the positions in the input at which lines were found to be
+     * duplicates, one for each duplicate the tally skipped, in no particular order.
+     */
+    long[] getRepeats() {
+        return Arrays.copyOf(repeats, repeatCount);
+    }
+
+    /**
+     * Sets what to tell about each duplicate skipped, as a {@link BadLine} (though duplicates don't
+     * count as bad lines); null means the tally keeps them instead.
+     */
+    void setReporter(GameTally.BadLineListener reporter) {
+        this.reporter = reporter;
+    }
+
+    GameTally.BadLineListener getReporter() {
+        return reporter;
+    }
+
+    /**
+     * @return where the game starts on the line occupying {@code [start, end)} of the buffer:
+     * after the match id, if there are match ids, in which case -1 means the line hasn't got one.
+     */
+    int gameStart(ByteBuffer buf, int start, int end) {
+        if (!matchIds) {
+            return start;
+        }
+        for (int i = start; i < end; i++) {
+            if (buf.get(i) == MATCH_ID_SEPARATOR) {
+                return trimStart(buf, start, i) == i ? -1 : i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param lineStart where the line (and so its match id, if any) starts
+     * @param gameStart where the game the parser just parsed starts, as per {@link #gameStart}
+     * @return whether the game has been seen before (if not, it is now).
+     */
+    boolean isDuplicate(ByteBuffer buf, int lineStart, int gameStart, GameLineParser parser) {
+        return isDuplicate(fingerprint(buf, lineStart, gameStart, parser), lineStart);
+    }
+
+    /**
+     * As per {@link #isDuplicate(ByteBuffer, int, int, GameLineParser)}, for a batch of games, in
+     * order, by their {@link #fingerprint}s. The slots they hash to are all read before any is
+     * checked, so the cache misses overlap rather than each being waited on in turn: with the set
+     * far bigger than the cache, that's most of what checking a game costs.
+     *
+     * @param lineStarts where each game's line starts in the buffer.
+     * @param duplicates set to whether each game has been seen before (if not, it is now).
+     */
+    void findDuplicates(long[] fingerprints, int[] lineStarts, int count, boolean[] duplicates) {
+        long read = 0;
+        for (int i = 0; i < count; i++) {
+            read |= firstLookedIn(fingerprints[i]).peek(fingerprints[i]);
+        }
+        touched = read;
+        for (int i = 0; i < count; i++) {
+            duplicates[i] = isDuplicate(fingerprints[i], lineStarts[i]);
+        }
+    }
+
+    private FingerprintSet firstLookedIn(long fingerprint) {
+        return candidates != null ? candidates : seen != null ? seen : sharedPart(fingerprint);
+    }
+
+    private FingerprintSet sharedPart(long fingerprint) {
+        return shared[(int) fingerprint & (SHARED_PARTS - 1)]; // find() uses the top bits
+    }
+
+    private boolean isDuplicate(long fingerprint, int lineStart) {
+        if (candidates != null && !candidates.contains(fingerprint)) {
+            return false; // it's only in the input once
+        }
+        if (seen != null) {
+            return !seen.add(fingerprint);
+        }
+        FingerprintSet part = sharedPart(fingerprint);
+        long repeat;
+        synchronized (part) {
+            repeat = part.claim(fingerprint, inOrder ? chunkStart : chunkStart + lineStart);
+        }
+        if (repeat < 0) {
+            return false;
+        }
+        if (inOrder) {
+            return true; // nothing's after it yet, so it's the repeat
+        }
+        if (repeatCount == repeats.length) {
+            repeats = Arrays.copyOf(repeats, repeatCount * 2);
+        }
+        repeats[repeatCount++] = repeat;
+        return true;
+    }
+
+    /**
+     * @return roughly how many bytes the filter holds.
+     */
+    long estimateSize() {
+        long size = candidates == null ? 0 : candidates.estimateSize();
+        if (seen != null) {
+            return size + seen.estimateSize();
+        }
+        for (FingerprintSet part : shared) {
+            synchronized (part) {
+                size += part.estimateSize();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param lineStart where the line (and so its match id, if any) starts
+     * @param gameStart where the game the parser just parsed starts, as per {@link #gameStart}
+     * @return the game's key, hashed.
+     */
+    static long fingerprint(ByteBuffer buf, int lineStart, int gameStart, GameLineParser parser) {
+        long hash = SEED;
+        if (gameStart > lineStart) { // the match id, trimmed, but for the separator
+            int idStart = trimStart(buf, lineStart, gameStart - 1);
+            hash = hash(hash, buf, idStart, trimEnd(buf, idStart, gameStart - 1));
+        }
+        hash = hash(hash, buf, parser.team1Start(), parser.team1End());
+        hash = hash(hash, buf, parser.team2Start(), parser.team2End());
+        long scores = (long) parser.team1Score() << 32 | (parser.team2Score() & 0xFFFFFFFFL);
+        hash = mix(hash ^ scores);
+        return hash == FingerprintSet.EMPTY ? 1 : hash;
+    }
+
+    /**
+     * Folds {@code [start, end)} of the buffer, and its length (so that fields can't run into each
+     * other), into the hash.
+     */
+    private static long hash(long hash, ByteBuffer buf, int start, int end) {
+        int i = start;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            hash = mix(hash ^ buf.getLong(i));
+        }
+        long tail = 0;
+        for (; i < end; i++) {
+            tail = tail << 8 | (buf.get(i) & 0xFF);
+        }
+        return mix(hash ^ tail ^ ((long) (end - start) << 56));
+    }
+
+    private static long mix(long hash) { // MurmurHash3's 64-bit finaliser, after a multiply
+        hash *= 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static int trimStart(ByteBuffer buf, int start, int end) {
+        while (start < end && (buf.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(ByteBuffer buf, int start, int end) {
+        while (end > start && (buf.get(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * An open addressing (linear probing) set of fingerprints, rehashed once half full, optionally
+     * with a position (see {@link #claim}) kept in the slot after each, so as to be in the same
+     * cache line.
+     */
+    private static final class FingerprintSet {
+
+        static final long EMPTY = 0;
+
+        private final int stride; // 2 if positions are kept, else 1
+        private long[] slots;
+        private int size;
+
+        private FingerprintSet(int capacity, int stride) {
+            this.stride = stride;
+            slots = new long[capacity * stride];
+        }
+
+        /**
+         * @return a set that can hold that many entries without growing (within reason).
+         */
+        static FingerprintSet forEntries(long entries) {
+            return new FingerprintSet(capacityFor(entries), 1);
+        }
+
+        /**
+         * As per {@link #forEntries}, but keeping positions, for {@link #claim}.
+         */
+        static FingerprintSet withPositions(long entries) {
+            return new FingerprintSet(capacityFor(Math.min(entries, 1L << 28)), 2);
+        }
+
+        private static int capacityFor(long entries) {
+            return (int) (Long.highestOneBit(Math.max(8, Math.min(entries, 1L << 29)) * 2 - 1) * 2);
+        }
+
+        /**
+         * @return whether the fingerprint wasn't already in the set.
+         */
+        boolean add(long fingerprint) {
+            int slot = find(slots, stride, fingerprint);
+            if (slots[slot] == fingerprint) {
+                return false;
+            }
+            slots[slot] = fingerprint;
+            grow();
+            return true;
+        }
+
+        /**
+         * Adds the fingerprint at the given position if it's not already there, or if it's there at
+         * a later position, moves it to this one.
+         *
+         * @return -1 if it wasn't already there, or else the later of the two positions.
+         */
+        long claim(long fingerprint, long position) {
+            int slot = find(slots, stride, fingerprint);
+            if (slots[slot] == fingerprint) {
+                long earlier = slots[slot + 1];
+                if (position < earlier) {
+                    slots[slot + 1] = position;
+                    return earlier;
+                }
+                return position;
+            }
+            slots[slot] = fingerprint;
+            slots[slot + 1] = position;
+            grow();
+            return -1;
+        }
+
+        private void grow() {
+            if (++size * 2 * stride > slots.length) {
+                long[] old = slots;
+                slots = new long[old.length * 2];
+                for (int oldSlot = 0; oldSlot < old.length; oldSlot += stride) {
+                    if (old[oldSlot] != EMPTY) {
+                        System.arraycopy(old, oldSlot, slots, find(slots, stride, old[oldSlot]),
+                                stride);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return what's in the slot the fingerprint's search starts at, so as to have it cached
+         * for looking the fingerprint up. Safe to call while another thread changes the set, as
+         * it's only for the caching.
+         */
+        long peek(long fingerprint) {
+            long[] slots = this.slots;
+            return slots[(int) (fingerprint >>> 32) * stride & (slots.length - 1)];
+        }
+
+        boolean contains(long fingerprint) {
+            return slots[find(slots, stride, fingerprint)] == fingerprint;
+        }
+
+        long estimateSize() {
+            return 8L * slots.length;
+        }
+
+        private static int find(long[] slots, int stride, long fingerprint) {
+            int mask = slots.length - 1;
+            // fingerprints are already well mixed
+            int slot = (int) (fingerprint >>> 32) * stride & mask;
+            while (slots[slot] != EMPTY && slots[slot] != fingerprint) {
+                slot = (slot + stride) & mask;
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * A Bloom filter over fingerprints, at 10 bits and 7 probes per expected entry (about a 1% false
+     * positive rate), the probes being derived from the fingerprint's two halves.
+     */
+    private static final class BloomFilter {
+
+        private static final int PROBES = 7;
+
+        private final long[] bits;
+        private final long bitCount;
+
+        BloomFilter(long expectedEntries) {
+            long words = Math.max(16, (expectedEntries * 10 + 63) / 64);
+            this.bits = new long[(int) Math.min(words, Integer.MAX_VALUE - 8)];
+            this.bitCount = 64L * bits.length;
+        }
+
+        /**
+         * @return whether the fingerprint was (definitely) new to the filter.
+         */
+        boolean add(long fingerprint) {
+            long hash1 = fingerprint & 0xFFFFFFFFL;
+            long hash2 = (fingerprint >>> 32) | 1;
+            boolean added = false;
+            for (int probe = 0; probe < PROBES; probe++) {
+                long bit = Long.remainderUnsigned(hash1 + probe * hash2, bitCount);
+                long mask = 1L << bit;
+                int word = (int) (bit >>> 6);
+                if ((bits[word] & mask) == 0) {
+                    bits[word] |= mask;
+                    added = true;
+                }
+            }
+            return added;
+        }
+    }
+}
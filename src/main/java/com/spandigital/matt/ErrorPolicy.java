@@ -0,0 +1,99 @@
+package com.spandigital.matt;
+
+/**
+ * What to do about faulty lines. By default ({@link #collectAll()}) every input is read to the end,
+ * every bad line is kept, and any bad line at all means there's no table. Alternatively:
+ * <br>1. A maximum number of bad lines: reading stops (with a {@link TooManyBadLinesException})
+ * as soon as that many are found, and fewer than that are skipped, letting the table be produced.
+ * {@link #failFast()} is the same with a maximum of one.
+ * <br>2. A maximum percentage of bad lines: likewise, but relative to the number of lines read.
+ * So that a bad line near the start doesn't count for too much, the percentage only applies once
+ * {@link #MIN_LINES_FOR_PERCENTAGE} lines have been read (or at the end of the input, if sooner).
+ * <br>
+ * Either way, bad lines can be passed to a listener as they're found (e.g. to print them), rather
+ * than kept in memory until the end.
+ */
+final class ErrorPolicy {
+
+    static final long MIN_LINES_FOR_PERCENTAGE = 1000;
+
+    private static final ErrorPolicy COLLECT_ALL =
+            new ErrorPolicy(Long.MAX_VALUE, Double.NaN, null);
+
+    private final long maxBadLines; // Long.MAX_VALUE for no maximum
+    private final double maxBadLinePercent; // NaN for no maximum
+    private final GameTally.BadLineListener reporter; // may be null
+
+    private ErrorPolicy(long maxBadLines, double maxBadLinePercent,
+            GameTally.BadLineListener reporter) {
+        this.maxBadLines = maxBadLines;
+        this.maxBadLinePercent = maxBadLinePercent;
+        this.reporter = reporter;
+    }
+
+    static ErrorPolicy collectAll() {
+        return COLLECT_ALL;
+    }
+
+    static ErrorPolicy failFast() {
+        return COLLECT_ALL.withMaxBadLines(1);
+    }
+
+    /**
+     * @param maxBadLines give up once this many bad lines have been found (at least 1)
+     */
+    ErrorPolicy withMaxBadLines(long maxBadLines) {
+        if (maxBadLines < 1) {
+            throw new IllegalArgumentException("Maximum bad lines must be at least 1");
+        }
+        return new ErrorPolicy(maxBadLines, maxBadLinePercent, reporter);
+    }
+
+    /**
+     * @param maxBadLinePercent give up once more than this percentage (0 to 100) of lines are bad
+     */
+    ErrorPolicy withMaxBadLinePercent(double maxBadLinePercent) {
+        if (!(maxBadLinePercent >= 0 && maxBadLinePercent <= 100)) {
+            throw new IllegalArgumentException("Maximum bad line percentage must be 0 to 100");
+        }
+        return new ErrorPolicy(maxBadLines, maxBadLinePercent, reporter);
+    }
+
+    /**
+     * @param reporter told about each bad line as it's found, in which case bad lines aren't kept
+     *                 (so won't be amongst {@link GameTally#getBadLines()})
+     */
+    ErrorPolicy withReporter(GameTally.BadLineListener reporter) {
+        return new ErrorPolicy(maxBadLines, maxBadLinePercent, reporter);
+    }
+
+    /**
+     * @return whether bad lines within the limits are skipped (rather than preventing a table).
+     */
+    boolean isTolerant() {
+        return maxBadLines != Long.MAX_VALUE || !Double.isNaN(maxBadLinePercent);
+    }
+
+    GameTally.BadLineListener getReporter() {
+        return reporter;
+    }
+
+    /**
+     * @param complete whether that's all the lines there are, so the percentage applies regardless
+     * @throws TooManyBadLinesException if there are too many bad lines (though without any bad
+     *                                  lines attached, which is up to the caller).
+     */
+    void check(long badLines, long lines, boolean complete) {
+        if (badLines >= maxBadLines) {
+            throw new TooManyBadLinesException("Gave up after finding " + badLines
+                    + (badLines == 1 ? " bad line" : " bad lines"), badLines, lines);
+        }
+        if (!Double.isNaN(maxBadLinePercent) && lines > 0
+                && (complete || lines >= MIN_LINES_FOR_PERCENTAGE)
+                && badLines * 100.0 > maxBadLinePercent * lines) {
+            throw new TooManyBadLinesException(String.format(
+                    "Gave up as %d of %d lines (%.2f%%) were bad, more than the %s%% allowed",
+                    badLines, lines, badLines * 100.0 / lines, maxBadLinePercent), badLines, lines);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.spandigital.matt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Checksum;
+
+/**
+ * Feeds lines appended to a growing file into a tally, {@code tail -f} style. Remembers the offset
+ * of the first byte it hasn't consumed, so each {@link #poll()} only reads what's been appended
+ * since; the cost of an update depends on the amount of new data, not the size of the file.
+ * <br>
+ * Only complete (terminated) lines are consumed. A partially written last line is left alone, to be
+ * picked up in full by a later poll once its terminator arrives.
+ */
+final class FileFollower {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final GameTally tally;
+    private final Checksum checksum; // may be null
+    private ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private long offset;
+
+    FileFollower(Path path, GameTally tally) {
+        this(path, tally, 0, null);
+    }
+
+    /**
+     * @param offset   where to start reading, the tally already holding everything before it
+     * @param checksum updated with every byte consumed (so that it covers the whole consumed
+     *                 prefix, if it already covered {@code [0, offset)}), may be null
+     */
+    FileFollower(Path path, GameTally tally, long offset, Checksum checksum) {
+        this.path = path;
+        this.tally = tally;
+        this.offset = offset;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Consumes any complete lines appended since the last poll.
+     *
+     * @return the number of lines consumed (valid or not), or -1 if the file has shrunk below what
+     * was already consumed (i.e. it was truncated or replaced), in which case nothing is consumed
+     * and this follower shouldn't be polled again.
+     * @throws IOException if the file can't be opened or read
+     */
+    long poll() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {
+                return -1;
+            }
+            long linesBefore = tally.getLineCount();
+            long position = offset;
+            buf.clear();
+            while (position < size) {
+                int read = channel.read(buf, position);
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+                int consumed = LineScanner.scan(buf, 0, buf.position(), false, tally::acceptLine,
+                        tally.getRanker().getMetrics());
+                offset += consumed;
+                if (checksum != null) {
+                    checksum.update(buf.array(), 0, consumed);
+                }
+                if (consumed == 0 && !buf.hasRemaining()) { // single line longer than the buffer
+                    buf = ByteBuffer.allocate(buf.capacity() * 2).put(buf.flip());
+                } else {
+                    buf.limit(buf.position()).position(consumed);
+                    buf.compact();
+                }
+            }
+            return tally.getLineCount() - linesBefore;
+        }
+    }
+
+    /**
+     * Consumes whatever follows the last complete line (i.e. an unterminated last line) as though
+     * the file ended there, without moving the offset on. Reads the same lines as reading the whole
+     * file in one go would, but leaves the follower where a later poll should resume from.
+     *
+     * @return the number of lines consumed (0 or 1).
+     */
+    long acceptRemainder() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long remainder = channel.size() - offset;
+            if (remainder <= 0) {
+                return 0;
+            }
+            if (remainder > Integer.MAX_VALUE) {
+                throw new IOException("Found a run of more than " + Integer.MAX_VALUE
+                        + " bytes without a newline at offset " + offset);
+            }
+            ByteBuffer tail = ByteBuffer.allocate((int) remainder);
+            while (tail.hasRemaining() && channel.read(tail, offset + tail.position()) > 0) {
+                // keep reading, short reads being allowed
+            }
+            long linesBefore = tally.getLineCount();
+            LineScanner.scan(tail, 0, tail.position(), true, tally::acceptLine,
+                    tally.getRanker().getMetrics());
+            return tally.getLineCount() - linesBefore;
+        }
+    }
+
+    /**
+     * @return offset of the first byte not yet consumed, i.e. just past the last complete line.
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    GameTally getTally() {
+        return tally;
+    }
+}
@@ -0,0 +1,223 @@
+package com.spandigital.matt;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Single-pass, allocation-free parser for a game line held as raw (UTF-8) bytes, e.g.
+ * {@code "Lions 3, Snakes 3"}. On success the bounds of both (trimmed) team names and both scores
+ * are left in the parser for the caller to read, so a parser instance should be reused per thread
+ * rather than shared.
+ * <br>
+ * Accepts and rejects exactly the same lines as the original {@code String.split} based parsing:
+ * <br>1. Trailing commas are ignored, otherwise there must be exactly one comma.
+ * <br>2. Trailing spaces on each side are ignored, and the score is whatever follows the last
+ * space (parsed as per {@link Integer#parseInt(String)}).
+ * <br>3. Team names are everything before that space, trimmed as per {@link String#trim()}, and
+ * must be non-empty and differ from each other.
+ */
+final class GameLineParser {
+
+    private int team1Start;
+    private int team1End;
+    private int team1Score;
+    private int team2Start;
+    private int team2End;
+    private int team2Score;
+    private BadLine.Reason failure;
+
+    /**
+     * Parses the line occupying {@code [start, end)} of the buffer (line terminator excluded).
+     *
+     * @return true if the line was a valid game, in which case the accessors describe it (and
+     * otherwise {@link #failure()} says why not).
+     */
+    boolean parse(ByteBuffer buf, int start, int end) {
+        // "a,b,,," splits into two columns, so trailing commas don't count towards the column count
+        int lineEnd = end;
+        while (lineEnd > start && buf.get(lineEnd - 1) == ',') {
+            lineEnd--;
+        }
+        int comma = -1;
+        for (int i = start; i < lineEnd; i++) {
+            if (buf.get(i) == ',') {
+                if (comma >= 0) {
+                    return fail(BadLine.Reason.WRONG_COLUMN_COUNT);
+                }
+                comma = i;
+            }
+        }
+        if (comma < 0) {
+            return fail(BadLine.Reason.WRONG_COLUMN_COUNT);
+        }
+
+        int side1End = stripTrailingSpaces(buf, start, comma);
+        int side2End = stripTrailingSpaces(buf, comma + 1, lineEnd);
+        int space1 = lastSpace(buf, start, side1End);
+        int space2 = lastSpace(buf, comma + 1, side2End);
+        if (space1 < 0 || space2 < 0) {
+            return fail(BadLine.Reason.BAD_SCORE);
+        }
+        if (!parseScore(buf, space1 + 1, side1End, true)
+                || !parseScore(buf, space2 + 1, side2End, false)) {
+            return fail(BadLine.Reason.BAD_SCORE);
+        }
+
+        team1Start = trimStart(buf, start, space1);
+        team1End = trimEnd(buf, team1Start, space1);
+        team2Start = trimStart(buf, comma + 1, space2);
+        team2End = trimEnd(buf, team2Start, space2);
+        if (team1Start == team1End || team2Start == team2End) {
+            return fail(BadLine.Reason.EMPTY_NAME);
+        }
+        if (sameBytes(buf, team1Start, team1End, team2Start, team2End)) {
+            return fail(BadLine.Reason.SELF_PLAY);
+        }
+        return true;
+    }
+
+    /**
+     * @return why the last line parsed was faulty (only meaningful if it was).
+     */
+    BadLine.Reason failure() {
+        return failure;
+    }
+
+    private boolean fail(BadLine.Reason reason) {
+        failure = reason;
+        return false;
+    }
+
+    int team1Start() {
+        return team1Start;
+    }
+
+    int team1End() {
+        return team1End;
+    }
+
+    int team1Score() {
+        return team1Score;
+    }
+
+    int team2Start() {
+        return team2Start;
+    }
+
+    int team2End() {
+        return team2End;
+    }
+
+    int team2Score() {
+        return team2Score;
+    }
+
+    static String decode(ByteBuffer buf, int start, int end) {
+        if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + start, end - start,
+                    StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[end - start];
+        buf.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // split(" ") drops trailing empty parts, i.e. trailing spaces (but not other whitespace)
+    private static int stripTrailingSpaces(ByteBuffer buf, int start, int end) {
+        while (end > start && buf.get(end - 1) == ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Finds the space separating the name from the score on one side of the comma. Returns -1 if
+     * the side doesn't have at least two space separated parts.
+     */
+    private static int lastSpace(ByteBuffer buf, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (buf.get(i) == ' ') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean parseScore(ByteBuffer buf, int start, int end, boolean first) {
+        int i = start;
+        boolean negative = false;
+        byte b = buf.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+            if (i == end) {
+                return false;
+            }
+        }
+        // accumulate negatively so that Integer.MIN_VALUE can be represented, as parseInt does
+        long value = 0;
+        for (; i < end; i++) {
+            b = buf.get(i);
+            if (b < '0' || b > '9') {
+                return b < 0 && parseScoreSlowly(buf, start, end, first);
+            }
+            value = value * 10 - (b - '0');
+            if (value < Integer.MIN_VALUE) {
+                return false;
+            }
+        }
+        if (!negative && value == Integer.MIN_VALUE) {
+            return false;
+        }
+        setScore(first, (int) (negative ? value : -value));
+        return true;
+    }
+
+    /**
+     * {@link Integer#parseInt(String)} accepts any Unicode digit, so non-ASCII scores get handed
+     * over to it rather than re-implementing that here.
+     */
+    private boolean parseScoreSlowly(ByteBuffer buf, int start, int end, boolean first) {
+        try {
+            setScore(first, Integer.parseInt(decode(buf, start, end)));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void setScore(boolean first, int score) {
+        if (first) {
+            team1Score = score;
+        } else {
+            team2Score = score;
+        }
+    }
+
+    // String.trim() treats every char <= ' ' as whitespace, all of which are single bytes in UTF-8
+    private static int trimStart(ByteBuffer buf, int start, int end) {
+        while (start < end && (buf.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(ByteBuffer buf, int start, int end) {
+        while (end > start && (buf.get(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean sameBytes(ByteBuffer buf, int start1, int end1, int start2, int end2) {
+        if (end1 - start1 != end2 - start2) {
+            return false;
+        }
+        for (int i = start1, j = start2; i < end1; i++, j++) {
+            if (buf.get(i) != buf.get(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,699 @@
+package com.spandigital.matt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Accumulates points per team (and any faulty lines) from raw game lines. Each line goes through a
+ * reused {@link GameLineParser}, and team names are interned through a {@link TeamDictionary} into
+ * dense ids which index a plain {@code long[]} of points. So a valid line for already-seen teams
+ * allocates nothing, and {@link Team} objects only get created once rankings are wanted.
+ * <br>
+ * Not thread-safe.
+ */
+final class GameTally {
+
+    /**
+     * Told about every points change (including a team's first appearance, where the old points are
+     * 0), straight after it happens.
+     */
+    @FunctionalInterface
+    interface PointsListener {
+        void onPointsChanged(int teamId, long oldPoints, long newPoints);
+    }
+
+    /**
+     * Told about every bad line as it's found (instead of the tally keeping it).
+     */
+    @FunctionalInterface
+    interface BadLineListener {
+        void onBadLine(BadLine badLine);
+    }
+
+    private final TeamRanker ranker;
+    private final GameLineParser parser = new GameLineParser();
+    private final TeamDictionary dictionary = new TeamDictionary();
+    private long[] points = new long[16]; // indexed by team id
+    private long[] goalsFor; // indexed by team id; null unless the ranker needs goals
+    private long[] goalsAgainst; // likewise
+    private final HeadToHead headToHead; // null unless the ranker needs it
+    private final List<BadLine> badLines = new ArrayList<>(); // line numbers relative to this tally
+    private final String source;
+    private long lineCount;
+    private long badLineCount;
+    private final List<BadLine> duplicates = new ArrayList<>(); // unless reported by the filter
+    private long duplicateCount;
+    private PointsListener listener;
+    private BadLineListener badLineListener;
+    private DuplicateFilter duplicateFilter;
+
+    GameTally(TeamRanker ranker) {
+        this(ranker, null);
+    }
+
+    /**
+     * @param source name of the input being tallied, to tag bad lines with, if there's more than
+     *               one input.
+     */
+    GameTally(TeamRanker ranker, String source) {
+        this.ranker = ranker;
+        this.source = source;
+        this.badLineListener = ranker.getErrorPolicy().getReporter();
+        this.headToHead = ranker.needsHeadToHead() ? new HeadToHead() : null;
+        if (ranker.needsGoals()) {
+            this.goalsFor = new long[points.length];
+            this.goalsAgainst = new long[points.length];
+        }
+    }
+
+    /**
+     * Consumes the channel until end of stream. With a duplicate filter, lines are checked against
+     * it a few at a time, as per {@link LineBatch}.
+     */
+    void accept(ReadableByteChannel channel) throws IOException {
+        LineScanner.scan(channel, lineHandler(), ranker.getMetrics());
+    }
+
+    /**
+     * @return a handler that consumes lines as per {@link #accept(ReadableByteChannel)}, for
+     * scanning a buffer with.
+     */
+    LineScanner.LineHandler lineHandler() {
+        return duplicateFilter == null ? this::acceptLine : new LineBatch();
+    }
+
+    /**
+     * Consumes a single line, occupying {@code [start, end)} of the buffer.
+     *
+     * @throws TooManyBadLinesException if the line was bad and the ranker's {@link ErrorPolicy}
+     *                                  allows no more.
+     */
+    void acceptLine(ByteBuffer buf, int start, int end) {
+        acceptLine(buf, start, end, lineCount + 1);
+    }
+
+    /**
+     * As per {@link #acceptLine(ByteBuffer, int, int)}, but for when the tally only sees some of
+     * the input's lines (e.g. one league's), so they need numbering by the caller.
+     *
+     * @param lineNumber the line's number within the input, for if it's bad
+     */
+    void acceptLine(ByteBuffer buf, int start, int end, long lineNumber) {
+        lineCount++;
+        int gameStart = duplicateFilter == null ? start
+                : duplicateFilter.gameStart(buf, start, end);
+        if (gameStart < 0 || !parser.parse(buf, gameStart, end)) {
+            rejectLine(buf, start, end, lineNumber,
+                    gameStart < 0 ? BadLine.Reason.MISSING_MATCH_ID : parser.failure());
+            return;
+        }
+        if (duplicateFilter != null && duplicateFilter.isDuplicate(buf, start, gameStart, parser)) {
+            addDuplicate(new BadLine(source, lineNumber, BadLine.Reason.DUPLICATE,
+                    GameLineParser.decode(buf, start, end)));
+            return;
+        }
+        int team1Id = dictionary.intern(buf, parser.team1Start(), parser.team1End());
+        int team2Id = dictionary.intern(buf, parser.team2Start(), parser.team2End());
+        addGame(team1Id, parser.team1Score(), team2Id, parser.team2Score());
+    }
+
+    private void rejectLine(ByteBuffer buf, int start, int end, long lineNumber,
+            BadLine.Reason reason) {
+        ranker.getMetrics().addBadLine();
+        addBadLine(new BadLine(source, lineNumber, reason, GameLineParser.decode(buf, start, end)));
+        checkBadLines(false);
+    }
+
+    /**
+     * @return the id of the team whose (UTF-8) name occupies {@code [start, end)} of the buffer,
+     * adding it (on no points) if it's new.
+     */
+    int internTeam(ByteBuffer buf, int start, int end) {
+        int teamCount = dictionary.size();
+        int id = dictionary.intern(buf, start, end);
+        if (id == teamCount) {
+            addPoints(id, 0);
+        }
+        return id;
+    }
+
+    /**
+     * Consumes an already parsed game between two teams (as ids from {@link #internTeam}), e.g. one
+     * read from a {@link ResultsFile}. Counts as a line, just as a game line would.
+     */
+    void acceptGame(int team1Id, int team1Score, int team2Id, int team2Score) {
+        lineCount++;
+        addGame(team1Id, team1Score, team2Id, team2Score);
+    }
+
+    /**
+     * Adds points to the team whose (UTF-8) name occupies {@code [start, end)} of the buffer,
+     * adding the team if it's new, e.g. for a partial total read back from a
+     * {@link SpillingAggregation} spill file. Doesn't count as a line.
+     */
+    void addTeamPoints(ByteBuffer buf, int start, int end, long additionalPoints) {
+        addPoints(dictionary.intern(buf, start, end), additionalPoints);
+    }
+
+    /**
+     * As per {@link #addTeamPoints}, but with goals too, e.g. for a {@link ConcurrentTally}
+     * snapshot.
+     *
+     * @return the team's id.
+     */
+    int addTeamResults(ByteBuffer buf, int start, int end, long additionalPoints,
+            long additionalGoalsFor, long additionalGoalsAgainst) {
+        int id = dictionary.intern(buf, start, end);
+        addPoints(id, additionalPoints);
+        if (goalsFor != null) {
+            goalsFor[id] += additionalGoalsFor;
+            goalsAgainst[id] += additionalGoalsAgainst;
+        }
+        return id;
+    }
+
+    /**
+     * Adds to the points two different teams (as ids) have earned against each other, if the
+     * ranker needs head-to-head results (see {@link TeamRanker#needsHeadToHead()}).
+     */
+    void addHeadToHead(int team1Id, int team2Id, long team1Points, long team2Points) {
+        if (headToHead != null) {
+            headToHead.add(team1Id, team2Id, team1Points, team2Points);
+        }
+    }
+
+    /**
+     * @return the team's (UTF-8) name, as a read-only view of the tally's own bytes.
+     */
+    ByteBuffer getNameBytes(int teamId) {
+        return dictionary.nameBytes(teamId);
+    }
+
+    private void addGame(int team1Id, int team1Score, int team2Id, int team2Score) {
+        long points1 = ranker.pointsFor(team1Score, team2Score);
+        long points2 = ranker.pointsFor(team2Score, team1Score);
+        addPoints(team1Id, points1);
+        addPoints(team2Id, points2);
+        if (goalsFor != null) {
+            goalsFor[team1Id] += team1Score;
+            goalsAgainst[team1Id] += team2Score;
+            goalsFor[team2Id] += team2Score;
+            goalsAgainst[team2Id] += team1Score;
+        }
+        if (headToHead != null && team1Id != team2Id) {
+            headToHead.add(team1Id, team2Id, points1, points2);
+        }
+    }
+
+    /**
+     * Folds in a tally of the lines that directly followed this tally's lines, e.g. the next chunk
+     * of the same file. Bad line numbers of the later tally are shifted accordingly.
+     */
+    GameTally merge(GameTally later) {
+        PhaseEvent event = new PhaseEvent(PhaseEvent.AGGREGATE);
+        event.begin();
+        long started = System.nanoTime();
+        for (BadLine badLine : later.badLines) {
+            addBadLine(badLine.withLineOffset(lineCount));
+        }
+        badLineCount += later.badLineCount - later.badLines.size();
+        for (BadLine duplicate : later.duplicates) {
+            duplicates.add(duplicate.withLineOffset(lineCount));
+        }
+        duplicateCount += later.duplicateCount;
+        addPointsOf(later);
+        lineCount += later.lineCount;
+        recordAggregate(started, event, later);
+        checkBadLines(false);
+        return this;
+    }
+
+    /**
+     * Folds in a tally of a different input (e.g. another file), whose bad lines keep their own
+     * line numbers and source.
+     */
+    GameTally mergeSource(GameTally other) {
+        PhaseEvent event = new PhaseEvent(PhaseEvent.AGGREGATE);
+        event.begin();
+        long started = System.nanoTime();
+        for (BadLine badLine : other.badLines) {
+            addBadLine(badLine);
+        }
+        badLineCount += other.badLineCount - other.badLines.size();
+        duplicates.addAll(other.duplicates);
+        duplicateCount += other.duplicateCount;
+        addPointsOf(other);
+        lineCount += other.lineCount;
+        recordAggregate(started, event, other);
+        checkBadLines(false);
+        return this;
+    }
+
+    private void recordAggregate(long started, PhaseEvent event, GameTally other) {
+        ranker.getMetrics().addAggregate(System.nanoTime() - started);
+        ranker.getMetrics().recordTally(getTeamCount(), estimateSize() + other.estimateSize());
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = other.source;
+            event.lines = other.lineCount;
+            event.teams = getTeamCount();
+            event.commit();
+        }
+    }
+
+    /**
+     * Applies the ranker's {@link ErrorPolicy} to the bad lines found so far.
+     *
+     * @param complete whether all lines have been read
+     * @throws TooManyBadLinesException if there are too many, carrying the bad lines kept so far.
+     */
+    void checkBadLines(boolean complete) {
+        try {
+            ranker.getErrorPolicy().check(badLineCount, lineCount, complete);
+        } catch (TooManyBadLinesException e) {
+            throw e.withBadLines(badLines);
+        }
+    }
+
+    private void addBadLine(BadLine badLine) {
+        badLineCount++;
+        if (badLineListener != null) {
+            badLineListener.onBadLine(badLine);
+        } else {
+            badLines.add(badLine);
+        }
+    }
+
+    /**
+     * Reports (or keeps) duplicates that have already been counted, but whose lines were only
+     * looked up afterwards, as per {@link DuplicateFilter#forChunk}.
+     */
+    void addCountedDuplicates(List<BadLine> counted) {
+        for (BadLine duplicate : counted) {
+            reportDuplicate(duplicate);
+        }
+    }
+
+    private void addDuplicate(BadLine duplicate) {
+        duplicateCount++;
+        reportDuplicate(duplicate);
+    }
+
+    private void reportDuplicate(BadLine duplicate) {
+        BadLineListener reporter = duplicateFilter.getReporter();
+        if (reporter != null) {
+            reporter.onBadLine(duplicate);
+        } else {
+            duplicates.add(duplicate);
+        }
+    }
+
+    private void addPointsOf(GameTally other) {
+        int[] ids = new int[other.dictionary.size()]; // other's team id -> ours
+        for (int otherId = 0; otherId < ids.length; otherId++) {
+            int id = dictionary.intern(other.dictionary, otherId);
+            ids[otherId] = id;
+            addPoints(id, other.points[otherId]);
+            if (goalsFor != null && other.goalsFor != null) {
+                goalsFor[id] += other.goalsFor[otherId];
+                goalsAgainst[id] += other.goalsAgainst[otherId];
+            }
+        }
+        if (headToHead != null && other.headToHead != null) {
+            other.headToHead.forEach((lowId, highId, lowPoints, highPoints) ->
+                    headToHead.add(ids[lowId], ids[highId], lowPoints, highPoints));
+        }
+    }
+
+    private void addPoints(int teamId, long additionalPoints) {
+        if (teamId == points.length) { // ids are dense, so we only ever need to grow by one
+            points = Arrays.copyOf(points, teamId * 2);
+            if (goalsFor != null) {
+                goalsFor = Arrays.copyOf(goalsFor, teamId * 2);
+                goalsAgainst = Arrays.copyOf(goalsAgainst, teamId * 2);
+            }
+        }
+        long oldPoints = points[teamId];
+        points[teamId] = oldPoints + additionalPoints;
+        if (listener != null) {
+            listener.onPointsChanged(teamId, oldPoints, oldPoints + additionalPoints);
+        }
+    }
+
+    /**
+     * Saves everything about the tally (other than its ranker and listeners), for
+     * {@link #readFrom} to restore later. Bad lines passed to a listener aren't kept, so aren't
+     * saved (only counted).
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(dictionary.size());
+        out.writeBoolean(goalsFor != null);
+        for (int id = 0; id < dictionary.size(); id++) {
+            ByteBuffer name = dictionary.nameBytes(id);
+            byte[] bytes = new byte[name.remaining()];
+            name.get(bytes);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeLong(points[id]);
+            if (goalsFor != null) {
+                out.writeLong(goalsFor[id]);
+                out.writeLong(goalsAgainst[id]);
+            }
+        }
+        out.writeInt(headToHead == null ? -1 : headToHead.size());
+        if (headToHead != null) {
+            try {
+                headToHead.forEach((lowId, highId, lowPoints, highPoints) -> {
+                    try {
+                        out.writeInt(lowId);
+                        out.writeInt(highId);
+                        out.writeLong(lowPoints);
+                        out.writeLong(highPoints);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        out.writeLong(lineCount);
+        out.writeLong(badLineCount);
+        out.writeInt(badLines.size());
+        for (BadLine badLine : badLines) {
+            writeString(out, badLine.getSource());
+            out.writeLong(badLine.getLineNumber());
+            out.writeByte(badLine.getReason().ordinal());
+            writeString(out, badLine.getContent());
+        }
+    }
+
+    /**
+     * Restores a tally saved by {@link #writeTo}.
+     *
+     * @param source as per {@link #GameTally(TeamRanker, String)}
+     * @throws IOException if reading fails, or what's read isn't a saved tally.
+     */
+    static GameTally readFrom(DataInput in, TeamRanker ranker, String source) throws IOException {
+        GameTally tally = new GameTally(ranker, source);
+        int teamCount = in.readInt();
+        boolean savedGoals = in.readBoolean();
+        if (!savedGoals && tally.goalsFor != null) {
+            throw new IOException("Saved tally has no goals");
+        }
+        for (int team = 0; team < teamCount; team++) {
+            byte[] name = readBytes(in);
+            if (name == null) {
+                throw new IOException("Saved tally has a team without a name");
+            }
+            int id = tally.internTeam(ByteBuffer.wrap(name), 0, name.length);
+            if (id != team) {
+                throw new IOException("Saved tally has a repeated team: " + tally.getName(id));
+            }
+            tally.addPoints(id, in.readLong());
+            if (savedGoals) {
+                long goalsFor = in.readLong();
+                long goalsAgainst = in.readLong();
+                if (tally.goalsFor != null) { // else the ranker has no use for them
+                    tally.goalsFor[id] = goalsFor;
+                    tally.goalsAgainst[id] = goalsAgainst;
+                }
+            }
+        }
+        int pairCount = in.readInt();
+        if (pairCount < 0 && tally.headToHead != null) {
+            throw new IOException("Saved tally has no head-to-head results");
+        }
+        for (int pair = 0; pair < pairCount; pair++) {
+            int lowId = in.readInt();
+            int highId = in.readInt();
+            long lowPoints = in.readLong();
+            long highPoints = in.readLong();
+            if (lowId < 0 || lowId >= highId || highId >= teamCount) {
+                throw new IOException("Saved tally has a bad head-to-head pair");
+            }
+            if (tally.headToHead != null) { // else the ranker has no use for them
+                tally.headToHead.add(lowId, highId, lowPoints, highPoints);
+            }
+        }
+        tally.lineCount = in.readLong();
+        tally.badLineCount = in.readLong();
+        int badLineCount = in.readInt();
+        BadLine.Reason[] reasons = BadLine.Reason.values();
+        for (int i = 0; i < badLineCount; i++) {
+            String badLineSource = readString(in);
+            long lineNumber = in.readLong();
+            int reason = in.readByte();
+            if (reason < 0 || reason >= reasons.length) {
+                throw new IOException("Saved tally has an unknown bad line reason: " + reason);
+            }
+            tally.badLines.add(
+                    new BadLine(badLineSource, lineNumber, reasons[reason], readString(in)));
+        }
+        return tally;
+    }
+
+    private static void writeString(DataOutput out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < -1) {
+            throw new IOException("Saved tally has a negative length: " + length);
+        }
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    void setListener(PointsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Replaces the listener (by default the ranker's {@link ErrorPolicy#getReporter()}) told about
+     * bad lines, first handing it any bad lines kept so far. Null means keep them instead.
+     */
+    void setBadLineListener(BadLineListener badLineListener) {
+        this.badLineListener = badLineListener;
+        if (badLineListener != null) {
+            badLines.forEach(badLineListener::onBadLine);
+            badLines.clear();
+        }
+    }
+
+    /**
+     * Skips any line whose game the filter has seen before (from here on), as a duplicate rather
+     * than a bad line. With match ids, a line without one is a bad line.
+     */
+    void setDuplicateFilter(DuplicateFilter duplicateFilter) {
+        this.duplicateFilter = duplicateFilter;
+    }
+
+    TeamRanker getRanker() {
+        return ranker;
+    }
+
+    int getTeamCount() {
+        return dictionary.size();
+    }
+
+    /**
+     * @return roughly how many bytes the tally holds (not counting bad lines).
+     */
+    long estimateSize() {
+        return (goalsFor == null ? 8L : 24L) * points.length + dictionary.estimateSize()
+                + (headToHead == null ? 0 : headToHead.estimateSize());
+    }
+
+    /**
+     * @return the id of the named team, or -1 if it hasn't played (validly) yet.
+     */
+    int findTeam(String name) {
+        return dictionary.find(name);
+    }
+
+    /**
+     * Compares two teams' names as {@link String#compareTo} would, without decoding them.
+     */
+    int compareNames(int teamId1, int teamId2) {
+        return dictionary.compareNames(teamId1, teamId2);
+    }
+
+    String getName(int teamId) {
+        return dictionary.name(teamId);
+    }
+
+    long getPoints(int teamId) {
+        return points[teamId];
+    }
+
+    /**
+     * @return the goals the team has scored, or 0 unless the ranker needs goals (see
+     * {@link TeamRanker#needsGoals()}).
+     */
+    long getGoalsFor(int teamId) {
+        return goalsFor == null ? 0 : goalsFor[teamId];
+    }
+
+    /**
+     * @return the goals the team has conceded, or 0 unless the ranker needs goals.
+     */
+    long getGoalsAgainst(int teamId) {
+        return goalsAgainst == null ? 0 : goalsAgainst[teamId];
+    }
+
+    /**
+     * @return the results between each pair of teams, or null unless the ranker needs them (see
+     * {@link TeamRanker#needsHeadToHead()}).
+     */
+    HeadToHead getHeadToHead() {
+        return headToHead;
+    }
+
+    /**
+     * @return a freshly created {@link Team} for every team in the tally, in id order.
+     */
+    List<Team> getTeams() {
+        List<Team> teams = new ArrayList<>(dictionary.size());
+        for (int id = 0; id < dictionary.size(); id++) {
+            teams.add(new Team(dictionary.name(id), points[id]));
+        }
+        return teams;
+    }
+
+    /**
+     * @return the bad lines found, other than any that were passed to a {@link BadLineListener}.
+     */
+    List<BadLine> getBadLines() {
+        return badLines;
+    }
+
+    /**
+     * @return the number of bad lines found, whether kept or passed to a listener.
+     */
+    long getBadLineCount() {
+        return badLineCount;
+    }
+
+    /**
+     * @return the duplicates skipped (see {@link #setDuplicateFilter}), other than any the filter
+     * reported.
+     */
+    List<BadLine> getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return the number of duplicates skipped, whether kept or reported.
+     */
+    long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Takes lines as per {@link #acceptLine(ByteBuffer, int, int)}, but holds on to up to
+     * {@value #SIZE} of them (as parsed) before dealing with them, in order, so that their games can
+     * be looked up in the duplicate filter all at once, as per {@link DuplicateFilter#findDuplicates}.
+     * That overlaps the cache misses that otherwise make checking for duplicates cost more than
+     * everything else done with a line.
+     */
+    private final class LineBatch implements LineScanner.LineHandler {
+
+        private static final int SIZE = 32;
+
+        private ByteBuffer buf; // that all the lines held are in
+        private int count;
+        private final int[] starts = new int[SIZE];
+        private final int[] ends = new int[SIZE];
+        private final BadLine.Reason[] failures = new BadLine.Reason[SIZE]; // null if parsed
+        private final int[] team1Starts = new int[SIZE];
+        private final int[] team1Ends = new int[SIZE];
+        private final int[] team2Starts = new int[SIZE];
+        private final int[] team2Ends = new int[SIZE];
+        private final int[] team1Scores = new int[SIZE];
+        private final int[] team2Scores = new int[SIZE];
+        private int gameCount; // of the lines held, those parsed
+        private final long[] fingerprints = new long[SIZE]; // of the games parsed
+        private final int[] gameStarts = new int[SIZE]; // of the games parsed: their lines' starts
+        private final boolean[] duplicates = new boolean[SIZE];
+
+        @Override
+        public void onLine(ByteBuffer buf, int start, int end) {
+            this.buf = buf;
+            starts[count] = start;
+            ends[count] = end;
+            int gameStart = duplicateFilter.gameStart(buf, start, end);
+            if (gameStart < 0 || !parser.parse(buf, gameStart, end)) {
+                failures[count] = gameStart < 0 ? BadLine.Reason.MISSING_MATCH_ID
+                        : parser.failure();
+            } else {
+                failures[count] = null;
+                team1Starts[count] = parser.team1Start();
+                team1Ends[count] = parser.team1End();
+                team2Starts[count] = parser.team2Start();
+                team2Ends[count] = parser.team2End();
+                team1Scores[count] = parser.team1Score();
+                team2Scores[count] = parser.team2Score();
+                gameStarts[gameCount] = start;
+                fingerprints[gameCount++] = DuplicateFilter.fingerprint(buf, start, gameStart,
+                        parser);
+            }
+            if (++count == SIZE) {
+                flush();
+            }
+        }
+
+        @Override
+        public void endOfLines() {
+            flush();
+        }
+
+        private void flush() {
+            duplicateFilter.findDuplicates(fingerprints, gameStarts, gameCount, duplicates);
+            int lines = count;
+            count = 0; // before anything can throw, so nothing's dealt with twice
+            gameCount = 0;
+            for (int i = 0, game = 0; i < lines; i++) {
+                lineCount++;
+                if (failures[i] != null) {
+                    rejectLine(buf, starts[i], ends[i], lineCount, failures[i]);
+                } else if (duplicates[game++]) {
+                    addDuplicate(new BadLine(source, lineCount, BadLine.Reason.DUPLICATE,
+                            GameLineParser.decode(buf, starts[i], ends[i])));
+                } else {
+                    int team1Id = dictionary.intern(buf, team1Starts[i], team1Ends[i]);
+                    int team2Id = dictionary.intern(buf, team2Starts[i], team2Ends[i]);
+                    addGame(team1Id, team1Scores[i], team2Id, team2Scores[i]);
+                }
+            }
+        }
+    }
+}
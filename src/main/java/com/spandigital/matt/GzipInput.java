@@ -0,0 +1,507 @@
+package com.spandigital.matt;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads gzip-compressed inputs straight into the line scanner, without decompressing them to disk
+ * first. Inputs are recognised by their first bytes (the gzip magic number) rather than their
+ * name.
+ * <br>
+ * A gzip file is a series of members, each compressed on its own, which tools like {@code pigz}
+ * and {@code bgzip} (or simply concatenating {@code .gz} files) write many of. Members can be
+ * decompressed in parallel, but where one ends is only known once it has been, so a file's members
+ * are found speculatively: every offset holding a plausible member header is handed to a worker to
+ * decompress, up to twice the pool's parallelism ahead of the reader. The reader then
+ * follows the chain of members from the start of the file, each starting where the last ended,
+ * ignoring any speculation on offsets that turned out to be inside a member (where the header's
+ * four bytes were a coincidence, about once per 128 MB of compressed data).
+ * <br>
+ * Decompressed members wait in memory till read, so a worker gives up on a member bigger than
+ * {@link #DEFAULT_MAX_MEMBER_SIZE}, and the reader decompresses that one itself, as it goes. So a
+ * file with a single member (the usual output of {@code gzip}) streams through at the usual speed,
+ * just without any parallelism. The members buffered at once (read ahead, or still being
+ * decompressed) are bounded in total too, to {@value #BUFFERED_MEMBERS} times the biggest a member
+ * can be, whatever the parallelism: no more are handed out while that's taken, and a worker whose
+ * member would take it past that gives up on it as if it were too big. Stdin can't be read ahead
+ * of the reader, so is always decompressed as it's read.
+ */
+final class GzipInput {
+
+    static final int DEFAULT_MAX_MEMBER_SIZE = 16 * 1024 * 1024;
+    static final int BUFFERED_MEMBERS = 4;
+
+    private static final int MAGIC_1 = 0x1F;
+    private static final int MAGIC_2 = 0x8B;
+    private static final int DEFLATE = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int RESERVED_FLAGS = 0xE0;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SCAN_BLOCK_SIZE = 1024 * 1024;
+
+    private GzipInput() {
+    }
+
+    /**
+     * @return whether the file starts with the gzip magic number.
+     */
+    static boolean isGzip(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(2);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+            }
+            return magic.position() == 2 && (magic.get(0) & 0xFF) == MAGIC_1
+                    && (magic.get(1) & 0xFF) == MAGIC_2;
+        }
+    }
+
+    /**
+     * Opens a gzip file, decompressing its members in parallel on the common pool.
+     */
+    static ReadableByteChannel open(Path path) throws IOException {
+        return open(path, ForkJoinPool.commonPool(), DEFAULT_MAX_MEMBER_SIZE);
+    }
+
+    /**
+     * @param maxMemberSize how big a member can be before the reader decompresses it itself,
+     *                      rather than a worker (and so how many bytes can be buffered at once).
+     *                      Mostly exposed so that tests can force that on small files.
+     */
+    static ReadableByteChannel open(Path path, ForkJoinPool pool, int maxMemberSize)
+            throws IOException {
+        return new MemberChannel(FileChannel.open(path, StandardOpenOption.READ), pool,
+                maxMemberSize);
+    }
+
+    /**
+     * @return a channel over the stream, decompressing it (as it's read) if it starts with the
+     * gzip magic number, as stdin might.
+     */
+    static ReadableByteChannel open(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        boolean gzip = buffered.read() == MAGIC_1 && buffered.read() == MAGIC_2;
+        buffered.reset();
+        return Channels.newChannel(gzip ? new GZIPInputStream(buffered, BUFFER_SIZE) : buffered);
+    }
+
+    /**
+     * A member decompressed in full by a worker, or null data if it was too big.
+     */
+    private static final class Member {
+
+        final ByteBuffer data;
+        final long end; // just past its trailer
+        final int buffered; // bytes taken from the channel's budget, till read or thrown away
+
+        Member(ByteBuffer data, long end, int buffered) {
+            this.data = data;
+            this.end = end;
+            this.buffered = buffered;
+        }
+    }
+
+    /**
+     * A member being (or about to be) decompressed by a worker.
+     */
+    private static final class Pending {
+
+        final long start;
+        final CompletableFuture<Member> member = new CompletableFuture<>();
+
+        Pending(long start) {
+            this.start = start;
+        }
+    }
+
+    /**
+     * The decompressed content of a file's members, in order.
+     */
+    private static final class MemberChannel implements ReadableByteChannel {
+
+        private final FileChannel file;
+        private final long size;
+        private final ForkJoinPool pool;
+        private final int maxMemberSize;
+        private final int window;
+        private final long maxBuffered;
+        private final AtomicLong buffered = new AtomicLong(); // by members in workers or read ahead
+        private final ArrayDeque<Long> candidates = new ArrayDeque<>(); // found, not yet handed out
+        private final ArrayDeque<Pending> pending = new ArrayDeque<>(); // in file order
+        private final ByteBuffer scanBuffer = ByteBuffer.allocate(SCAN_BLOCK_SIZE + 3);
+        private long scanned; // offsets before this have been checked for member headers
+        private long next; // where the next member in the chain starts
+        private ByteBuffer current = ByteBuffer.allocate(0); // of a member a worker decompressed
+        private int currentBuffered; // of the budget, till current's been read
+        private MemberDecoder decoder; // of a member too big for a worker, else null
+        private final byte[] scratch = new byte[BUFFER_SIZE];
+        private boolean done;
+        private boolean open = true;
+
+        MemberChannel(FileChannel file, ForkJoinPool pool, int maxMemberSize) throws IOException {
+            this.file = file;
+            this.size = file.size();
+            this.pool = pool;
+            this.maxMemberSize = maxMemberSize;
+            this.window = 2 * pool.getParallelism();
+            this.maxBuffered = (long) BUFFERED_MEMBERS * maxMemberSize;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            if (!dst.hasRemaining()) {
+                return 0;
+            }
+            while (!current.hasRemaining()) {
+                if (decoder != null) {
+                    int n = decoder.inflate(scratch, 0, Math.min(scratch.length, dst.remaining()));
+                    if (n >= 0) {
+                        dst.put(scratch, 0, n);
+                        return n;
+                    }
+                    next = decoder.end();
+                    decoder.close();
+                    decoder = null;
+                }
+                if (done || !nextMember()) {
+                    done = true;
+                    return -1;
+                }
+            }
+            int n = Math.min(current.remaining(), dst.remaining());
+            dst.put(current.slice().limit(n));
+            current.position(current.position() + n);
+            return n;
+        }
+
+        /**
+         * Moves on to the member starting at {@code next}, as decompressed by a worker, or by a
+         * decoder for this channel if it was too big.
+         *
+         * @return false if there are no more members, i.e. we're at the end of the file, or the
+         * rest of it isn't gzip (which, as for {@link GZIPInputStream}, is ignored).
+         */
+        private boolean nextMember() throws IOException {
+            while (true) {
+                buffered.addAndGet(-currentBuffered); // done with the last one
+                currentBuffered = 0;
+                while (!pending.isEmpty() && pending.peekFirst().start < next) {
+                    discard(pending.pollFirst()); // it was inside the last member
+                }
+                handOut();
+                if (pending.isEmpty() || pending.peekFirst().start != next) {
+                    if (next == 0) {
+                        throw new ZipException("Not in GZIP format");
+                    }
+                    return false;
+                }
+                Member member = await(pending.pollFirst());
+                currentBuffered = member.buffered;
+                handOut();
+                if (member.data == null) {
+                    decoder = new MemberDecoder(file, next);
+                    return true;
+                }
+                next = member.end;
+                if (member.data.hasRemaining()) {
+                    current = member.data;
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Hands candidate members (at or after {@code next}) out to workers till the window or the
+         * budget's full, scanning no more than a block per window slot ahead for them. The next
+         * member is always handed out, though, so the reader can't be left waiting on the budget.
+         */
+        private void handOut() throws IOException {
+            scanned = Math.max(scanned, next); // anything before is inside a member we've had
+            long horizon = Math.min(size, next + (long) window * SCAN_BLOCK_SIZE);
+            while (pending.size() < window
+                    && (pending.isEmpty() || buffered.get() < maxBuffered)) {
+                while (!candidates.isEmpty() && candidates.peekFirst() < next) {
+                    candidates.pollFirst();
+                }
+                if (candidates.isEmpty()) {
+                    if (scanned >= horizon) {
+                        return;
+                    }
+                    scan();
+                    continue;
+                }
+                Pending member = new Pending(candidates.pollFirst());
+                pending.addLast(member);
+                pool.execute(() -> {
+                    try {
+                        Member decompressed = decompress(member);
+                        if (!member.member.complete(decompressed)) { // thrown away meanwhile
+                            buffered.addAndGet(-decompressed.buffered);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        member.member.completeExceptionally(e);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Gives the budget back for a member that won't be read, whether it's been decompressed
+         * yet or not (in which case the worker gives it back once done).
+         */
+        private void discard(Pending member) {
+            if (!member.member.cancel(false) && !member.member.isCompletedExceptionally()) {
+                buffered.addAndGet(-member.member.join().buffered);
+            }
+        }
+
+        /**
+         * Finds the offsets in the next block of the file that could start a member: the magic
+         * number, deflate, and no reserved flags.
+         */
+        private void scan() throws IOException {
+            scanBuffer.clear();
+            while (scanBuffer.hasRemaining()
+                    && file.read(scanBuffer, scanned + scanBuffer.position()) >= 0) {
+            }
+            int length = scanBuffer.position();
+            for (int i = 0; i + 3 < length && i < SCAN_BLOCK_SIZE; i++) {
+                if ((scanBuffer.get(i) & 0xFF) == MAGIC_1
+                        && (scanBuffer.get(i + 1) & 0xFF) == MAGIC_2
+                        && scanBuffer.get(i + 2) == DEFLATE
+                        && (scanBuffer.get(i + 3) & RESERVED_FLAGS) == 0) {
+                    candidates.addLast(scanned + i);
+                }
+            }
+            scanned += SCAN_BLOCK_SIZE;
+        }
+
+        /**
+         * @return the member, or one with null data if it's bigger than {@code maxMemberSize}, or
+         * than what's left of the budget (or it's been thrown away meanwhile).
+         */
+        private Member decompress(Pending member) throws IOException {
+            if (member.member.isCancelled()) {
+                return new Member(null, -1, 0);
+            }
+            MemberDecoder decoder = new MemberDecoder(file, member.start);
+            int taken = 0;
+            try {
+                byte[] data = new byte[0];
+                int length = 0;
+                while (true) {
+                    if (length == data.length) {
+                        int grown = Math.min(Math.max(2 * length, BUFFER_SIZE), maxMemberSize);
+                        if (length >= maxMemberSize || member.member.isCancelled()) {
+                            return new Member(null, -1, 0);
+                        }
+                        if (buffered.addAndGet(grown - length) > maxBuffered) {
+                            buffered.addAndGet(length - grown);
+                            return new Member(null, -1, 0);
+                        }
+                        taken = grown;
+                        data = Arrays.copyOf(data, grown);
+                    }
+                    int n = decoder.inflate(data, length, data.length - length);
+                    if (n < 0) {
+                        Member decompressed = new Member(ByteBuffer.wrap(data, 0, length),
+                                decoder.end(), taken);
+                        taken = 0;
+                        return decompressed;
+                    }
+                    length += n;
+                }
+            } finally {
+                buffered.addAndGet(-taken); // unless handed on with the member
+                decoder.close();
+            }
+        }
+
+        private static Member await(Pending pending) throws IOException {
+            try {
+                return pending.member.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while decompressing");
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            for (Pending member : pending) {
+                discard(member);
+            }
+            pending.clear();
+            if (decoder != null) {
+                decoder.close();
+            }
+            file.close();
+        }
+    }
+
+    /**
+     * Decompresses the member starting at some offset of a file, checking its trailer (CRC-32 and
+     * size) once done. Reads the file by position, so any number can share it.
+     */
+    private static final class MemberDecoder {
+
+        private final FileChannel file;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private long bufferStart; // the file offset of buffer[0]
+        private int position;
+        private int limit;
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        private long size;
+        private boolean finished;
+
+        MemberDecoder(FileChannel file, long start) throws IOException {
+            this.file = file;
+            this.bufferStart = start;
+            if (read() != MAGIC_1 || read() != MAGIC_2 || read() != DEFLATE) {
+                throw new ZipException("Not in GZIP format");
+            }
+            int flags = read();
+            skip(6); // modification time, extra flags and OS
+            if ((flags & FEXTRA) != 0) {
+                skip(read() | read() << 8);
+            }
+            if ((flags & FNAME) != 0) {
+                while (read() != 0) {
+                }
+            }
+            if ((flags & FCOMMENT) != 0) {
+                while (read() != 0) {
+                }
+            }
+            if ((flags & FHCRC) != 0) {
+                skip(2);
+            }
+        }
+
+        /**
+         * Decompresses up to {@code length} (at least 1) bytes into the array.
+         *
+         * @return the number of bytes decompressed, or -1 if the member's over.
+         * @throws ZipException if the member's corrupt.
+         * @throws EOFException if the file ends before the member does.
+         */
+        int inflate(byte[] out, int offset, int length) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            try {
+                int n;
+                while ((n = inflater.inflate(out, offset, length)) == 0) {
+                    if (inflater.finished()) {
+                        position -= inflater.getRemaining();
+                        checkTrailer();
+                        finished = true;
+                        return -1;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new ZipException("Invalid GZIP member (needs a dictionary)");
+                    }
+                    if (position == limit) {
+                        fill();
+                    }
+                    inflater.setInput(buffer, position, limit - position);
+                    position = limit;
+                }
+                crc.update(out, offset, n);
+                size += n;
+                return n;
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+        }
+
+        /**
+         * @return the file offset just past the member's trailer, once it's been decompressed.
+         */
+        long end() {
+            return bufferStart + position;
+        }
+
+        void close() {
+            inflater.end();
+        }
+
+        private void checkTrailer() throws IOException {
+            long expectedCrc = readIntLE();
+            long expectedSize = readIntLE();
+            if (expectedCrc != crc.getValue() || expectedSize != (size & 0xFFFFFFFFL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        }
+
+        private long readIntLE() throws IOException {
+            return (read() | read() << 8 | read() << 16 | (long) read() << 24);
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                fill();
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        private void skip(int n) throws IOException {
+            for (int i = 0; i < n; i++) {
+                read();
+            }
+        }
+
+        private void fill() throws IOException {
+            bufferStart += limit;
+            position = 0;
+            limit = 0;
+            int n = file.read(ByteBuffer.wrap(buffer), bufferStart);
+            if (n <= 0) {
+                throw new EOFException("Unexpected end of GZIP input");
+            }
+            limit = n;
+        }
+    }
+}
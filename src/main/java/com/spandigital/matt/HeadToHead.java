@@ -0,0 +1,125 @@
+package com.spandigital.matt;
+
+import java.util.Arrays;
+
+/**
+ * Points earned in the games between each pair of teams that have met, for head-to-head
+ * tiebreaks. Only pairs that have actually played get an entry, held in a primitive open
+ * addressing table keyed by the pair of team ids (lower id in the high half), so an entry costs
+ * three longs (at no more than half full) rather than an object per game or a matrix per league.
+ * <br>
+ * Not thread-safe for updates, but fine for concurrent reads once complete.
+ */
+final class HeadToHead {
+
+    @FunctionalInterface
+    interface PairVisitor {
+        void visit(int lowId, int highId, long lowIdPoints, long highIdPoints);
+    }
+
+    private static final long EMPTY = -1; // team ids aren't negative, so no pair packs to this
+
+    private long[] keys;
+    private long[] lowPoints; // points earned by the pair's lower id team against the other
+    private long[] highPoints;
+    private int mask;
+    private int size;
+
+    HeadToHead() {
+        allocate(16);
+    }
+
+    /**
+     * Records a game (or a tally's worth of games) between two different teams.
+     */
+    void add(int team1Id, int team2Id, long team1Points, long team2Points) {
+        boolean team1Low = team1Id < team2Id;
+        long key = key(team1Low ? team1Id : team2Id, team1Low ? team2Id : team1Id);
+        int slot = find(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            size++;
+        }
+        lowPoints[slot] += team1Low ? team1Points : team2Points;
+        highPoints[slot] += team1Low ? team2Points : team1Points;
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+    }
+
+    /**
+     * @return the points the first team has earned in its games against the second.
+     */
+    long pointsAgainst(int teamId, int opponentId) {
+        if (teamId == opponentId) {
+            return 0;
+        }
+        boolean low = teamId < opponentId;
+        int slot = find(key(low ? teamId : opponentId, low ? opponentId : teamId));
+        if (keys[slot] == EMPTY) {
+            return 0;
+        }
+        return low ? lowPoints[slot] : highPoints[slot];
+    }
+
+    /**
+     * @return the number of pairs that have met.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Calls the visitor with every pair that has met (in no particular order).
+     */
+    void forEach(PairVisitor visitor) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            long key = keys[slot];
+            if (key != EMPTY) {
+                visitor.visit((int) (key >>> 32), (int) key, lowPoints[slot], highPoints[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return roughly how many bytes the table holds.
+     */
+    long estimateSize() {
+        return 24L * keys.length;
+    }
+
+    private static long key(int lowId, int highId) {
+        return ((long) lowId << 32) | highId;
+    }
+
+    private int find(long key) {
+        int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        lowPoints = new long[capacity];
+        highPoints = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        long[] oldLowPoints = lowPoints;
+        long[] oldHighPoints = highPoints;
+        allocate(keys.length * 2);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                int newSlot = find(oldKeys[slot]);
+                keys[newSlot] = oldKeys[slot];
+                lowPoints[newSlot] = oldLowPoints[slot];
+                highPoints[newSlot] = oldHighPoints[slot];
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.spandigital.matt;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Somewhere game results can be read from: a file, or stdin (given as {@code -} on the command
+ * line). Either may be gzip-compressed, in which case it's decompressed as it's read, as per
+ * {@link GzipInput}.
+ */
+final class InputSource {
+
+    static final String STDIN_ARGUMENT = "-";
+
+    private final Path path; // null for stdin
+
+    private InputSource(Path path) {
+        this.path = path;
+    }
+
+    static InputSource of(Path path) {
+        return new InputSource(Objects.requireNonNull(path));
+    }
+
+    static InputSource stdin() {
+        return new InputSource(null);
+    }
+
+    boolean isStdin() {
+        return path == null;
+    }
+
+    /**
+     * @return the file's path, or null for stdin.
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return how to refer to the input in messages.
+     */
+    String getName() {
+        return path == null ? "stdin" : path.toString();
+    }
+
+    /**
+     * @return whether the input's a gzip-compressed file, so can only be read through
+     * {@link #open()} (not mapped or read by offset). Always false for stdin, which is only
+     * checked as it's opened.
+     */
+    boolean isCompressed() throws IOException {
+        return path != null && GzipInput.isGzip(path);
+    }
+
+    /**
+     * Opens a fresh channel over the input, decompressing it if it's gzip-compressed. Closing a
+     * stdin channel closes stdin, so only open it the once.
+     */
+    ReadableByteChannel open() throws IOException {
+        if (path == null) {
+            return GzipInput.open(System.in);
+        }
+        return GzipInput.isGzip(path) ? GzipInput.open(path) : Files.newByteChannel(path);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Objects.equals(path, ((InputSource) o).path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(path);
+    }
+
+    @Override
+    public String toString() {
+        return "InputSource{" + getName() + '}';
+    }
+}
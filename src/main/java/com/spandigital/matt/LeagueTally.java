@@ -0,0 +1,157 @@
+package com.spandigital.matt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tallies results for many leagues (or divisions) at once, from lines that start with the league's
+ * name and a {@code |}, e.g. {@code Premier League | Lions 3, Snakes 3}. Each league gets its own
+ * {@link GameTally}, so can be ranked on its own, but the input is only read once.
+ * <br>
+ * League names are trimmed, as team names are, and interned through a {@link TeamDictionary} so
+ * finding a line's league allocates nothing. Bad lines (including ones without a league) keep
+ * their line number within the input, and the ranker's {@link ErrorPolicy} applies across all
+ * leagues together.
+ * <br>
+ * Not thread-safe.
+ */
+final class LeagueTally {
+
+    static final byte SEPARATOR = '|';
+
+    private final TeamRanker ranker;
+    private final TeamRanker leagueRanker; // hands bad lines back here, rather than keeping them
+    private final TeamDictionary leagues = new TeamDictionary();
+    private final List<GameTally> tallies = new ArrayList<>(); // indexed by league id
+    private final List<BadLine> badLines = new ArrayList<>();
+    private String source; // of the input being read
+    private long inputLineCount;
+    private long lineCount;
+    private long badLineCount;
+
+    LeagueTally(TeamRanker ranker) {
+        this.ranker = ranker;
+        this.leagueRanker = ranker.withErrorPolicy(ErrorPolicy.collectAll()
+                .withReporter(badLine -> addBadLine(badLine.withSource(source))));
+    }
+
+    /**
+     * Consumes an input until end of stream.
+     *
+     * @param source name of the input, to tag bad lines with if there's more than one, may be null.
+     */
+    void accept(ReadableByteChannel channel, String source) throws IOException {
+        this.source = source;
+        inputLineCount = 0;
+        LineScanner.scan(channel, this::acceptLine, ranker.getMetrics());
+    }
+
+    /**
+     * Consumes a single line, occupying {@code [start, end)} of the buffer.
+     *
+     * @throws TooManyBadLinesException if the line was bad and the ranker's {@link ErrorPolicy}
+     *                                  allows no more.
+     */
+    void acceptLine(ByteBuffer buf, int start, int end) {
+        lineCount++;
+        inputLineCount++;
+        int separator = start;
+        while (separator < end && buf.get(separator) != SEPARATOR) {
+            separator++;
+        }
+        int leagueStart = start;
+        int leagueEnd = separator;
+        while (leagueStart < leagueEnd && (buf.get(leagueStart) & 0xFF) <= ' ') {
+            leagueStart++;
+        }
+        while (leagueEnd > leagueStart && (buf.get(leagueEnd - 1) & 0xFF) <= ' ') {
+            leagueEnd--;
+        }
+        if (separator == end || leagueStart == leagueEnd) {
+            ranker.getMetrics().addBadLine();
+            addBadLine(new BadLine(source, inputLineCount, BadLine.Reason.MISSING_LEAGUE,
+                    GameLineParser.decode(buf, start, end)));
+            return;
+        }
+        int league = leagues.intern(buf, leagueStart, leagueEnd);
+        if (league == tallies.size()) {
+            tallies.add(new GameTally(leagueRanker));
+        }
+        tallies.get(league).acceptLine(buf, separator + 1, end, inputLineCount);
+    }
+
+    private void addBadLine(BadLine badLine) {
+        badLineCount++;
+        GameTally.BadLineListener reporter = ranker.getErrorPolicy().getReporter();
+        if (reporter != null) {
+            reporter.onBadLine(badLine);
+        } else {
+            badLines.add(badLine);
+        }
+        checkBadLines(false);
+    }
+
+    /**
+     * As per {@link GameTally#checkBadLines(boolean)}, but over all leagues.
+     */
+    void checkBadLines(boolean complete) {
+        try {
+            ranker.getErrorPolicy().check(badLineCount, lineCount, complete);
+        } catch (TooManyBadLinesException e) {
+            throw e.withBadLines(badLines);
+        }
+    }
+
+    int getLeagueCount() {
+        return tallies.size();
+    }
+
+    String getLeague(int league) {
+        return leagues.name(league);
+    }
+
+    /**
+     * Compares two leagues' names as {@link String#compareTo} would.
+     */
+    int compareLeagues(int league1, int league2) {
+        return leagues.compareNames(league1, league2);
+    }
+
+    /**
+     * @return the league's tally. Its bad lines are counted but not kept; see
+     * {@link #getBadLines()} instead.
+     */
+    GameTally getTally(int league) {
+        return tallies.get(league);
+    }
+
+    /**
+     * @return the bad lines found in any league (or without one), in input order, other than any
+     * passed to the ranker's {@link ErrorPolicy#getReporter()}.
+     */
+    List<BadLine> getBadLines() {
+        return badLines;
+    }
+
+    long getBadLineCount() {
+        return badLineCount;
+    }
+
+    long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return roughly how many bytes the tallies hold, as per {@link GameTally#estimateSize()}.
+     */
+    long estimateSize() {
+        long size = leagues.estimateSize();
+        for (GameTally tally : tallies) {
+            size += tally.estimateSize();
+        }
+        return size;
+    }
+}
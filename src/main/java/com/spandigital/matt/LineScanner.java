@@ -0,0 +1,110 @@
+package com.spandigital.matt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Splits raw bytes into lines without decoding them. Line terminators are treated the same way as
+ * {@link java.io.BufferedReader#readLine()} (and hence {@link java.nio.file.Files#lines}) does:
+ * {@code \n}, {@code \r} or {@code \r\n}, with no empty line produced after a final terminator.
+ */
+final class LineScanner {
+
+    @FunctionalInterface
+    interface LineHandler {
+        /**
+         * @param buf   buffer holding the line
+         * @param start index of the first byte of the line (inclusive)
+         * @param end   index just past the last byte of the line, terminator excluded (exclusive)
+         */
+        void onLine(ByteBuffer buf, int start, int end);
+
+        /**
+         * Called once the lines handed over in a scan of a buffer are done with, before the buffer
+         * is reused, for handlers that hold on to lines to deal with a few at a time.
+         */
+        default void endOfLines() {
+        }
+    }
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private LineScanner() {
+    }
+
+    /**
+     * Reads the channel until end of stream, handing every line to the handler. Lines longer than
+     * the read buffer just make it grow.
+     *
+     * @param metrics where to record the time spent reading and scanning, and what was scanned.
+     */
+    static void scan(ReadableByteChannel channel, LineHandler handler, RunMetrics metrics)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            long started = System.nanoTime();
+            endOfInput = channel.read(buf) < 0;
+            metrics.addRead(System.nanoTime() - started);
+            int consumed = scan(buf, 0, buf.position(), endOfInput, handler, metrics);
+            if (consumed == 0 && !buf.hasRemaining()) { // single line longer than the buffer
+                buf = ByteBuffer.allocate(buf.capacity() * 2).put(buf.flip());
+            } else {
+                buf.limit(buf.position()).position(consumed);
+                buf.compact();
+            }
+        }
+    }
+
+    /**
+     * Hands every complete line within {@code [from, to)} to the handler.
+     *
+     * @param endOfInput whether the bytes at {@code to} are the end of all input. If not, a final
+     *                   unterminated line (or a final {@code \r} that may yet be followed by a
+     *                   {@code \n}) is left unconsumed for the caller to carry over.
+     * @param metrics    where to record the time spent scanning, and what was scanned.
+     * @return the index just past the last consumed byte, i.e. where the next scan should resume.
+     */
+    static int scan(ByteBuffer buf, int from, int to, boolean endOfInput, LineHandler handler,
+            RunMetrics metrics) {
+        long started = System.nanoTime();
+        int lines = 0;
+        int lineStart = from;
+        try {
+            for (int i = from; i < to; i++) {
+                byte b = buf.get(i);
+                if (b == '\n') {
+                    lines++;
+                    handler.onLine(buf, lineStart, i);
+                    lineStart = i + 1;
+                } else if (b == '\r') {
+                    if (i + 1 < to) {
+                        lines++;
+                        handler.onLine(buf, lineStart, i);
+                        if (buf.get(i + 1) == '\n') {
+                            i++;
+                        }
+                        lineStart = i + 1;
+                    } else if (endOfInput) {
+                        lines++;
+                        handler.onLine(buf, lineStart, i);
+                        lineStart = to;
+                    } else {
+                        handler.endOfLines();
+                        return lineStart;
+                    }
+                }
+            }
+            if (endOfInput && lineStart < to) {
+                lines++;
+                handler.onLine(buf, lineStart, to);
+                lineStart = to;
+            }
+            handler.endOfLines();
+            return lineStart;
+        } finally { // even if a handler gave up part way (e.g. too many bad lines)
+            metrics.addParse(System.nanoTime() - started, lines, lineStart - from);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.spandigital.matt;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * The ways a table can be written out (see {@link RankingWriter} for the details of each).
+ */
+enum OutputFormat {
+    /**
+     * {@code 1. Tarantulas, 6 pts}, one per line, as always.
+     */
+    TEXT("text"),
+    /**
+     * {@code rank,team,points}, with a header row.
+     */
+    CSV("csv"),
+    /**
+     * One {@code {"rank":1,"team":"Tarantulas","points":6}} object per line.
+     */
+    JSON_LINES("jsonl"),
+    /**
+     * Varint-encoded rows after a short magic header, for other programs to read back.
+     */
+    BINARY("binary");
+
+    private final String optionName;
+
+    OutputFormat(String optionName) {
+        this.optionName = optionName;
+    }
+
+    /**
+     * @throws IllegalArgumentException if there's no format of that name.
+     */
+    static OutputFormat forName(String name) {
+        for (OutputFormat format : values()) {
+            if (format.optionName.equals(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown output format: " + name + " (expected one of "
+                + Arrays.stream(values()).map(f -> f.optionName).collect(Collectors.joining(", "))
+                + ")");
+    }
+
+    String getOptionName() {
+        return optionName;
+    }
+}
@@ -0,0 +1,326 @@
+package com.spandigital.matt;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Tallies a single (large) file using every core available to a {@link ForkJoinPool}. The file is
+ * split into chunks that each end just after a line terminator (as per {@link LineScanner}: a
+ * {@code \n}, a {@code \r} or a {@code \r\n}), so that no line straddles two chunks.
+ * Each chunk is memory-mapped and tallied independently, and neighbouring tallies are then merged
+ * pairwise (in file order, so bad line numbers come out global again).
+ * <br>
+ * Chunks stop early if the ranker's {@link ErrorPolicy} gives up on them, but as their line
+ * numbers aren't known till merged, bad lines only go to the policy's reporter (if any) at the end.
+ * When a chunk does give up, the lines before it are counted so that its bad lines (and those of
+ * the chunks before it that had finished) can be reported with their real line numbers.
+ * <br>
+ * With a {@link DuplicateFilter#concurrent} filter, chunks share it to skip duplicates as they go,
+ * but as a chunk may find that another chunk's line is the duplicate, they only note where
+ * duplicates are. Those lines are looked up once all the chunks are done, in a single pass over
+ * the file up to the last of them.
+ */
+final class ParallelIngest {
+
+    static final long DEFAULT_MAX_CHUNK_SIZE = 64L * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4; // a little slack for uneven chunks/threads
+    private static final int ALIGNMENT_PROBE_SIZE = 4 * 1024;
+    private static final int LINE_COUNT_BUFFER_SIZE = 64 * 1024;
+
+    private ParallelIngest() {
+    }
+
+    static GameTally ingest(FileChannel input, TeamRanker ranker, ForkJoinPool pool)
+            throws IOException {
+        return ingest(input, ranker, null, pool, DEFAULT_MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * @param source       name to tag bad lines with (see {@link BadLine}), may be null.
+     * @param maxChunkSize upper bound on a chunk's size before newline alignment. Mostly exposed so
+     *                     that tests can force lots of chunks out of small files.
+     */
+    static GameTally ingest(FileChannel input, TeamRanker ranker, String source, ForkJoinPool pool,
+            long maxChunkSize) throws IOException {
+        return ingest(input, ranker, source, pool, maxChunkSize, null, 0);
+    }
+
+    /**
+     * As per {@link #ingest(FileChannel, TeamRanker, String, ForkJoinPool, long)}, but skipping
+     * games the filter has seen before, or sees earlier in the file.
+     *
+     * @param duplicateFilter a {@link DuplicateFilter#concurrent} filter, or null for none.
+     * @param inputStart      where the file starts among the filter's inputs: after every line
+     *                        it's checked so far, and with room for the file before any line it
+     *                        checks afterwards.
+     */
+    static GameTally ingest(FileChannel input, TeamRanker ranker, String source, ForkJoinPool pool,
+            long maxChunkSize, DuplicateFilter duplicateFilter, long inputStart)
+            throws IOException {
+        long[] boundaries = chunkBoundaries(input, pool.getParallelism(), maxChunkSize);
+        try {
+            long[][] repeats = duplicateFilter == null ? null : new long[boundaries.length - 1][];
+            GameTally tally = pool.invoke(new ChunkTask(input, ranker, source, boundaries, 0,
+                    boundaries.length - 1, duplicateFilter, inputStart, repeats));
+            // line numbers are only right now the chunks are merged, so report bad lines now
+            tally.setBadLineListener(ranker.getErrorPolicy().getReporter());
+            if (duplicateFilter != null) {
+                tally.setDuplicateFilter(duplicateFilter);
+                tally.addCountedDuplicates(findLines(input, source, repeats, inputStart));
+            }
+            return tally;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param repeats each chunk's duplicates, as positions among the filter's inputs.
+     * @return the duplicates, in file order.
+     */
+    private static List<BadLine> findLines(FileChannel input, String source, long[][] repeats,
+            long inputStart) throws IOException {
+        long[] positions = Arrays.stream(repeats).flatMapToLong(Arrays::stream)
+                .map(position -> position - inputStart).sorted().toArray();
+        long[] linesBefore = linesBefore(input, positions);
+        List<BadLine> duplicates = new ArrayList<>(positions.length);
+        for (int i = 0; i < positions.length; i++) {
+            duplicates.add(new BadLine(source, linesBefore[i] + 1, BadLine.Reason.DUPLICATE,
+                    lineAt(input, positions[i])));
+        }
+        return duplicates;
+    }
+
+    /**
+     * @return the (decoded) line starting at the given offset in the file.
+     */
+    private static String lineAt(FileChannel input, long start) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(ALIGNMENT_PROBE_SIZE);
+        while (true) {
+            int read = input.read(buf, start + buf.position());
+            for (int i = 0; i < buf.position(); i++) {
+                if (buf.get(i) == '\n' || buf.get(i) == '\r') {
+                    return GameLineParser.decode(buf, 0, i);
+                }
+            }
+            if (read < 0) {
+                return GameLineParser.decode(buf, 0, buf.position());
+            }
+            if (!buf.hasRemaining()) {
+                buf = ByteBuffer.allocate(buf.capacity() * 2).put(buf.flip());
+            }
+        }
+    }
+
+    /**
+     * @return ascending file offsets, the first being 0 and the last the file size, where each
+     * chunk {@code [boundaries[i], boundaries[i + 1])} ends straight after a line terminator (or at
+     * EOF).
+     */
+    static long[] chunkBoundaries(FileChannel input, int parallelism, long maxChunkSize)
+            throws IOException {
+        long size = input.size();
+        long chunkCount = Math.max((long) parallelism * CHUNKS_PER_THREAD,
+                (size + maxChunkSize - 1) / maxChunkSize);
+        long chunkSize = Math.max(1, size / chunkCount);
+
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        long previous = 0;
+        ByteBuffer probe = ByteBuffer.allocate(ALIGNMENT_PROBE_SIZE);
+        while (previous < size) {
+            long next = nextLineStart(input, previous + chunkSize - 1, size, probe);
+            if (next - previous > Integer.MAX_VALUE) { // can't map more than this in one go
+                throw new IOException("Found a run of more than " + Integer.MAX_VALUE
+                        + " bytes without a newline at offset " + previous);
+            }
+            boundaries.add(next);
+            previous = next;
+        }
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * @return the offset just past the first line terminator at or after {@code from} (taking a
+     * {@code \r\n} as one), or the file size if there isn't one.
+     */
+    private static long nextLineStart(FileChannel input, long from, long size, ByteBuffer probe)
+            throws IOException {
+        long position = from;
+        boolean afterCr = false;
+        while (position < size) {
+            probe.clear();
+            int read = input.read(probe, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = probe.get(i);
+                if (afterCr) {
+                    return b == '\n' ? position + i + 1 : position + i;
+                }
+                if (b == '\n') {
+                    return position + i + 1;
+                }
+                afterCr = b == '\r';
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * @param positions ascending file offsets, each the start of a line.
+     * @return for each offset, the number of lines that end before it, counted as per
+     * {@link LineScanner}: a {@code \n}, a {@code \r} or a {@code \r\n} ends a line. Reads the
+     * file from the start up to the last offset.
+     */
+    private static long[] linesBefore(FileChannel input, long[] positions) throws IOException {
+        long[] linesBefore = new long[positions.length];
+        ByteBuffer buf = ByteBuffer.allocate(LINE_COUNT_BUFFER_SIZE);
+        long lines = 0;
+        boolean afterCr = false;
+        long position = 0;
+        int next = 0;
+        long end = positions.length == 0 ? 0 : positions[positions.length - 1];
+        while (position < end) {
+            buf.clear().limit((int) Math.min(buf.capacity(), end - position));
+            int read = input.read(buf, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++, position++) {
+                while (next < positions.length && positions[next] == position) {
+                    linesBefore[next++] = lines;
+                }
+                byte b = buf.get(i);
+                if (b == '\r' || (b == '\n' && !afterCr)) {
+                    lines++;
+                }
+                afterCr = b == '\r';
+            }
+        }
+        while (next < positions.length) { // those at the last offset
+            linesBefore[next++] = lines;
+        }
+        return linesBefore;
+    }
+
+    private static final class ChunkTask extends RecursiveTask<GameTally> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel input;
+        private final TeamRanker ranker;
+        private final String source;
+        private final long[] boundaries;
+        private final int from; // index of first chunk's start boundary
+        private final int to; // index of last chunk's end boundary
+        private final DuplicateFilter duplicateFilter; // null for none
+        private final long inputStart;
+        private final long[][] repeats; // for each chunk, once done: its view's getRepeats()
+
+        ChunkTask(FileChannel input, TeamRanker ranker, String source, long[] boundaries, int from,
+                int to, DuplicateFilter duplicateFilter, long inputStart, long[][] repeats) {
+            this.input = input;
+            this.ranker = ranker;
+            this.source = source;
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+            this.duplicateFilter = duplicateFilter;
+            this.inputStart = inputStart;
+            this.repeats = repeats;
+        }
+
+        private ChunkTask part(int from, int to) {
+            return new ChunkTask(input, ranker, source, boundaries, from, to, duplicateFilter,
+                    inputStart, repeats);
+        }
+
+        @Override
+        protected GameTally compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                ChunkTask earlier = part(from, middle);
+                ChunkTask later = part(middle, to);
+                later.fork();
+                GameTally earlierTally = earlier.compute();
+                GameTally laterTally;
+                try {
+                    laterTally = later.join();
+                } catch (TooManyBadLinesException e) {
+                    // those found before the later half gave up come first
+                    List<BadLine> badLines = new ArrayList<>(
+                            numberFrom(earlierTally.getBadLines(), from));
+                    badLines.addAll(e.getBadLines());
+                    throw e.withBadLines(badLines);
+                }
+                try {
+                    return earlierTally.merge(laterTally);
+                } catch (TooManyBadLinesException e) { // the merged tally's, numbered from here
+                    throw e.withBadLines(numberFrom(e.getBadLines(), from));
+                }
+            }
+            GameTally tally = new GameTally(ranker, source);
+            tally.setBadLineListener(null); // keep them until merged, with proper line numbers
+            long start = boundaries[from];
+            int length = (int) (boundaries[to] - start);
+            DuplicateFilter chunkFilter = duplicateFilter == null ? null
+                    : duplicateFilter.forChunk(inputStart + start);
+            tally.setDuplicateFilter(chunkFilter);
+            if (length > 0) {
+                try {
+                    MappedByteBuffer chunk = input.map(FileChannel.MapMode.READ_ONLY, start, length);
+                    LineScanner.scan(chunk, 0, length, true, tally.lineHandler(),
+                            ranker.getMetrics());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (TooManyBadLinesException e) {
+                    throw e.withBadLines(numberFrom(tally.getBadLines(), from));
+                }
+            }
+            if (chunkFilter != null) {
+                repeats[from] = chunkFilter.getRepeats();
+            }
+            return tally;
+        }
+
+        /**
+         * @return the bad lines, numbered from the start of the given chunk, numbered from the
+         * start of the file instead.
+         */
+        private List<BadLine> numberFrom(List<BadLine> badLines, int chunk) {
+            if (badLines.isEmpty()) {
+                return badLines;
+            }
+            long lineOffset = linesBeforeChunk(boundaries[chunk]);
+            List<BadLine> numbered = new ArrayList<>(badLines.size());
+            for (BadLine badLine : badLines) {
+                numbered.add(badLine.withLineOffset(lineOffset));
+            }
+            return numbered;
+        }
+
+        /**
+         * @return the number of lines in {@code [0, end)} of the file, where {@code end} is a chunk
+         * boundary (so just after a line terminator). Only needed once reading's been given up on,
+         * so simply reads the lot.
+         */
+        private long linesBeforeChunk(long end) {
+            try {
+                return linesBefore(input, new long[]{end})[0];
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
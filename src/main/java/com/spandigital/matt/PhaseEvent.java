@@ -0,0 +1,47 @@
+package com.spandigital.matt;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event per run of a processing phase (ingesting an input, aggregating tallies, ranking or
+ * writing a table), so a recording shows where a run's time went alongside GC and I/O events.
+ * Costs next to nothing unless a recording with it enabled is running.
+ */
+@Name("com.spandigital.matt.Phase")
+@Label("Ranking Phase")
+@Category("Team Ranker")
+@Description("A phase of tallying and ranking results")
+@StackTrace(false)
+final class PhaseEvent extends jdk.jfr.Event {
+
+    static final String INGEST = "ingest";
+    static final String AGGREGATE = "aggregate";
+    static final String RANK = "rank";
+    static final String WRITE = "write";
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Source")
+    @Description("The input being ingested, if any")
+    String source;
+
+    @Label("Lines")
+    long lines;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Teams")
+    long teams;
+
+    PhaseEvent(String phase) {
+        this.phase = phase;
+    }
+}
@@ -0,0 +1,437 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple2;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes table rows to a channel in one of the {@link OutputFormat}s. Rows are formatted straight
+ * into one reusable buffer (numbers digit by digit, names through a reused encoder), which goes to
+ * the channel only when full or flushed, so a big table costs a handful of writes rather than a
+ * synchronized {@code println} (and a few Strings) per team.
+ * <br>
+ * The channel belongs to the caller: it's never closed here, but remember to {@link #flush()}.
+ */
+abstract class RankingWriter implements Flushable {
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Starts every {@link OutputFormat#BINARY} output: "RNK" and a format version byte.
+     */
+    static final byte[] BINARY_MAGIC = {'R', 'N', 'K', 1};
+
+    private final WritableByteChannel out;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder;
+    private final boolean asciiCompatible; // ASCII chars encode as themselves, one byte each
+    final boolean leagues; // whether rows are grouped by league (see startLeague)
+    String league; // current league, if grouped by league
+
+    private RankingWriter(WritableByteChannel out, Charset charset, int bufferSize,
+            boolean leagues) {
+        if (bufferSize < 16) { // room for the longest number, plus a bit
+            throw new IllegalArgumentException("Buffer size too small: " + bufferSize);
+        }
+        this.out = out;
+        this.leagues = leagues;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        // replace anything unencodable, as PrintStream and String.getBytes do
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.asciiCompatible = charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    static RankingWriter create(OutputFormat format, WritableByteChannel out) {
+        return create(format, out, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    /**
+     * @return a writer for the tables of several leagues, each started with
+     * {@link #startLeague(String)}.
+     */
+    static RankingWriter createForLeagues(OutputFormat format, WritableByteChannel out) {
+        return create(format, out, DEFAULT_BUFFER_SIZE, true);
+    }
+
+    /**
+     * @return a writer for a {@link ChangeFeed}'s changes, which are always JSON Lines.
+     */
+    static JsonLines createForChanges(WritableByteChannel out) {
+        return new JsonLines(out, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    /**
+     * @param bufferSize how much to format before writing to the channel. Mostly exposed so that
+     *                   tests can force rows to straddle buffer fills.
+     * @param leagues    whether there'll be tables for several leagues
+     */
+    static RankingWriter create(OutputFormat format, WritableByteChannel out, int bufferSize,
+            boolean leagues) {
+        return switch (format) {
+            case TEXT -> new Text(out, bufferSize, leagues);
+            case CSV -> new Csv(out, bufferSize, leagues);
+            case JSON_LINES -> new JsonLines(out, bufferSize, leagues);
+            case BINARY -> new Binary(out, bufferSize, leagues);
+        };
+    }
+
+    /**
+     * Starts the table of another league (only for writers created for leagues).
+     */
+    void startLeague(String league) throws IOException {
+        if (!leagues) {
+            throw new IllegalStateException("Not writing leagues");
+        }
+        writeLeague(league, this.league == null);
+        this.league = league;
+    }
+
+    abstract void writeLeague(String league, boolean first) throws IOException;
+
+    void write(List<Tuple2<Long, Team>> rows) throws IOException {
+        for (Tuple2<Long, Team> row : rows) {
+            write(row._1(), row._2().getName(), row._2().getPoints());
+        }
+    }
+
+    abstract void write(long rank, String name, long points) throws IOException;
+
+    @Override
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put(b);
+    }
+
+    /**
+     * Puts a String that's known to be ASCII (e.g. a literal separator).
+     */
+    void putAscii(String ascii) throws IOException {
+        if (!asciiCompatible) {
+            putEncoded(ascii);
+            return;
+        }
+        for (int i = 0; i < ascii.length(); i++) {
+            put((byte) ascii.charAt(i));
+        }
+    }
+
+    void putDecimal(long value) throws IOException {
+        if (value == Long.MIN_VALUE || !asciiCompatible) { // can't negate; rare enough not to care
+            putEncoded(Long.toString(value));
+            return;
+        }
+        if (buffer.remaining() < 20) {
+            flush();
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    /**
+     * Puts any text, in the writer's charset.
+     */
+    void putEncoded(CharSequence text) throws IOException {
+        if (asciiCompatible) { // try the (common) all-ASCII case without the encoder first
+            int i = 0;
+            while (i < text.length() && text.charAt(i) < 0x80) {
+                put((byte) text.charAt(i++));
+            }
+            if (i == text.length()) {
+                return;
+            }
+            text = text.subSequence(i, text.length());
+        }
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        CoderResult result;
+        while ((result = encoder.encode(chars, buffer, true)).isOverflow()) {
+            flush();
+        }
+        checkResult(result);
+        while ((result = encoder.flush(buffer)).isOverflow()) {
+            flush();
+        }
+        checkResult(result);
+    }
+
+    private static void checkResult(CoderResult result) throws IOException {
+        if (result.isError()) { // can't happen with REPLACE, but just in case
+            result.throwException();
+        }
+    }
+
+    /**
+     * The original format, byte for byte what {@code System.out.println} used to produce: the
+     * platform charset and line separator, and "pt" for a single point.
+     */
+    private static final class Text extends RankingWriter {
+
+        private final String lineSeparator = System.lineSeparator();
+
+        Text(WritableByteChannel out, int bufferSize, boolean leagues) {
+            super(out, Charset.defaultCharset(), bufferSize, leagues);
+        }
+
+        // the league's name on a line of its own, with a blank line between leagues
+        @Override
+        void writeLeague(String league, boolean first) throws IOException {
+            if (!first) {
+                putAscii(lineSeparator);
+            }
+            putEncoded(league);
+            putAscii(lineSeparator);
+        }
+
+        @Override
+        void write(long rank, String name, long points) throws IOException {
+            putDecimal(rank);
+            putAscii(". ");
+            putEncoded(name);
+            putAscii(", ");
+            putDecimal(points);
+            putAscii(points == 1 ? " pt" : " pts");
+            putAscii(lineSeparator);
+        }
+    }
+
+    /**
+     * RFC 4180 CSV in UTF-8, except that lines end with just {@code \n}. Names are quoted only if
+     * they need to be. With leagues, there's a league column first.
+     */
+    private static final class Csv extends RankingWriter {
+
+        Csv(WritableByteChannel out, int bufferSize, boolean leagues) {
+            super(out, StandardCharsets.UTF_8, bufferSize, leagues);
+            try {
+                putAscii(leagues ? "league,rank,team,points\n" : "rank,team,points\n");
+            } catch (IOException e) { // can't happen, as the empty buffer has room
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        void writeLeague(String league, boolean first) {
+            // nothing to write, as each row says which league it's in
+        }
+
+        @Override
+        void write(long rank, String name, long points) throws IOException {
+            if (leagues) {
+                putField(league);
+                put((byte) ',');
+            }
+            putDecimal(rank);
+            put((byte) ',');
+            putField(name);
+            put((byte) ',');
+            putDecimal(points);
+            put((byte) '\n');
+        }
+
+        private void putField(String field) throws IOException {
+            if (needsQuotes(field)) {
+                put((byte) '"');
+                putEncoded(field.replace("\"", "\"\""));
+                put((byte) '"');
+            } else {
+                putEncoded(field);
+            }
+        }
+
+        private static boolean needsQuotes(String name) {
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * One JSON object per line, in UTF-8. With leagues, each object also has a "league" member.
+     * Changes are written like rows, plus an "oldRank" and "oldPoints" (null for a new team).
+     */
+    static final class JsonLines extends RankingWriter {
+
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+        JsonLines(WritableByteChannel out, int bufferSize, boolean leagues) {
+            super(out, StandardCharsets.UTF_8, bufferSize, leagues);
+        }
+
+        @Override
+        void writeLeague(String league, boolean first) {
+            // nothing to write, as each row says which league it's in
+        }
+
+        @Override
+        void write(long rank, String name, long points) throws IOException {
+            if (leagues) {
+                putAscii("{\"league\":\"");
+                putString(league);
+                putAscii("\",\"rank\":");
+            } else {
+                putAscii("{\"rank\":");
+            }
+            putDecimal(rank);
+            putAscii(",\"team\":\"");
+            putString(name);
+            putAscii("\",\"points\":");
+            putDecimal(points);
+            putAscii("}\n");
+        }
+
+        void write(StandingsChange change) throws IOException {
+            putAscii("{\"rank\":");
+            putDecimal(change.getRank());
+            putAscii(",\"team\":\"");
+            putString(change.getName());
+            putAscii("\",\"points\":");
+            putDecimal(change.getPoints());
+            if (change.isNew()) {
+                putAscii(",\"oldRank\":null,\"oldPoints\":null}\n");
+            } else {
+                putAscii(",\"oldRank\":");
+                putDecimal(change.getOldRank());
+                putAscii(",\"oldPoints\":");
+                putDecimal(change.getOldPoints());
+                putAscii("}\n");
+            }
+        }
+
+        // the contents of a JSON string, escaped
+        private void putString(String string) throws IOException {
+            int plainFrom = 0;
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                if (c == '"' || c == '\\' || c < 0x20) {
+                    putEncoded(string.subSequence(plainFrom, i));
+                    putEscape(c);
+                    plainFrom = i + 1;
+                }
+            }
+            putEncoded(string.subSequence(plainFrom, string.length()));
+        }
+
+        private void putEscape(char c) throws IOException {
+            put((byte) '\\');
+            switch (c) {
+                case '"', '\\' -> put((byte) c);
+                case '\n' -> put((byte) 'n');
+                case '\r' -> put((byte) 'r');
+                case '\t' -> put((byte) 't');
+                default -> {
+                    putAscii("u00");
+                    put((byte) HEX[c >> 4]);
+                    put((byte) HEX[c & 0xF]);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@link #BINARY_MAGIC}, then for each row: the rank as an unsigned varint (LEB128, as in
+     * protobuf), the points as a zigzag varint (as points can be negative, with a custom scoring
+     * scheme), and the name's length in bytes as an unsigned varint followed by the name in UTF-8.
+     * Typical rows come to the name plus 3 or 4 bytes.
+     * <br>
+     * With leagues, each league's rows are preceded by a 0 (which can't be a rank) and the league's
+     * name, as a varint byte length followed by the name in UTF-8.
+     */
+    private static final class Binary extends RankingWriter {
+
+        Binary(WritableByteChannel out, int bufferSize, boolean leagues) {
+            super(out, StandardCharsets.UTF_8, bufferSize, leagues);
+            for (byte b : BINARY_MAGIC) {
+                try {
+                    put(b);
+                } catch (IOException e) { // can't happen, as the empty buffer has room
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        @Override
+        void writeLeague(String league, boolean first) throws IOException {
+            putVarint(0);
+            putVarint(utf8Length(league));
+            putEncoded(league);
+        }
+
+        @Override
+        void write(long rank, String name, long points) throws IOException {
+            putVarint(rank);
+            putVarint((points << 1) ^ (points >> 63));
+            putVarint(utf8Length(name));
+            putEncoded(name);
+        }
+
+        private void putVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            put((byte) value);
+        }
+
+        // what the encoder will produce, unpaired surrogates becoming a one byte '?'
+        private static int utf8Length(String name) {
+            int length = 0;
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < name.length()
+                        && Character.isLowSurrogate(name.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    length++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+    }
+}
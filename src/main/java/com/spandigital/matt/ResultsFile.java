@@ -0,0 +1,268 @@
+package com.spandigital.matt;
+
+import io.vavr.control.Either;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A binary, columnar form of a results file, for results that get re-ranked often but never change
+ * (e.g. past seasons), so that they needn't be parsed every time. Laid out (little-endian) as:
+ * <br>1. The magic bytes {@code RES\x01}, the team count (int), the game count (long) and the
+ * offset of the columns (long).
+ * <br>2. The team name dictionary: for each team in id order, its name's length in bytes (int)
+ * then the name in UTF-8.
+ * <br>3. Zero padding up to a multiple of 8, then four int columns, each with an entry per game
+ * (in the order the games were read): home team id, away team id, home score, away score.
+ * <br>
+ * Reading memory-maps the file and walks the columns in place, so (after interning the names once)
+ * it costs little more than a sequential read of the columns.
+ */
+final class ResultsFile {
+
+    static final byte[] MAGIC = {'R', 'E', 'S', 1};
+
+    private static final int HEADER_SIZE = 24;
+    private static final int COLUMNS = 4;
+    private static final int GAMES_PER_WINDOW = 16 * 1024 * 1024; // 64MB per column mapped at once
+
+    private ResultsFile() {
+    }
+
+    /**
+     * @return whether the file starts with {@link #MAGIC} (so isn't a text file of results).
+     */
+    static boolean isResultsFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // keep reading, short reads being allowed
+            }
+            return !magic.hasRemaining() && Arrays.equals(magic.array(), MAGIC);
+        }
+    }
+
+    /**
+     * Tallies every game in the file.
+     *
+     * @param source name of the input, as per {@link GameTally#GameTally(TeamRanker, String)}.
+     * @throws IOException if reading the file fails, or it isn't a valid results file.
+     */
+    static GameTally read(FileChannel input, TeamRanker ranker, String source) throws IOException {
+        if (input.size() < HEADER_SIZE) {
+            throw new IOException("Not a results file");
+        }
+        ByteBuffer header = input.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a results file");
+        }
+        int teamCount = header.getInt();
+        long gameCount = header.getLong();
+        long columnsOffset = header.getLong();
+        if (teamCount < 0 || gameCount < 0 || columnsOffset < HEADER_SIZE
+                || columnsOffset - HEADER_SIZE > Integer.MAX_VALUE
+                || input.size() != columnsOffset + COLUMNS * Integer.BYTES * gameCount) {
+            throw new IOException("Corrupt results file header");
+        }
+
+        long started = System.nanoTime();
+        GameTally tally = new GameTally(ranker, source);
+        ByteBuffer names = input.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                columnsOffset - HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int[] ids = new int[teamCount]; // file's team id -> tally's
+        for (int team = 0; team < teamCount; team++) {
+            int length = names.remaining() >= Integer.BYTES ? names.getInt() : -1;
+            if (length < 0 || length > names.remaining()) {
+                throw new IOException("Corrupt results file dictionary");
+            }
+            ids[team] = tally.internTeam(names, names.position(), names.position() + length);
+            names.position(names.position() + length);
+        }
+
+        for (long first = 0; first < gameCount; first += GAMES_PER_WINDOW) {
+            int games = (int) Math.min(GAMES_PER_WINDOW, gameCount - first);
+            IntBuffer[] columns = new IntBuffer[COLUMNS];
+            for (int c = 0; c < COLUMNS; c++) {
+                long offset = columnsOffset + Integer.BYTES * (c * gameCount + first);
+                columns[c] = input.map(FileChannel.MapMode.READ_ONLY, offset,
+                        (long) games * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            }
+            IntBuffer home = columns[0];
+            IntBuffer away = columns[1];
+            IntBuffer homeScore = columns[2];
+            IntBuffer awayScore = columns[3];
+            for (int game = 0; game < games; game++) {
+                int homeId = home.get(game);
+                int awayId = away.get(game);
+                if (Integer.compareUnsigned(homeId, teamCount) >= 0
+                        || Integer.compareUnsigned(awayId, teamCount) >= 0) {
+                    throw new IOException("Corrupt results file: bad team id for game "
+                            + (first + game + 1));
+                }
+                if (homeId == awayId) { // never written, as such a line is a bad line
+                    throw new IOException("Corrupt results file: a team plays itself in game "
+                            + (first + game + 1));
+                }
+                tally.acceptGame(ids[homeId], homeScore.get(game), ids[awayId],
+                        awayScore.get(game));
+            }
+        }
+        // the games count as lines, the columns taking the place of parsing
+        ranker.getMetrics().addParse(System.nanoTime() - started, gameCount, input.size());
+        return tally;
+    }
+
+    /**
+     * Converts (text) results files to a single results file, games kept in input order.
+     * <br>
+     * Bad lines are dealt with as per the ranker's {@link ErrorPolicy}: by default, any at all
+     * mean nothing is written.
+     *
+     * @return an {@link Either.Left} with the (formatted) bad lines if the conversion failed,
+     * otherwise an {@link Either.Right} with the number of games written.
+     * @throws IOException if reading the inputs or writing the output fails.
+     */
+    static Either<List<String>, Long> convert(List<InputSource> inputs, TeamRanker ranker,
+            Path output) throws IOException {
+        Converter converter = new Converter(ranker);
+        try {
+            for (InputSource input : inputs) {
+                converter.source = inputs.size() == 1 ? null : input.getName();
+                converter.lineCount = 0;
+                try (ReadableByteChannel channel = input.open()) {
+                    LineScanner.scan(channel, converter::acceptLine, ranker.getMetrics());
+                }
+            }
+            ranker.getErrorPolicy().check(converter.badLineCount, converter.totalLineCount, true);
+        } catch (TooManyBadLinesException e) {
+            return Either.left(converter.formatBadLines());
+        }
+        if (converter.badLineCount > 0 && !ranker.getErrorPolicy().isTolerant()) {
+            return Either.left(converter.formatBadLines());
+        }
+        converter.writeTo(output);
+        return Either.right((long) converter.gameCount);
+    }
+
+    /**
+     * Parses lines into columns, held in memory until written out.
+     */
+    private static final class Converter {
+
+        private final TeamRanker ranker;
+        private final GameLineParser parser = new GameLineParser();
+        private final TeamDictionary dictionary = new TeamDictionary();
+        private final int[][] columns = new int[COLUMNS][1024];
+        private final List<BadLine> badLines = new ArrayList<>();
+        private String source;
+        private long lineCount; // within the current input
+        private long totalLineCount;
+        private long badLineCount;
+        private int gameCount;
+
+        Converter(TeamRanker ranker) {
+            this.ranker = ranker;
+        }
+
+        void acceptLine(ByteBuffer buf, int start, int end) {
+            lineCount++;
+            totalLineCount++;
+            if (!parser.parse(buf, start, end)) {
+                BadLine badLine = new BadLine(source, lineCount, parser.failure(),
+                        GameLineParser.decode(buf, start, end));
+                badLineCount++;
+                ranker.getMetrics().addBadLine();
+                GameTally.BadLineListener reporter = ranker.getErrorPolicy().getReporter();
+                if (reporter != null) {
+                    reporter.onBadLine(badLine);
+                } else {
+                    badLines.add(badLine);
+                }
+                ranker.getErrorPolicy().check(badLineCount, totalLineCount, false);
+                return;
+            }
+            if (gameCount == columns[0].length) {
+                if (gameCount == Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Too many games to convert in one go");
+                }
+                int capacity = (int) Math.min(Integer.MAX_VALUE - 8, gameCount * 2L);
+                for (int c = 0; c < COLUMNS; c++) {
+                    columns[c] = Arrays.copyOf(columns[c], capacity);
+                }
+            }
+            columns[0][gameCount] = dictionary.intern(buf, parser.team1Start(), parser.team1End());
+            columns[1][gameCount] = dictionary.intern(buf, parser.team2Start(), parser.team2End());
+            columns[2][gameCount] = parser.team1Score();
+            columns[3][gameCount] = parser.team2Score();
+            gameCount++;
+        }
+
+        List<String> formatBadLines() {
+            return badLines.stream().map(ranker::formatBadLine).collect(Collectors.toList());
+        }
+
+        void writeTo(Path output) throws IOException {
+            long dictionarySize = 0;
+            for (int id = 0; id < dictionary.size(); id++) {
+                dictionarySize += Integer.BYTES + dictionary.nameBytes(id).remaining();
+            }
+            long columnsOffset = (HEADER_SIZE + dictionarySize + 7) & ~7L;
+            try (FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+                buf.put(MAGIC).putInt(dictionary.size()).putLong(gameCount).putLong(columnsOffset);
+                for (int id = 0; id < dictionary.size(); id++) {
+                    ByteBuffer name = dictionary.nameBytes(id);
+                    ensureRoom(out, buf, Integer.BYTES);
+                    buf.putInt(name.remaining());
+                    while (name.hasRemaining()) {
+                        ensureRoom(out, buf, 1);
+                        int length = Math.min(name.remaining(), buf.remaining());
+                        buf.put(name.slice().limit(length));
+                        name.position(name.position() + length);
+                    }
+                }
+                for (long padding = columnsOffset - HEADER_SIZE - dictionarySize; padding > 0;
+                        padding--) {
+                    ensureRoom(out, buf, 1);
+                    buf.put((byte) 0);
+                }
+                for (int[] column : columns) {
+                    for (int game = 0; game < gameCount; game++) {
+                        ensureRoom(out, buf, Integer.BYTES);
+                        buf.putInt(column[game]);
+                    }
+                }
+                drain(out, buf);
+            }
+        }
+
+        private static void ensureRoom(FileChannel out, ByteBuffer buf, int bytes)
+                throws IOException {
+            if (buf.remaining() < bytes) {
+                drain(out, buf);
+            }
+        }
+
+        private static void drain(FileChannel out, ByteBuffer buf) throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            buf.clear();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.spandigital.matt;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where a run's time goes, phase by phase, plus how much it got through. The phases are:
+ * <br>1. Read: waiting on input channels.
+ * <br>2. Parse: splitting lines, parsing them and adding their points to a tally (which happen
+ * line by line, so are timed together, a buffer at a time rather than a line at a time).
+ * <br>3. Aggregate: merging the tallies of chunks or inputs read concurrently.
+ * <br>4. Rank: ordering and ranking the table.
+ * <br>5. Write: formatting and writing out the table.
+ * <br>
+ * Counters are cheap enough to be always on: adders, updated once per buffer, chunk or phase
+ * rather than per line. Each {@link TeamRanker} records into its own, unless given others (see
+ * {@link TeamRanker#withMetrics}); the command line gives it {@link #GLOBAL}, which is process-wide
+ * (one run per process, or a long-running follow) and readable over JMX (see
+ * {@link RunMetricsMXBean}) and as a summary for {@code --stats}. Each phase also emits a
+ * {@link PhaseEvent} for JFR.
+ */
+final class RunMetrics implements RunMetricsMXBean {
+
+    static final RunMetrics GLOBAL = new RunMetrics(); // the command line's, registered for JMX
+
+    static final String OBJECT_NAME = "com.spandigital.matt:type=RunMetrics";
+
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder aggregateNanos = new LongAdder();
+    private final LongAdder rankNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder lineCount = new LongAdder();
+    private final LongAdder byteCount = new LongAdder();
+    private final LongAdder badLineCount = new LongAdder();
+    private final LongAccumulator teamCount = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator peakTallyBytes = new LongAccumulator(Math::max, 0);
+
+    RunMetrics() {
+    }
+
+    /**
+     * Registers {@link #GLOBAL} with the platform MBean server, unless it already is.
+     */
+    static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(GLOBAL, name);
+            }
+        } catch (JMException e) { // only metrics, so not worth failing the run over
+            System.err.println("Couldn't register metrics over JMX: " + e.getMessage());
+        }
+    }
+
+    void addRead(long nanos) {
+        readNanos.add(nanos);
+    }
+
+    void addParse(long nanos, long lines, long bytes) {
+        parseNanos.add(nanos);
+        lineCount.add(lines);
+        byteCount.add(bytes);
+    }
+
+    void addAggregate(long nanos) {
+        aggregateNanos.add(nanos);
+    }
+
+    void addRank(long nanos) {
+        rankNanos.add(nanos);
+    }
+
+    void addWrite(long nanos) {
+        writeNanos.add(nanos);
+    }
+
+    void addBadLine() {
+        badLineCount.increment();
+    }
+
+    /**
+     * Notes the size of a tally, e.g. one about to be ranked.
+     *
+     * @param teams      teams in the tally (or tallies, for leagues)
+     * @param tallyBytes roughly how much memory the tally holds
+     */
+    void recordTally(long teams, long tallyBytes) {
+        teamCount.accumulate(teams);
+        peakTallyBytes.accumulate(tallyBytes);
+    }
+
+    void reset() {
+        readNanos.reset();
+        parseNanos.reset();
+        aggregateNanos.reset();
+        rankNanos.reset();
+        writeNanos.reset();
+        lineCount.reset();
+        byteCount.reset();
+        badLineCount.reset();
+        teamCount.reset();
+        peakTallyBytes.reset();
+    }
+
+    @Override
+    public long getReadNanos() {
+        return readNanos.sum();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return parseNanos.sum();
+    }
+
+    @Override
+    public long getAggregateNanos() {
+        return aggregateNanos.sum();
+    }
+
+    @Override
+    public long getRankNanos() {
+        return rankNanos.sum();
+    }
+
+    @Override
+    public long getWriteNanos() {
+        return writeNanos.sum();
+    }
+
+    @Override
+    public long getLineCount() {
+        return lineCount.sum();
+    }
+
+    @Override
+    public long getByteCount() {
+        return byteCount.sum();
+    }
+
+    @Override
+    public long getBadLineCount() {
+        return badLineCount.sum();
+    }
+
+    @Override
+    public long getTeamCount() {
+        return teamCount.get();
+    }
+
+    @Override
+    public long getPeakTallyBytes() {
+        return peakTallyBytes.get();
+    }
+
+    @Override
+    public double getLinesPerSecond() {
+        return perSecond(getLineCount(), getReadNanos() + getParseNanos());
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return perSecond(getByteCount(), getReadNanos() + getParseNanos());
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return nanos == 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    /**
+     * @return a few lines summarising the metrics, for a person to read.
+     */
+    String summary() {
+        return String.format(Locale.ROOT, """
+                        Time: read %.1f ms, parse %.1f ms, aggregate %.1f ms, rank %.1f ms, \
+                        write %.1f ms
+                        Input: %d lines, %d bytes (%.0f lines/s, %.1f MB/s)
+                        Found: %d %s, %d %s, peak tally about %d KB""",
+                millis(getReadNanos()), millis(getParseNanos()), millis(getAggregateNanos()),
+                millis(getRankNanos()), millis(getWriteNanos()), getLineCount(), getByteCount(),
+                getLinesPerSecond(), getBytesPerSecond() / 1e6, getBadLineCount(),
+                getBadLineCount() == 1 ? "bad line" : "bad lines", getTeamCount(),
+                getTeamCount() == 1 ? "team" : "teams", getPeakTallyBytes() / 1024);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,38 @@
+package com.spandigital.matt;
+
+/**
+ * What {@link RunMetrics} exposes over JMX, as {@code com.spandigital.matt:type=RunMetrics}.
+ * Times are in nanoseconds, summed across threads where a phase runs concurrently.
+ */
+public interface RunMetricsMXBean {
+
+    long getReadNanos();
+
+    long getParseNanos();
+
+    long getAggregateNanos();
+
+    long getRankNanos();
+
+    long getWriteNanos();
+
+    long getLineCount();
+
+    long getByteCount();
+
+    long getBadLineCount();
+
+    long getTeamCount();
+
+    long getPeakTallyBytes();
+
+    /**
+     * @return lines read per second of reading and parsing.
+     */
+    double getLinesPerSecond();
+
+    /**
+     * @return bytes read per second of reading and parsing.
+     */
+    double getBytesPerSecond();
+}
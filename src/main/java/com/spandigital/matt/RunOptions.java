@@ -0,0 +1,385 @@
+package com.spandigital.matt;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line flags (anything starting with {@code --}) and the remaining positional arguments.
+ * Kept deliberately simple: flags may appear anywhere, flags taking a value are given as
+ * {@code --name=value}, and {@code --} on its own ends flag parsing so that inputs which happen to
+ * start with dashes can still be given.
+ */
+final class RunOptions {
+
+    private final List<String> inputs = new ArrayList<>();
+    private boolean parallel;
+    private boolean follow;
+    private boolean changes;
+    private long pollIntervalMillis = 1000;
+    private long offset;
+    private long limit = -1;
+    private OutputFormat format = OutputFormat.TEXT;
+    private ErrorPolicy errorPolicy = ErrorPolicy.collectAll();
+    private boolean streamErrors;
+    private Path convertTo;
+    private Path checkpoint;
+    private boolean leagues;
+    private boolean stats;
+    private int servePort = -1;
+    private Path batchManifest;
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    private List<Tiebreaker> tiebreakers = List.of();
+    private long asOfLine = -1;
+    private int asOfMatchday = -1;
+    private boolean dedup;
+    private boolean matchIds;
+    private boolean dedupPrefilter;
+    private long memoryBudget = -1;
+    private Path spillDirectory;
+
+    private RunOptions() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if an unrecognised flag is supplied.
+     */
+    static RunOptions parse(String[] args) {
+        RunOptions options = new RunOptions();
+        boolean flagsEnded = false;
+        for (String arg : args) {
+            if (flagsEnded || !arg.startsWith("--")) {
+                options.inputs.add(arg);
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            String name = equals < 0 ? arg : arg.substring(0, equals);
+            String value = equals < 0 ? null : arg.substring(equals + 1);
+            switch (name) {
+                case "--" -> flagsEnded = true;
+                case "--parallel" -> options.parallel = flag(name, value);
+                case "--follow" -> options.follow = flag(name, value);
+                case "--changes" -> options.changes = flag(name, value);
+                case "--poll-interval" -> options.pollIntervalMillis = positiveLong(name, value);
+                case "--top", "--limit" -> options.limit = positiveLong(name, value);
+                case "--offset" -> options.offset = nonNegativeLong(name, value);
+                case "--format" -> options.format = OutputFormat.forName(String.valueOf(value));
+                case "--fail-fast" -> {
+                    flag(name, value);
+                    options.errorPolicy = options.errorPolicy.withMaxBadLines(1);
+                }
+                case "--max-errors" -> options.errorPolicy =
+                        options.errorPolicy.withMaxBadLines(positiveLong(name, value));
+                case "--max-error-percent" -> options.errorPolicy =
+                        options.errorPolicy.withMaxBadLinePercent(percentage(name, value));
+                case "--stream-errors" -> options.streamErrors = flag(name, value);
+                case "--convert" -> options.convertTo = path(name, value);
+                case "--checkpoint" -> options.checkpoint = path(name, value);
+                case "--leagues" -> options.leagues = flag(name, value);
+                case "--stats" -> options.stats = flag(name, value);
+                case "--serve" -> options.servePort = port(name, value);
+                case "--batch" -> options.batchManifest = path(name, value);
+                case "--jobs" -> options.jobs =
+                        (int) Math.min(positiveLong(name, value), Integer.MAX_VALUE);
+                case "--tiebreak" -> options.tiebreakers =
+                        Tiebreaker.forNames(String.valueOf(value));
+                case "--as-of-line" -> options.asOfLine = nonNegativeLong(name, value);
+                case "--as-of-matchday" -> options.asOfMatchday =
+                        (int) Math.min(positiveLong(name, value), Integer.MAX_VALUE);
+                case "--dedup" -> {
+                    options.dedup = true;
+                    options.matchIds = matchIds(name, value);
+                }
+                case "--dedup-prefilter" -> {
+                    options.dedup = flag(name, value);
+                    options.dedupPrefilter = true;
+                }
+                case "--memory-budget" -> options.memoryBudget = // in MB
+                        Math.min(positiveLong(name, value), Long.MAX_VALUE >> 20) << 20;
+                case "--spill-dir" -> options.spillDirectory = path(name, value);
+                default -> throw new IllegalArgumentException("Unrecognised option: " + arg);
+            }
+        }
+        return options;
+    }
+
+    private static boolean flag(String name, String value) {
+        if (value != null) {
+            throw new IllegalArgumentException("Option " + name + " doesn't take a value");
+        }
+        return true;
+    }
+
+    private static boolean matchIds(String name, String value) {
+        if (value == null || value.equals("games")) {
+            return false;
+        }
+        if (value.equals("match-ids")) {
+            return true;
+        }
+        throw new IllegalArgumentException(
+                "Option " + name + " takes games or match-ids, e.g. " + name + "=match-ids");
+    }
+
+    private static long positiveLong(String name, String value) {
+        try {
+            long parsed = Long.parseLong(String.valueOf(value));
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) { // fall through to the more helpful message below
+        }
+        throw new IllegalArgumentException(
+                "Option " + name + " requires a positive whole number, e.g. " + name + "=10");
+    }
+
+    private static long nonNegativeLong(String name, String value) {
+        try {
+            long parsed = Long.parseLong(String.valueOf(value));
+            if (parsed >= 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) { // fall through to the more helpful message below
+        }
+        throw new IllegalArgumentException(
+                "Option " + name + " requires a whole number (0 or more), e.g. " + name + "=10");
+    }
+
+    private static int port(String name, String value) {
+        try {
+            int parsed = Integer.parseInt(String.valueOf(value));
+            if (parsed >= 0 && parsed <= 65535) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) { // fall through to the more helpful message below
+        }
+        throw new IllegalArgumentException(
+                "Option " + name + " requires a port number (0 for any free one), e.g. " + name
+                        + "=8080");
+    }
+
+    private static Path path(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Option " + name + " requires a file path, e.g. " + name + "=results.bin");
+        }
+        return Path.of(value);
+    }
+
+    private static double percentage(String name, String value) {
+        try {
+            double parsed = Double.parseDouble(String.valueOf(value));
+            if (parsed >= 0 && parsed <= 100) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) { // fall through to the more helpful message below
+        }
+        throw new IllegalArgumentException(
+                "Option " + name + " requires a percentage from 0 to 100, e.g. " + name + "=0.5");
+    }
+
+    static RunOptions defaults() {
+        return new RunOptions();
+    }
+
+    String[] getInputs() {
+        return inputs.toArray(new String[0]);
+    }
+
+    /**
+     * @return whether to memory-map the input and tally chunks of it concurrently.
+     */
+    boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @return whether to keep watching the input for appended results, reprinting the table as
+     * they arrive.
+     */
+    boolean isFollow() {
+        return follow;
+    }
+
+    /**
+     * @return whether follow mode should write only what changed, as per {@link ChangeFeed},
+     * rather than reprinting the table.
+     */
+    boolean isChanges() {
+        return changes;
+    }
+
+    /**
+     * @return how often (at most) follow mode checks the input for appended results, for file
+     * systems where change notifications don't arrive (or arrive late).
+     */
+    long getPollIntervalMillis() {
+        return pollIntervalMillis;
+    }
+
+    /**
+     * @return whether only part of the table was asked for (see {@link #getOffset()} and
+     * {@link #getLimit()}).
+     */
+    boolean isPaged() {
+        return offset > 0 || limit >= 0;
+    }
+
+    /**
+     * @return the number of table rows to skip before printing any, e.g.
+     * {@code --offset=20 --limit=20} for the second page of 20.
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the maximum number of table rows to print ({@code --top} being a synonym), or -1 for
+     * no limit.
+     */
+    long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return how to write the table out.
+     */
+    OutputFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return how to deal with bad lines (not including where to report them, see
+     * {@link #isStreamErrors()}).
+     */
+    ErrorPolicy getErrorPolicy() {
+        return errorPolicy;
+    }
+
+    /**
+     * @return whether to print bad lines as soon as they're found, rather than keeping them all in
+     * memory to print at the end.
+     */
+    boolean isStreamErrors() {
+        return streamErrors;
+    }
+
+    /**
+     * @return where to write the inputs as a binary {@link ResultsFile} (instead of ranking them),
+     * or null to rank them as usual.
+     */
+    Path getConvertTo() {
+        return convertTo;
+    }
+
+    /**
+     * @return where to keep a {@link Checkpoint} of the (single, growing) input, or null for none.
+     */
+    Path getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * @return whether each line starts with a league's name (see {@link LeagueTally}), so that a
+     * table is wanted per league.
+     */
+    boolean isLeagues() {
+        return leagues;
+    }
+
+    /**
+     * @return whether to print a summary of the {@link RunMetrics} on stderr at the end.
+     */
+    boolean isStats() {
+        return stats;
+    }
+
+    /**
+     * @return the (localhost) port to serve the table on, as per {@link StandingsServer}, or -1 to
+     * just print it.
+     */
+    int getServePort() {
+        return servePort;
+    }
+
+    /**
+     * @return the manifest of jobs to run, as per {@link BatchRunner}, or null for none.
+     */
+    Path getBatchManifest() {
+        return batchManifest;
+    }
+
+    /**
+     * @return how many batch jobs may run at once (by default, one per core).
+     */
+    int getJobs() {
+        return jobs;
+    }
+
+    /**
+     * @return how to separate teams on equal points, in order, before listing them by name.
+     */
+    List<Tiebreaker> getTiebreakers() {
+        return tiebreakers;
+    }
+
+    /**
+     * @return the line to rank the table as of (as per {@link StandingsHistory}), or -1 for all.
+     */
+    long getAsOfLine() {
+        return asOfLine;
+    }
+
+    /**
+     * @return the matchday to rank the table at the end of (as per {@link StandingsHistory}), or
+     * -1 for all.
+     */
+    int getAsOfMatchday() {
+        return asOfMatchday;
+    }
+
+    /**
+     * @return whether the table's wanted as it stood earlier, rather than as it stands now.
+     */
+    boolean isAsOf() {
+        return asOfLine >= 0 || asOfMatchday > 0;
+    }
+
+    /**
+     * @return whether to skip games seen before, as per {@link DuplicateFilter}.
+     */
+    boolean isDedup() {
+        return dedup;
+    }
+
+    /**
+     * @return whether lines start with a match id, for {@link DuplicateFilter} to key on as well.
+     */
+    boolean isMatchIds() {
+        return matchIds;
+    }
+
+    /**
+     * @return whether to find possible duplicates with a Bloom filter first, reading the inputs
+     * twice but keeping far fewer games in memory (see {@link DuplicateFilter#prefiltered}).
+     */
+    boolean isDedupPrefilter() {
+        return dedupPrefilter;
+    }
+
+    /**
+     * @return roughly how many bytes of teams to tally in memory before spilling to disk, as per
+     * {@link SpillingAggregation}, or -1 to tally everything in memory.
+     */
+    long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return where to put {@link SpillingAggregation}'s spill files, or null for the default
+     * temporary-file directory.
+     */
+    Path getSpillDirectory() {
+        return spillDirectory;
+    }
+}
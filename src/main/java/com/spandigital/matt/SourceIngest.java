@@ -0,0 +1,163 @@
+package com.spandigital.matt;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Tallies any number of inputs at once: each input gets its own tally on its own thread, and the
+ * tallies are merged (in input order) once they're all done. When there's more than one input, bad
+ * lines are tagged with the input they came from.
+ */
+final class SourceIngest {
+
+    // a concurrent duplicate filter's positions: input index, then offset within the input
+    private static final int INPUT_OFFSET_BITS = 44;
+
+    private SourceIngest() {
+    }
+
+    /**
+     * @param parallel whether to also split each (uncompressed file) input into chunks that are
+     *                 tallied concurrently, as per {@link ParallelIngest}.
+     * @throws IOException if any input fails to be read
+     */
+    static GameTally ingestAll(List<InputSource> inputs, TeamRanker ranker, boolean parallel)
+            throws IOException {
+        if (inputs.size() == 1) {
+            return ingest(inputs.get(0), null, ranker, parallel);
+        }
+        int threads = Math.min(inputs.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<GameTally>> tallies = new ArrayList<>(inputs.size());
+            for (InputSource input : inputs) {
+                tallies.add(executor.submit(() -> ingest(input, input.getName(), ranker, parallel)));
+            }
+            GameTally merged = new GameTally(ranker);
+            for (Future<GameTally> tally : tallies) {
+                merged.mergeSource(tally.get());
+            }
+            return merged;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading inputs", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * As per {@link #ingestAll(List, TeamRanker, boolean)}, but skipping games seen before, in any
+     * of the inputs, as per the filter. Inputs are read one at a time, whole, as the filter needs
+     * to see lines in order. If the filter's {@link DuplicateFilter#concurrent}, each (uncompressed
+     * file) input is split into chunks that are tallied concurrently, as per
+     * {@link ParallelIngest}.
+     *
+     * @throws IllegalArgumentException if an input is a binary {@link ResultsFile}, which has no
+     *                                  lines to check.
+     * @throws IOException              if any input fails to be read
+     */
+    static GameTally ingestAll(List<InputSource> inputs, TeamRanker ranker,
+            DuplicateFilter duplicateFilter) throws IOException {
+        GameTally merged = new GameTally(ranker);
+        for (int index = 0; index < inputs.size(); index++) {
+            InputSource input = inputs.get(index);
+            if (!input.isStdin() && ResultsFile.isResultsFile(input.getPath())) {
+                throw new IllegalArgumentException(
+                        "Duplicates can only be checked in text inputs: " + input.getName());
+            }
+            PhaseEvent event = new PhaseEvent(PhaseEvent.INGEST);
+            event.begin();
+            String source = inputs.size() == 1 ? null : input.getName();
+            long inputStart = (long) index << INPUT_OFFSET_BITS;
+            GameTally tally;
+            if (duplicateFilter.isConcurrent() && !input.isStdin() && !input.isCompressed()) {
+                try (FileChannel channel = FileChannel.open(input.getPath(),
+                        StandardOpenOption.READ)) {
+                    tally = ParallelIngest.ingest(channel, ranker, source,
+                            ForkJoinPool.commonPool(), ParallelIngest.DEFAULT_MAX_CHUNK_SIZE,
+                            duplicateFilter, inputStart);
+                }
+            } else {
+                tally = new GameTally(ranker, source);
+                tally.setDuplicateFilter(duplicateFilter.isConcurrent()
+                        ? duplicateFilter.inOrder(inputStart + (1L << INPUT_OFFSET_BITS) - 1)
+                        : duplicateFilter);
+                try (ReadableByteChannel channel = input.open()) {
+                    tally.accept(channel);
+                }
+            }
+            commit(event, input, tally);
+            if (inputs.size() == 1) {
+                return tally;
+            }
+            merged.mergeSource(tally);
+        }
+        return merged;
+    }
+
+    /**
+     * Reads either a text results file or a binary {@link ResultsFile}, whichever it turns out to
+     * be (stdin always being text).
+     *
+     * @param source name to tag bad lines with, may be null.
+     */
+    static GameTally ingest(InputSource input, String source, TeamRanker ranker, boolean parallel)
+            throws IOException {
+        PhaseEvent event = new PhaseEvent(PhaseEvent.INGEST);
+        event.begin();
+        GameTally tally = read(input, source, ranker, parallel);
+        commit(event, input, tally);
+        return tally;
+    }
+
+    private static void commit(PhaseEvent event, InputSource input, GameTally tally)
+            throws IOException {
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = input.getName();
+            event.lines = tally.getLineCount();
+            event.bytes = input.isStdin() ? 0 : Files.size(input.getPath());
+            event.teams = tally.getTeamCount();
+            event.commit();
+        }
+    }
+
+    private static GameTally read(InputSource input, String source, TeamRanker ranker,
+            boolean parallel) throws IOException {
+        if (!input.isStdin() && ResultsFile.isResultsFile(input.getPath())) {
+            try (FileChannel channel = FileChannel.open(input.getPath(), StandardOpenOption.READ)) {
+                return ResultsFile.read(channel, ranker, source);
+            }
+        }
+        if (parallel && !input.isStdin() && !input.isCompressed()) {
+            try (FileChannel channel = FileChannel.open(input.getPath(), StandardOpenOption.READ)) {
+                return ParallelIngest.ingest(channel, ranker, source, ForkJoinPool.commonPool(),
+                        ParallelIngest.DEFAULT_MAX_CHUNK_SIZE);
+            }
+        }
+        GameTally tally = new GameTally(ranker, source);
+        try (ReadableByteChannel channel = input.open()) {
+            tally.accept(channel);
+        }
+        return tally;
+    }
+}
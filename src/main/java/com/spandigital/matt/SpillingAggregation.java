@@ -0,0 +1,539 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tallies inputs with more teams than fit in memory, e.g. open-entry ladders with hundreds of
+ * millions of entrants. Lines are tallied into a {@link GameTally} as usual until it outgrows the
+ * memory budget; then every team's points so far are spilled to one of {@link #PARTITIONS} files,
+ * chosen by a hash of its name, and tallying starts afresh.
+ * <br>
+ * A team's partial totals all end up in the same partition, so once the inputs are read each
+ * partition is aggregated on its own (split again, with a different hash, if even that's over
+ * budget), ranked as per {@link BucketRanking}, and written out as a sorted run. The runs are then
+ * merged (a k-way merge on points, descending, then name) into the final table, which is streamed
+ * out a row at a time, so isn't held in memory either. Ranks are assigned as rows come out of the
+ * merge, so are just as the in-memory table's.
+ * <br>
+ * Each run being merged has its own file open, with a read buffer, and these count against the
+ * memory budget (the tally having gone by then): at most {@link #MAX_MERGE_FAN_IN} runs, and no
+ * more than the budget has buffers for, are merged at once. With more runs than that (as when
+ * partitions are split), runs are merged a group at a time into longer runs, keeping only the rows
+ * that could make the requested page, until few enough are left for the final merge.
+ * <br>
+ * If nothing needed spilling, the table is ranked in memory. Tiebreakers aren't supported (they'd
+ * need goals and head-to-head results spilled too). Bad lines are dealt with as for a
+ * {@link LeagueTally}: kept here, with their line number within the input. Not thread-safe.
+ */
+final class SpillingAggregation implements Closeable {
+
+    static final int PARTITIONS = 64;
+
+    // the most runs merged at once, however big the budget, so there are as many files open (and
+    // read buffers taken up) as while spilling
+    static final int MAX_MERGE_FAN_IN = PARTITIONS;
+
+    // past this many splits a partition is aggregated whatever its size; each split divides the
+    // teams by 64, so only a wildly small budget gets here
+    private static final int MAX_DEPTH = 4;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final long SEED = 0x3C6EF372FE94F82BL;
+
+    /**
+     * Takes the table a row at a time, as per {@link RankingWriter#write(long, String, long)}.
+     */
+    @FunctionalInterface
+    interface RowWriter {
+        void write(long rank, String name, long points) throws IOException;
+    }
+
+    private final TeamRanker ranker;
+    private final TeamRanker segmentRanker; // hands bad lines back here, rather than keeping them
+    private final long memoryBudget;
+    private final Path spillParent; // null for the default temporary-file directory
+    private Path spillDirectory; // created on the first spill
+    private GameTally segment;
+    private DataOutputStream[] partitions; // null until the first spill
+    private Path[] partitionFiles;
+    private int fileCount;
+    private int spillCount;
+    private int splitCount;
+    private int mergePassCount;
+    private byte[] nameBuffer = new byte[64];
+    private int nameLength;
+    private long recordPoints;
+    private final List<BadLine> badLines = new ArrayList<>();
+    private String source; // of the input being read
+    private long inputLineCount;
+    private long lineCount;
+    private long badLineCount;
+
+    /**
+     * @param memoryBudget roughly how many bytes the tally of teams may take up before spilling,
+     *                     as per {@link GameTally#estimateSize()}; the spill files' buffers take
+     *                     up to another {@value #PARTITIONS} * 16 KB. When merging, it's what the
+     *                     runs' 16 KB read buffers may take up (but at least two are merged).
+     * @param spillParent  where to create the (temporary) directory of spill files, or null for
+     *                     the default temporary-file directory.
+     * @throws IllegalArgumentException if the ranker has tiebreakers.
+     */
+    SpillingAggregation(TeamRanker ranker, long memoryBudget, Path spillParent) {
+        if (!ranker.getTiebreakers().isEmpty()) {
+            throw new IllegalArgumentException("Spilling to disk doesn't support tiebreakers.");
+        }
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        this.ranker = ranker;
+        this.segmentRanker = ranker.withErrorPolicy(ErrorPolicy.collectAll()
+                .withReporter(badLine -> addBadLine(badLine.withSource(source))));
+        this.memoryBudget = memoryBudget;
+        this.spillParent = spillParent;
+        this.segment = new GameTally(segmentRanker);
+    }
+
+    /**
+     * Consumes an input until end of stream.
+     *
+     * @param source name of the input, to tag bad lines with if there's more than one, may be null.
+     */
+    void accept(ReadableByteChannel channel, String source) throws IOException {
+        this.source = source;
+        inputLineCount = 0;
+        try {
+            LineScanner.scan(channel, this::acceptLine, ranker.getMetrics());
+        } catch (UncheckedIOException e) { // from spilling
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Consumes a single line, occupying {@code [start, end)} of the buffer, spilling the tally so
+     * far if that takes it over budget.
+     *
+     * @throws TooManyBadLinesException if the line was bad and the ranker's {@link ErrorPolicy}
+     *                                  allows no more.
+     * @throws UncheckedIOException     if spilling fails.
+     */
+    void acceptLine(ByteBuffer buf, int start, int end) {
+        lineCount++;
+        inputLineCount++;
+        segment.acceptLine(buf, start, end, inputLineCount);
+        if (segment.estimateSize() > memoryBudget) {
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void addBadLine(BadLine badLine) {
+        badLineCount++;
+        GameTally.BadLineListener reporter = ranker.getErrorPolicy().getReporter();
+        if (reporter != null) {
+            reporter.onBadLine(badLine);
+        } else {
+            badLines.add(badLine);
+        }
+        checkBadLines(false);
+    }
+
+    /**
+     * As per {@link GameTally#checkBadLines(boolean)}, but over every line read.
+     */
+    void checkBadLines(boolean complete) {
+        try {
+            ranker.getErrorPolicy().check(badLineCount, lineCount, complete);
+        } catch (TooManyBadLinesException e) {
+            throw e.withBadLines(badLines);
+        }
+    }
+
+    /**
+     * Appends every team in the current tally, with its points so far, to its partition's file,
+     * then starts a fresh tally.
+     */
+    private void spill() throws IOException {
+        long started = System.nanoTime();
+        if (partitions == null) {
+            spillDirectory = spillParent == null ? Files.createTempDirectory("spill")
+                    : Files.createTempDirectory(spillParent, "spill");
+            partitionFiles = new Path[PARTITIONS];
+            partitions = openPartitions(partitionFiles);
+        }
+        ranker.getMetrics().recordTally(segment.getTeamCount(), segment.estimateSize());
+        for (int id = 0; id < segment.getTeamCount(); id++) {
+            ByteBuffer name = segment.getNameBytes(id);
+            nameLength = name.remaining();
+            if (nameLength > nameBuffer.length) {
+                nameBuffer = new byte[Math.max(nameLength, nameBuffer.length * 2)];
+            }
+            name.get(nameBuffer, 0, nameLength);
+            writeRecord(partitions[partition(0)], segment.getPoints(id));
+        }
+        spillCount++;
+        segment = new GameTally(segmentRanker);
+        ranker.getMetrics().addAggregate(System.nanoTime() - started);
+    }
+
+    /**
+     * Writes rows {@code offset} (inclusive) to {@code offset + limit} (exclusive) of the table,
+     * ranked as per {@link TeamRanker#calculateRankings}, to the writer. Should only be called
+     * once, after the inputs have been read (and their bad lines checked).
+     *
+     * @return the number of rows written.
+     */
+    long rank(long offset, long limit, RowWriter writer) throws IOException {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative");
+        }
+        if (spillCount == 0) {
+            ranker.getMetrics().recordTally(segment.getTeamCount(), segment.estimateSize());
+            List<Tuple2<Long, Team>> table = BucketRanking.table(segment);
+            long rows = 0;
+            for (long i = offset; i < table.size() && i - offset < limit; i++) {
+                Tuple2<Long, Team> row = table.get((int) i);
+                writer.write(row._1(), row._2().getName(), row._2().getPoints());
+                rows++;
+            }
+            return rows;
+        }
+        if (segment.getTeamCount() > 0) {
+            spill();
+        }
+        long started = System.nanoTime();
+        closePartitions();
+        List<Path> runs = new ArrayList<>();
+        long teamCount = 0;
+        for (Path file : partitionFiles) {
+            teamCount += aggregate(file, 1, runs);
+        }
+        ranker.getMetrics().recordTally(teamCount, 0);
+        ranker.getMetrics().addAggregate(System.nanoTime() - started);
+        return merge(runs, offset, limit, writer);
+    }
+
+    /**
+     * Totals each team's points in the partition, adding the result to the runs as a sorted file,
+     * or splits the partition (by the hash for {@code depth}) if it's over budget.
+     *
+     * @return the number of teams in the partition.
+     */
+    private long aggregate(Path file, int depth, List<Path> runs) throws IOException {
+        GameTally tally = new GameTally(segmentRanker);
+        boolean overBudget = false;
+        try (DataInputStream in = openInput(file)) {
+            while (!overBudget && readRecord(in)) {
+                tally.addTeamPoints(ByteBuffer.wrap(nameBuffer), 0, nameLength, recordPoints);
+                overBudget = depth < MAX_DEPTH && tally.estimateSize() > memoryBudget
+                        && tally.getTeamCount() > 1; // splitting one team wouldn't help
+            }
+        }
+        if (overBudget) {
+            tally = null; // let it go before splitting, so we're back within budget
+            splitCount++;
+            Path[] splitFiles = new Path[PARTITIONS];
+            DataOutputStream[] splits = openPartitions(splitFiles);
+            try (DataInputStream in = openInput(file)) {
+                while (readRecord(in)) {
+                    writeRecord(splits[partition(depth)], recordPoints);
+                }
+            } finally {
+                for (DataOutputStream split : splits) {
+                    split.close();
+                }
+            }
+            Files.delete(file);
+            long teamCount = 0;
+            for (Path splitFile : splitFiles) {
+                teamCount += aggregate(splitFile, depth + 1, runs);
+            }
+            return teamCount;
+        }
+        Files.delete(file);
+        if (tally.getTeamCount() == 0) {
+            return 0;
+        }
+        ranker.getMetrics().recordTally(tally.getTeamCount(), tally.estimateSize());
+        Path run = spillDirectory.resolve("run-" + fileCount++);
+        try (DataOutputStream out = openOutput(run)) {
+            for (Tuple2<Long, Team> row : BucketRanking.table(tally)) {
+                writeRow(out, row._2().getName(), row._2().getPoints());
+            }
+        }
+        runs.add(run);
+        return tally.getTeamCount();
+    }
+
+    /**
+     * Merges the (sorted) runs, a pass at a time while there are more than can be merged at once,
+     * writing the requested rows of the table as they come out of the last.
+     */
+    private long merge(List<Path> runFiles, long offset, long limit, RowWriter writer)
+            throws IOException {
+        int fanIn = (int) Math.max(2, Math.min(MAX_MERGE_FAN_IN, memoryBudget / BUFFER_SIZE));
+        // no group has more than this many rows that could make the page
+        long rowsNeeded = limit > Long.MAX_VALUE - offset ? Long.MAX_VALUE : offset + limit;
+        while (runFiles.size() > fanIn) {
+            long started = System.nanoTime();
+            List<Path> merged = new ArrayList<>();
+            for (int from = 0; from < runFiles.size(); from += fanIn) {
+                List<Path> group = runFiles.subList(from, Math.min(from + fanIn, runFiles.size()));
+                if (group.size() == 1) {
+                    merged.add(group.get(0));
+                    continue;
+                }
+                Path run = spillDirectory.resolve("run-" + fileCount++);
+                try (DataOutputStream out = openOutput(run)) {
+                    mergeRuns(group, 0, rowsNeeded,
+                            (rank, name, points) -> writeRow(out, name, points));
+                }
+                for (Path file : group) {
+                    Files.delete(file);
+                }
+                merged.add(run);
+            }
+            runFiles = merged;
+            mergePassCount++;
+            ranker.getMetrics().addAggregate(System.nanoTime() - started);
+        }
+        return mergeRuns(runFiles, offset, limit, writer);
+    }
+
+    /**
+     * Merges the (sorted) runs all at once, writing the requested rows as they come out.
+     */
+    private static long mergeRuns(List<Path> runFiles, long offset, long limit, RowWriter writer)
+            throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<>(Math.max(1, runFiles.size()), Run.ORDER);
+        try {
+            for (Path file : runFiles) {
+                Run run = new Run(openInput(file));
+                if (run.next()) {
+                    queue.add(run);
+                } else {
+                    run.close();
+                }
+            }
+            long rows = 0;
+            long rank = 0;
+            long lastPoints = 0;
+            for (long position = 0; position - offset < limit && !queue.isEmpty(); position++) {
+                Run run = queue.poll();
+                if (position == 0 || run.points != lastPoints) {
+                    rank = position + 1;
+                    lastPoints = run.points;
+                }
+                if (position >= offset) {
+                    writer.write(rank, run.name, run.points);
+                    rows++;
+                }
+                if (run.next()) {
+                    queue.add(run);
+                } else {
+                    run.close();
+                }
+            }
+            return rows;
+        } finally {
+            for (Run run : queue) {
+                run.close();
+            }
+        }
+    }
+
+    /**
+     * @return the partition (for the given depth of splitting) of the name in the name buffer.
+     */
+    private int partition(int depth) {
+        long hash = SEED + depth;
+        for (int i = 0; i < nameLength; i++) { // FNV-1a, then a finaliser to spread the top bits
+            hash = (hash ^ (nameBuffer[i] & 0xFF)) * 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) (hash >>> (Long.SIZE - Integer.numberOfTrailingZeros(PARTITIONS)));
+    }
+
+    private void writeRecord(DataOutputStream out, long points) throws IOException {
+        out.writeInt(nameLength);
+        out.write(nameBuffer, 0, nameLength);
+        out.writeLong(points);
+    }
+
+    /**
+     * Reads the next team and points into the name buffer and {@code recordPoints}.
+     *
+     * @return false if the file has no more.
+     */
+    private boolean readRecord(DataInputStream in) throws IOException {
+        try {
+            nameLength = in.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        if (nameLength > nameBuffer.length) {
+            nameBuffer = new byte[Math.max(nameLength, nameBuffer.length * 2)];
+        }
+        in.readFully(nameBuffer, 0, nameLength);
+        recordPoints = in.readLong();
+        return true;
+    }
+
+    private static void writeRow(DataOutputStream out, String name, long points)
+            throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeLong(points);
+    }
+
+    private DataOutputStream[] openPartitions(Path[] files) throws IOException {
+        DataOutputStream[] outs = new DataOutputStream[files.length];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = spillDirectory.resolve("partition-" + fileCount++);
+            outs[i] = openOutput(files[i]);
+        }
+        return outs;
+    }
+
+    private void closePartitions() throws IOException {
+        if (partitions != null) {
+            for (DataOutputStream partition : partitions) {
+                partition.close();
+            }
+            partitions = null;
+        }
+    }
+
+    private static DataOutputStream openOutput(Path file) throws IOException {
+        return new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+    }
+
+    private static DataInputStream openInput(Path file) throws IOException {
+        return new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+    }
+
+    /**
+     * @return the number of times the tally has been spilled to disk so far.
+     */
+    int getSpillCount() {
+        return spillCount;
+    }
+
+    /**
+     * @return the number of partitions that were over budget, so had to be split again.
+     */
+    int getSplitCount() {
+        return splitCount;
+    }
+
+    /**
+     * @return the number of passes that merged runs into longer ones, there being too many to merge
+     * into the table at once.
+     */
+    int getMergePassCount() {
+        return mergePassCount;
+    }
+
+    /**
+     * @return the bad lines found, in input order, other than any passed to the ranker's
+     * {@link ErrorPolicy#getReporter()}.
+     */
+    List<BadLine> getBadLines() {
+        return badLines;
+    }
+
+    long getBadLineCount() {
+        return badLineCount;
+    }
+
+    long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Deletes the spill files (and their directory).
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            closePartitions();
+        } finally {
+            if (spillDirectory != null) {
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(spillDirectory)) {
+                    files = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+                }
+                for (Path file : files) { // the directory itself last
+                    Files.deleteIfExists(file);
+                }
+                spillDirectory = null;
+            }
+        }
+    }
+
+    /**
+     * A sorted run being merged, positioned on its next row.
+     */
+    private static final class Run implements Closeable {
+
+        static final Comparator<Run> ORDER = (run1, run2) -> run1.points != run2.points
+                ? Long.compare(run2.points, run1.points)
+                : run1.name.compareTo(run2.name);
+
+        private final DataInputStream in;
+        String name;
+        long points;
+
+        Run(DataInputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @return false if the run has no more rows.
+         */
+        boolean next() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+            points = in.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.control.Option;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A live league table over a {@link GameTally}, kept up to date as results arrive one at a time.
+ * Teams are held in an order-statistic tree ordered by points (descending) and then name
+ * (ascending, case sensitive), so a team's rank, a page of the table or the top N can be had in
+ * O(log n) (plus the size of the page) without re-sorting anything.
+ * <br>
+ * Ranks follow the same rules as {@link TeamRanker#calculateRankings}: teams on equal points share
+ * a rank, which is one more than the number of teams with strictly more points. If the ranker has
+ * {@link Tiebreaker}s, which the tree doesn't order by, queries instead rank the whole table (see
+ * {@link BucketRanking}) to apply them, so they all agree. That table is kept until the next result
+ * comes in, so queries between results cost O(n) only for the first of them.
+ * <br>
+ * The tree is a treap stored in flat int arrays indexed by team id (each team is its own node), so
+ * no objects are allocated per team or per update. Not thread-safe.
+ */
+final class Standings {
+
+    private static final int NIL = -1;
+
+    private final GameTally tally;
+    private int root = NIL;
+    private int teamCount; // ids below this are in the tree (ids are dense and handed out in order)
+    private long[] keyPoints = new long[16]; // points each node is currently ordered by
+    private int[] left = new int[16];
+    private int[] right = new int[16];
+    private int[] subtreeSize = new int[16];
+    private int splitLess; // results of split(), to save allocating a pair each time
+    private int splitGreater;
+    private GameTally.PointsListener changeListener; // may be null
+    private List<Tuple2<Long, Team>> ranked; // with tiebreakers: the table, till the next result
+    private int[] rowOf; // with tiebreakers: each team's (id's) row in ranked
+
+    /**
+     * Starts a table over the tally's current teams, which then follows any further results fed to
+     * the tally (whether through {@link #accept(String)} or directly).
+     */
+    Standings(GameTally tally) {
+        this.tally = tally;
+        for (int id = 0; id < tally.getTeamCount(); id++) {
+            onPointsChanged(id, 0, tally.getPoints(id));
+        }
+        tally.setListener(this::onPointsChanged);
+    }
+
+    /**
+     * Starts an empty table, scoring games as per the given ranker.
+     */
+    Standings(TeamRanker ranker) {
+        this(new GameTally(ranker));
+    }
+
+    /**
+     * Applies a single game result line.
+     *
+     * @return false if the line was faulty (in which case it's recorded in the tally's bad lines and
+     * the table is unchanged).
+     */
+    boolean accept(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        long badLines = tally.getBadLineCount();
+        tally.acceptLine(ByteBuffer.wrap(bytes), 0, bytes.length);
+        return tally.getBadLineCount() == badLines;
+    }
+
+    GameTally getTally() {
+        return tally;
+    }
+
+    /**
+     * Sets what to tell about every team whose points change (or that joins the table), once the
+     * table's been brought up to date, e.g. a {@link ChangeFeed}.
+     */
+    void setChangeListener(GameTally.PointsListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    int size() {
+        return teamCount;
+    }
+
+    /**
+     * @return the rank and current points of the named team, if it has played.
+     */
+    Option<Tuple2<Long, Team>> rankOf(String name) {
+        int id = tally.findTeam(name);
+        if (id < 0) {
+            return Option.none();
+        }
+        if (hasTiebreakers()) {
+            return Option.of(ranked().get(rowOf[id]));
+        }
+        return Option.of(Tuple.of(rankOfPoints(keyPoints[id]), team(id)));
+    }
+
+    /**
+     * @return the rank that a team on the given points has (or would have), ignoring any
+     * {@link Tiebreaker}s.
+     */
+    long rankOfPoints(long points) {
+        long moreThan = 0;
+        int node = root;
+        while (node != NIL) {
+            if (keyPoints[node] > points) {
+                moreThan += size(left[node]) + 1;
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+        }
+        return moreThan + 1;
+    }
+
+    /**
+     * @return the first {@code n} rows of the table (fewer if there aren't that many teams).
+     */
+    List<Tuple2<Long, Team>> top(int n) {
+        return page(0, n);
+    }
+
+    /**
+     * @return the whole table, in order.
+     */
+    List<Tuple2<Long, Team>> table() {
+        if (hasTiebreakers()) {
+            return new ArrayList<>(ranked());
+        }
+        return page(0, teamCount);
+    }
+
+    /**
+     * @param offset number of rows to skip (0 being the top of the table)
+     * @param limit  maximum number of rows to return
+     * @return rows {@code offset} (inclusive) to {@code offset + limit} (exclusive) of the table,
+     * with ranks that account for ties spilling over from earlier pages.
+     */
+    List<Tuple2<Long, Team>> page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative");
+        }
+        int count = Math.max(0, Math.min(limit, teamCount - offset));
+        if (hasTiebreakers()) {
+            return new ArrayList<>(ranked().subList(offset, offset + count));
+        }
+        List<Tuple2<Long, Team>> rows = new ArrayList<>(count);
+        if (count == 0) {
+            return rows;
+        }
+        // descend to the offset'th node, remembering the ancestors we still have to visit
+        int[] stack = new int[64];
+        int depth = 0;
+        int node = root;
+        int skip = offset;
+        while (true) {
+            int leftSize = size(left[node]);
+            if (skip < leftSize) {
+                stack = push(stack, depth++, node);
+                node = left[node];
+            } else if (skip > leftSize) {
+                skip -= leftSize + 1;
+                node = right[node];
+            } else {
+                break;
+            }
+        }
+        long rank = rankOfPoints(keyPoints[node]);
+        long lastPoints = keyPoints[node];
+        for (int position = offset; ; ) {
+            if (keyPoints[node] < lastPoints) {
+                rank = position + 1;
+                lastPoints = keyPoints[node];
+            }
+            rows.add(Tuple.of(rank, team(node)));
+            if (++position == offset + count) {
+                return rows;
+            }
+            // in-order successor: leftmost of the right subtree, else the nearest pending ancestor
+            if (right[node] != NIL) {
+                node = right[node];
+                while (left[node] != NIL) {
+                    stack = push(stack, depth++, node);
+                    node = left[node];
+                }
+            } else {
+                node = stack[--depth];
+            }
+        }
+    }
+
+    private boolean hasTiebreakers() {
+        return !tally.getRanker().getTiebreakers().isEmpty();
+    }
+
+    /**
+     * @return the table as ranked with tiebreakers, ranking it afresh if there's been a result
+     * since it was last ranked.
+     */
+    private List<Tuple2<Long, Team>> ranked() {
+        if (ranked == null) {
+            ranked = BucketRanking.table(tally);
+            rowOf = new int[teamCount];
+            for (int row = 0; row < ranked.size(); row++) {
+                rowOf[tally.findTeam(ranked.get(row)._2().getName())] = row;
+            }
+        }
+        return ranked;
+    }
+
+    private void onPointsChanged(int teamId, long oldPoints, long newPoints) {
+        ranked = null; // even if the points haven't changed, goals may have
+        if (teamId == teamCount) {
+            teamCount++;
+            ensureCapacity(teamId);
+        } else if (oldPoints == newPoints) {
+            return;
+        } else {
+            root = remove(root, teamId);
+        }
+        keyPoints[teamId] = newPoints;
+        left[teamId] = NIL;
+        right[teamId] = NIL;
+        subtreeSize[teamId] = 1;
+        root = insert(root, teamId);
+        if (changeListener != null) {
+            changeListener.onPointsChanged(teamId, oldPoints, newPoints);
+        }
+    }
+
+    private Team team(int id) {
+        return new Team(tally.getName(id), keyPoints[id]);
+    }
+
+    private int insert(int node, int id) {
+        if (node == NIL) {
+            return id;
+        }
+        if (priority(id) > priority(node)) {
+            split(node, id);
+            left[id] = splitLess;
+            right[id] = splitGreater;
+            update(id);
+            return id;
+        }
+        if (compare(id, node) < 0) {
+            left[node] = insert(left[node], id);
+        } else {
+            right[node] = insert(right[node], id);
+        }
+        update(node);
+        return node;
+    }
+
+    private int remove(int node, int id) {
+        if (node == id) {
+            return merge(left[node], right[node]);
+        }
+        if (compare(id, node) < 0) {
+            left[node] = remove(left[node], id);
+        } else {
+            right[node] = remove(right[node], id);
+        }
+        update(node);
+        return node;
+    }
+
+    /**
+     * Splits the subtree into nodes ordered before and after {@code id} (which isn't in it).
+     */
+    private void split(int node, int id) {
+        if (node == NIL) {
+            splitLess = NIL;
+            splitGreater = NIL;
+        } else if (compare(node, id) < 0) {
+            split(right[node], id);
+            right[node] = splitLess;
+            update(node);
+            splitLess = node;
+        } else {
+            split(left[node], id);
+            left[node] = splitGreater;
+            update(node);
+            splitGreater = node;
+        }
+    }
+
+    /**
+     * Joins two subtrees, where every node of {@code less} is ordered before every node of
+     * {@code greater}.
+     */
+    private int merge(int less, int greater) {
+        if (less == NIL) {
+            return greater;
+        }
+        if (greater == NIL) {
+            return less;
+        }
+        if (priority(less) > priority(greater)) {
+            right[less] = merge(right[less], greater);
+            update(less);
+            return less;
+        }
+        left[greater] = merge(less, left[greater]);
+        update(greater);
+        return greater;
+    }
+
+    // table order: points descending, then name ascending
+    private int compare(int a, int b) {
+        int byPoints = Long.compare(keyPoints[b], keyPoints[a]);
+        return byPoints != 0 ? byPoints : tally.compareNames(a, b);
+    }
+
+    private void update(int node) {
+        subtreeSize[node] = size(left[node]) + size(right[node]) + 1;
+    }
+
+    private int size(int node) {
+        return node == NIL ? 0 : subtreeSize[node];
+    }
+
+    // a hash of the id serves as the (fixed, pseudo-random) heap priority, so needs no storage
+    private static int priority(int id) {
+        int h = id * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    private void ensureCapacity(int id) {
+        if (id == keyPoints.length) {
+            keyPoints = Arrays.copyOf(keyPoints, id * 2);
+            left = Arrays.copyOf(left, id * 2);
+            right = Arrays.copyOf(right, id * 2);
+            subtreeSize = Arrays.copyOf(subtreeSize, id * 2);
+        }
+    }
+
+    private static int[] push(int[] stack, int depth, int node) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth] = node;
+        return stack;
+    }
+}
@@ -0,0 +1,78 @@
+package com.spandigital.matt;
+
+import java.util.Objects;
+
+/**
+ * A team whose rank or points moved between two versions of a table, as published by
+ * {@link ChangeFeed}.
+ */
+final class StandingsChange {
+    private final String name;
+    private final long oldRank; // 0 if the team wasn't in the table before
+    private final long oldPoints;
+    private final long rank;
+    private final long points;
+
+    StandingsChange(String name, long oldRank, long oldPoints, long rank, long points) {
+        this.name = Objects.requireNonNull(name);
+        this.oldRank = oldRank;
+        this.oldPoints = oldPoints;
+        this.rank = rank;
+        this.points = points;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the team's rank before, or 0 if it's new to the table.
+     */
+    public long getOldRank() {
+        return oldRank;
+    }
+
+    /**
+     * @return the team's points before (0 if it's new to the table).
+     */
+    public long getOldPoints() {
+        return oldPoints;
+    }
+
+    public long getRank() {
+        return rank;
+    }
+
+    public long getPoints() {
+        return points;
+    }
+
+    public boolean isNew() {
+        return oldRank == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        StandingsChange change = (StandingsChange) o;
+        return oldRank == change.oldRank && oldPoints == change.oldPoints && rank == change.rank
+                && points == change.points && name.equals(change.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, oldRank, oldPoints, rank, points);
+    }
+
+    @Override
+    public String toString() {
+        return "StandingsChange{" +
+                "name='" + name + '\'' +
+                ", oldRank=" + oldRank +
+                ", oldPoints=" + oldPoints +
+                ", rank=" + rank +
+                ", points=" + points +
+                '}';
+    }
+}
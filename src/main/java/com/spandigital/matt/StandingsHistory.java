@@ -0,0 +1,271 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.TreeSet;
+import io.vavr.control.Option;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tallies games as per a {@link GameTally}, also keeping the table as it stood after every line,
+ * so it can be ranked as of any line or matchday: for broadcast graphics, disputes, or charting
+ * a team's rank over time, without re-reading a truncated input.
+ * <br>
+ * The table is kept in persistent (immutable, structurally shared) collections: a red-black tree
+ * of teams ordered by points (descending) and then name, and a hash trie of each team's points.
+ * A game replaces only the O(log n) nodes on the paths to its two teams, sharing the rest with
+ * the table before it, so keeping a snapshot per line costs memory per change rather than per
+ * team.
+ * <br>
+ * Matchdays aren't marked in the input, so are taken to be the longest runs of lines in which no
+ * team plays twice: a matchday ends just before a line with a team that's already played in it.
+ * <br>
+ * Snapshots are ranked on points and then name; {@link Tiebreaker}s would need goals and
+ * head-to-head results as of each snapshot too, so aren't supported. Not thread-safe while
+ * ingesting.
+ */
+final class StandingsHistory {
+
+    private final GameTally tally;
+    private TreeSet<Row> rows;
+    private HashMap<Integer, Long> points = HashMap.empty(); // team id -> points
+    private final List<Snapshot> snapshots = new ArrayList<>(); // the n'th is as of line n
+    private long[] matchdayEnds = new long[16]; // line each finished matchday ended on
+    private int finishedMatchdays;
+    private int[] lastMatchday = new int[16]; // indexed by team id, the last (1-based) it played
+    private final int[] lineTeamIds = new int[2]; // teams whose points the current line changed
+    private int lineTeamCount;
+
+    /**
+     * @throws IllegalArgumentException if the ranker has tiebreakers.
+     */
+    StandingsHistory(TeamRanker ranker) {
+        if (!ranker.getTiebreakers().isEmpty()) {
+            throw new IllegalArgumentException("Standings history doesn't support tiebreakers.");
+        }
+        this.tally = new GameTally(ranker);
+        Comparator<Row> order = (row1, row2) -> row1.points != row2.points
+                ? Long.compare(row2.points, row1.points)
+                : tally.compareNames(row1.id, row2.id);
+        this.rows = TreeSet.empty(order);
+        snapshots.add(new Snapshot(0, rows, points));
+        tally.setListener(this::onPointsChanged);
+    }
+
+    /**
+     * Consumes the channel until end of stream, continuing the line numbering from any earlier
+     * channels.
+     */
+    void accept(ReadableByteChannel channel) throws IOException {
+        LineScanner.scan(channel, this::acceptLine, tally.getRanker().getMetrics());
+    }
+
+    /**
+     * Consumes a single line, occupying {@code [start, end)} of the buffer, as per
+     * {@link GameTally#acceptLine(ByteBuffer, int, int)}.
+     */
+    void acceptLine(ByteBuffer buf, int start, int end) {
+        lineTeamCount = 0;
+        tally.acceptLine(buf, start, end);
+        long lineNumber = tally.getLineCount();
+        if (lineTeamCount == 0) { // a bad line, which changes nothing
+            snapshots.add(snapshots.get(snapshots.size() - 1).asOf(lineNumber));
+            return;
+        }
+        int matchday = finishedMatchdays + 1;
+        boolean playedAlready = false;
+        for (int i = 0; i < lineTeamCount; i++) {
+            int id = lineTeamIds[i];
+            if (id >= lastMatchday.length) { // ids are dense, so we only ever need to grow by one
+                lastMatchday = Arrays.copyOf(lastMatchday, lastMatchday.length * 2);
+            }
+            playedAlready |= lastMatchday[id] == matchday;
+        }
+        if (playedAlready) {
+            if (finishedMatchdays == matchdayEnds.length) {
+                matchdayEnds = Arrays.copyOf(matchdayEnds, finishedMatchdays * 2);
+            }
+            matchdayEnds[finishedMatchdays++] = lineNumber - 1;
+            matchday++;
+        }
+        for (int i = 0; i < lineTeamCount; i++) {
+            lastMatchday[lineTeamIds[i]] = matchday;
+        }
+        snapshots.add(new Snapshot(lineNumber, rows, points));
+    }
+
+    private void onPointsChanged(int teamId, long oldPoints, long newPoints) {
+        if (lineTeamCount == 0 || lineTeamIds[0] != teamId) { // a team can play itself
+            lineTeamIds[lineTeamCount++] = teamId; // even if it lost, it's played
+        }
+        if (points.containsKey(teamId)) {
+            if (oldPoints == newPoints) { // a loss, which leaves the table as it was
+                return;
+            }
+            rows = rows.remove(new Row(teamId, oldPoints));
+        }
+        rows = rows.add(new Row(teamId, newPoints));
+        points = points.put(teamId, newPoints);
+    }
+
+    /**
+     * @return the tally of every line so far (e.g. for its bad lines).
+     */
+    GameTally getTally() {
+        return tally;
+    }
+
+    long getLineCount() {
+        return tally.getLineCount();
+    }
+
+    /**
+     * @return the number of matchdays so far, including the latest (which may not be over yet).
+     */
+    int getMatchdayCount() {
+        return points.isEmpty() ? 0 : finishedMatchdays + 1;
+    }
+
+    /**
+     * @return the table as it stood after the given line (the first being 1, and 0 being before
+     * any), or as it stands now, if there aren't that many lines.
+     */
+    Snapshot atLine(long lineNumber) {
+        if (lineNumber < 0) {
+            throw new IllegalArgumentException("Line number must not be negative");
+        }
+        return snapshots.get((int) Math.min(lineNumber, snapshots.size() - 1));
+    }
+
+    /**
+     * @param matchday the first being 1
+     * @return the table as it stood at the end of the given matchday.
+     * @throws IllegalArgumentException if there haven't been that many matchdays.
+     */
+    Snapshot afterMatchday(int matchday) {
+        if (matchday < 1 || matchday > getMatchdayCount()) {
+            throw new IllegalArgumentException("No matchday " + matchday + "; there "
+                    + (getMatchdayCount() == 1 ? "has been 1" : "have been " + getMatchdayCount())
+                    + " so far.");
+        }
+        return matchday > finishedMatchdays ? atLine(getLineCount())
+                : atLine(matchdayEnds[matchday - 1]);
+    }
+
+    /**
+     * A team on some number of points, as ordered in the table.
+     */
+    private static final class Row {
+
+        final int id;
+        final long points;
+
+        Row(int id, long points) {
+            this.id = id;
+            this.points = points;
+        }
+    }
+
+    /**
+     * The table as it stood after some line. Immutable, but names are read from the tally, so
+     * snapshots are only safe to share between threads once ingesting is done.
+     */
+    final class Snapshot {
+
+        private final long lineNumber;
+        private final TreeSet<Row> rows;
+        private final HashMap<Integer, Long> points;
+
+        private Snapshot(long lineNumber, TreeSet<Row> rows, HashMap<Integer, Long> points) {
+            this.lineNumber = lineNumber;
+            this.rows = rows;
+            this.points = points;
+        }
+
+        private Snapshot asOf(long lineNumber) {
+            return new Snapshot(lineNumber, rows, points);
+        }
+
+        /**
+         * @return the line the table is as of.
+         */
+        long getLineNumber() {
+            return lineNumber;
+        }
+
+        int size() {
+            return rows.size();
+        }
+
+        /**
+         * @return the whole table, ordered and ranked as per {@link TeamRanker#calculateRankings}.
+         */
+        List<Tuple2<Long, Team>> table() {
+            return page(0, Integer.MAX_VALUE);
+        }
+
+        /**
+         * @return the first {@code n} rows of the table (fewer if there aren't that many teams).
+         */
+        List<Tuple2<Long, Team>> top(int n) {
+            return page(0, n);
+        }
+
+        /**
+         * @return rows {@code offset} (inclusive) to {@code offset + limit} (exclusive) of the
+         * table, ranked as for the whole table.
+         */
+        List<Tuple2<Long, Team>> page(int offset, int limit) {
+            if (offset < 0 || limit < 0) {
+                throw new IllegalArgumentException("Offset and limit must not be negative");
+            }
+            List<Tuple2<Long, Team>> page = new ArrayList<>(
+                    Math.max(0, Math.min(limit, rows.size() - offset)));
+            Iterator<Row> iterator = rows.iterator();
+            long rank = 0;
+            long lastPoints = 0;
+            for (int position = 0; position - offset < limit && iterator.hasNext(); position++) {
+                Row row = iterator.next();
+                if (position == 0 || row.points != lastPoints) {
+                    rank = position + 1;
+                    lastPoints = row.points;
+                }
+                if (position >= offset) {
+                    page.add(Tuple.of(rank, new Team(tally.getName(row.id), row.points)));
+                }
+            }
+            return page;
+        }
+
+        /**
+         * @return the rank and points of the named team at the time, if it had played by then.
+         * The rank is found by counting the teams above it, so this costs O(rank) rather than
+         * O(log n): the tree isn't an order statistic one, keeping no subtree sizes. For ranking
+         * a team near the bottom of a big table often, {@link #table()} once is cheaper.
+         */
+        Option<Tuple2<Long, Team>> rankOf(String name) {
+            int id = tally.findTeam(name);
+            Option<Long> teamPoints = id < 0 ? Option.none() : points.get(id);
+            if (teamPoints.isEmpty()) {
+                return Option.none();
+            }
+            long moreThan = 0;
+            for (Row row : rows) { // from the top, so only passes the teams above
+                if (row.points <= teamPoints.get()) {
+                    break;
+                }
+                moreThan++;
+            }
+            return Option.of(Tuple.of(moreThan + 1, new Team(name, teamPoints.get())));
+        }
+    }
+}
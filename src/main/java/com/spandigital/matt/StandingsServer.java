@@ -0,0 +1,304 @@
+package com.spandigital.matt;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.vavr.Tuple2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a league table in memory and serves it over HTTP on localhost, so lookups don't each pay
+ * for a JVM start and a full re-read. Requests:
+ * <br>1. {@code POST /results}: a body of result lines, applied all together or (if any are bad)
+ * not at all, in which case the response is a 400 listing the bad lines.
+ * <br>2. {@code GET /table}: the table, optionally paged with {@code offset} and {@code limit}.
+ * <br>3. {@code GET /top?n=10}: the first n rows.
+ * <br>4. {@code GET /rank?team=Lions}: the team's row, or a 404 if it hasn't played.
+ * <br>
+ * Queries take a {@code format} (as per {@link OutputFormat}, text by default).
+ * <br>
+ * Submissions are applied to a {@link ConcurrentTally}, so any number of them can be under way at
+ * once. Queries are answered from an immutable snapshot of the table, cached until results next
+ * arrive, so any number of readers share it without locking. Only rebuilding the snapshot (once per
+ * batch of results, by whichever reader first needs it) touches the live tally, and then only to
+ * copy its totals, as per {@link ConcurrentTally#snapshot()}: the table is ranked from the copy,
+ * and the snapshot built, with nothing held that submissions take. So submissions never wait on
+ * readers, only on at most one copy of the totals being taken.
+ */
+final class StandingsServer {
+
+    private static final String TEXT_TYPE = "text/plain; charset=utf-8";
+
+    private final ConcurrentTally tally;
+    private final Object snapshotLock = new Object(); // so only one reader rebuilds the snapshot
+    private final AtomicLong version = new AtomicLong(); // bumped by every submission applied
+    private volatile Snapshot snapshot;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param tally   results to serve the table of (and add submitted results to).
+     * @param port    port to listen on (on the loopback address), or 0 for any free one.
+     * @param threads number of threads handling requests.
+     * @throws IOException if the port can't be bound.
+     */
+    StandingsServer(ConcurrentTally tally, int port, int threads) throws IOException {
+        this.tally = tally;
+        this.snapshot = new Snapshot(version.get(), tally.table());
+        this.server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/results", exchange -> handle(exchange, "POST", this::submit));
+        server.createContext("/table", exchange -> handle(exchange, "GET", this::table));
+        server.createContext("/top", exchange -> handle(exchange, "GET", this::top));
+        server.createContext("/rank", exchange -> handle(exchange, "GET", this::rank));
+    }
+
+    void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, letting those under way finish (for up to a second).
+     */
+    void stop() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange, Map<String, String> query) throws IOException;
+    }
+
+    private static void handle(HttpExchange exchange, String method, Handler handler)
+            throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals(method)) {
+                exchange.getResponseHeaders().set("Allow", method);
+                respond(exchange, 405, "Use " + method + "\n");
+                return;
+            }
+            handler.handle(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage() + "\n");
+        } catch (RuntimeException e) {
+            // anything else is a fault here, not in the request
+            respond(exchange, 500, "Internal error: " + e + "\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void submit(HttpExchange exchange, Map<String, String> query) throws IOException {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readAllBytes();
+        }
+        ByteBuffer buf = ByteBuffer.wrap(body);
+        // check the lines first, without holding anything up, so a bad batch changes nothing
+        GameLineParser parser = new GameLineParser();
+        List<String> badLines = new ArrayList<>();
+        long[] lineNumber = {0};
+        LineScanner.scan(buf, 0, body.length, true, (b, start, end) -> {
+            lineNumber[0]++;
+            if (!parser.parse(b, start, end)) {
+                badLines.add(tally.getRanker().formatBadLineWithReason(
+                        new BadLine(null, lineNumber[0], parser.failure(),
+                                GameLineParser.decode(b, start, end))));
+            }
+        }, new RunMetrics()); // only checked here, so counted when tallied instead
+        if (!badLines.isEmpty()) {
+            respond(exchange, 400, "No results applied; there were problems with the following "
+                    + "lines:\n" + String.join("\n", badLines) + "\n");
+            return;
+        }
+        if (lineNumber[0] > 0) {
+            tally.acceptAll(buf, 0, body.length);
+            version.incrementAndGet();
+        }
+        respond(exchange, 200, "Applied " + lineNumber[0] + " results\n");
+    }
+
+    private void table(HttpExchange exchange, Map<String, String> query) throws IOException {
+        OutputFormat format = format(query);
+        long offset = number(query, "offset", 0);
+        long limit = number(query, "limit", Integer.MAX_VALUE);
+        Snapshot current = current();
+        if (offset == 0 && limit >= current.table.size()) {
+            respond(exchange, format, current.render(format));
+        } else {
+            respond(exchange, format, render(format, page(current.table, offset, limit)));
+        }
+    }
+
+    private void top(HttpExchange exchange, Map<String, String> query) throws IOException {
+        OutputFormat format = format(query);
+        long n = number(query, "n", 10);
+        respond(exchange, format, render(format, page(current().table, 0, n)));
+    }
+
+    private void rank(HttpExchange exchange, Map<String, String> query) throws IOException {
+        OutputFormat format = format(query);
+        String team = query.get("team");
+        if (team == null) {
+            throw new IllegalArgumentException("Which team? e.g. /rank?team=Lions");
+        }
+        Snapshot current = current();
+        Integer row = current.rows.get(team);
+        if (row == null) {
+            respond(exchange, 404, "No results for team: " + team + "\n");
+            return;
+        }
+        respond(exchange, format, render(format, current.table.subList(row, row + 1)));
+    }
+
+    /**
+     * @return the snapshot for the latest results, taking a new one if results have arrived. The
+     * lock here is only ever taken by readers, so building the snapshot holds up no submission.
+     */
+    private Snapshot current() {
+        Snapshot cached = snapshot;
+        long latest = version.get();
+        if (cached.version == latest) {
+            return cached;
+        }
+        synchronized (snapshotLock) { // so only the first reader after a change rebuilds it
+            if (snapshot.version < latest) {
+                // read before the table, so a submission that lands in between leaves this
+                // snapshot looking out of date (and so taken again), never up to date when it isn't
+                long taken = version.get();
+                snapshot = new Snapshot(taken, tally.table());
+            }
+            return snapshot;
+        }
+    }
+
+    private static List<Tuple2<Long, Team>> page(List<Tuple2<Long, Team>> table, long offset,
+            long limit) {
+        int from = (int) Math.min(offset, table.size());
+        return table.subList(from, from + (int) Math.min(limit, table.size() - from));
+    }
+
+    private static byte[] render(OutputFormat format, List<Tuple2<Long, Team>> rows)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RankingWriter writer = RankingWriter.create(format, Channels.newChannel(out));
+        writer.write(rows);
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    private static OutputFormat format(Map<String, String> query) {
+        String format = query.get("format");
+        return format == null ? OutputFormat.TEXT : OutputFormat.forName(format);
+    }
+
+    private static long number(Map<String, String> query, String name, long defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value);
+            if (parsed >= 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) { // fall through to the more helpful message below
+        }
+        throw new IllegalArgumentException(
+                "Parameter " + name + " requires a whole number (0 or more), e.g. " + name + "=10");
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", TEXT_TYPE);
+        send(exchange, status, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, OutputFormat format, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", switch (format) {
+            // the text format is in the platform charset, as on the command line
+            case TEXT -> "text/plain; charset=" + Charset.defaultCharset().name();
+            case CSV -> "text/csv; charset=utf-8";
+            case JSON_LINES -> "application/jsonl; charset=utf-8";
+            case BINARY -> "application/octet-stream";
+        });
+        send(exchange, 200, body);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * The table as of some version of the results, with each team's row for rank lookups, and the
+     * full table rendered in each format as it's first asked for.
+     */
+    private static final class Snapshot {
+
+        final long version;
+        final List<Tuple2<Long, Team>> table;
+        final Map<String, Integer> rows = new HashMap<>();
+        private final Map<OutputFormat, byte[]> rendered = new ConcurrentHashMap<>();
+
+        Snapshot(long version, List<Tuple2<Long, Team>> table) {
+            this.version = version;
+            this.table = List.copyOf(table);
+            for (int row = 0; row < table.size(); row++) {
+                rows.put(table.get(row)._2().getName(), row);
+            }
+        }
+
+        byte[] render(OutputFormat format) throws IOException {
+            byte[] bytes = rendered.get(format);
+            if (bytes == null) { // two readers may both render it at first, which is harmless
+                bytes = StandingsServer.render(format, table);
+                rendered.put(format, bytes);
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.spandigital.matt;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Maps raw (UTF-8) team name bytes to dense int ids, starting at 0 and handed out in order of first
+ * appearance. Names are copied into a single byte arena, so looking up an already-known name
+ * allocates nothing, and are only decoded to a {@link String} (at most once) when first asked for.
+ * That keeps a team's footprint down to its name bytes plus a handful of ints.
+ * <br>
+ * Not thread-safe; each ingesting thread should own its dictionary.
+ */
+final class TeamDictionary {
+
+    private static final int EMPTY = -1;
+
+    private int[] slots; // open addressing (linear probing), holds ids or EMPTY
+    private int mask;
+    private int[] hashes = new int[16];
+    private int[] offsets = new int[17]; // offsets[id] .. offsets[id + 1] is the name in the arena
+    private byte[] arena = new byte[256];
+    private String[] names = new String[16];
+    private int size;
+
+    TeamDictionary() {
+        slots = new int[32];
+        Arrays.fill(slots, EMPTY);
+        mask = slots.length - 1;
+    }
+
+    /**
+     * Looks up (adding if required) the team whose name occupies the given byte range.
+     *
+     * @param buf   buffer holding the name bytes
+     * @param start index of the first byte of the name (inclusive)
+     * @param end   index just past the last byte of the name (exclusive)
+     * @return the dense id of the team
+     */
+    int intern(ByteBuffer buf, int start, int end) {
+        int hash = hash(buf, start, end);
+        int slot = hash & mask;
+        while (true) {
+            int id = slots[slot];
+            if (id == EMPTY) {
+                return add(buf, start, end, hash, slot);
+            }
+            if (hashes[id] == hash && sameBytes(id, buf, start, end)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Convenience for callers that already hold a decoded name, which is kept rather than decoded
+     * again later.
+     */
+    int intern(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int id = intern(ByteBuffer.wrap(bytes), 0, bytes.length);
+        if (names[id] == null) {
+            names[id] = name;
+        }
+        return id;
+    }
+
+    /**
+     * @return the id of the given name, or -1 if it has never been interned.
+     */
+    int find(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int hash = hash(buf, 0, bytes.length);
+        int slot = hash & mask;
+        while (true) {
+            int id = slots[slot];
+            if (id == EMPTY) {
+                return -1;
+            }
+            if (hashes[id] == hash && sameBytes(id, buf, 0, bytes.length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Interns the name that {@code otherId} has in another dictionary, without decoding it.
+     */
+    int intern(TeamDictionary other, int otherId) {
+        return intern(ByteBuffer.wrap(other.arena), other.offsets[otherId],
+                other.offsets[otherId + 1]);
+    }
+
+    String name(int id) {
+        String name = names[id];
+        if (name == null) {
+            name = new String(arena, offsets[id], offsets[id + 1] - offsets[id],
+                    StandardCharsets.UTF_8);
+            names[id] = name;
+        }
+        return name;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return roughly how many bytes the dictionary holds, not counting names decoded so far.
+     */
+    long estimateSize() {
+        return 4L * (slots.length + hashes.length + offsets.length) + arena.length
+                + 8L * names.length;
+    }
+
+    /**
+     * @return a read-only view of the team's name as raw (UTF-8) bytes, without copying them.
+     */
+    ByteBuffer nameBytes(int id) {
+        return ByteBuffer.wrap(arena, offsets[id], offsets[id + 1] - offsets[id]).slice()
+                .asReadOnlyBuffer();
+    }
+
+    /**
+     * Compares two names the way {@link String#compareTo} would, but straight from their bytes, so
+     * that sorting doesn't need every name decoded (and cached).
+     * <br>
+     * UTF-8 byte order is code point order, which only differs from String's UTF-16 order between
+     * characters in U+E000..U+FFFF and those above U+FFFF (stored as surrogates, U+D800..U+DFFF),
+     * so just that case gets special treatment.
+     */
+    int compareNames(int a, int b) {
+        int offsetA = offsets[a];
+        int offsetB = offsets[b];
+        int lengthA = offsets[a + 1] - offsetA;
+        int lengthB = offsets[b + 1] - offsetB;
+        int common = Math.min(lengthA, lengthB);
+        int i = Arrays.mismatch(arena, offsetA, offsetA + common, arena, offsetB, offsetB + common);
+        if (i < 0) {
+            return lengthA - lengthB;
+        }
+        int byteA = arena[offsetA + i] & 0xFF;
+        int byteB = arena[offsetB + i] & 0xFF;
+        // back up to the first byte of the character that differs (it starts at the same index
+        // in both, since everything before it is equal)
+        int charStart = i;
+        while (charStart > 0 && (arena[offsetA + charStart] & 0xC0) == 0x80) {
+            charStart--;
+        }
+        boolean supplementaryA = isSupplementary(offsetA + charStart);
+        boolean supplementaryB = isSupplementary(offsetB + charStart);
+        if (supplementaryA != supplementaryB
+                && isPrivateUseOrAbove(supplementaryA ? offsetB + charStart : offsetA + charStart)) {
+            return supplementaryA ? -1 : 1; // a surrogate sorts before U+E000..U+FFFF
+        }
+        return byteA - byteB;
+    }
+
+    // 4-byte UTF-8 sequences (lead byte 11110xxx) are the ones above U+FFFF
+    private boolean isSupplementary(int index) {
+        return (arena[index] & 0xF8) == 0xF0;
+    }
+
+    // 3-byte sequences from U+E000 up, i.e. lead byte 0xEE or 0xEF
+    private boolean isPrivateUseOrAbove(int index) {
+        int lead = arena[index] & 0xFF;
+        return lead == 0xEE || lead == 0xEF;
+    }
+
+    private int add(ByteBuffer buf, int start, int end, int hash, int slot) {
+        int id = size++;
+        int length = end - start;
+        if (id == names.length) {
+            hashes = Arrays.copyOf(hashes, id * 2);
+            offsets = Arrays.copyOf(offsets, id * 2 + 1);
+            names = Arrays.copyOf(names, id * 2);
+        }
+        int offset = offsets[id];
+        if (offset + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, offset + length));
+        }
+        buf.get(start, arena, offset, length);
+        offsets[id + 1] = offset + length;
+        hashes[id] = hash;
+        slots[slot] = id;
+        if (size * 2 > slots.length) { // keep the load factor at or below 0.5
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, EMPTY);
+        mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    private boolean sameBytes(int id, ByteBuffer buf, int start, int end) {
+        int offset = offsets[id];
+        if (offsets[id + 1] - offset != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (arena[offset++] != buf.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(ByteBuffer buf, int start, int end) {
+        int h = 0x811C9DC5; // FNV-1a, then a final mix so linear probing doesn't cluster
+        for (int i = start; i < end; i++) {
+            h = (h ^ buf.get(i)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -4,15 +4,16 @@ import io.vavr.Tuple;
 import io.vavr.Tuple2;
 import io.vavr.control.Either;
 
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 final class TeamRanker {
@@ -24,17 +25,84 @@ final class TeamRanker {
     private final long winPoints;
     private final long drawPoints;
     private final long lossPoints;
+    private final ErrorPolicy errorPolicy;
+    private final List<Tiebreaker> tiebreakers;
+    private final RunMetrics metrics;
 
     TeamRanker(long winPoints, long drawPoints, long lossPoints) {
+        this(winPoints, drawPoints, lossPoints, ErrorPolicy.collectAll(), List.of(),
+                new RunMetrics());
+    }
+
+    private TeamRanker(long winPoints, long drawPoints, long lossPoints, ErrorPolicy errorPolicy,
+            List<Tiebreaker> tiebreakers, RunMetrics metrics) {
         this.winPoints = winPoints;
         this.drawPoints = drawPoints;
         this.lossPoints = lossPoints;
+        this.errorPolicy = errorPolicy;
+        this.tiebreakers = tiebreakers;
+        this.metrics = metrics;
     }
 
     static TeamRanker createDefault() {
         return new TeamRanker(WIN_POINTS, DRAW_POINTS, LOSS_POINTS);
     }
 
+    /**
+     * @return a ranker scoring games the same way, but dealing with bad lines as per the policy.
+     */
+    TeamRanker withErrorPolicy(ErrorPolicy errorPolicy) {
+        return new TeamRanker(winPoints, drawPoints, lossPoints, errorPolicy, tiebreakers,
+                metrics);
+    }
+
+    ErrorPolicy getErrorPolicy() {
+        return errorPolicy;
+    }
+
+    /**
+     * @return a ranker separating teams on equal points with the given tiebreakers, in order (see
+     * {@link Tiebreaker}), rather than only listing them by name. Tallies made with it also keep
+     * head-to-head results, if that's one of the tiebreakers.
+     */
+    TeamRanker withTiebreakers(List<Tiebreaker> tiebreakers) {
+        return new TeamRanker(winPoints, drawPoints, lossPoints, errorPolicy,
+                List.copyOf(tiebreakers), metrics);
+    }
+
+    List<Tiebreaker> getTiebreakers() {
+        return tiebreakers;
+    }
+
+    /**
+     * @return a ranker scoring games the same way, but recording what it (and whatever reads,
+     * tallies or ranks for it) gets through in the given metrics, e.g. {@link RunMetrics#GLOBAL}.
+     * Otherwise, each ranker made from scratch has metrics of its own.
+     */
+    TeamRanker withMetrics(RunMetrics metrics) {
+        return new TeamRanker(winPoints, drawPoints, lossPoints, errorPolicy, tiebreakers,
+                metrics);
+    }
+
+    RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return whether tallies need to keep head-to-head results, for a {@link Tiebreaker}.
+     */
+    boolean needsHeadToHead() {
+        return tiebreakers.contains(Tiebreaker.HEAD_TO_HEAD);
+    }
+
+    /**
+     * @return whether tallies need to keep each team's goals, for a {@link Tiebreaker}.
+     */
+    boolean needsGoals() {
+        return tiebreakers.contains(Tiebreaker.GOAL_DIFFERENCE)
+                || tiebreakers.contains(Tiebreaker.GOALS_FOR);
+    }
+
     /**
      * Takes a list of games (each between two teams) and computes the total points and global
      * ranking for each team. Results are sorted by rank (descending), where ties in points result
@@ -46,45 +114,197 @@ final class TeamRanker {
      * 2-tuples is returned, where each tuple contains the rank and the Team.
      */
     Either<List<String>, List<Tuple2<Long, Team>>> calculateRankings(Stream<String> lines) {
-        Map<String, Team> teams = new HashMap<>();
-        List<String> badLines = new LinkedList<>();
-        AtomicLong lineNumber = new AtomicLong(0);
-        lines.forEach(line -> {
-            long ln = lineNumber.incrementAndGet();
-            Either<String, Tuple2<Team, Team>> parsedLine = parseLine(ln, line);
-            if (parsedLine.isLeft()) {
-                badLines.add(parsedLine.getLeft());
-            } else {
-                Tuple2<Team, Team> result = parsedLine.get();
-                teams.merge(result._1()
-                                .getName(), result._1(),
-                        (tTotal, tResult) -> tTotal.addPoints(tResult.getPoints()));
-                teams.merge(result._2()
-                                .getName(), result._2(),
-                        (tTotal, tResult) -> tTotal.addPoints(tResult.getPoints()));
-            }
-        });
-        if (badLines.size() > 0) { // no point going any further if we have bad lines
-            return Either.left(badLines);
+        GameTally tally = new GameTally(this);
+        try {
+            lines.forEach(line -> {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                tally.acceptLine(ByteBuffer.wrap(bytes), 0, bytes.length);
+            });
+        } catch (TooManyBadLinesException e) {
+            return Either.left(formatBadLines(e.getBadLines()));
+        }
+        return rank(tally);
+    }
+
+    /**
+     * As per {@link #calculateRankings(Stream)}, but reading raw (UTF-8) lines straight from the
+     * channel, without decoding them to Strings first.
+     *
+     * @param input channel to read game result lines from, until end of stream.
+     * @throws IOException if reading from the channel fails
+     */
+    Either<List<String>, List<Tuple2<Long, Team>>> calculateRankings(ReadableByteChannel input)
+            throws IOException {
+        GameTally tally = new GameTally(this);
+        try {
+            tally.accept(input);
+        } catch (TooManyBadLinesException e) {
+            return Either.left(formatBadLines(e.getBadLines()));
+        }
+        return rank(tally);
+    }
+
+    /**
+     * As per {@link #calculateRankings(Stream)}, but memory-mapping the file and tallying
+     * newline-aligned chunks of it concurrently on the given pool.
+     *
+     * @param input file to read game result lines from, in its entirety.
+     * @param pool  pool on which to tally the chunks (and merge the tallies).
+     * @throws IOException if mapping or reading the file fails
+     */
+    Either<List<String>, List<Tuple2<Long, Team>>> calculateRankings(FileChannel input,
+            ForkJoinPool pool) throws IOException {
+        try {
+            return rank(ParallelIngest.ingest(input, this, pool));
+        } catch (TooManyBadLinesException e) {
+            return Either.left(formatBadLines(e.getBadLines()));
         }
+    }
 
-        List<Tuple2<Long, Team>> rankings = new LinkedList<>();
-        // Rank may remain the same between teams, but we need to track the total number of teams
-        // processed so that we can jump to next rank when required.
-        AtomicLong rank = new AtomicLong(0);
-        AtomicInteger processed = new AtomicInteger(0);
-        AtomicLong lastPoints = new AtomicLong(
-                Long.MAX_VALUE); // hopefully this suffices... but there is an edge case here
-        teams.values().stream().sorted(Comparator.comparing(Team::getPoints).reversed()
-                .thenComparing(Team::getName)).forEach(team -> {
-            processed.incrementAndGet();
-            if (team.getPoints() < lastPoints.get()) {
-                rank.set(processed.get());
-                lastPoints.set(team.getPoints());
-            }
-            rankings.add(Tuple.of(rank.get(), team));
-        });
-        return Either.right(rankings);
+    /**
+     * As per {@link #calculateRankings(Stream)}, but over any number of inputs, each read
+     * concurrently, with bad lines naming the input they came from if there's more than one.
+     *
+     * @param parallel whether to also tally chunks of each file concurrently, as per
+     *                 {@link #calculateRankings(FileChannel, ForkJoinPool)}.
+     * @throws IOException if reading any of the inputs fails
+     */
+    Either<List<String>, List<Tuple2<Long, Team>>> calculateRankings(List<InputSource> inputs,
+            boolean parallel) throws IOException {
+        try {
+            return rank(SourceIngest.ingestAll(inputs, this, parallel));
+        } catch (TooManyBadLinesException e) {
+            return Either.left(formatBadLines(e.getBadLines()));
+        }
+    }
+
+    /**
+     * Ranks the teams of an already populated tally, as per {@link #calculateRankings(Stream)}.
+     * Bad lines only stop that if the {@link ErrorPolicy} says so: any at all by default, or too
+     * many for a tolerant policy.
+     * <br>
+     * Teams are ordered by a counting sort on points (see {@link BucketRanking}), so this is
+     * roughly linear in the number of teams.
+     */
+    Either<List<String>, List<Tuple2<Long, Team>>> rank(GameTally tally) {
+        return checkBadLines(tally).map(ok -> timeRanking(tally.getLineCount(),
+                tally.getTeamCount(), tally.estimateSize(), () -> BucketRanking.table(tally)));
+    }
+
+    /**
+     * As per {@link #rank(GameTally)}, but only producing rows {@code offset} to
+     * {@code offset + limit} of the table, which is much cheaper than ranking everyone when there
+     * are many teams and only the top few are wanted (see {@link TopRanks}). With tiebreakers
+     * though, the whole table is ranked and then sliced.
+     */
+    Either<List<String>, List<Tuple2<Long, Team>>> rankPage(GameTally tally, int offset,
+            int limit) {
+        return checkBadLines(tally).map(ok -> timeRanking(tally.getLineCount(),
+                tally.getTeamCount(), tally.estimateSize(), () -> page(tally, offset, limit)));
+    }
+
+    /**
+     * As per {@link #rankPage(GameTally, int, int)}, but for the table as it stood at some earlier
+     * point of the history's tally (bad lines being judged over all of it, as the table's the same
+     * either way).
+     */
+    Either<List<String>, List<Tuple2<Long, Team>>> rankPage(StandingsHistory history,
+            StandingsHistory.Snapshot snapshot, int offset, int limit) {
+        GameTally tally = history.getTally();
+        return checkBadLines(tally).map(ok -> timeRanking(snapshot.getLineNumber(),
+                snapshot.size(), tally.estimateSize(), () -> snapshot.page(offset, limit)));
+    }
+
+    /**
+     * Ranks every league in the tally, each as per {@link #rankPage(GameTally, int, int)} (or
+     * {@link #rank(GameTally)}, for the whole table), concurrently on the common pool.
+     *
+     * @return If bad lines stop the ranking (see {@link #rank(GameTally)}), an {@link Either.Left}
+     * with the bad lines, otherwise an {@link Either.Right} with a 2-tuple of league name and table
+     * for every league, in league name order.
+     */
+    Either<List<String>, List<Tuple2<String, List<Tuple2<Long, Team>>>>> rankLeagues(
+            LeagueTally tally, int offset, int limit) {
+        try {
+            tally.checkBadLines(true);
+        } catch (TooManyBadLinesException e) {
+            return Either.left(formatBadLines(e.getBadLines()));
+        }
+        if (tally.getBadLineCount() > 0 && !errorPolicy.isTolerant()) {
+            return Either.left(formatBadLines(tally.getBadLines()));
+        }
+        long teamCount = 0;
+        for (int league = 0; league < tally.getLeagueCount(); league++) {
+            teamCount += tally.getTally(league).getTeamCount();
+        }
+        return Either.right(timeRanking(tally.getLineCount(), teamCount, tally.estimateSize(),
+                () -> IntStream.range(0, tally.getLeagueCount())
+                        .boxed()
+                        .sorted(tally::compareLeagues)
+                        .parallel()
+                        .map(league -> {
+                            GameTally leagueTally = tally.getTally(league);
+                            List<Tuple2<Long, Team>> table = page(leagueTally, offset, limit);
+                            return Tuple.of(tally.getLeague(league), table);
+                        })
+                        .collect(Collectors.toList())));
+    }
+
+    /**
+     * Tiebreakers can move any team on the same points as the page's first or last, so then the
+     * whole table is ranked (though only tied groups get tiebroken, so that's still cheap).
+     */
+    private List<Tuple2<Long, Team>> page(GameTally tally, int offset, int limit) {
+        if (offset == 0 && limit >= tally.getTeamCount()) {
+            return BucketRanking.table(tally);
+        }
+        if (tiebreakers.isEmpty()) {
+            return TopRanks.page(tally, offset, limit);
+        }
+        List<Tuple2<Long, Team>> table = BucketRanking.table(tally);
+        int from = Math.min(offset, table.size());
+        return List.copyOf(table.subList(from, (int) Math.min((long) from + limit, table.size())));
+    }
+
+    /**
+     * Runs a ranking, recording it in {@link RunMetrics} and as a {@link PhaseEvent}.
+     */
+    private <T> T timeRanking(long lineCount, long teamCount, long tallyBytes,
+            Supplier<T> ranking) {
+        PhaseEvent event = new PhaseEvent(PhaseEvent.RANK);
+        event.begin();
+        long started = System.nanoTime();
+        T rankings = ranking.get();
+        metrics.addRank(System.nanoTime() - started);
+        metrics.recordTally(teamCount, tallyBytes);
+        event.end();
+        if (event.shouldCommit()) {
+            event.lines = lineCount;
+            event.teams = teamCount;
+            event.commit();
+        }
+        return rankings;
+    }
+
+    private Either<List<String>, GameTally> checkBadLines(GameTally tally) {
+        try {
+            tally.checkBadLines(true);
+        } catch (TooManyBadLinesException e) {
+            return Either.left(formatBadLines(e.getBadLines()));
+        }
+        if (tally.getBadLineCount() > 0 && !errorPolicy.isTolerant()) {
+            return Either.left(formatBadLines(tally.getBadLines()));
+        }
+        return Either.right(tally);
+    }
+
+    /**
+     * @return each bad line as per {@link #formatBadLine}.
+     */
+    List<String> formatBadLines(List<BadLine> badLines) {
+        return badLines.stream()
+                .map(this::formatBadLine)
+                .collect(Collectors.toList());
     }
 
     /**
@@ -100,48 +320,44 @@ final class TeamRanker {
      * is returned.
      */
     Either<String, Tuple2<Team, Team>> parseLine(long lineNumber, String line) {
-        String[] scores = line.split(",");
-        if (scores.length != 2) {
-            return Either.left(formatBadLine(lineNumber, line));
-        } else {
-            String[] team1 = scores[0].split(" ");
-            String[] team2 = scores[1].split(" ");
-            if (team1.length < 2 || team2.length < 2) {
-                return Either.left(formatBadLine(lineNumber, line));
-            } else {
-                try {
-                    String team1Name = Arrays.stream(team1).limit(team1.length - 1)
-                            .collect(Collectors.joining(" ")).trim();
-                    int team1Score = Integer.parseInt(team1[team1.length - 1]);
-                    String team2Name = Arrays.stream(team2).limit(team2.length - 1)
-                            .collect(Collectors.joining(" ")).trim();
-                    int team2Score = Integer.parseInt(team2[team2.length - 1]);
-                    if (team1Name.isEmpty() || team2Name.isEmpty()) {
-                        throw new IllegalArgumentException(
-                                "Team name must have at least one non-whitespace character");
-                    }
-                    if (team1Name.equals(team2Name)) {
-                        throw new IllegalArgumentException("A team cannot play itself! (I assume)");
-                    }
-                    if (team1Score == team2Score) {
-                        return Either.right(Tuple.of(new Team(team1Name, drawPoints),
-                                new Team(team2Name, drawPoints)));
-                    } else if (team1Score > team2Score) {
-                        return Either.right(Tuple.of(new Team(team1Name, winPoints),
-                                new Team(team2Name, lossPoints)));
-                    } else {
-                        return Either.right(Tuple.of(new Team(team1Name, lossPoints),
-                                new Team(team2Name, winPoints)));
-                    }
-                } catch (
-                        IllegalArgumentException e) { // NumberFormatException is subclass of IllegalArgumentException. Could break down if specific errors required.
-                    return Either.left(formatBadLine(lineNumber, line));
-                }
-            }
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        GameLineParser parser = new GameLineParser();
+        if (!parser.parse(buf, 0, bytes.length)) {
+            return Either.left(
+                    formatBadLine(new BadLine(null, lineNumber, parser.failure(), line)));
         }
+        String team1Name = GameLineParser.decode(buf, parser.team1Start(), parser.team1End());
+        String team2Name = GameLineParser.decode(buf, parser.team2Start(), parser.team2End());
+        return Either.right(Tuple.of(
+                new Team(team1Name, pointsFor(parser.team1Score(), parser.team2Score())),
+                new Team(team2Name, pointsFor(parser.team2Score(), parser.team1Score()))));
     }
 
-    private String formatBadLine(long lineNumber, String line) {
-        return lineNumber + ":  " + line;
+    /**
+     * @return points awarded to a team that scored {@code score} against {@code opponentScore}.
+     */
+    long pointsFor(int score, int opponentScore) {
+        if (score == opponentScore) {
+            return drawPoints;
+        }
+        return score > opponentScore ? winPoints : lossPoints;
+    }
+
+    /**
+     * @return e.g. {@code "3:  Lions 3, Lions 3"}, or {@code "week2.txt:3:  Lions 3, Lions 3"} where
+     * the bad line needs to say which input it came from.
+     */
+    String formatBadLine(BadLine badLine) {
+        String location = badLine.getSource() == null ? "" : badLine.getSource() + ":";
+        return location + badLine.getLineNumber() + ":  " + badLine.getContent();
+    }
+
+    /**
+     * @return as per {@link #formatBadLine(BadLine)}, followed by what was wrong with the line,
+     * e.g. {@code "3:  Lions 3, Lions 3  (team playing itself)"}.
+     */
+    String formatBadLineWithReason(BadLine badLine) {
+        return formatBadLine(badLine) + "  (" + badLine.getReason().getDescription() + ")";
     }
 }
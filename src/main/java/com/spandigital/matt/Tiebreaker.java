@@ -0,0 +1,66 @@
+package com.spandigital.matt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Ways of separating teams on equal points, applied in a chain (see
+ * {@link TeamRanker#withTiebreakers}): each one only looks at the teams still tied after the ones
+ * before it. Teams still tied at the end share a rank, and are listed by name, as without any.
+ */
+enum Tiebreaker {
+    /**
+     * Most goals scored minus goals conceded.
+     */
+    GOAL_DIFFERENCE("goal-difference"),
+    /**
+     * Most goals scored.
+     */
+    GOALS_FOR("goals-for"),
+    /**
+     * Most points from the games between the teams still tied (a mini-league of just them).
+     */
+    HEAD_TO_HEAD("head-to-head");
+
+    private final String optionName;
+
+    Tiebreaker(String optionName) {
+        this.optionName = optionName;
+    }
+
+    /**
+     * @throws IllegalArgumentException if there's no tiebreaker of that name.
+     */
+    static Tiebreaker forName(String name) {
+        for (Tiebreaker tiebreaker : values()) {
+            if (tiebreaker.optionName.equals(name)) {
+                return tiebreaker;
+            }
+        }
+        throw new IllegalArgumentException("Unknown tiebreaker: " + name + " (expected one of "
+                + Arrays.stream(values()).map(t -> t.optionName).collect(Collectors.joining(", "))
+                + ")");
+    }
+
+    /**
+     * @param names comma separated, e.g. {@code goal-difference,head-to-head}
+     * @throws IllegalArgumentException if any name is unknown, or given twice.
+     */
+    static List<Tiebreaker> forNames(String names) {
+        List<Tiebreaker> chain = new ArrayList<>();
+        for (String name : names.split(",", -1)) {
+            Tiebreaker tiebreaker = forName(name.trim());
+            if (chain.contains(tiebreaker)) {
+                throw new IllegalArgumentException("Tiebreaker given twice: " + name.trim());
+            }
+            chain.add(tiebreaker);
+        }
+        return List.copyOf(chain);
+    }
+
+    String getOptionName() {
+        return optionName;
+    }
+}
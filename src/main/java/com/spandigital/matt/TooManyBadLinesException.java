@@ -0,0 +1,51 @@
+package com.spandigital.matt;
+
+import java.util.List;
+
+/**
+ * Thrown when reading is abandoned because the {@link ErrorPolicy} allows no more bad lines.
+ */
+final class TooManyBadLinesException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long badLineCount;
+    private final long lineCount;
+    private final List<BadLine> badLines;
+
+    TooManyBadLinesException(String message, long badLineCount, long lineCount) {
+        this(message, badLineCount, lineCount, List.of());
+    }
+
+    private TooManyBadLinesException(String message, long badLineCount, long lineCount,
+            List<BadLine> badLines) {
+        super(message);
+        this.badLineCount = badLineCount;
+        this.lineCount = lineCount;
+        this.badLines = badLines;
+    }
+
+    /**
+     * @return a copy with the given bad lines (those found before giving up) attached.
+     */
+    TooManyBadLinesException withBadLines(List<BadLine> badLines) {
+        return new TooManyBadLinesException(getMessage(), badLineCount, lineCount,
+                List.copyOf(badLines));
+    }
+
+    long getBadLineCount() {
+        return badLineCount;
+    }
+
+    long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the bad lines found before giving up (not counting any already passed to the
+     * policy's reporter).
+     */
+    List<BadLine> getBadLines() {
+        return badLines;
+    }
+}
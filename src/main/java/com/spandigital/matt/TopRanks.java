@@ -0,0 +1,123 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks out one page of the table (e.g. the top 20) without sorting the whole league. A bounded
+ * max-heap holds the best {@code offset + limit} teams seen so far, with the worst of them on top
+ * to be evicted, which is O(n log k) time and O(k) memory for k rows wanted.
+ * <br>
+ * Ranks come out exactly as for the full table: the heap ends up holding every team ordered before
+ * the page too, so ties that start before the page (say 3rd place shared across the boundary) are
+ * seen and the page starts with the shared rank.
+ */
+final class TopRanks {
+
+    private final GameTally tally;
+    private final int[] heap;
+    private int size;
+
+    private TopRanks(GameTally tally, int capacity) {
+        this.tally = tally;
+        this.heap = new int[capacity];
+    }
+
+    /**
+     * @param offset number of rows to skip (0 being the top of the table)
+     * @param limit  maximum number of rows to return
+     * @return rows {@code offset} (inclusive) to {@code offset + limit} (exclusive) of the table.
+     */
+    static List<Tuple2<Long, Team>> page(GameTally tally, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative");
+        }
+        int wanted = (int) Math.min((long) offset + limit, tally.getTeamCount());
+        if (wanted <= offset) {
+            return List.of();
+        }
+        TopRanks top = new TopRanks(tally, wanted);
+        for (int id = 0; id < tally.getTeamCount(); id++) {
+            top.offer(id);
+        }
+        return top.rows(offset);
+    }
+
+    private void offer(int id) {
+        if (size < heap.length) {
+            heap[size] = id;
+            siftUp(size++);
+        } else if (compare(id, heap[0]) < 0) {
+            heap[0] = id;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Heap-sorts in place (into table order, as the heap has the last team on top), then applies
+     * the usual shared-rank rule from the top of the table down.
+     */
+    private List<Tuple2<Long, Team>> rows(int offset) {
+        for (int end = size - 1; end > 0; end--) {
+            int last = heap[0];
+            heap[0] = heap[end];
+            heap[end] = last;
+            siftDown(0, end);
+        }
+        List<Tuple2<Long, Team>> rows = new ArrayList<>(size - offset);
+        long rank = 0;
+        long lastPoints = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            long points = tally.getPoints(heap[i]);
+            if (points < lastPoints) {
+                rank = i + 1;
+                lastPoints = points;
+            }
+            if (i >= offset) {
+                rows.add(Tuple.of(rank, new Team(tally.getName(heap[i]), points)));
+            }
+        }
+        return rows;
+    }
+
+    private void siftUp(int i) {
+        int id = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (compare(id, heap[parent]) <= 0) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = id;
+    }
+
+    private void siftDown(int i, int end) {
+        int id = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= end) {
+                break;
+            }
+            if (child + 1 < end && compare(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (compare(heap[child], id) <= 0) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = id;
+    }
+
+    // table order: points descending, then name ascending
+    private int compare(int a, int b) {
+        int byPoints = Long.compare(tally.getPoints(b), tally.getPoints(a));
+        return byPoints != 0 ? byPoints : tally.compareNames(a, b);
+    }
+}
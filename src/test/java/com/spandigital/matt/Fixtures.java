@@ -0,0 +1,32 @@
+package com.spandigital.matt;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds what tests rank from out of game result lines, fed one at a time as the scanner would.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return a tally of the given lines, ranked by the given ranker.
+     */
+    static GameTally tally(TeamRanker ranker, String... lines) {
+        GameTally tally = new GameTally(ranker);
+        feed(tally::acceptLine, lines);
+        return tally;
+    }
+
+    /**
+     * Hands each line (without a terminator) to the handler as UTF-8 bytes.
+     */
+    static void feed(LineScanner.LineHandler handler, String... lines) {
+        for (String line : lines) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            handler.onLine(ByteBuffer.wrap(bytes), 0, bytes.length);
+        }
+    }
+}
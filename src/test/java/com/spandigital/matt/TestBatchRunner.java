@@ -0,0 +1,72 @@
+package com.spandigital.matt;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class TestBatchRunner {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void givenOneBadJob_whenRun_runTheRestAndReportIt() throws IOException {
+        Path root = folder.getRoot().toPath();
+        Files.writeString(root.resolve("u9.txt"), "Lions 3, Snakes 3\nTarantulas 1, Lions 0\n");
+        Files.writeString(root.resolve("u11.txt"), "Lions 3, Lions 3\n");
+        Files.writeString(root.resolve("cup.txt"), "Cubs 2, Bears 1\n");
+        // left over from an earlier run
+        Files.writeString(root.resolve("u11.csv"), "rank,team,points\n");
+        Files.writeString(root.resolve("cup.csv"), "rank,team,points\n");
+        Path manifest = root.resolve("manifest.tsv");
+        Files.writeString(manifest, """
+                # input\toutput
+                u9.txt\tu9.csv
+                u11.txt\tu11.csv
+
+                missing.txt\tmissing.csv
+                cup.txt\tcup.csv
+                """);
+
+        List<BatchRunner.Job> jobs = BatchRunner.readManifest(manifest);
+        List<BatchRunner.JobResult> results = BatchRunner.run(jobs,
+                TeamRanker.createDefault(), OutputFormat.CSV, 2);
+
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(root.resolve("u9.txt"), results.get(0).getJob().getInput());
+        Assert.assertTrue(results.get(0).isSuccess());
+        Assert.assertEquals(3, results.get(0).getRows());
+        Assert.assertEquals("rank,team,points\n1,Tarantulas,3\n2,Lions,1\n2,Snakes,1\n",
+                Files.readString(root.resolve("u9.csv"), StandardCharsets.UTF_8));
+        Assert.assertEquals(List.of("1:  Lions 3, Lions 3"), results.get(1).getProblems());
+        Assert.assertFalse(Files.exists(root.resolve("u11.csv")));
+        Assert.assertFalse(results.get(2).isSuccess());
+        Assert.assertTrue(results.get(3).isSuccess());
+        Assert.assertEquals("rank,team,points\n1,Cubs,3\n2,Bears,0\n",
+                Files.readString(root.resolve("cup.csv"), StandardCharsets.UTF_8));
+        try (Stream<Path> files = Files.list(root)) {
+            Assert.assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenLineWithoutOutput_whenReadManifest_throwException() throws IOException {
+        Path manifest = folder.newFile("manifest.tsv").toPath();
+        Files.writeString(manifest, "u9.txt\tu9.csv\nu11.txt\n");
+        try {
+            BatchRunner.readManifest(manifest);
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Manifest line 2 should be an input path, a tab, then an output "
+                    + "path: u11.txt", e.getMessage());
+            throw e;
+        }
+    }
+}
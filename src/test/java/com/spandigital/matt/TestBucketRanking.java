@@ -0,0 +1,50 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class TestBucketRanking {
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenTies_whenTable_shareRanksAndSortByName() {
+        GameTally tally = Fixtures.tally(tr, "Lions 3, Snakes 3", "Tarantulas 1, FC Awesome 0",
+                "Lions 1, FC Awesome 1", "Tarantulas 3, Snakes 1", "Lions 4, Grouches 0");
+
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Tarantulas", 6)),
+                Tuple.of(2L, new Team("Lions", 5)),
+                Tuple.of(3L, new Team("FC Awesome", 1)),
+                Tuple.of(3L, new Team("Snakes", 1)),
+                Tuple.of(5L, new Team("Grouches", 0))), BucketRanking.table(tally));
+        Assert.assertEquals(List.of(), BucketRanking.table(new GameTally(tr)));
+    }
+
+    // Both the buckets and the fallback (for points too spread out to bucket) should give exactly
+    // the table the order-statistic tree does, including negative points and big buckets.
+    @Test
+    public void givenRandomLeagues_whenTable_matchStandings() {
+        Random random = new Random(11);
+        TeamRanker[] rankers = {tr, new TeamRanker(2, 0, -1), new TeamRanker(1_000_000_007L, 3, 0)};
+        for (int league = 0; league < 60; league++) {
+            TeamRanker ranker = rankers[league % rankers.length];
+            int teams = 1 + random.nextInt(league < 57 ? 80 : 5_000);
+            GameTally tally = new GameTally(ranker);
+            for (int game = 0; game < teams * 3; game++) {
+                int home = random.nextInt(teams);
+                int away = (home + 1 + random.nextInt(Math.max(1, teams - 1))) % teams;
+                if (home != away) {
+                    Fixtures.feed(tally::acceptLine, (random.nextBoolean() ? "T" : "Team ") + home
+                            + " " + random.nextInt(3) + ", T" + away + " " + random.nextInt(3));
+                }
+            }
+            List<Tuple2<Long, Team>> table = BucketRanking.table(tally);
+            Assert.assertEquals(new Standings(tally).table(), table);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple2;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class TestChangeFeed {
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    /**
+     * A on 6 points; B, C and D sharing 2nd on 3; E on 0.
+     */
+    private Standings league() {
+        Standings standings = new Standings(tr);
+        for (String line : List.of("A 1, E 0", "A 1, B 0", "B 1, C 0", "C 1, D 0", "D 1, E 0")) {
+            standings.accept(line);
+        }
+        return standings;
+    }
+
+    @Test
+    public void givenWinIntoSharedRank_whenAccept_changeOnlyWinner() {
+        ChangeFeed feed = new ChangeFeed(league());
+
+        Assert.assertEquals(List.of(new StandingsChange("E", 5, 0, 2, 3)),
+                feed.accept("E 1, D 0"));
+    }
+
+    @Test
+    public void givenWinOutOfSharedRank_whenAccept_moveRestOfBlockDown() {
+        ChangeFeed feed = new ChangeFeed(league());
+
+        Assert.assertEquals(List.of(new StandingsChange("D", 2, 3, 1, 6),
+                new StandingsChange("B", 2, 3, 3, 3),
+                new StandingsChange("C", 2, 3, 3, 3)),
+                feed.accept("D 1, E 0"));
+    }
+
+    @Test
+    public void givenNewTeam_whenAccept_changeItAndThoseItPassed() {
+        ChangeFeed feed = new ChangeFeed(league());
+
+        Assert.assertEquals(List.of(new StandingsChange("F", 0, 0, 2, 3),
+                new StandingsChange("E", 5, 0, 6, 0)),
+                feed.accept("F 1, E 0"));
+        Assert.assertEquals(List.of(), feed.accept("F three, E 0"));
+        Assert.assertEquals(List.of(), feed.publish());
+    }
+
+    @Test
+    public void givenRandomResults_whenPublish_matchDiffOfWholeTables() {
+        Random random = new Random(1);
+        Standings standings = new Standings(tr);
+        ChangeFeed feed = new ChangeFeed(standings);
+        Map<String, Tuple2<Long, Team>> before = new HashMap<>();
+        for (int batch = 0; batch < 300; batch++) {
+            int games = batch % 3 == 0 ? 1 + random.nextInt(20) : 1; // mostly single results
+            for (int i = 0; i < games; i++) {
+                int team1 = random.nextInt(60);
+                int team2 = (team1 + 1 + random.nextInt(59)) % 60;
+                standings.accept("Team " + team1 + " " + random.nextInt(3) + ", Team " + team2
+                        + " " + random.nextInt(3));
+            }
+            List<StandingsChange> expected = new ArrayList<>();
+            Map<String, Tuple2<Long, Team>> after = new HashMap<>();
+            for (Tuple2<Long, Team> row : standings.table()) {
+                String name = row._2().getName();
+                after.put(name, row);
+                Tuple2<Long, Team> old = before.get(name);
+                if (old == null) {
+                    expected.add(new StandingsChange(name, 0, 0, row._1(), row._2().getPoints()));
+                } else if (!old.equals(row)) {
+                    expected.add(new StandingsChange(name, old._1(), old._2().getPoints(),
+                            row._1(), row._2().getPoints()));
+                }
+            }
+            before = after;
+
+            Assert.assertEquals(expected, feed.publish());
+        }
+    }
+
+    @Test
+    public void givenSubscriber_whenPublish_writeJsonLines() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChangeFeed.JsonLinesSubscriber subscriber = new ChangeFeed.JsonLinesSubscriber(out);
+        // a buffer of one, so every publish waits for the one before to be written
+        ChangeFeed feed = new ChangeFeed(new Standings(tr), ForkJoinPool.commonPool(), 1);
+        feed.subscribe(subscriber);
+        feed.accept("Lions 3, \"Snakes\" 3");
+        feed.accept("Lions 1, FC Awesome 0");
+        feed.close();
+        subscriber.await();
+
+        Assert.assertEquals("{\"rank\":1,\"team\":\"\\\"Snakes\\\"\",\"points\":1,\"oldRank\":null,"
+                        + "\"oldPoints\":null}\n"
+                        + "{\"rank\":1,\"team\":\"Lions\",\"points\":1,\"oldRank\":null,"
+                        + "\"oldPoints\":null}\n"
+                        + "{\"rank\":1,\"team\":\"Lions\",\"points\":4,\"oldRank\":1,"
+                        + "\"oldPoints\":1}\n"
+                        + "{\"rank\":2,\"team\":\"\\\"Snakes\\\"\",\"points\":1,\"oldRank\":1,"
+                        + "\"oldPoints\":1}\n"
+                        + "{\"rank\":3,\"team\":\"FC Awesome\",\"points\":0,\"oldRank\":null,"
+                        + "\"oldPoints\":null}\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenTiebreakers_whenCreate_throwException() {
+        new ChangeFeed(new Standings(tr.withTiebreakers(List.of(Tiebreaker.GOAL_DIFFERENCE))));
+    }
+}
@@ -0,0 +1,119 @@
+package com.spandigital.matt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class TestCheckpoint {
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenAppendedResults_whenResume_matchColdRun() throws IOException {
+        Path input = Files.createTempFile("checkpoint", ".txt");
+        Path checkpoint = input.resolveSibling(input.getFileName() + ".ckp");
+        try {
+            Files.writeString(input, "Lions 3, Snakes 3\nbad\nTarantulas 1, FC Awesome 0\nLions 1");
+            assertMatchesColdRun(input, checkpoint);
+            Assert.assertTrue(Files.exists(checkpoint));
+
+            append(input, ", FC Awesome 1\r"); // completes the last line, and starts a \r\n
+            assertMatchesColdRun(input, checkpoint);
+            append(input, "\nTarantulas 3, Snakes 1\nLions 4, Lions 0\n");
+            assertMatchesColdRun(input, checkpoint);
+            append(input, "Lions 4, Grouches 0\n");
+            assertMatchesColdRun(input, checkpoint);
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(checkpoint);
+        }
+    }
+
+    @Test
+    public void givenChangedPrefix_whenResume_recomputeEverything() throws IOException {
+        Path input = Files.createTempFile("checkpoint", ".txt");
+        Path checkpoint = input.resolveSibling(input.getFileName() + ".ckp");
+        try {
+            Files.writeString(input, "Lions 3, Snakes 3\nTarantulas 1, FC Awesome 0\n");
+            assertMatchesColdRun(input, checkpoint);
+            Files.writeString(input, "Lions 3, Snakes 1\nTarantulas 1, FC Awesome 0\nA 1, B 0\n");
+            assertMatchesColdRun(input, checkpoint); // same length prefix, different bytes
+            Files.writeString(input, "Lions 3, Snakes 1\n");
+            assertMatchesColdRun(input, checkpoint); // shrank
+
+            Files.writeString(checkpoint, "not a checkpoint");
+            assertMatchesColdRun(input, checkpoint);
+            assertMatchesColdRun(input, checkpoint);
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(checkpoint);
+        }
+    }
+
+    @Test
+    public void givenCheckpointForOtherScoring_whenResume_recomputeEverything() throws IOException {
+        Path input = Files.createTempFile("checkpoint", ".txt");
+        Path checkpoint = input.resolveSibling(input.getFileName() + ".ckp");
+        try {
+            Files.writeString(input, "Lions 3, Snakes 1\n");
+            Checkpoint.tally(input, checkpoint, new TeamRanker(2, 1, 0));
+            append(input, "Lions 1, Snakes 3\n");
+            assertMatchesColdRun(input, checkpoint);
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(checkpoint);
+        }
+    }
+
+    @Test
+    public void givenTiebreakers_whenResume_keepGoalsAndHeadToHead() throws IOException {
+        Path input = Files.createTempFile("checkpoint", ".txt");
+        Path checkpoint = input.resolveSibling(input.getFileName() + ".ckp");
+        TeamRanker ranker = tr.withTiebreakers(
+                List.of(Tiebreaker.HEAD_TO_HEAD, Tiebreaker.GOAL_DIFFERENCE));
+        try {
+            Files.writeString(input, "X 1, Y 0\nZ 2, W 0\n");
+            assertMatchesColdRun(input, checkpoint, ranker);
+            append(input, "Y 5, W 1\n");
+            assertMatchesColdRun(input, checkpoint, ranker);
+
+            // one kept without head-to-head results can't be resumed with them
+            Checkpoint.tally(input, checkpoint, tr);
+            append(input, "Z 1, X 1\n");
+            assertMatchesColdRun(input, checkpoint, ranker);
+
+            // nor one kept without goals with a tiebreaker needing them
+            Checkpoint.tally(input, checkpoint, tr);
+            append(input, "W 3, X 0\n");
+            assertMatchesColdRun(input, checkpoint,
+                    tr.withTiebreakers(List.of(Tiebreaker.GOAL_DIFFERENCE)));
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(checkpoint);
+        }
+    }
+
+    private void assertMatchesColdRun(Path input, Path checkpoint) throws IOException {
+        assertMatchesColdRun(input, checkpoint, tr);
+    }
+
+    private static void assertMatchesColdRun(Path input, Path checkpoint, TeamRanker tr)
+            throws IOException {
+        GameTally cold = SourceIngest.ingest(InputSource.of(input), null, tr, false);
+        GameTally resumed = Checkpoint.tally(input, checkpoint, tr);
+        Assert.assertEquals(tr.rank(cold), tr.rank(resumed));
+        Assert.assertEquals(cold.getBadLines(), resumed.getBadLines());
+        Assert.assertEquals(cold.getLineCount(), resumed.getLineCount());
+        Assert.assertEquals(new Standings(cold).table(), new Standings(resumed).table());
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
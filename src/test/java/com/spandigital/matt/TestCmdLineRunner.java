@@ -3,32 +3,48 @@ package com.spandigital.matt;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.nio.file.Path;
+import java.util.List;
 
 public class TestCmdLineRunner {
 
+    private static final String DUMMY_FILE =
+            "src/test/resources/dummy_folder/file_so_that_git_will_commit_dir_for_testing";
+
     // no mutable internal state, so we can just initialise and use one.
     CmdLineRunner runner = new CmdLineRunner();
 
     @Test(expected = IllegalArgumentException.class)
     public void givenNoCmdInput_whenStart_throwException() {
         try {
-            runner.resolveInputFile(new String[]{});
+            runner.resolveInputs(new String[]{});
         } catch (IllegalArgumentException e) {
             Assert.assertEquals("Please supply the path to the input file.", e.getMessage());
             throw e;
         }
     }
 
+    @Test
+    public void givenMultipleCmdInputs_whenStart_resolveAllInOrder() {
+        Assert.assertEquals(List.of(InputSource.of(Path.of("src/test/resources/sample1.txt")),
+                        InputSource.stdin(),
+                        InputSource.of(Path.of(DUMMY_FILE))),
+                runner.resolveInputs(new String[]{"src/test/resources/sample1.txt", "-",
+                        DUMMY_FILE,
+                        "./src/test/resources/sample1.txt"}));
+    }
+
     @Test(expected = IllegalArgumentException.class)
-    public void givenMultipleCmdInputs_whenStart_throwException() {
+    public void givenStdinTwice_whenStart_throwException() {
         try {
-            runner.resolveInputFile(new String[]{"maybe_a_file.txt", "but also something else"});
+            runner.resolveInputs(new String[]{"-", "-"});
         } catch (IllegalArgumentException e) {
-            Assert.assertEquals("Please supply ONLY the path to the input file.", e.getMessage());
+            Assert.assertEquals("Stdin ('-') can only be read once.", e.getMessage());
             throw e;
         }
     }
@@ -38,7 +54,7 @@ public class TestCmdLineRunner {
         String sPath = "i_do_not_exist.txt";
         Path path = Path.of(sPath);
         try {
-            runner.resolveInputFile(new String[]{sPath});
+            runner.resolveInputs(new String[]{sPath});
         } catch (IllegalArgumentException e) {
             Assert.assertEquals("No file exists at given path: " + path.toAbsolutePath(),
                     e.getMessage());
@@ -46,16 +62,26 @@ public class TestCmdLineRunner {
         }
     }
 
+    @Test
+    public void givenDirectory_whenStart_resolveFilesWithin() {
+        Assert.assertEquals(List.of(InputSource.of(Path.of(DUMMY_FILE))),
+                runner.resolveInputs(new String[]{"src/test/resources/dummy_folder"}));
+    }
+
+    @Test
+    public void givenGlob_whenStart_resolveMatchingFiles() {
+        Assert.assertEquals(List.of(InputSource.of(Path.of("src/test/resources/sample1.txt"))),
+                runner.resolveInputs(new String[]{"src/test/resources/sample*.txt"}));
+        Assert.assertEquals(List.of(InputSource.of(Path.of(DUMMY_FILE))),
+                runner.resolveInputs(new String[]{"src/**/file_so_*"}));
+    }
+
     @Test(expected = IllegalArgumentException.class)
-    public void givenDirectory_whenStart_throwException() {
-        String sPath = "src/test/resources/dummy_folder";
-        Path path = Path.of(sPath);
+    public void givenGlobMatchingNothing_whenStart_throwException() {
         try {
-            runner.resolveInputFile(new String[]{sPath});
+            runner.resolveInputs(new String[]{"src/test/resources/*.csv"});
         } catch (IllegalArgumentException e) {
-            Assert.assertEquals(
-                    "Given path does not resolve to a file: " + path.toAbsolutePath() + "\nPossibly a directory?",
-                    e.getMessage());
+            Assert.assertEquals("No files found for: src/test/resources/*.csv", e.getMessage());
             throw e;
         }
     }
@@ -67,7 +93,7 @@ public class TestCmdLineRunner {
         try {
             path.toFile().createNewFile();
             path.toFile().setReadable(false);
-            runner.resolveInputFile(new String[]{sPath});
+            runner.resolveInputs(new String[]{sPath});
         } catch (IllegalArgumentException e) {
             Assert.assertEquals(
                     "We cannot read the file supplied: " + path.toAbsolutePath() + "\nPlease check file permissions and/or application privileges.",
@@ -99,4 +125,109 @@ public class TestCmdLineRunner {
                 """.trim() + "\n";
         Assert.assertEquals(expected, stdoutRedirect.toString());
     }
+
+    @Test
+    public void givenSampleInputFileAndParallelFlag_whenRunMain_producesSampleOutput() {
+        ByteArrayOutputStream stdoutRedirect = new ByteArrayOutputStream();
+        PrintStream psRedirect = new PrintStream(stdoutRedirect);
+        PrintStream oldStdout = System.out;
+        System.setOut(psRedirect);
+        CmdLineRunner.main(new String[]{"--parallel", "src/test/resources/sample1.txt"});
+        System.out.flush();
+        System.setOut(oldStdout);
+        String expected = """
+                1. Tarantulas, 6 pts
+                2. Lions, 5 pts
+                3. FC Awesome, 1 pt
+                3. Snakes, 1 pt
+                5. Grouches, 0 pts
+                """.trim() + "\n";
+        Assert.assertEquals(expected, stdoutRedirect.toString());
+    }
+
+    @Test
+    public void givenParallelFlagWithSequentialOnlyOption_whenRunMain_explainConflict() {
+        ByteArrayOutputStream stderrRedirect = new ByteArrayOutputStream();
+        PrintStream oldStderr = System.err;
+        System.setErr(new PrintStream(stderrRedirect));
+        for (String option : List.of("--checkpoint=state.bin", "--as-of-line=2",
+                "--memory-budget=1")) {
+            CmdLineRunner.main(new String[]{"--parallel", option, "src/test/resources/sample1.txt"});
+        }
+        System.err.flush();
+        System.setErr(oldStderr);
+        Assert.assertEquals(("Inputs can only be read in parallel when ranking them once, without "
+                + "checkpoints, earlier tables or a memory budget.\n").repeat(3),
+                stderrRedirect.toString());
+    }
+
+    @Test
+    public void givenSeveralInputsWithBadLines_whenRunMain_nameFileAndLineOfEach() {
+        ByteArrayOutputStream stderrRedirect = new ByteArrayOutputStream();
+        PrintStream oldStderr = System.err;
+        InputStream oldStdin = System.in;
+        System.setErr(new PrintStream(stderrRedirect));
+        System.setIn(new ByteArrayInputStream("Lions 1, Snakes 1\nLions 1\n".getBytes()));
+        CmdLineRunner.main(new String[]{"src/test/resources/sample1.txt", "-"});
+        System.err.flush();
+        System.setErr(oldStderr);
+        System.setIn(oldStdin);
+        Assert.assertEquals("""
+                Failed to determine rankings; there were problems with the following lines:
+                stdin:2:  Lions 1
+                """, stderrRedirect.toString());
+    }
+
+    @Test
+    public void givenMaxErrorsNotReached_whenRunMain_ignoreBadLinesWithReasons() {
+        ByteArrayOutputStream stdoutRedirect = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderrRedirect = new ByteArrayOutputStream();
+        PrintStream oldStdout = System.out;
+        PrintStream oldStderr = System.err;
+        InputStream oldStdin = System.in;
+        System.setOut(new PrintStream(stdoutRedirect));
+        System.setErr(new PrintStream(stderrRedirect));
+        System.setIn(new ByteArrayInputStream(
+                "Lions 1, Snakes 0\nLions 1\nLions 1, Lions 2\n".getBytes()));
+        CmdLineRunner.main(new String[]{"--max-errors=3", "-"});
+        System.setIn(new ByteArrayInputStream("Lions 1, Snakes 0\nLions 1\nSnakes 1\n".getBytes()));
+        CmdLineRunner.main(new String[]{"--fail-fast", "-"});
+        System.out.flush();
+        System.err.flush();
+        System.setOut(oldStdout);
+        System.setErr(oldStderr);
+        System.setIn(oldStdin);
+        Assert.assertEquals("""
+                1. Lions, 3 pts
+                2. Snakes, 0 pts
+                """, stdoutRedirect.toString());
+        Assert.assertEquals("""
+                Ignoring problem line 2:  Lions 1  (wrong number of columns)
+                Ignoring problem line 3:  Lions 1, Lions 2  (team playing itself)
+                Failed to determine rankings. Gave up after finding 1 bad line; the problems found were:
+                2:  Lions 1
+                """, stderrRedirect.toString());
+    }
+
+    @Test
+    public void givenStreamedErrors_whenRunMain_countBadLinesInWords() {
+        ByteArrayOutputStream stderrRedirect = new ByteArrayOutputStream();
+        PrintStream oldStderr = System.err;
+        InputStream oldStdin = System.in;
+        System.setErr(new PrintStream(stderrRedirect));
+        System.setIn(new ByteArrayInputStream("Lions 1, Snakes 0\nLions 1\n".getBytes()));
+        CmdLineRunner.main(new String[]{"--stream-errors", "-"});
+        System.setIn(new ByteArrayInputStream("Lions 1\nSnakes 1\n".getBytes()));
+        CmdLineRunner.main(new String[]{"--stream-errors", "-"});
+        System.err.flush();
+        System.setErr(oldStderr);
+        System.setIn(oldStdin);
+        Assert.assertEquals("""
+                Problem line 2:  Lions 1  (wrong number of columns)
+                Failed to determine rankings; there was a problem with 1 line (see above).
+                Problem line 1:  Lions 1  (wrong number of columns)
+                Problem line 2:  Snakes 1  (wrong number of columns)
+                Failed to determine rankings; there were problems with 2 lines (see above).
+                """, stderrRedirect.toString());
+    }
 }
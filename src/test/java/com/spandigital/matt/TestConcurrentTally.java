@@ -0,0 +1,127 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestConcurrentTally {
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenLines_whenAccept_rankAsGameTally() {
+        ConcurrentTally tally = new ConcurrentTally(tr);
+
+        Assert.assertTrue(tally.accept("Lions 3, Snakes 3"));
+        Assert.assertTrue(tally.accept("Tarantulas 1, FC Awesome 0"));
+        Assert.assertFalse(tally.accept("Lions three, Snakes 3"));
+        Assert.assertTrue(tally.accept("Lions 1, FC Awesome 1"));
+
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Tarantulas", 3)),
+                Tuple.of(2L, new Team("Lions", 2)),
+                Tuple.of(3L, new Team("FC Awesome", 1)),
+                Tuple.of(3L, new Team("Snakes", 1))),
+                tally.table());
+        Assert.assertEquals(4, tally.getLineCount());
+        Assert.assertEquals(1, tally.getBadLineCount());
+    }
+
+    @Test
+    public void givenManyProducers_whenAccept_matchSequentialTally() throws Exception {
+        List<String> lines = randomGames(40_000, 300, 1);
+        ConcurrentTally tally = new ConcurrentTally(tr);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> producers = new ArrayList<>();
+            for (int p = 0; p < 8; p++) {
+                List<String> share = lines.subList(p * 5_000, (p + 1) * 5_000);
+                producers.add(pool.submit(() -> share.forEach(tally::accept)));
+            }
+            for (Future<?> producer : producers) {
+                producer.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        Assert.assertEquals(tr.calculateRankings(lines.stream()).get(), tally.table());
+        Assert.assertEquals(lines.size(), tally.getLineCount());
+    }
+
+    @Test
+    public void givenBatchesUnderWay_whenSnapshot_seeWholeBatchesOnly() throws Exception {
+        // every batch gives each of its two teams 20 points, so totals are always multiples of 20
+        byte[] batch = String.join("\n", List.of("A 1, B 0", "B 1, A 0", "A 2, B 2",
+                "A 0, B 1", "B 0, A 1", "B 2, A 2", "A 1, B 0", "B 1, A 0", "A 1, B 0",
+                "B 1, A 0", "A 1, B 0", "B 1, A 0", "A 1, B 0", "B 1, A 0")).getBytes(
+                StandardCharsets.UTF_8);
+        ConcurrentTally tally = new ConcurrentTally(tr);
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int p = 0; p < 4; p++) {
+                pool.submit(() -> {
+                    while (!done.get()) {
+                        tally.acceptAll(ByteBuffer.wrap(batch), 0, batch.length);
+                    }
+                });
+            }
+            for (int i = 0; i < 200; i++) {
+                GameTally snapshot = tally.snapshot();
+                for (int id = 0; id < snapshot.getTeamCount(); id++) {
+                    Assert.assertEquals(0, snapshot.getPoints(id) % 20);
+                }
+            }
+        } finally {
+            done.set(true);
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void givenTiebreakers_whenTable_breakTiesFromSnapshot() {
+        TeamRanker ranker = tr.withTiebreakers(List.of(Tiebreaker.GOAL_DIFFERENCE,
+                Tiebreaker.HEAD_TO_HEAD));
+        List<String> lines = randomGames(2_000, 40, 2);
+        ConcurrentTally tally = new ConcurrentTally(ranker);
+        lines.forEach(tally::accept);
+
+        Assert.assertEquals(ranker.calculateRankings(lines.stream()).get(), tally.table());
+    }
+
+    @Test
+    public void givenGameTally_whenCreate_startFromItsResults() {
+        TeamRanker ranker = tr.withTiebreakers(List.of(Tiebreaker.HEAD_TO_HEAD));
+        List<String> lines = randomGames(1_000, 30, 3);
+        GameTally seed = Fixtures.tally(ranker, lines.subList(0, 600).toArray(new String[0]));
+        ConcurrentTally tally = new ConcurrentTally(seed);
+        lines.subList(600, lines.size()).forEach(tally::accept);
+
+        Assert.assertEquals(ranker.calculateRankings(lines.stream()).get(), tally.table());
+        Assert.assertEquals(lines.size(), tally.getLineCount());
+    }
+
+    private static List<String> randomGames(int games, int teams, long seed) {
+        Random random = new Random(seed);
+        List<String> lines = new ArrayList<>(games);
+        for (int i = 0; i < games; i++) {
+            int team1 = random.nextInt(teams);
+            int team2 = (team1 + 1 + random.nextInt(teams - 1)) % teams;
+            lines.add("Team " + team1 + " " + random.nextInt(4) + ", Team " + team2 + " "
+                    + random.nextInt(4));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,179 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class TestDuplicateFilter {
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenRepeatedGames_whenTally_skipThemAsDuplicates() {
+        GameTally tally = tally(DuplicateFilter.exact(false), "Lions 3, Snakes 3",
+                "Tarantulas 1, FC Awesome 0", "Lions 3,Snakes  3  ", "Snakes 3, Lions 3",
+                "Tarantulas 1, FC Awesome 0");
+
+        Assert.assertEquals(List.of(
+                new BadLine(null, 3, BadLine.Reason.DUPLICATE, "Lions 3,Snakes  3  "),
+                new BadLine(null, 5, BadLine.Reason.DUPLICATE, "Tarantulas 1, FC Awesome 0")),
+                tally.getDuplicates());
+        Assert.assertEquals(2, tally.getDuplicateCount());
+        Assert.assertEquals(0, tally.getBadLineCount());
+        Assert.assertEquals(5, tally.getLineCount());
+        // the same teams the other way round is a different game
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Tarantulas", 3)),
+                Tuple.of(2L, new Team("Lions", 2)),
+                Tuple.of(2L, new Team("Snakes", 2)),
+                Tuple.of(4L, new Team("FC Awesome", 0))), tr.rank(tally).get());
+    }
+
+    @Test
+    public void givenMatchIds_whenTally_keyOnIdAndGame() {
+        GameTally tally = tally(DuplicateFilter.exact(true), "1 | Lions 1, Snakes 0",
+                "2 | Lions 1, Snakes 0", " 1|Lions 1, Snakes 0", "Lions 1, Snakes 0",
+                " | Lions 1, Snakes 0", "2 | Lions 1, Snakes 1");
+
+        Assert.assertEquals(List.of(
+                new BadLine(null, 3, BadLine.Reason.DUPLICATE, " 1|Lions 1, Snakes 0")),
+                tally.getDuplicates());
+        Assert.assertEquals(List.of(
+                new BadLine(null, 4, BadLine.Reason.MISSING_MATCH_ID, "Lions 1, Snakes 0"),
+                new BadLine(null, 5, BadLine.Reason.MISSING_MATCH_ID, " | Lions 1, Snakes 0")),
+                tally.getBadLines());
+        Assert.assertEquals(7, tally.getPoints(tally.findTeam("Lions")));
+    }
+
+    @Test
+    public void givenReporter_whenTally_reportDuplicatesInstead() {
+        List<BadLine> reported = new ArrayList<>();
+        DuplicateFilter duplicateFilter = DuplicateFilter.exact(false);
+        duplicateFilter.setReporter(reported::add);
+        GameTally tally = tally(duplicateFilter, "Lions 3, Snakes 3", "Lions 3, Snakes 3");
+
+        Assert.assertEquals(List.of(), tally.getDuplicates());
+        Assert.assertEquals(1, tally.getDuplicateCount());
+        Assert.assertEquals(List.of(
+                new BadLine(null, 2, BadLine.Reason.DUPLICATE, "Lions 3, Snakes 3")), reported);
+    }
+
+    // Reading a channel checks lines a batch at a time, which should make no difference to what's
+    // counted, skipped or rejected, or in what order.
+    @Test
+    public void givenChannel_whenAccept_matchLineAtATime() throws IOException {
+        Random random = new Random(7);
+        List<String> lines = new ArrayList<>();
+        for (int line = 0; line < 1_000; line++) {
+            lines.add(random.nextInt(25) == 0 ? "bad line"
+                    : random.nextInt(5) + " | T" + random.nextInt(4) + " " + random.nextInt(2)
+                            + ", U" + random.nextInt(4) + " " + random.nextInt(2));
+        }
+        GameTally oneAtATime = tally(DuplicateFilter.exact(true), lines.toArray(new String[0]));
+        GameTally batched = new GameTally(tr);
+        batched.setDuplicateFilter(DuplicateFilter.exact(true));
+        batched.accept(Channels.newChannel(new ByteArrayInputStream(
+                String.join("\r\n", lines).getBytes(StandardCharsets.UTF_8))));
+
+        Assert.assertTrue(oneAtATime.getDuplicateCount() > 100);
+        Assert.assertEquals(oneAtATime.getDuplicates(), batched.getDuplicates());
+        Assert.assertEquals(oneAtATime.getBadLines(), batched.getBadLines());
+        Assert.assertEquals(BucketRanking.table(oneAtATime), BucketRanking.table(batched));
+        Assert.assertEquals(lines.size(), batched.getLineCount());
+    }
+
+    // Chunks tallied at once, sharing a filter, should skip the same lines as reading in order,
+    // even where a later chunk gets to a game first.
+    @Test
+    public void givenConcurrentFilter_whenIngestInChunks_matchInOrder() throws IOException {
+        Random random = new Random(11);
+        List<String> lines = new ArrayList<>();
+        for (int line = 0; line < 2_000; line++) {
+            lines.add(random.nextInt(25) == 0 ? "bad line"
+                    : random.nextInt(10) + " | T" + random.nextInt(5) + " " + random.nextInt(3)
+                            + ", U" + random.nextInt(5) + " " + random.nextInt(3));
+        }
+        GameTally inOrder = tally(DuplicateFilter.exact(true), lines.toArray(new String[0]));
+        Path file = Files.createTempFile("games", ".txt");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Files.writeString(file, String.join("\r\n", lines.subList(0, 1_000)) + "\n"
+                    + String.join("\n", lines.subList(1_000, lines.size())));
+            try (FileChannel input = FileChannel.open(file)) {
+                GameTally chunked = ParallelIngest.ingest(input, tr, null, pool, 200,
+                        DuplicateFilter.concurrent(true, 0), 0);
+
+                Assert.assertTrue(inOrder.getDuplicateCount() > 500);
+                Assert.assertEquals(inOrder.getDuplicates(), chunked.getDuplicates());
+                Assert.assertEquals(inOrder.getDuplicateCount(), chunked.getDuplicateCount());
+                Assert.assertEquals(inOrder.getBadLines(), chunked.getBadLines());
+                Assert.assertEquals(BucketRanking.table(inOrder), BucketRanking.table(chunked));
+            }
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    // A replayed batch in a later input is caught too, and either way of checking should match
+    // ranking the input with its repeats taken out.
+    @Test
+    public void givenReplayedBatch_whenIngest_matchInputWithoutRepeats() throws IOException {
+        Random random = new Random(9);
+        List<String> games = new ArrayList<>();
+        for (int game = 0; game < 2_000; game++) {
+            games.add("T" + random.nextInt(50) + " " + random.nextInt(5) + ", U"
+                    + random.nextInt(50) + " " + random.nextInt(5));
+        }
+        List<String> replayed = new ArrayList<>(games.subList(1_500, 1_800));
+        replayed.addAll(games.subList(0, 100));
+        Path first = Files.createTempFile("games", ".txt");
+        Path second = Files.createTempFile("replay", ".txt");
+        try {
+            Files.write(first, games);
+            Files.write(second, replayed);
+            List<InputSource> inputs = List.of(InputSource.of(first), InputSource.of(second));
+            GameTally unique = Fixtures.tally(tr,
+                    new LinkedHashSet<>(games).toArray(new String[0]));
+
+            for (DuplicateFilter duplicateFilter : List.of(DuplicateFilter.exact(false),
+                    DuplicateFilter.prefiltered(false, inputs),
+                    DuplicateFilter.concurrent(false, 0),
+                    DuplicateFilter.prefiltered(false, inputs, true))) {
+                GameTally tally = SourceIngest.ingestAll(inputs, tr, duplicateFilter);
+                Assert.assertEquals(tr.rank(unique), tr.rank(tally));
+                Assert.assertEquals(games.size() + replayed.size() - unique.getLineCount(),
+                        tally.getDuplicateCount());
+                Assert.assertEquals(second.toString(),
+                        tally.getDuplicates().get(tally.getDuplicates().size() - 1).getSource());
+            }
+        } finally {
+            Files.deleteIfExists(first);
+            Files.deleteIfExists(second);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenStdin_whenPrefiltered_throwException() throws IOException {
+        DuplicateFilter.prefiltered(false, List.of(InputSource.stdin()));
+    }
+
+    private GameTally tally(DuplicateFilter duplicateFilter, String... lines) {
+        GameTally tally = new GameTally(tr);
+        tally.setDuplicateFilter(duplicateFilter);
+        Fixtures.feed(tally::acceptLine, lines);
+        return tally;
+    }
+}
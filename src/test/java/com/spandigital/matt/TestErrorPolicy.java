@@ -0,0 +1,110 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.control.Either;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+public class TestErrorPolicy {
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenFailFast_whenCalculateRankings_stopAtFirstBadLine() {
+        List<String> read = new ArrayList<>();
+        Either<List<String>, List<Tuple2<Long, Team>>> rankings =
+                tr.withErrorPolicy(ErrorPolicy.failFast()).calculateRankings(
+                        Stream.of("Lions 1, Snakes 1", "Lions 1", "Lions 1, Lions 1")
+                                .peek(read::add));
+        Assert.assertEquals(List.of("2:  Lions 1"), rankings.getLeft());
+        Assert.assertEquals(2, read.size()); // never got as far as the third line
+    }
+
+    @Test
+    public void givenMaxBadLines_whenFewerFound_skipThemAndRank() {
+        TeamRanker ranker = tr.withErrorPolicy(ErrorPolicy.collectAll().withMaxBadLines(3));
+        Either<List<String>, List<Tuple2<Long, Team>>> rankings = ranker.calculateRankings(
+                Stream.of("Lions 1, Snakes 0", "Lions 1", "Snakes 2, Snakes 1"));
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Lions", 3)),
+                Tuple.of(2L, new Team("Snakes", 0))), rankings.get());
+
+        rankings = ranker.calculateRankings(
+                Stream.of("Lions 1, Snakes 0", "Lions 1", "Snakes 2, Snakes 1", ", 1"));
+        Assert.assertEquals(List.of("2:  Lions 1", "3:  Snakes 2, Snakes 1", "4:  , 1"),
+                rankings.getLeft());
+    }
+
+    @Test
+    public void givenMaxBadLinePercent_whenExceeded_giveUpOnceEnoughLinesRead() {
+        ErrorPolicy policy = ErrorPolicy.collectAll().withMaxBadLinePercent(1);
+        policy.check(1, 10, false); // too few lines to judge by yet
+        policy.check(10, 1000, false);
+        try {
+            policy.check(11, 1000, false);
+            Assert.fail();
+        } catch (TooManyBadLinesException e) {
+            Assert.assertEquals(
+                    "Gave up as 11 of 1000 lines (1.10%) were bad, more than the 1.0% allowed",
+                    e.getMessage());
+        }
+        TeamRanker ranker = tr.withErrorPolicy(policy);
+        Assert.assertTrue(ranker.calculateRankings(Stream.of("Lions 1, Snakes 0", "x")).isLeft());
+        List<String> lines = new ArrayList<>();
+        lines.add("x");
+        for (int i = 0; i < 199; i++) {
+            lines.add("Lions 1, Snakes 0");
+        }
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Lions", 597)),
+                Tuple.of(2L, new Team("Snakes", 0))), ranker.calculateRankings(lines.stream()).get());
+    }
+
+    @Test
+    public void givenReporter_whenCalculateRankings_streamBadLinesWithoutKeepingThem() {
+        List<BadLine> reported = new ArrayList<>();
+        TeamRanker ranker = tr.withErrorPolicy(ErrorPolicy.collectAll().withReporter(reported::add));
+        Either<List<String>, List<Tuple2<Long, Team>>> rankings = ranker.calculateRankings(
+                Stream.of("Lions 1, Snakes 0", "Lions 1", " 1, Snakes 0"));
+        Assert.assertEquals(List.of(), rankings.getLeft());
+        Assert.assertEquals(List.of(
+                new BadLine(null, 2, BadLine.Reason.WRONG_COLUMN_COUNT, "Lions 1"),
+                new BadLine(null, 3, BadLine.Reason.EMPTY_NAME, " 1, Snakes 0")), reported);
+    }
+
+    // In parallel, bad lines can only be reported once the chunks (and their line numbers) are
+    // merged, but should come out just the same.
+    @Test
+    public void givenReporterAndParallelIngest_whenIngest_reportWithGlobalLineNumbers()
+            throws IOException {
+        Path file = Files.createTempFile("error-policy", ".txt");
+        try {
+            StringBuilder content = new StringBuilder();
+            for (int i = 1; i <= 500; i++) {
+                content.append(i % 50 == 0 ? "bad " + i : "Lions 1, Snakes " + (i % 3)).append('\n');
+            }
+            Files.writeString(file, content);
+            List<Long> reported = new ArrayList<>();
+            TeamRanker ranker = tr.withErrorPolicy(
+                    ErrorPolicy.collectAll().withReporter(b -> reported.add(b.getLineNumber())));
+            try (FileChannel channel = FileChannel.open(file)) {
+                GameTally tally = ParallelIngest.ingest(channel, ranker, null,
+                        new ForkJoinPool(4), 256);
+                Assert.assertEquals(10, tally.getBadLineCount());
+                Assert.assertEquals(List.of(), tally.getBadLines());
+            }
+            Assert.assertEquals(List.of(50L, 100L, 150L, 200L, 250L, 300L, 350L, 400L, 450L, 500L),
+                    reported);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class TestFileFollower {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenAppendsWithPartialLines_whenPoll_onlyConsumeCompleteLines() throws IOException {
+        Path file = folder.newFile().toPath();
+        Standings standings = new Standings(tr);
+        FileFollower follower = new FileFollower(file, standings.getTally());
+        Assert.assertEquals(0, follower.poll());
+
+        append(file, "Lions 3, Snakes 3\nTarantulas 1, FC Aw");
+        Assert.assertEquals(1, follower.poll());
+        Assert.assertEquals(18, follower.getOffset());
+        Assert.assertEquals(2, standings.size());
+
+        append(file, "esome 0\r");
+        Assert.assertEquals(0, follower.poll()); // might yet be a \r\n
+        append(file, "\nLions 4, Grouches 0\n");
+        Assert.assertEquals(2, follower.poll());
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Lions", 4)),
+                Tuple.of(2L, new Team("Tarantulas", 3)),
+                Tuple.of(3L, new Team("Snakes", 1)),
+                Tuple.of(4L, new Team("FC Awesome", 0)),
+                Tuple.of(4L, new Team("Grouches", 0))), standings.table());
+        Assert.assertEquals(Files.size(file), follower.getOffset());
+
+        append(file, "bad line\n");
+        Assert.assertEquals(1, follower.poll());
+        Assert.assertEquals(List.of(new BadLine(null, 4, BadLine.Reason.WRONG_COLUMN_COUNT,
+                "bad line")), standings.getTally().getBadLines());
+    }
+
+    @Test
+    public void givenTruncatedFile_whenPoll_signalStartOver() throws IOException {
+        Path file = folder.newFile().toPath();
+        FileFollower follower = new FileFollower(file, new GameTally(tr));
+        append(file, "Lions 3, Snakes 3\n");
+        Assert.assertEquals(1, follower.poll());
+        Files.write(file, new byte[0]);
+        Assert.assertEquals(-1, follower.poll());
+    }
+
+    private static void append(Path file, String contents) throws IOException {
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,142 @@
+package com.spandigital.matt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class TestGameLineParser {
+
+    private final GameLineParser parser = new GameLineParser();
+
+    @Test
+    public void givenValidLine_whenParse_exposeTrimmedNamesAndScores() {
+        ByteBuffer buf = utf8("  FC Awesome \t 12,Lions   -3  ");
+        Assert.assertTrue(parser.parse(buf, 0, buf.limit()));
+        Assert.assertEquals("FC Awesome",
+                GameLineParser.decode(buf, parser.team1Start(), parser.team1End()));
+        Assert.assertEquals(12, parser.team1Score());
+        Assert.assertEquals("Lions",
+                GameLineParser.decode(buf, parser.team2Start(), parser.team2End()));
+        Assert.assertEquals(-3, parser.team2Score());
+    }
+
+    @Test
+    public void givenLineWithinLargerBuffer_whenParse_onlyLookAtGivenRange() {
+        ByteBuffer buf = utf8("junk,Ants 1, Badgers 2,junk");
+        Assert.assertTrue(parser.parse(buf, 5, 22));
+        Assert.assertEquals("Ants", GameLineParser.decode(buf, parser.team1Start(), parser.team1End()));
+        Assert.assertEquals("Badgers",
+                GameLineParser.decode(buf, parser.team2Start(), parser.team2End()));
+    }
+
+    @Test
+    public void givenScoreBoundaries_whenParse_matchIntegerParseInt() {
+        Assert.assertTrue(parse("A 2147483647, B -2147483648"));
+        Assert.assertEquals(Integer.MAX_VALUE, parser.team1Score());
+        Assert.assertEquals(Integer.MIN_VALUE, parser.team2Score());
+        Assert.assertFalse(parse("A 2147483648, B 1"));
+        Assert.assertFalse(parse("A 1, B -2147483649"));
+        Assert.assertFalse(parse("A +, B 1"));
+        Assert.assertTrue(parse("A +7, B ٣")); // Arabic-Indic three, as parseInt allows
+        Assert.assertEquals(7, parser.team1Score());
+        Assert.assertEquals(3, parser.team2Score());
+    }
+
+    // Throws a pile of awkward lines at both this parser and the original split based parsing, to
+    // make sure they agree on every one of them.
+    @Test
+    public void givenFaultyLines_whenParse_giveReason() {
+        assertFailure("Lions 1", BadLine.Reason.WRONG_COLUMN_COUNT);
+        assertFailure("Lions 1, Snakes 2, Ants 3", BadLine.Reason.WRONG_COLUMN_COUNT);
+        assertFailure("Lions, Snakes 2", BadLine.Reason.BAD_SCORE);
+        assertFailure("Lions one, Snakes 2", BadLine.Reason.BAD_SCORE);
+        assertFailure("Lions 1, Snakes 99999999999", BadLine.Reason.BAD_SCORE);
+        assertFailure(" \t 1, Snakes 2", BadLine.Reason.EMPTY_NAME);
+        assertFailure("Lions 1,  Lions 2", BadLine.Reason.SELF_PLAY);
+    }
+
+    @Test
+    public void givenAwkwardLines_whenParse_agreeWithOriginalParsing() {
+        List<String> lines = List.of("", ",", ",,,", "A 1, B 2,", "A 1, B 2,,,", "A 1,, B 2",
+                ",A 1, B 2", "A 1, B 2, C 3", "A 1 , B 2", "A 1, B 2 ", "A  1, B 2", " 1, B 2",
+                "A 1,  2", "A\t1, B 2", "A 1\t, B 2", "\tA 1,\tB 2", "A 1, A 1", "A 1,   A  1",
+                "A B 1, A  B 1", "Ünïcödé 1, Ωmega 2", "A 1, B 0x1", "A 01, B 002", "A -0, B +0",
+                "A 1, B", "A, B 1", "1, 2", "A 1, ,", "A 1, B 2, ,");
+        for (String line : lines) {
+            assertAgreement(line);
+        }
+
+        // and then a load of random junk from a deliberately tiny alphabet
+        Random random = new Random(42);
+        char[] alphabet = {'A', 'b', ' ', ' ', ',', '1', '2', '-', '+', '\t'};
+        for (int n = 0; n < 20_000; n++) {
+            char[] line = new char[random.nextInt(12)];
+            for (int i = 0; i < line.length; i++) {
+                line[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            assertAgreement(new String(line));
+        }
+    }
+
+    private void assertFailure(String line, BadLine.Reason reason) {
+        Assert.assertFalse(line, parse(line));
+        Assert.assertEquals(line, reason, parser.failure());
+    }
+
+    private void assertAgreement(String line) {
+        String[] expected = originalParse(line);
+        boolean parsed = parse(line);
+        Assert.assertEquals("line: '" + line + "'", expected != null, parsed);
+        if (parsed) {
+            ByteBuffer buf = utf8(line);
+            Assert.assertArrayEquals("line: '" + line + "'", expected, new String[]{
+                    GameLineParser.decode(buf, parser.team1Start(), parser.team1End()),
+                    String.valueOf(parser.team1Score()),
+                    GameLineParser.decode(buf, parser.team2Start(), parser.team2End()),
+                    String.valueOf(parser.team2Score())});
+        }
+    }
+
+    // The pre-byte-parser implementation, kept here as the reference behaviour.
+    private static String[] originalParse(String line) {
+        String[] scores = line.split(",");
+        if (scores.length != 2) {
+            return null;
+        }
+        String[] team1 = scores[0].split(" ");
+        String[] team2 = scores[1].split(" ");
+        if (team1.length < 2 || team2.length < 2) {
+            return null;
+        }
+        try {
+            String team1Name = Arrays.stream(team1).limit(team1.length - 1)
+                    .collect(Collectors.joining(" ")).trim();
+            int team1Score = Integer.parseInt(team1[team1.length - 1]);
+            String team2Name = Arrays.stream(team2).limit(team2.length - 1)
+                    .collect(Collectors.joining(" ")).trim();
+            int team2Score = Integer.parseInt(team2[team2.length - 1]);
+            if (team1Name.isEmpty() || team2Name.isEmpty() || team1Name.equals(team2Name)) {
+                return null;
+            }
+            return new String[]{team1Name, String.valueOf(team1Score), team2Name,
+                    String.valueOf(team2Score)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean parse(String line) {
+        ByteBuffer buf = utf8(line);
+        return parser.parse(buf, 0, buf.limit());
+    }
+
+    private static ByteBuffer utf8(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
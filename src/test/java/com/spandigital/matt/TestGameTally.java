@@ -0,0 +1,46 @@
+package com.spandigital.matt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class TestGameTally {
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenGames_whenAcceptLine_accumulatePointsByTeamId() {
+        GameTally tally = tally("Lions 3, Snakes 3\nTarantulas 1, Lions 0\nLions 4, Snakes 0\n");
+        Assert.assertEquals(3, tally.getTeamCount());
+        Assert.assertEquals("Lions", tally.getName(0));
+        Assert.assertEquals(TeamRanker.DRAW_POINTS + TeamRanker.LOSS_POINTS + TeamRanker.WIN_POINTS,
+                tally.getPoints(0));
+        Assert.assertEquals(TeamRanker.WIN_POINTS, tally.getPoints(2));
+        Assert.assertEquals(List.of(new Team("Lions", 4), new Team("Snakes", 1),
+                new Team("Tarantulas", 3)), tally.getTeams());
+        Assert.assertEquals(3, tally.getLineCount());
+    }
+
+    @Test
+    public void givenLaterTally_whenMerge_combinePointsAndShiftBadLineNumbers() {
+        GameTally earlier = tally("Lions 3, Snakes 3\nbad\n");
+        GameTally later = tally("Snakes 1, Grouches 0\nalso bad\nLions 1, Grouches 1\n");
+        earlier.merge(later);
+        Assert.assertEquals(List.of(new Team("Lions", 2), new Team("Snakes", 4),
+                new Team("Grouches", 1)), earlier.getTeams());
+        Assert.assertEquals(List.of(new BadLine(null, 2, BadLine.Reason.WRONG_COLUMN_COUNT, "bad"),
+                        new BadLine(null, 4, BadLine.Reason.WRONG_COLUMN_COUNT, "also bad")),
+                earlier.getBadLines());
+        Assert.assertEquals(5, earlier.getLineCount());
+    }
+
+    private GameTally tally(String lines) {
+        GameTally tally = new GameTally(tr);
+        ByteBuffer buf = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+        LineScanner.scan(buf, 0, buf.limit(), true, tally::acceptLine, tr.getMetrics());
+        return tally;
+    }
+}
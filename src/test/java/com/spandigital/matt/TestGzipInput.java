@@ -0,0 +1,192 @@
+package com.spandigital.matt;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+public class TestGzipInput {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @Test
+    public void givenSingleMember_whenRead_decompressIt() throws IOException {
+        String text = games(2_000, 1);
+        Path file = write(gzip(text));
+
+        Assert.assertTrue(GzipInput.isGzip(file));
+        Assert.assertEquals(text, read(GzipInput.open(file, pool, 1024 * 1024)));
+    }
+
+    @Test
+    public void givenManyMembers_whenRead_joinThemInOrder() throws IOException {
+        StringBuilder text = new StringBuilder();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < 50; i++) {
+            String member = games(100 + i, i);
+            text.append(member);
+            bytes.write(gzip(member));
+        }
+        Path file = write(bytes.toByteArray());
+
+        Assert.assertEquals(text.toString(), read(GzipInput.open(file, pool, 1024 * 1024)));
+    }
+
+    // With room for only a few members at a time, more workers than that could hold are left
+    // waiting or give up, but the reader should still get every member, in order.
+    @Test
+    public void givenMembersFillingBudget_whenRead_joinThemInOrder() throws IOException {
+        StringBuilder text = new StringBuilder();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < 200; i++) {
+            String member = games(100 + i % 50, i);
+            text.append(member);
+            bytes.write(gzip(member));
+        }
+        Path file = write(bytes.toByteArray());
+
+        Assert.assertEquals(text.toString(), read(GzipInput.open(file, pool, 4 * 1024)));
+    }
+
+    @Test
+    public void givenMembersTooBigForWorkers_whenRead_decompressThemAsRead() throws IOException {
+        String first = games(5_000, 1);
+        String second = games(10, 2);
+        String third = games(5_000, 3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(gzip(first));
+        bytes.write(gzip(second));
+        bytes.write(gzip(third));
+        Path file = write(bytes.toByteArray());
+
+        Assert.assertEquals(first + second + third, read(GzipInput.open(file, pool, 4 * 1024)));
+    }
+
+    @Test
+    public void givenHeaderFieldsAndTrailingGarbage_whenRead_skipThem() throws IOException {
+        String text = games(200, 4);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(gzipWithHeaderFields(text));
+        bytes.write(gzip(text));
+        bytes.write("not gzip".getBytes(StandardCharsets.UTF_8));
+        Path file = write(bytes.toByteArray());
+
+        Assert.assertEquals(text + text, read(GzipInput.open(file, pool, 1024 * 1024)));
+    }
+
+    @Test(expected = ZipException.class)
+    public void givenCorruptTrailer_whenRead_throwException() throws IOException {
+        byte[] bytes = gzip(games(200, 5));
+        bytes[bytes.length - 1] ^= 1; // the size
+        read(GzipInput.open(write(bytes), pool, 1024 * 1024));
+    }
+
+    @Test
+    public void givenStream_whenOpen_decompressOnlyIfGzip() throws IOException {
+        String text = games(100, 6);
+
+        Assert.assertEquals(text,
+                read(GzipInput.open(new ByteArrayInputStream(gzip(text)))));
+        Assert.assertEquals(text, read(GzipInput.open(
+                new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)))));
+    }
+
+    @Test
+    public void givenCompressedInput_whenIngest_matchUncompressed() throws IOException {
+        TeamRanker tr = TeamRanker.createDefault();
+        String text = games(3_000, 7);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(gzip(text.substring(0, text.indexOf('\n', text.length() / 2) + 1)));
+        bytes.write(gzip(text.substring(text.indexOf('\n', text.length() / 2) + 1)));
+        InputSource input = InputSource.of(write(bytes.toByteArray()));
+
+        Assert.assertTrue(input.isCompressed());
+        Assert.assertFalse(InputSource.of(write(text.getBytes(StandardCharsets.UTF_8)))
+                .isCompressed());
+        Assert.assertEquals(tr.calculateRankings(text.lines()),
+                tr.rank(SourceIngest.ingest(input, null, tr, true)));
+    }
+
+    private static String games(int count, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("Team ").append(random.nextInt(500)).append(' ').append(random.nextInt(4))
+                    .append(", Other ").append(random.nextInt(500)).append(' ')
+                    .append(random.nextInt(4)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A member with an extra field, a file name and a comment, as other tools may write.
+     */
+    private static byte[] gzipWithHeaderFields(String text) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] deflated = new byte[data.length + 1024];
+        int deflatedLength = deflater.deflate(deflated);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteBuffer member = ByteBuffer.allocate(64 + deflatedLength)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        member.put((byte) 0x1F).put((byte) 0x8B).put((byte) 8).put((byte) (4 | 8 | 16));
+        member.putInt(0).put((byte) 0).put((byte) 3);
+        member.putShort((short) 4).put("BC\0\0".getBytes(StandardCharsets.US_ASCII));
+        member.put("games.txt\0".getBytes(StandardCharsets.US_ASCII));
+        member.put("a comment\0".getBytes(StandardCharsets.US_ASCII));
+        member.put(deflated, 0, deflatedLength);
+        member.putInt((int) crc.getValue()).putInt(data.length);
+        byte[] bytes = new byte[member.position()];
+        member.flip().get(bytes);
+        return bytes;
+    }
+
+    private Path write(byte[] bytes) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, bytes);
+        return file;
+    }
+
+    private static String read(ReadableByteChannel channel) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (channel) {
+            ByteBuffer buffer = ByteBuffer.allocate(1000);
+            while (channel.read(buffer) >= 0) {
+                bytes.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+}
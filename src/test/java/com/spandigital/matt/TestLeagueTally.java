@@ -0,0 +1,89 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class TestLeagueTally {
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenInterleavedLeagues_whenRankLeagues_rankEachSeparately() throws IOException {
+        LeagueTally tally = tally("""
+                Premier | Lions 3, Snakes 1
+                 Juniors|Cubs 1, Lions 1
+                Premier | Tarantulas 2, Lions 0
+                Juniors | Cubs 2, Hatchlings 0
+                """);
+
+        Assert.assertEquals(List.of(
+                Tuple.of("Juniors", List.of(Tuple.of(1L, new Team("Cubs", 4)),
+                        Tuple.of(2L, new Team("Lions", 1)),
+                        Tuple.of(3L, new Team("Hatchlings", 0)))),
+                Tuple.of("Premier", List.of(Tuple.of(1L, new Team("Lions", 3)),
+                        Tuple.of(1L, new Team("Tarantulas", 3)),
+                        Tuple.of(3L, new Team("Snakes", 0))))),
+                tr.rankLeagues(tally, 0, Integer.MAX_VALUE).get());
+        Assert.assertEquals(4, tally.getLineCount());
+    }
+
+    @Test
+    public void givenPage_whenRankLeagues_pageEachLeague() throws IOException {
+        LeagueTally tally = tally("""
+                A | Ants 1, Bees 0
+                B | Cats 0, Dogs 0
+                """);
+
+        List<Tuple2<String, List<Tuple2<Long, Team>>>> pages =
+                tr.rankLeagues(tally, 1, 1).get();
+
+        Assert.assertEquals(List.of(Tuple.of("A", List.of(Tuple.of(2L, new Team("Bees", 0)))),
+                Tuple.of("B", List.of(Tuple.of(1L, new Team("Dogs", 1))))), pages);
+    }
+
+    // Line numbers count every line of the input, whichever league it's in.
+    @Test
+    public void givenBadLines_whenRankLeagues_reportInputLineNumbers() throws IOException {
+        LeagueTally tally = tally("""
+                A | Ants 1, Bees 0
+                Cats 1, Dogs 0
+                B | Cats 1, Cats 0
+                 | Emus 1, Frogs 0
+                """);
+
+        Assert.assertEquals(List.of(
+                new BadLine(null, 2, BadLine.Reason.MISSING_LEAGUE, "Cats 1, Dogs 0"),
+                new BadLine(null, 3, BadLine.Reason.SELF_PLAY, " Cats 1, Cats 0"),
+                new BadLine(null, 4, BadLine.Reason.MISSING_LEAGUE, " | Emus 1, Frogs 0")),
+                tally.getBadLines());
+        Assert.assertEquals(List.of("2:  Cats 1, Dogs 0", "3:   Cats 1, Cats 0",
+                "4:   | Emus 1, Frogs 0"), tr.rankLeagues(tally, 0, 10).getLeft());
+    }
+
+    @Test(expected = TooManyBadLinesException.class)
+    public void givenFailFast_whenAcceptBadLineInAnyLeague_throwException() throws IOException {
+        LeagueTally tally = new LeagueTally(
+                tr.withErrorPolicy(ErrorPolicy.collectAll().withMaxBadLines(1)));
+        tally.accept(channel("A | Ants 1, Bees 0\nB | Cats x, Dogs 0\n"), null);
+    }
+
+    private LeagueTally tally(String input) throws IOException {
+        LeagueTally tally = new LeagueTally(tr);
+        tally.accept(channel(input), null);
+        return tally;
+    }
+
+    private static ReadableByteChannel channel(String input) {
+        return Channels.newChannel(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+    }
+}
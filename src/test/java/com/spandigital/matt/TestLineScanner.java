@@ -0,0 +1,50 @@
+package com.spandigital.matt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class TestLineScanner {
+
+    @Test
+    public void givenMixedTerminators_whenScanToEnd_matchBufferedReader() throws IOException {
+        for (String input : List.of("", "a", "a\n", "a\n\nb", "a\r\nb\rc\n", "\n", "\r\n\r\n",
+                "a\r", "a\n\r")) {
+            ByteBuffer buf = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+            List<String> lines = new ArrayList<>();
+            int consumed = LineScanner.scan(buf, 0, buf.limit(), true,
+                    (b, start, end) -> lines.add(GameLineParser.decode(b, start, end)),
+                new RunMetrics());
+            Assert.assertEquals(buf.limit(), consumed);
+            Assert.assertEquals(new BufferedReader(new StringReader(input)).lines()
+                    .collect(Collectors.toList()), lines);
+        }
+    }
+
+    @Test
+    public void givenIncompleteInput_whenScan_leaveUnterminatedTailUnconsumed() {
+        ByteBuffer buf = ByteBuffer.wrap("a\nbc\rd\nef".getBytes(StandardCharsets.UTF_8));
+        List<String> lines = new ArrayList<>();
+        int consumed = LineScanner.scan(buf, 0, buf.limit(), false,
+                (b, start, end) -> lines.add(GameLineParser.decode(b, start, end)),
+                new RunMetrics());
+        Assert.assertEquals(List.of("a", "bc", "d"), lines);
+        Assert.assertEquals(7, consumed);
+
+        // a trailing \r may still turn out to be half of a \r\n
+        lines.clear();
+        consumed = LineScanner.scan(buf, 0, 5, false,
+                (b, start, end) -> lines.add(GameLineParser.decode(b, start, end)),
+                new RunMetrics());
+        Assert.assertEquals(List.of("a"), lines);
+        Assert.assertEquals(2, consumed);
+    }
+}
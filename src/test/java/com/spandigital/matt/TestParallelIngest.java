@@ -0,0 +1,141 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple2;
+import io.vavr.control.Either;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class TestParallelIngest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @Test
+    public void givenTinyChunks_whenChunkBoundaries_alignToLineStarts() throws IOException {
+        Path file = write("Ants 1, Badgers 2\nCats 2, Dogs 1\r\nEmus 1, Ants 2\nlast line");
+        try (FileChannel input = FileChannel.open(file)) {
+            long[] boundaries = ParallelIngest.chunkBoundaries(input, 4, 5);
+            Assert.assertArrayEquals(new long[]{0, 18, 34, 49, 58}, boundaries);
+        }
+    }
+
+    @Test
+    public void givenBareCarriageReturns_whenChunkBoundaries_alignToLineStarts()
+            throws IOException {
+        Path file = write("Ants 1, Badgers 2\rCats 2, Dogs 1\r\nEmus 1, Ants 2\rlast line");
+        try (FileChannel input = FileChannel.open(file)) {
+            long[] boundaries = ParallelIngest.chunkBoundaries(input, 4, 5);
+            Assert.assertArrayEquals(new long[]{0, 18, 34, 49, 58}, boundaries);
+        }
+    }
+
+    @Test
+    public void givenManyChunks_whenIngest_matchSequentialRankings() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(7);
+        for (int i = 0; i < 5_000; i++) {
+            sb.append("Team ").append(random.nextInt(50)).append(' ').append(random.nextInt(4))
+                    .append(", Other ").append(random.nextInt(50)).append(' ')
+                    .append(random.nextInt(4)).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        Path file = write(sb.toString());
+        try (FileChannel input = FileChannel.open(file)) {
+            Either<List<String>, List<Tuple2<Long, Team>>> parallel =
+                    tr.rank(ParallelIngest.ingest(input, tr, null, pool, 1_000));
+            Assert.assertTrue(parallel.isRight());
+            Assert.assertEquals(tr.calculateRankings(sb.toString().lines()), parallel);
+        }
+    }
+
+    @Test
+    public void givenBadLinesInLaterChunks_whenIngest_reportGlobalLineNumbers() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= 1_000; i++) {
+            sb.append(i % 250 == 0 ? "Bad " + i + ", Bad 1" : "Ants 1, Badgers 2").append('\n');
+        }
+        Path file = write(sb.toString());
+        try (FileChannel input = FileChannel.open(file)) {
+            Assert.assertEquals(
+                    List.of("250:  Bad 250, Bad 1", "500:  Bad 500, Bad 1",
+                            "750:  Bad 750, Bad 1", "1000:  Bad 1000, Bad 1"),
+                    tr.rank(ParallelIngest.ingest(input, tr, null, pool, 100)).getLeft());
+        }
+    }
+
+    @Test
+    public void givenPolicyGivesUpInLaterChunk_whenIngest_reportGlobalLineNumbers()
+            throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= 1_000; i++) {
+            sb.append(i == 300 || i == 700 || i == 710 ? "Bad " + i : "Ants 1, Badgers 2")
+                    .append('\n');
+        }
+        Path file = write(sb.toString());
+        TeamRanker tolerant = tr.withErrorPolicy(ErrorPolicy.collectAll().withMaxBadLines(2));
+        try (FileChannel input = FileChannel.open(file)) {
+            ParallelIngest.ingest(input, tolerant, "big.txt", pool, 100);
+            Assert.fail("Expected the policy to give up");
+        } catch (TooManyBadLinesException e) {
+            Assert.assertEquals(List.of(
+                    new BadLine("big.txt", 300, BadLine.Reason.WRONG_COLUMN_COUNT, "Bad 300"),
+                    new BadLine("big.txt", 700, BadLine.Reason.WRONG_COLUMN_COUNT, "Bad 700"),
+                    new BadLine("big.txt", 710, BadLine.Reason.WRONG_COLUMN_COUNT, "Bad 710")),
+                    e.getBadLines());
+        }
+    }
+
+    // Old Mac line endings: a bare \r ends a line, for numbering bad lines as for splitting chunks.
+    @Test
+    public void givenBareCarriageReturnsAndPolicyGivesUp_whenIngest_reportGlobalLineNumbers()
+            throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= 1_000; i++) {
+            sb.append(i == 300 || i == 700 || i == 710 ? "Bad " + i : "Ants 1, Badgers 2")
+                    .append(i % 5 == 0 ? "\r\n" : "\r");
+        }
+        Path file = write(sb.toString());
+        TeamRanker tolerant = tr.withErrorPolicy(ErrorPolicy.collectAll().withMaxBadLines(2));
+        try (FileChannel input = FileChannel.open(file)) {
+            ParallelIngest.ingest(input, tolerant, "big.txt", pool, 100);
+            Assert.fail("Expected the policy to give up");
+        } catch (TooManyBadLinesException e) {
+            Assert.assertEquals(List.of(
+                    new BadLine("big.txt", 300, BadLine.Reason.WRONG_COLUMN_COUNT, "Bad 300"),
+                    new BadLine("big.txt", 700, BadLine.Reason.WRONG_COLUMN_COUNT, "Bad 700"),
+                    new BadLine("big.txt", 710, BadLine.Reason.WRONG_COLUMN_COUNT, "Bad 710")),
+                    e.getBadLines());
+        }
+        try (FileChannel input = FileChannel.open(file)) {
+            Assert.assertEquals(List.of("300:  Bad 300", "700:  Bad 700", "710:  Bad 710"),
+                    tr.rank(ParallelIngest.ingest(input, tr, null, pool, 100)).getLeft());
+            Assert.assertTrue(ParallelIngest.chunkBoundaries(input, 4, 100).length > 100);
+        }
+    }
+
+    @Test
+    public void givenEmptyFile_whenCalculateRankingsInParallel_returnEmptyResult() throws IOException {
+        try (FileChannel input = FileChannel.open(write(""))) {
+            Assert.assertEquals(List.of(), tr.calculateRankings(input, pool).get());
+        }
+    }
+
+    private Path write(String contents) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
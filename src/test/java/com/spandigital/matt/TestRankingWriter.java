@@ -0,0 +1,171 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TestRankingWriter {
+
+    private static final List<Tuple2<Long, Team>> SAMPLE = List.of(
+            Tuple.of(1L, new Team("Tarantulas", 6)),
+            Tuple.of(2L, new Team("Lions", 5)),
+            Tuple.of(3L, new Team("FC \"Awesome\"", 1)),
+            Tuple.of(3L, new Team("Snakes\\Adders", 1)),
+            Tuple.of(5L, new Team("Grouchés", -2)));
+
+    // The text format has to come out exactly as println used to print it, whatever the names.
+    @Test
+    public void givenAssortedRows_whenWriteText_matchPrintln() throws IOException {
+        Random random = new Random(3);
+        List<Tuple2<Long, Team>> rows = new ArrayList<>(SAMPLE);
+        for (int i = 0; i < 2_000; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int c = 1 + random.nextInt(20); c > 0; c--) {
+                name.append(random.nextInt(4) == 0 ? (char) random.nextInt(0x3000)
+                        : (char) ('a' + random.nextInt(26)));
+            }
+            rows.add(Tuple.of((long) i, new Team(name.toString(), random.nextInt(5))));
+        }
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(expected);
+        rows.forEach(ranking -> printStream.println(
+                ranking._1() + ". " + ranking._2().getName() + ", " + ranking._2()
+                        .getPoints() + " " + (ranking._2().getPoints() == 1 ? "pt" : "pts")));
+        printStream.flush();
+
+        Assert.assertArrayEquals(expected.toByteArray(), write(OutputFormat.TEXT, rows, 17));
+        Assert.assertArrayEquals(expected.toByteArray(),
+                write(OutputFormat.TEXT, rows, RankingWriter.DEFAULT_BUFFER_SIZE));
+    }
+
+    @Test
+    public void givenRows_whenWriteCsv_quoteWhereNeeded() throws IOException {
+        Assert.assertEquals("""
+                        rank,team,points
+                        1,Tarantulas,6
+                        2,Lions,5
+                        3,"FC ""Awesome\"\"\",1
+                        3,Snakes\\Adders,1
+                        5,Grouchés,-2
+                        """,
+                new String(write(OutputFormat.CSV, SAMPLE, 16), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void givenRows_whenWriteJsonLines_escapeNames() throws IOException {
+        List<Tuple2<Long, Team>> rows = new ArrayList<>(SAMPLE);
+        rows.add(Tuple.of(6L, new Team("Tab\tBell\u0007", 0)));
+        Assert.assertEquals("""
+                        {"rank":1,"team":"Tarantulas","points":6}
+                        {"rank":2,"team":"Lions","points":5}
+                        {"rank":3,"team":"FC \\"Awesome\\"","points":1}
+                        {"rank":3,"team":"Snakes\\\\Adders","points":1}
+                        {"rank":5,"team":"Grouchés","points":-2}
+                        {"rank":6,"team":"Tab\\tBell\\u0007","points":0}
+                        """,
+                new String(write(OutputFormat.JSON_LINES, rows, 16), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void givenRows_whenWriteBinary_readBackSameRows() throws IOException {
+        List<Tuple2<Long, Team>> rows = new ArrayList<>(SAMPLE);
+        rows.add(Tuple.of(300L, new Team("🦁 Lions", 1_000_000)));
+        ByteBuffer in = ByteBuffer.wrap(write(OutputFormat.BINARY, rows, 16));
+        byte[] magic = new byte[RankingWriter.BINARY_MAGIC.length];
+        in.get(magic);
+        Assert.assertArrayEquals(RankingWriter.BINARY_MAGIC, magic);
+        List<Tuple2<Long, Team>> read = new ArrayList<>();
+        while (in.hasRemaining()) {
+            long rank = readVarint(in);
+            long zigzag = readVarint(in);
+            byte[] name = new byte[(int) readVarint(in)];
+            in.get(name);
+            read.add(Tuple.of(rank, new Team(new String(name, StandardCharsets.UTF_8),
+                    (zigzag >>> 1) ^ -(zigzag & 1))));
+        }
+        Assert.assertEquals(rows, read);
+    }
+
+    @Test
+    public void givenLeagues_whenWrite_identifyEachLeague() throws IOException {
+        List<Tuple2<Long, Team>> premier = SAMPLE.subList(0, 2);
+        List<Tuple2<Long, Team>> juniors = List.of(Tuple.of(1L, new Team("Cubs", 1)));
+        String separator = System.lineSeparator();
+        Assert.assertEquals(String.join(separator, "Premier, \"A\"", "1. Tarantulas, 6 pts",
+                        "2. Lions, 5 pts", "", "Juniors", "1. Cubs, 1 pt", ""),
+                new String(writeLeagues(OutputFormat.TEXT, premier, juniors)));
+        Assert.assertEquals("""
+                        league,rank,team,points
+                        "Premier, ""A\"\"\",1,Tarantulas,6
+                        "Premier, ""A\"\"\",2,Lions,5
+                        Juniors,1,Cubs,1
+                        """,
+                new String(writeLeagues(OutputFormat.CSV, premier, juniors),
+                        StandardCharsets.UTF_8));
+        Assert.assertEquals("""
+                        {"league":"Premier, \\"A\\"","rank":1,"team":"Tarantulas","points":6}
+                        {"league":"Premier, \\"A\\"","rank":2,"team":"Lions","points":5}
+                        {"league":"Juniors","rank":1,"team":"Cubs","points":1}
+                        """,
+                new String(writeLeagues(OutputFormat.JSON_LINES, premier, juniors),
+                        StandardCharsets.UTF_8));
+
+        ByteBuffer in = ByteBuffer.wrap(writeLeagues(OutputFormat.BINARY, premier, juniors));
+        in.position(RankingWriter.BINARY_MAGIC.length);
+        Assert.assertEquals(0, readVarint(in));
+        byte[] league = new byte[(int) readVarint(in)];
+        in.get(league);
+        Assert.assertEquals("Premier, \"A\"", new String(league, StandardCharsets.UTF_8));
+        Assert.assertEquals(1, readVarint(in));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void givenPlainWriter_whenStartLeague_throwException() throws IOException {
+        RankingWriter.create(OutputFormat.CSV, Channels.newChannel(new ByteArrayOutputStream()))
+                .startLeague("Premier");
+    }
+
+    private static byte[] writeLeagues(OutputFormat format, List<Tuple2<Long, Team>> premier,
+            List<Tuple2<Long, Team>> juniors) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RankingWriter writer = RankingWriter.createForLeagues(format, Channels.newChannel(out));
+        writer.startLeague("Premier, \"A\"");
+        writer.write(premier);
+        writer.startLeague("Juniors");
+        writer.write(juniors);
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    private static byte[] write(OutputFormat format, List<Tuple2<Long, Team>> rows,
+            int bufferSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RankingWriter writer = RankingWriter.create(format, Channels.newChannel(out), bufferSize,
+                false);
+        writer.write(rows);
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.spandigital.matt;
+
+import io.vavr.control.Either;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TestResultsFile {
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenConvertedFile_whenRead_rankSameAsText() throws IOException {
+        Path text = Files.createTempFile("results", ".txt");
+        Path binary = Files.createTempFile("results", ".bin");
+        try {
+            Random random = new Random(11);
+            StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < 5_000; i++) {
+                int home = random.nextInt(300);
+                int away = (home + 1 + random.nextInt(299)) % 300;
+                lines.append("Tëam ").append(home).append(' ').append(random.nextInt(5) - 1)
+                        .append(", Tëam ").append(away).append(' ').append(random.nextInt(5))
+                        .append(i % 7 == 0 ? "\r\n" : "\n");
+            }
+            Files.writeString(text, lines);
+            Assert.assertEquals(Either.right(5_000L),
+                    ResultsFile.convert(List.of(InputSource.of(text)), tr, binary));
+            Assert.assertTrue(ResultsFile.isResultsFile(binary));
+            Assert.assertFalse(ResultsFile.isResultsFile(text));
+
+            GameTally fromText = SourceIngest.ingest(InputSource.of(text), null, tr, false);
+            GameTally fromBinary = SourceIngest.ingest(InputSource.of(binary), null, tr, false);
+            Assert.assertEquals(tr.rank(fromText), tr.rank(fromBinary));
+            Assert.assertEquals(fromText.getTeams(), fromBinary.getTeams());
+            Assert.assertEquals(5_000, fromBinary.getLineCount());
+        } finally {
+            Files.delete(text);
+            Files.delete(binary);
+        }
+    }
+
+    @Test
+    public void givenBadLines_whenConvert_writeNothing() throws IOException {
+        Path text = Files.createTempFile("results", ".txt");
+        Path binary = text.resolveSibling(text.getFileName() + ".bin");
+        try {
+            Files.writeString(text, "Lions 1, Snakes 1\nLions 1\n");
+            Assert.assertEquals(Either.left(List.of("2:  Lions 1")),
+                    ResultsFile.convert(List.of(InputSource.of(text)), tr, binary));
+            Assert.assertFalse(Files.exists(binary));
+        } finally {
+            Files.delete(text);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void givenTruncatedFile_whenRead_throwException() throws IOException {
+        Path text = Files.createTempFile("results", ".txt");
+        Path binary = Files.createTempFile("results", ".bin");
+        try {
+            Files.writeString(text, "Lions 1, Snakes 1\nLions 2, Snakes 1\n");
+            ResultsFile.convert(List.of(InputSource.of(text)), tr, binary);
+            byte[] bytes = Files.readAllBytes(binary);
+            Files.write(binary, Arrays.copyOf(bytes, bytes.length - 4));
+            try (FileChannel channel = FileChannel.open(binary)) {
+                ResultsFile.read(channel, tr, null);
+            }
+        } finally {
+            Files.delete(text);
+            Files.delete(binary);
+        }
+    }
+
+    @Test
+    public void givenTeamPlayingItself_whenRead_throwException() throws IOException {
+        Path text = Files.createTempFile("results", ".txt");
+        Path binary = Files.createTempFile("results", ".bin");
+        try {
+            Files.writeString(text, "Lions 1, Snakes 1\nLions 2, Snakes 1\n");
+            ResultsFile.convert(List.of(InputSource.of(text)), tr, binary);
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(binary))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            int columns = (int) bytes.getLong(16);
+            bytes.putInt(columns + 2 * Integer.BYTES, bytes.getInt(columns)); // 1st game's away
+            Files.write(binary, bytes.array());
+            try (FileChannel channel = FileChannel.open(binary)) {
+                ResultsFile.read(channel, tr, null);
+                Assert.fail("Expected the file to be rejected");
+            } catch (IOException e) {
+                Assert.assertEquals("Corrupt results file: a team plays itself in game 1",
+                        e.getMessage());
+            }
+        } finally {
+            Files.delete(text);
+            Files.delete(binary);
+        }
+    }
+}
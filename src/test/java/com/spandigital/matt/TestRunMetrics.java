@@ -0,0 +1,84 @@
+package com.spandigital.matt;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class TestRunMetrics {
+
+    private static final String RESULTS = """
+            Lions 3, Snakes 3
+            Tarantulas 1, FC Awesome 0
+            Lions 1, Lions 1
+            Tarantulas 3, Snakes 1
+            """;
+
+    private final TeamRanker tr = TeamRanker.createDefault()
+            .withErrorPolicy(ErrorPolicy.collectAll().withMaxBadLines(10));
+
+    @Test
+    public void givenResults_whenRank_countLinesTeamsAndBadLines() throws Exception {
+        RunMetrics metrics = new RunMetrics();
+
+        Assert.assertTrue(tr.withMetrics(metrics).calculateRankings(channel()).isRight());
+
+        Assert.assertEquals(4, metrics.getLineCount());
+        Assert.assertEquals(RESULTS.length(), metrics.getByteCount());
+        Assert.assertEquals(1, metrics.getBadLineCount());
+        Assert.assertEquals(4, metrics.getTeamCount());
+        Assert.assertTrue(metrics.getPeakTallyBytes() > 0);
+        Assert.assertTrue(metrics.getParseNanos() > 0 && metrics.getRankNanos() > 0);
+        Assert.assertTrue(metrics.summary(), metrics.summary().contains("4 lines, "
+                + RESULTS.length() + " bytes"));
+        Assert.assertTrue(metrics.summary(),
+                metrics.summary().contains("Found: 1 bad line, 4 teams"));
+
+        RunMetrics.GLOBAL.reset();
+        Assert.assertTrue(tr.withMetrics(RunMetrics.GLOBAL).calculateRankings(channel()).isRight());
+        RunMetrics.register();
+        RunMetrics.register(); // a second time is fine
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Assert.assertEquals(4L,
+                server.getAttribute(new ObjectName(RunMetrics.OBJECT_NAME), "LineCount"));
+    }
+
+    @Test
+    public void givenRecording_whenRank_emitPhaseEvents() throws IOException {
+        Path dump = Files.createTempFile("phases", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.spandigital.matt.Phase").withoutThreshold();
+            recording.start();
+            tr.calculateRankings(channel());
+            recording.stop();
+            recording.dump(dump);
+            List<RecordedEvent> ranks = RecordingFile.readAllEvents(dump).stream()
+                    .filter(event -> event.getString("phase").equals(PhaseEvent.RANK))
+                    .collect(Collectors.toList());
+            Assert.assertEquals(1, ranks.size());
+            Assert.assertEquals(4, ranks.get(0).getLong("lines"));
+            Assert.assertEquals(4, ranks.get(0).getLong("teams"));
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    private static ReadableByteChannel channel() {
+        return Channels.newChannel(
+                new ByteArrayInputStream(RESULTS.getBytes(StandardCharsets.UTF_8)));
+    }
+}
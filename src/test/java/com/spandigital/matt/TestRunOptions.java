@@ -0,0 +1,95 @@
+package com.spandigital.matt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+public class TestRunOptions {
+
+    @Test
+    public void givenFlagsAmongstInputs_whenParse_separateThem() {
+        RunOptions options = RunOptions.parse(new String[]{"a.txt", "--parallel", "--", "--b.txt"});
+        Assert.assertTrue(options.isParallel());
+        Assert.assertArrayEquals(new String[]{"a.txt", "--b.txt"}, options.getInputs());
+        Assert.assertFalse(RunOptions.parse(new String[]{"a.txt"}).isParallel());
+        Assert.assertTrue(RunOptions.parse(new String[]{"--leagues"}).isLeagues());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenUnknownFlag_whenParse_throwException() {
+        try {
+            RunOptions.parse(new String[]{"a.txt", "--fast"});
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Unrecognised option: --fast", e.getMessage());
+            throw e;
+        }
+    }
+
+    @Test
+    public void givenValueOptions_whenParse_readValues() {
+        RunOptions options =
+                RunOptions.parse(new String[]{"--follow", "--poll-interval=250", "a.txt"});
+        Assert.assertTrue(options.isFollow());
+        Assert.assertFalse(options.isChanges());
+        Assert.assertTrue(RunOptions.parse(new String[]{"--follow", "--changes"}).isChanges());
+        Assert.assertEquals(250, options.getPollIntervalMillis());
+        Assert.assertEquals(1000, RunOptions.defaults().getPollIntervalMillis());
+        Assert.assertEquals(OutputFormat.JSON_LINES,
+                RunOptions.parse(new String[]{"--format=jsonl"}).getFormat());
+        Assert.assertEquals(OutputFormat.TEXT, RunOptions.defaults().getFormat());
+        Assert.assertEquals(List.of(Tiebreaker.GOAL_DIFFERENCE, Tiebreaker.HEAD_TO_HEAD),
+                RunOptions.parse(new String[]{"--tiebreak=goal-difference,head-to-head"})
+                        .getTiebreakers());
+        Assert.assertEquals(List.of(), RunOptions.defaults().getTiebreakers());
+        Assert.assertEquals(12, RunOptions.parse(new String[]{"--as-of-line=12"}).getAsOfLine());
+        Assert.assertEquals(3,
+                RunOptions.parse(new String[]{"--as-of-matchday=3"}).getAsOfMatchday());
+        Assert.assertFalse(RunOptions.defaults().isAsOf());
+        RunOptions dedup = RunOptions.parse(new String[]{"--dedup=match-ids"});
+        Assert.assertTrue(dedup.isDedup() && dedup.isMatchIds() && !dedup.isDedupPrefilter());
+        Assert.assertFalse(RunOptions.parse(new String[]{"--dedup"}).isMatchIds());
+        Assert.assertTrue(RunOptions.parse(new String[]{"--dedup-prefilter"}).isDedup());
+        Assert.assertEquals(512L << 20,
+                RunOptions.parse(new String[]{"--memory-budget=512"}).getMemoryBudget());
+        Assert.assertEquals(-1, RunOptions.defaults().getMemoryBudget());
+        Assert.assertEquals(Path.of("spill"),
+                RunOptions.parse(new String[]{"--spill-dir=spill"}).getSpillDirectory());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenBadOptionValue_whenParse_throwException() {
+        try {
+            RunOptions.parse(new String[]{"--poll-interval=soon"});
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(
+                    "Option --poll-interval requires a positive whole number, e.g. --poll-interval=10",
+                    e.getMessage());
+            throw e;
+        }
+    }
+
+    @Test
+    public void givenPagingOptions_whenParse_readValues() {
+        RunOptions options = RunOptions.parse(new String[]{"--offset=0", "--limit=20", "a.txt"});
+        Assert.assertTrue(options.isPaged());
+        Assert.assertEquals(0, options.getOffset());
+        Assert.assertEquals(20, options.getLimit());
+        Assert.assertEquals(5, RunOptions.parse(new String[]{"--top=5"}).getLimit());
+        Assert.assertFalse(RunOptions.defaults().isPaged());
+        Assert.assertEquals(-1, RunOptions.defaults().getLimit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenNegativeOffset_whenParse_throwException() {
+        try {
+            RunOptions.parse(new String[]{"--offset=-1"});
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(
+                    "Option --offset requires a whole number (0 or more), e.g. --offset=10",
+                    e.getMessage());
+            throw e;
+        }
+    }
+}
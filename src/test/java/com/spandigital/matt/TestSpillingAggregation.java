@@ -0,0 +1,174 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class TestSpillingAggregation {
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenNothingToSpill_whenRank_rankInMemory() throws IOException {
+        try (SpillingAggregation aggregation = new SpillingAggregation(tr, 1 << 20, null)) {
+            accept(aggregation, null, "Lions 3, Snakes 3", "Tarantulas 1, FC Awesome 0",
+                    "Lions 1, FC Awesome 1");
+
+            Assert.assertEquals(List.of(Tuple.of(1L, new Team("Tarantulas", 3)),
+                    Tuple.of(2L, new Team("Lions", 2)),
+                    Tuple.of(3L, new Team("FC Awesome", 1)),
+                    Tuple.of(3L, new Team("Snakes", 1))),
+                    rank(aggregation, 0, Long.MAX_VALUE));
+            Assert.assertEquals(0, aggregation.getSpillCount());
+        }
+    }
+
+    @Test
+    public void givenManyTeamsOverBudget_whenRank_matchInMemoryTable() throws IOException {
+        List<String> lines = randomGames(20_000, 4_000);
+        try (SpillingAggregation aggregation = new SpillingAggregation(tr, 16 * 1024, null)) {
+            accept(aggregation, null, lines.toArray(String[]::new));
+
+            Assert.assertEquals(inMemory(lines), rank(aggregation, 0, Long.MAX_VALUE));
+            Assert.assertTrue(aggregation.getSpillCount() > 1);
+            Assert.assertEquals(0, aggregation.getSplitCount());
+        }
+    }
+
+    @Test
+    public void givenPartitionsOverBudget_whenRank_splitThemAgain() throws IOException {
+        List<String> lines = randomGames(60_000, 40_000);
+        // only a few dozen teams per partition fit, but about 600 end up in each
+        long budget = 4 * new GameTally(tr).estimateSize();
+        try (SpillingAggregation aggregation = new SpillingAggregation(tr, budget, null)) {
+            accept(aggregation, null, lines.toArray(String[]::new));
+
+            Assert.assertEquals(inMemory(lines), rank(aggregation, 0, Long.MAX_VALUE));
+            Assert.assertTrue(aggregation.getSplitCount() > 0);
+        }
+    }
+
+    @Test
+    public void givenMoreRunsThanFanIn_whenRank_mergeInPasses() throws IOException {
+        List<String> lines = randomGames(20_000, 4_000);
+        // a budget with room for only two runs' buffers, so 64 runs take five passes to get to two
+        long budget = 2 * 16 * 1024;
+        try (SpillingAggregation aggregation = new SpillingAggregation(tr, budget, null)) {
+            accept(aggregation, null, lines.toArray(String[]::new));
+
+            Assert.assertEquals(inMemory(lines), rank(aggregation, 0, Long.MAX_VALUE));
+            Assert.assertEquals(5, aggregation.getMergePassCount());
+        }
+        try (SpillingAggregation aggregation = new SpillingAggregation(tr, budget, null)) {
+            accept(aggregation, null, lines.toArray(String[]::new));
+
+            Assert.assertEquals(inMemory(lines).subList(1_000, 1_100),
+                    rank(aggregation, 1_000, 100));
+        }
+    }
+
+    @Test
+    public void givenPage_whenRank_writeOnlyThoseRowsRankedAsInWholeTable() throws IOException {
+        List<String> lines = randomGames(5_000, 1_000);
+        try (SpillingAggregation aggregation = new SpillingAggregation(tr, 8 * 1024, null)) {
+            accept(aggregation, null, lines.toArray(String[]::new));
+
+            Assert.assertEquals(inMemory(lines).subList(100, 150), rank(aggregation, 100, 50));
+        }
+    }
+
+    @Test
+    public void givenSpillDirectory_whenClose_deleteSpillFiles() throws IOException {
+        Path parent = Files.createTempDirectory("spill-test");
+        try {
+            try (SpillingAggregation aggregation = new SpillingAggregation(tr, 4 * 1024, parent)) {
+                accept(aggregation, null, randomGames(2_000, 500).toArray(String[]::new));
+                rank(aggregation, 0, 10);
+                try (Stream<Path> files = Files.list(parent)) {
+                    Assert.assertEquals(1, files.count());
+                }
+            }
+            try (Stream<Path> files = Files.list(parent)) {
+                Assert.assertEquals(0, files.count());
+            }
+        } finally {
+            Files.delete(parent);
+        }
+    }
+
+    @Test
+    public void givenBadLinesAcrossInputs_whenAccept_keepThemWithInputLineNumbers()
+            throws IOException {
+        TeamRanker tolerant = tr.withErrorPolicy(ErrorPolicy.collectAll().withMaxBadLines(5));
+        try (SpillingAggregation aggregation = new SpillingAggregation(tolerant, 1024, null)) {
+            accept(aggregation, "week1.txt", "Lions 3, Snakes 3", "Lions three, Snakes 3");
+            accept(aggregation, "week2.txt", "Lions", "Tarantulas 1, FC Awesome 0");
+            aggregation.checkBadLines(true);
+
+            Assert.assertEquals(List.of(
+                    new BadLine("week1.txt", 2, BadLine.Reason.BAD_SCORE, "Lions three, Snakes 3"),
+                    new BadLine("week2.txt", 1, BadLine.Reason.WRONG_COLUMN_COUNT, "Lions")),
+                    aggregation.getBadLines());
+            Assert.assertEquals(4, aggregation.getLineCount());
+            Assert.assertEquals(List.of(Tuple.of(1L, new Team("Tarantulas", 3)),
+                    Tuple.of(2L, new Team("Lions", 1)),
+                    Tuple.of(2L, new Team("Snakes", 1)),
+                    Tuple.of(4L, new Team("FC Awesome", 0))),
+                    rank(aggregation, 0, Long.MAX_VALUE));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenTiebreakers_whenCreate_throwException() {
+        new SpillingAggregation(tr.withTiebreakers(List.of(Tiebreaker.GOAL_DIFFERENCE)), 1024,
+                null);
+    }
+
+    private static void accept(SpillingAggregation aggregation, String source, String... lines)
+            throws IOException {
+        byte[] bytes = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+        aggregation.accept(Channels.newChannel(new ByteArrayInputStream(bytes)), source);
+    }
+
+    private static List<Tuple2<Long, Team>> rank(SpillingAggregation aggregation, long offset,
+            long limit) throws IOException {
+        List<Tuple2<Long, Team>> rows = new ArrayList<>();
+        aggregation.rank(offset, limit,
+                (rank, name, points) -> rows.add(Tuple.of(rank, new Team(name, points))));
+        return rows;
+    }
+
+    private List<Tuple2<Long, Team>> inMemory(List<String> lines) {
+        return tr.rank(Fixtures.tally(tr, lines.toArray(new String[0]))).get();
+    }
+
+    /**
+     * Games between randomly picked teams, some with non-ASCII names (which sort differently by
+     * UTF-8 byte and by String order).
+     */
+    private static List<String> randomGames(int games, int teams) {
+        Random random = new Random(games);
+        String[] suffixes = {"", " FC", " Ünited", " 🦁", " Ａ", " "};
+        List<String> lines = new ArrayList<>(games);
+        for (int i = 0; i < games; i++) {
+            int team1 = random.nextInt(teams);
+            int team2 = (team1 + 1 + random.nextInt(teams - 1)) % teams;
+            lines.add("Team " + team1 + suffixes[team1 % suffixes.length] + " " + random.nextInt(4)
+                    + ", Team " + team2 + suffixes[team2 % suffixes.length] + " "
+                    + random.nextInt(4));
+        }
+        return lines;
+    }
+}
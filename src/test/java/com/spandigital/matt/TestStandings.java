@@ -0,0 +1,144 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.control.Option;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TestStandings {
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenResultsOneAtATime_whenQuery_reflectLatestTable() {
+        Standings standings = new Standings(tr);
+        Assert.assertEquals(List.of(), standings.table());
+        Assert.assertTrue(standings.accept("Lions 3, Snakes 3"));
+        Assert.assertTrue(standings.accept("Tarantulas 1, FC Awesome 0"));
+        Assert.assertEquals(Option.of(Tuple.of(2L, new Team("Lions", 1))),
+                standings.rankOf("Lions"));
+        Assert.assertTrue(standings.accept("Lions 1, FC Awesome 1"));
+        Assert.assertTrue(standings.accept("Tarantulas 3, Snakes 1"));
+        Assert.assertFalse(standings.accept("Lions 4, Lions 0"));
+        Assert.assertTrue(standings.accept("Lions 4, Grouches 0"));
+
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Tarantulas", 6)),
+                Tuple.of(2L, new Team("Lions", 5)),
+                Tuple.of(3L, new Team("FC Awesome", 1)),
+                Tuple.of(3L, new Team("Snakes", 1)),
+                Tuple.of(5L, new Team("Grouches", 0))), standings.table());
+        Assert.assertEquals(Option.of(Tuple.of(3L, new Team("Snakes", 1))),
+                standings.rankOf("Snakes"));
+        Assert.assertEquals(Option.none(), standings.rankOf("Nobody"));
+        Assert.assertEquals(5, standings.size());
+    }
+
+    @Test
+    public void givenSharedRankAcrossPages_whenPage_keepSharedRank() {
+        Standings standings = new Standings(tr);
+        standings.accept("Ants 1, Badgers 0");
+        standings.accept("Cats 1, Dogs 1");
+        standings.accept("Emus 1, Frogs 1");
+        // Ants 3, then Cats/Dogs/Emus/Frogs all on 1, then Badgers on 0
+        Assert.assertEquals(List.of(Tuple.of(2L, new Team("Emus", 1)),
+                Tuple.of(2L, new Team("Frogs", 1)),
+                Tuple.of(6L, new Team("Badgers", 0))), standings.page(3, 5));
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Ants", 3)),
+                Tuple.of(2L, new Team("Cats", 1))), standings.top(2));
+        Assert.assertEquals(List.of(), standings.page(6, 2));
+    }
+
+    @Test
+    public void givenTiebreakers_whenQuery_agreeWithTable() {
+        Standings standings =
+                new Standings(tr.withTiebreakers(List.of(Tiebreaker.GOAL_DIFFERENCE)));
+        standings.accept("Ants 1, Badgers 0");
+        standings.accept("Cats 1, Dogs 1");
+        standings.accept("Emus 3, Frogs 0");
+        standings.accept("Frogs 2, Cats 0");
+        // Emus, Ants and Frogs all on 3 points, split by goal difference (+3, +1, -1)
+        List<Tuple2<Long, Team>> table = standings.table();
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Emus", 3)),
+                Tuple.of(2L, new Team("Ants", 3)),
+                Tuple.of(3L, new Team("Frogs", 3))), standings.top(3));
+        Assert.assertEquals(table.subList(2, 5), standings.page(2, 3));
+        Assert.assertEquals(Option.of(table.get(1)), standings.rankOf("Ants"));
+    }
+
+    // The ranked table is kept between results, so has to go with each one, here for a loss that
+    // drops the side that lost down the table without costing it any points.
+    @Test
+    public void givenTiebreakersAndNewResult_whenQuery_rankAfresh() {
+        Standings standings =
+                new Standings(tr.withTiebreakers(List.of(Tiebreaker.GOAL_DIFFERENCE)));
+        standings.accept("Ants 1, Badgers 0");
+        standings.accept("Cats 2, Dogs 0");
+        Assert.assertEquals(Option.of(Tuple.of(2L, new Team("Ants", 3))),
+                standings.rankOf("Ants"));
+
+        standings.accept("Emus 3, Cats 0");
+        Assert.assertEquals(Option.of(Tuple.of(2L, new Team("Ants", 3))),
+                standings.rankOf("Ants"));
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Emus", 3)),
+                Tuple.of(2L, new Team("Ants", 3)),
+                Tuple.of(3L, new Team("Cats", 3))), standings.top(3));
+        Assert.assertEquals(standings.table(), standings.page(0, 10));
+    }
+
+    // Plays lots of random games, checking the live table against a from-scratch sort as it goes.
+    @Test
+    public void givenRandomResults_whenQuery_matchFullSort() {
+        Standings standings = new Standings(tr);
+        Map<String, Long> points = new HashMap<>();
+        Random random = new Random(11);
+        for (int game = 0; game < 3_000; game++) {
+            String home = "T" + random.nextInt(200);
+            String away = "T" + random.nextInt(200);
+            int homeScore = random.nextInt(3);
+            int awayScore = random.nextInt(3);
+            boolean valid = standings.accept(home + " " + homeScore + ", " + away + " " + awayScore);
+            Assert.assertEquals(!home.equals(away), valid);
+            if (valid) {
+                points.merge(home, tr.pointsFor(homeScore, awayScore), Long::sum);
+                points.merge(away, tr.pointsFor(awayScore, homeScore), Long::sum);
+            }
+            if (game % 500 == 0) {
+                List<Tuple2<Long, Team>> expected = fullSort(points);
+                Assert.assertEquals(expected, standings.table());
+                int offset = random.nextInt(expected.size());
+                Assert.assertEquals(
+                        expected.subList(offset, Math.min(expected.size(), offset + 17)),
+                        standings.page(offset, 17));
+                for (Tuple2<Long, Team> row : expected) {
+                    Assert.assertEquals(Option.of(row), standings.rankOf(row._2().getName()));
+                }
+            }
+        }
+    }
+
+    // the original calculateRankings ranking loop
+    private static List<Tuple2<Long, Team>> fullSort(Map<String, Long> points) {
+        List<Team> teams = new ArrayList<>();
+        points.forEach((name, p) -> teams.add(new Team(name, p)));
+        teams.sort(Comparator.comparing(Team::getPoints).reversed().thenComparing(Team::getName));
+        List<Tuple2<Long, Team>> rankings = new ArrayList<>();
+        long rank = 0;
+        long lastPoints = Long.MAX_VALUE;
+        for (int i = 0; i < teams.size(); i++) {
+            if (teams.get(i).getPoints() < lastPoints) {
+                rank = i + 1;
+                lastPoints = teams.get(i).getPoints();
+            }
+            rankings.add(Tuple.of(rank, teams.get(i)));
+        }
+        return rankings;
+    }
+}
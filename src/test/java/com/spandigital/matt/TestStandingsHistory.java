@@ -0,0 +1,104 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import io.vavr.control.Option;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TestStandingsHistory {
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenLines_whenAtLine_rankAsOfThatLine() {
+        StandingsHistory history = history("Lions 3, Snakes 3", "Tarantulas 1, FC Awesome 0",
+                "Lions 1, FC Awesome 1", "Tarantulas 3, Snakes 1", "Lions 4, Grouches 0");
+
+        Assert.assertEquals(List.of(), history.atLine(0).table());
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Tarantulas", 3)),
+                Tuple.of(2L, new Team("Lions", 1)),
+                Tuple.of(2L, new Team("Snakes", 1)),
+                Tuple.of(4L, new Team("FC Awesome", 0))), history.atLine(2).table());
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Tarantulas", 6)),
+                Tuple.of(2L, new Team("Lions", 5)),
+                Tuple.of(3L, new Team("FC Awesome", 1)),
+                Tuple.of(3L, new Team("Snakes", 1)),
+                Tuple.of(5L, new Team("Grouches", 0))), history.atLine(5).table());
+        Assert.assertEquals(history.atLine(5).table(), history.atLine(99).table());
+        Assert.assertEquals(List.of(Tuple.of(3L, new Team("FC Awesome", 1)),
+                Tuple.of(3L, new Team("Snakes", 1))), history.atLine(3).page(2, 5));
+    }
+
+    @Test
+    public void givenLines_whenRankOf_rankAsOfThatLine() {
+        StandingsHistory history = history("Lions 3, Snakes 3", "Tarantulas 1, FC Awesome 0",
+                "Lions 1, FC Awesome 1");
+
+        Assert.assertEquals(Option.of(Tuple.of(2L, new Team("Lions", 1))),
+                history.atLine(2).rankOf("Lions"));
+        Assert.assertEquals(Option.of(Tuple.of(2L, new Team("Lions", 2))),
+                history.atLine(3).rankOf("Lions"));
+        Assert.assertEquals(Option.none(), history.atLine(1).rankOf("Tarantulas"));
+        Assert.assertEquals(Option.none(), history.atLine(3).rankOf("Grouches"));
+    }
+
+    // Every snapshot should be exactly the table of the input cut off at its line.
+    @Test
+    public void givenRandomLines_whenAtLine_matchTruncatedInput() {
+        Random random = new Random(3);
+        List<String> lines = new ArrayList<>();
+        for (int line = 0; line < 300; line++) {
+            lines.add(random.nextInt(40) == 0 ? "bad line" : "T" + random.nextInt(30) + " "
+                    + random.nextInt(4) + ", T" + random.nextInt(30) + " " + random.nextInt(4));
+        }
+        StandingsHistory history = history(lines.toArray(new String[0]));
+
+        for (int line = 0; line <= lines.size(); line += 7) {
+            GameTally truncated = Fixtures.tally(tr,
+                    lines.subList(0, line).toArray(new String[0]));
+            Assert.assertEquals(BucketRanking.table(truncated), history.atLine(line).table());
+            Assert.assertEquals(TopRanks.page(truncated, 0, 5), history.atLine(line).top(5));
+        }
+    }
+
+    @Test
+    public void givenRounds_whenAfterMatchday_endMatchdayBeforeTeamPlaysAgain() {
+        StandingsHistory history = history("A 1, B 0", "C 1, D 0", "bad line", "A 0, C 0",
+                "B 2, D 2", "B 1, A 0");
+
+        Assert.assertEquals(3, history.getMatchdayCount());
+        Assert.assertEquals(3, history.afterMatchday(1).getLineNumber()); // the bad line's in it
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("A", 3)),
+                Tuple.of(1L, new Team("C", 3)),
+                Tuple.of(3L, new Team("B", 0)),
+                Tuple.of(3L, new Team("D", 0))), history.afterMatchday(1).table());
+        Assert.assertEquals(5, history.afterMatchday(2).getLineNumber());
+        Assert.assertEquals(6, history.afterMatchday(3).getLineNumber());
+        Assert.assertEquals(0, history(" bad").getMatchdayCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenTooFewMatchdays_whenAfterMatchday_throwException() {
+        try {
+            history("A 1, B 0", "A 1, B 0").afterMatchday(3);
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("No matchday 3; there have been 2 so far.", e.getMessage());
+            throw e;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenTiebreakers_whenCreate_throwException() {
+        new StandingsHistory(tr.withTiebreakers(List.of(Tiebreaker.GOAL_DIFFERENCE)));
+    }
+
+    private StandingsHistory history(String... lines) {
+        StandingsHistory history = new StandingsHistory(tr);
+        Fixtures.feed(history::acceptLine, lines);
+        return history;
+    }
+}
@@ -0,0 +1,117 @@
+package com.spandigital.matt;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class TestStandingsServer {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private StandingsServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StandingsServer(new ConcurrentTally(TeamRanker.createDefault()), 0, 4);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void givenSubmittedResults_whenQuery_answerFromLatestTable() throws Exception {
+        Assert.assertEquals("", get("/table").body());
+        Assert.assertEquals(200, post("Lions 3, Snakes 3\nTarantulas 1, FC Awesome 0\n")
+                .statusCode());
+        Assert.assertEquals("1. Tarantulas, 3 pts\n2. Lions, 1 pt\n2. Snakes, 1 pt\n"
+                + "4. FC Awesome, 0 pts\n", get("/table").body().replace("\r\n", "\n"));
+
+        post("Lions 1, FC Awesome 1\nTarantulas 3, Snakes 1\nLions 4, Grouches 0");
+
+        Assert.assertEquals("1. Tarantulas, 6 pts\n2. Lions, 5 pts\n",
+                get("/top?n=2").body().replace("\r\n", "\n"));
+        Assert.assertEquals("""
+                rank,team,points
+                3,FC Awesome,1
+                3,Snakes,1
+                """, get("/table?offset=2&limit=2&format=csv").body());
+        Assert.assertEquals("5. Grouches, 0 pts\n",
+                get("/table?offset=4&limit=" + Long.MAX_VALUE).body().replace("\r\n", "\n"));
+        Assert.assertEquals("{\"rank\":3,\"team\":\"FC Awesome\",\"points\":1}\n",
+                get("/rank?team=FC%20Awesome&format=jsonl").body());
+        Assert.assertEquals(404, get("/rank?team=Nobody").statusCode());
+    }
+
+    @Test
+    public void givenBadLine_whenSubmit_applyNone() throws Exception {
+        HttpResponse<String> response = post("Lions 3, Snakes 3\nLions 1, Lions 1\n");
+
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertTrue(response.body(),
+                response.body().contains("2:  Lions 1, Lions 1  (team playing itself)"));
+        Assert.assertEquals("", get("/table").body());
+        Assert.assertEquals(405, get("/results").statusCode());
+        Assert.assertEquals(400, get("/top?n=-1").statusCode());
+    }
+
+    // Readers hammering the table while results arrive should always see a whole table, and the
+    // final one should have every result in it.
+    @Test
+    public void givenConcurrentReaders_whenSubmit_applyEverything() throws Exception {
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> reads = new ArrayList<>();
+            for (int reader = 0; reader < 4; reader++) {
+                reads.add(readers.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        HttpResponse<String> table = get("/table?format=csv");
+                        Assert.assertEquals(200, table.statusCode());
+                        Assert.assertTrue(table.body().startsWith("rank,team,points\n"));
+                    }
+                    return null;
+                }));
+            }
+            for (int game = 0; game < 100; game++) {
+                post("Home" + (game % 10) + " 1, Away" + (game % 10) + " 0");
+            }
+            for (Future<?> read : reads) {
+                read.get();
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+        Assert.assertEquals("1. Home0, 30 pts\n",
+                get("/top?n=1").body().replace("\r\n", "\n"));
+        Assert.assertEquals("11. Away0, 0 pts\n",
+                get("/rank?team=Away0").body().replace("\r\n", "\n"));
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri(path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String results) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri("/results"))
+                        .POST(HttpRequest.BodyPublishers.ofString(results)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+}
@@ -0,0 +1,56 @@
+package com.spandigital.matt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class TestTeamDictionary {
+
+    @Test
+    public void givenRepeatedNames_whenIntern_returnSameDenseIds() {
+        TeamDictionary dictionary = new TeamDictionary();
+        ByteBuffer buf = ByteBuffer.wrap("Lions,Snakes,Lions".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(0, dictionary.intern(buf, 0, 5));
+        Assert.assertEquals(1, dictionary.intern(buf, 6, 12));
+        Assert.assertEquals(0, dictionary.intern(buf, 13, 18));
+        Assert.assertEquals(0, dictionary.intern("Lions"));
+        Assert.assertEquals(2, dictionary.size());
+        Assert.assertEquals("Snakes", dictionary.name(1));
+        Assert.assertEquals(-1, dictionary.find("lions"));
+    }
+
+    @Test
+    public void givenManyNames_whenIntern_growAndKeepIds() {
+        TeamDictionary dictionary = new TeamDictionary();
+        for (int i = 0; i < 10_000; i++) {
+            Assert.assertEquals(i, dictionary.intern("Team " + i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            Assert.assertEquals(i, dictionary.find("Team " + i));
+            Assert.assertEquals("Team " + i, dictionary.name(i));
+        }
+        Assert.assertEquals(10_000, dictionary.size());
+    }
+
+    // byte order of UTF-8 matches String (UTF-16) order except for supplementary characters
+    // against U+E000 to U+FFFF, which are the other way round
+    @Test
+    public void givenAssortedNames_whenCompareNames_matchStringOrder() {
+        String[] names = {"Lions", "lions", "Lion", "Lions FC", "Éclair", "Ébène", "\uE000 Private",
+                "\uFFFD Replacement", "\uD83E\uDD81 Lion", "\uD83D\uDC0D Snake", "\u00E9", "e",
+                "\u4E2D\u6587", "Z"};
+        TeamDictionary dictionary = new TeamDictionary();
+        for (String name : names) {
+            dictionary.intern(name);
+        }
+        for (int a = 0; a < names.length; a++) {
+            for (int b = 0; b < names.length; b++) {
+                Assert.assertEquals(names[a] + " vs " + names[b],
+                        Integer.signum(names[a].compareTo(names[b])),
+                        Integer.signum(dictionary.compareNames(a, b)));
+            }
+        }
+    }
+}
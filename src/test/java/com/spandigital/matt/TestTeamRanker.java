@@ -6,6 +6,10 @@ import io.vavr.control.Either;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -222,4 +226,18 @@ public class TestTeamRanker {
                         Tuple.of(4L, new Team("Emus", LOSS_POINTS + LOSS_POINTS))),
                 rankings.get());
     }
+
+    @Test
+    public void givenRawChannel_whenCalculateRankings_matchStringStreamResults() throws IOException {
+        String input = "Ants 1, Badgers 2\r\nCats 2, Dogs 1\n\nEmus 1, Ants 2\rBadgers 2, Dogs 1";
+        Either<List<String>, List<Tuple2<Long, Team>>> rankings = tr.calculateRankings(
+                Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))));
+        Assert.assertTrue(rankings.isLeft());
+        Assert.assertEquals(List.of("3:  "), rankings.getLeft());
+
+        input = input.replace("\n\n", "\n");
+        rankings = tr.calculateRankings(
+                Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))));
+        Assert.assertEquals(tr.calculateRankings(input.lines()), rankings);
+    }
 }
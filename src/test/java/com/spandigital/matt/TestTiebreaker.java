@@ -0,0 +1,199 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TestTiebreaker {
+
+    private static final String[] MINI_LEAGUE = {"X 1, Y 0", "Z 2, W 0", "Y 5, W 1"};
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenNames_whenForNames_returnChainInOrder() {
+        Assert.assertEquals(List.of(Tiebreaker.HEAD_TO_HEAD, Tiebreaker.GOAL_DIFFERENCE),
+                Tiebreaker.forNames("head-to-head, goal-difference"));
+        Assert.assertEquals(List.of(Tiebreaker.GOALS_FOR), Tiebreaker.forNames("goals-for"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenUnknownName_whenForNames_throwException() {
+        Tiebreaker.forNames("goal-difference,away-goals");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenRepeatedName_whenForNames_throwException() {
+        Tiebreaker.forNames("goals-for,goals-for");
+    }
+
+    @Test
+    public void givenNoGoalTiebreaker_whenTally_keepNoGoals() {
+        GameTally plain = Fixtures.tally(tr, MINI_LEAGUE);
+        GameTally withGoals = Fixtures.tally(tr.withTiebreakers(List.of(Tiebreaker.GOALS_FOR)),
+                MINI_LEAGUE);
+
+        Assert.assertEquals(0, plain.getGoalsFor(plain.findTeam("Y")));
+        Assert.assertEquals(5, withGoals.getGoalsFor(withGoals.findTeam("Y")));
+        Assert.assertTrue(plain.estimateSize() < withGoals.estimateSize());
+    }
+
+    @Test
+    public void givenGoalDifference_whenTable_separateTiesOnly() {
+        String[] lines = {"A 3, B 0", "C 1, D 0", "E 1, B 0", "E 1, D 0"};
+
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("E", 6)),
+                Tuple.of(2L, new Team("A", 3)),
+                Tuple.of(2L, new Team("C", 3)),
+                Tuple.of(4L, new Team("B", 0)),
+                Tuple.of(4L, new Team("D", 0))), BucketRanking.table(Fixtures.tally(tr, lines)));
+        // E has the worst goal difference of the top three, but more points
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("E", 6)),
+                Tuple.of(2L, new Team("A", 3)),
+                Tuple.of(3L, new Team("C", 3)),
+                Tuple.of(4L, new Team("D", 0)),
+                Tuple.of(5L, new Team("B", 0))), BucketRanking.table(
+                Fixtures.tally(tr.withTiebreakers(List.of(Tiebreaker.GOAL_DIFFERENCE)), lines)));
+    }
+
+    @Test
+    public void givenTiedOnGoalDifference_whenTable_tryNextTiebreakerThenShareRank() {
+        // Bears and Lions both on 5 points and +1, Lions having scored more
+        String[] lines = {"Lions 1, Bears 1", "Lions 2, Cubs 1", "Snakes 4, Cubs 1",
+                "Bears 1, Snakes 0", "Bears 0, Cubs 0", "Snakes 0, Lions 0"};
+
+        List<Tuple2<Long, Team>> rest = List.of(Tuple.of(3L, new Team("Snakes", 4)),
+                Tuple.of(4L, new Team("Cubs", 1)));
+        Assert.assertEquals(concat(List.of(Tuple.of(1L, new Team("Bears", 5)),
+                Tuple.of(1L, new Team("Lions", 5))), rest), BucketRanking.table(
+                Fixtures.tally(tr.withTiebreakers(List.of(Tiebreaker.GOAL_DIFFERENCE)), lines)));
+        Assert.assertEquals(concat(List.of(Tuple.of(1L, new Team("Lions", 5)),
+                Tuple.of(2L, new Team("Bears", 5))), rest), BucketRanking.table(Fixtures.tally(
+                tr.withTiebreakers(List.of(Tiebreaker.GOAL_DIFFERENCE, Tiebreaker.GOALS_FOR)),
+                lines)));
+    }
+
+    @Test
+    public void givenHeadToHead_whenTable_countOnlyGamesWithinTiedGroup() {
+        // X, Y and Z are on 3 points: X beat Y, and Z and Y haven't met, so are still tied
+        TeamRanker headToHead = tr.withTiebreakers(List.of(Tiebreaker.HEAD_TO_HEAD));
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("X", 3)),
+                Tuple.of(2L, new Team("Y", 3)),
+                Tuple.of(2L, new Team("Z", 3)),
+                Tuple.of(4L, new Team("W", 0))), BucketRanking.table(Fixtures.tally(headToHead,
+                MINI_LEAGUE)));
+        // and then goal difference, which counts all games, separates them
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("X", 3)),
+                Tuple.of(2L, new Team("Y", 3)),
+                Tuple.of(3L, new Team("Z", 3)),
+                Tuple.of(4L, new Team("W", 0))), BucketRanking.table(Fixtures.tally(
+                tr.withTiebreakers(List.of(Tiebreaker.HEAD_TO_HEAD, Tiebreaker.GOAL_DIFFERENCE)),
+                MINI_LEAGUE)));
+        // whereas goal difference first puts Y (+4) above Z (+2) above X (+1)
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Y", 3)),
+                Tuple.of(2L, new Team("Z", 3)),
+                Tuple.of(3L, new Team("X", 3)),
+                Tuple.of(4L, new Team("W", 0))), BucketRanking.table(Fixtures.tally(
+                tr.withTiebreakers(List.of(Tiebreaker.GOAL_DIFFERENCE, Tiebreaker.HEAD_TO_HEAD)),
+                MINI_LEAGUE)));
+    }
+
+    // With many other pairs having met, small tied groups look up their pairs rather than going
+    // through every pair, which should make no difference to the table.
+    @Test
+    public void givenManyOtherPairs_whenTable_rankHeadToHeadTheSame() {
+        TeamRanker headToHead = tr.withTiebreakers(List.of(Tiebreaker.HEAD_TO_HEAD));
+        List<String> lines = new ArrayList<>(Arrays.asList(MINI_LEAGUE));
+        for (int i = 0; i < 20; i += 2) {
+            lines.add("Q" + i + " 0, Q" + (i + 1) + " 0");
+        }
+        GameTally tally = Fixtures.tally(headToHead, lines.toArray(new String[0]));
+        Assert.assertTrue(tally.getHeadToHead().size() >= 9);
+
+        Assert.assertEquals(
+                BucketRanking.table(Fixtures.tally(headToHead, MINI_LEAGUE)).subList(0, 3),
+                BucketRanking.table(tally).subList(0, 3));
+    }
+
+    @Test
+    public void givenNoHeadToHeadTiebreaker_whenTally_keepNoPairs() {
+        Assert.assertNull(Fixtures.tally(tr.withTiebreakers(List.of(Tiebreaker.GOALS_FOR)),
+                MINI_LEAGUE).getHeadToHead());
+        Assert.assertEquals(3, Fixtures.tally(tr.withTiebreakers(List.of(Tiebreaker.HEAD_TO_HEAD)),
+                MINI_LEAGUE).getHeadToHead().size());
+    }
+
+    @Test
+    public void givenMergedTallies_whenTable_matchSingleTally() {
+        TeamRanker ranker = tr.withTiebreakers(List.of(Tiebreaker.HEAD_TO_HEAD,
+                Tiebreaker.GOAL_DIFFERENCE, Tiebreaker.GOALS_FOR));
+        List<String> lines = randomLines(new Random(5), 40, 200);
+        GameTally whole = Fixtures.tally(ranker, lines.toArray(new String[0]));
+        // the later tally meets the teams in a different order, so has different ids for them
+        GameTally merged = Fixtures.tally(ranker, lines.subList(0, 120).toArray(new String[0]))
+                .merge(Fixtures.tally(ranker, lines.subList(120, 200).toArray(new String[0])));
+
+        Assert.assertEquals(BucketRanking.table(whole), BucketRanking.table(merged));
+        Assert.assertEquals(BucketRanking.table(whole), new Standings(merged).table());
+    }
+
+    // Big enough for the tied groups to be ranked concurrently, and the points too spread out to
+    // bucket, for the fallback; either way, each row should follow the previous one.
+    @Test
+    public void givenRandomLeagues_whenTable_orderByPointsThenChain() {
+        Random random = new Random(17);
+        for (TeamRanker scoring : List.of(tr, new TeamRanker(1_000_000_007L, 3, 0))) {
+            for (int teams : new int[]{30, 300, 70_000}) {
+                TeamRanker ranker = scoring.withTiebreakers(
+                        List.of(Tiebreaker.GOAL_DIFFERENCE, Tiebreaker.GOALS_FOR));
+                GameTally tally = Fixtures.tally(ranker,
+                        randomLines(random, teams, teams * 2).toArray(new String[0]));
+                assertOrdered(tally, BucketRanking.table(tally));
+            }
+        }
+    }
+
+    private static void assertOrdered(GameTally tally, List<Tuple2<Long, Team>> table) {
+        Assert.assertEquals(tally.getTeamCount(), table.size());
+        long[] previous = null;
+        for (int row = 0; row < table.size(); row++) {
+            Team team = table.get(row)._2();
+            int id = tally.findTeam(team.getName());
+            long[] key = {team.getPoints(), tally.getGoalsFor(id) - tally.getGoalsAgainst(id),
+                    tally.getGoalsFor(id)};
+            long rank = table.get(row)._1();
+            if (previous != null && Arrays.equals(previous, key)) {
+                Assert.assertEquals(table.get(row - 1)._1().longValue(), rank);
+                Assert.assertTrue(table.get(row - 1)._2().getName().compareTo(team.getName()) < 0);
+            } else {
+                Assert.assertTrue(previous == null || Arrays.compare(previous, key) > 0);
+                Assert.assertEquals(row + 1, rank);
+            }
+            previous = key;
+        }
+    }
+
+    private static List<String> randomLines(Random random, int teams, int games) {
+        List<String> lines = new ArrayList<>();
+        for (int game = 0; game < games; game++) {
+            int home = random.nextInt(teams);
+            int away = (home + 1 + random.nextInt(teams - 1)) % teams;
+            lines.add("T" + home + " " + random.nextInt(4) + ", T" + away + " "
+                    + random.nextInt(4));
+        }
+        return lines;
+    }
+
+    private static List<Tuple2<Long, Team>> concat(List<Tuple2<Long, Team>> first,
+            List<Tuple2<Long, Team>> second) {
+        List<Tuple2<Long, Team>> rows = new ArrayList<>(first);
+        rows.addAll(second);
+        return rows;
+    }
+}
@@ -0,0 +1,58 @@
+package com.spandigital.matt;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class TestTopRanks {
+
+    private final TeamRanker tr = TeamRanker.createDefault();
+
+    @Test
+    public void givenTiesAcrossPageBoundary_whenPage_keepSharedRank() {
+        GameTally tally = Fixtures.tally(tr, "Ants 1, Badgers 0", "Cats 1, Dogs 1",
+                "Emus 1, Frogs 1");
+        // Ants 3, then Cats/Dogs/Emus/Frogs all on 1, then Badgers on 0
+        Assert.assertEquals(List.of(Tuple.of(2L, new Team("Emus", 1)),
+                Tuple.of(2L, new Team("Frogs", 1)),
+                Tuple.of(6L, new Team("Badgers", 0))), TopRanks.page(tally, 3, 5));
+        Assert.assertEquals(List.of(Tuple.of(1L, new Team("Ants", 3)),
+                Tuple.of(2L, new Team("Cats", 1))), TopRanks.page(tally, 0, 2));
+        Assert.assertEquals(List.of(), TopRanks.page(tally, 6, 2));
+        Assert.assertEquals(List.of(), TopRanks.page(tally, 0, 0));
+    }
+
+    @Test
+    public void givenBadLines_whenRankPage_returnBadLines() {
+        GameTally tally = Fixtures.tally(tr, "Ants 1, Badgers 0", "Ants 1, Ants 0");
+        Assert.assertEquals(List.of("2:  Ants 1, Ants 0"), tr.rankPage(tally, 0, 1).getLeft());
+    }
+
+    // Every page of lots of random leagues should be the same slice of the full table.
+    @Test
+    public void givenRandomLeagues_whenPage_matchFullTable() {
+        Random random = new Random(7);
+        for (int league = 0; league < 50; league++) {
+            int teams = 1 + random.nextInt(60);
+            GameTally tally = new GameTally(tr);
+            for (int game = 0; game < teams * 3; game++) {
+                int home = random.nextInt(teams);
+                int away = (home + 1 + random.nextInt(Math.max(1, teams - 1))) % teams;
+                if (home != away) {
+                    Fixtures.feed(tally::acceptLine, "T" + home + " " + random.nextInt(3)
+                            + ", T" + away + " " + random.nextInt(3));
+                }
+            }
+            List<Tuple2<Long, Team>> table = new Standings(tally).table();
+            int offset = random.nextInt(teams + 2);
+            int limit = random.nextInt(teams + 2);
+            List<Tuple2<Long, Team>> expected = table.subList(Math.min(offset, table.size()),
+                    Math.min(offset + limit, table.size()));
+            Assert.assertEquals(expected, TopRanks.page(tally, offset, limit));
+        }
+    }
+}